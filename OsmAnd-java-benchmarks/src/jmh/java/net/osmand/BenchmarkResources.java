@@ -0,0 +1,51 @@
+package net.osmand;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import net.osmand.util.Algorithms;
+
+/**
+ * Locates test resources of OsmAnd-java (see collectTestResources task) used by benchmarks.
+ * Directory is passed by jmh task as system property, so benchmarks could be run from any directory.
+ */
+public class BenchmarkResources {
+
+	public static final String RESOURCES_PROPERTY = "osmand.benchmark.resources";
+
+	public static File getResourcesDir() {
+		return new File(System.getProperty(RESOURCES_PROPERTY, "../OsmAnd-java/src/test/resources"));
+	}
+
+	public static File getFile(String name) throws FileNotFoundException {
+		File f = new File(getResourcesDir(), name);
+		if (!f.exists()) {
+			throw new FileNotFoundException(f.getAbsolutePath() + " (run :OsmAnd-java:collectTestResources)");
+		}
+		return f;
+	}
+
+	/**
+	 * Search test maps are stored gzipped, unpacks it to temporary file which is deleted on exit.
+	 */
+	public static File getUnpackedObf(String gzName) throws IOException {
+		File gz = getFile(gzName);
+		File obf = File.createTempFile(gzName.substring(gzName.lastIndexOf('/') + 1), ".obf");
+		obf.deleteOnExit();
+		InputStream is = new GZIPInputStream(new FileInputStream(gz));
+		OutputStream os = new FileOutputStream(obf);
+		try {
+			Algorithms.streamCopy(is, os);
+		} finally {
+			Algorithms.closeStream(is);
+			Algorithms.closeStream(os);
+		}
+		return obf;
+	}
+}
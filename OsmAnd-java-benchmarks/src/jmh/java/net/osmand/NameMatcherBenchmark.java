@@ -0,0 +1,139 @@
+package net.osmand;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.osm.MapPoiTypes;
+import net.osmand.osm.PoiCategory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Matching of POI names of one of search test maps (search/*.obf.gz) by collator and by precalculated collation keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NameMatcherBenchmark {
+
+	private static final SearchPoiTypeFilter ACCEPT_ALL = new SearchPoiTypeFilter() {
+		@Override
+		public boolean accept(PoiCategory type, String subcategory) {
+			return true;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return false;
+		}
+	};
+
+	// empty - first map found in search resources
+	@Param({ "" })
+	public String map;
+
+	@Param({ "a", "Bar", "Stra" })
+	public String part;
+
+	@Param({ "CHECK_STARTS_FROM_SPACE", "CHECK_CONTAINS" })
+	public StringMatcherMode mode;
+
+	private List<String> names = new ArrayList<String>();
+	private String[] nameKeys;
+	private Collator collator;
+	private CollatorStringMatcher matcher;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File poiTypes = new File(BenchmarkResources.getResourcesDir(), "poi_types.xml");
+		if (poiTypes.exists()) {
+			MapPoiTypes.setDefault(new MapPoiTypes(poiTypes.getAbsolutePath()));
+		}
+		String gzName = map;
+		if (gzName.isEmpty()) {
+			File[] files = new File(BenchmarkResources.getResourcesDir(), "search").listFiles();
+			if (files != null) {
+				for (File f : files) {
+					if (f.getName().endsWith(".obf.gz") && (gzName.isEmpty() || f.getName().compareTo(gzName) < 0)) {
+						gzName = f.getName();
+					}
+				}
+			}
+			if (gzName.isEmpty()) {
+				throw new FileNotFoundException("No search maps (run :OsmAnd-java:collectTestResources)");
+			}
+		}
+		File obf = BenchmarkResources.getUnpackedObf("search/" + gzName);
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+		try {
+			reader.initCategories();
+			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+					Integer.MAX_VALUE, 16, ACCEPT_ALL, null);
+			for (Amenity a : reader.searchPoi(req)) {
+				if (a.getName() != null && a.getName().length() > 0) {
+					names.add(a.getName());
+				}
+				names.addAll(a.getNamesMap(true).values());
+			}
+		} finally {
+			reader.close();
+		}
+		nameKeys = new String[names.size()];
+		for (int i = 0; i < nameKeys.length; i++) {
+			nameKeys[i] = CollatorStringMatcher.getNameKeys(names.get(i));
+		}
+		collator = OsmAndCollator.primaryCollator();
+		matcher = new CollatorStringMatcher(part, mode);
+	}
+
+	@Benchmark
+	public int matchByCollator() {
+		int cnt = 0;
+		String p = part.toLowerCase();
+		for (String name : names) {
+			if (CollatorStringMatcher.cmatches(collator, name, p, mode)) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	@Benchmark
+	public int matchByKeys() {
+		int cnt = 0;
+		for (String name : names) {
+			if (matcher.matches(name)) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	@Benchmark
+	public int matchByPrecalculatedKeys() {
+		int cnt = 0;
+		for (int i = 0; i < nameKeys.length; i++) {
+			if (matcher.matches(names.get(i), nameKeys[i])) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+}
@@ -0,0 +1,118 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.data.Amenity;
+import net.osmand.osm.MapPoiTypes;
+import net.osmand.osm.PoiCategory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * POI search by name and by bbox over one of search test maps (search/*.obf.gz).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoiSearchBenchmark {
+
+	private static final SearchPoiTypeFilter ACCEPT_ALL = new SearchPoiTypeFilter() {
+		@Override
+		public boolean accept(PoiCategory type, String subcategory) {
+			return true;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return false;
+		}
+	};
+
+	// empty - first map found in search resources
+	@Param({ "" })
+	public String map;
+
+	@Param({ "a", "Bar" })
+	public String name;
+
+	private BinaryMapIndexReader reader;
+	private int left, right, top, bottom;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File poiTypes = new File(BenchmarkResources.getResourcesDir(), "poi_types.xml");
+		if (poiTypes.exists()) {
+			MapPoiTypes.setDefault(new MapPoiTypes(poiTypes.getAbsolutePath()));
+		}
+		String gzName = map;
+		if (gzName.isEmpty()) {
+			File[] files = new File(BenchmarkResources.getResourcesDir(), "search").listFiles();
+			if (files != null) {
+				for (File f : files) {
+					if (f.getName().endsWith(".obf.gz") && (gzName.isEmpty() || f.getName().compareTo(gzName) < 0)) {
+						gzName = f.getName();
+					}
+				}
+			}
+			if (gzName.isEmpty()) {
+				throw new FileNotFoundException("No search maps (run :OsmAnd-java:collectTestResources)");
+			}
+		}
+		File obf = BenchmarkResources.getUnpackedObf("search/" + gzName);
+		reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+		reader.initCategories();
+		left = top = Integer.MAX_VALUE;
+		right = bottom = 0;
+		for (PoiRegion reg : reader.getPoiIndexes()) {
+			left = Math.min(left, reg.getLeft31());
+			right = Math.max(right, reg.getRight31());
+			top = Math.min(top, reg.getTop31());
+			bottom = Math.max(bottom, reg.getBottom31());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		reader.close();
+	}
+
+	@Benchmark
+	public int searchByName() throws Exception {
+		int x = left / 2 + right / 2;
+		int y = top / 2 + bottom / 2;
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(x, y, name, left, right, top, bottom,
+				null);
+		List<Amenity> res = reader.searchPoiByName(req);
+		return res.size();
+	}
+
+	@Benchmark
+	public int searchByBbox() throws Exception {
+		// quarter of map around center
+		int w = (right - left) / 4;
+		int h = (bottom - top) / 4;
+		int x = left / 2 + right / 2;
+		int y = top / 2 + bottom / 2;
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(x - w, x + w, y - h, y + h, 16,
+				ACCEPT_ALL, null);
+		List<Amenity> res = reader.searchPoi(req);
+		return res.size();
+	}
+}
@@ -0,0 +1,102 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.gson.Gson;
+
+/**
+ * Calculates routes between fixed point pairs of test_routing.json (tests which use only Routing_test.obf).
+ * Every invocation builds new routing context, so tile decoding is included as in real route calculation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RouteCalculationBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean parallelBidirectional;
+
+	private BinaryMapIndexReader reader;
+	private List<RouteEntry> entries;
+	private RoutePlannerFrontEnd fe;
+
+	private static class RouteEntry {
+		String testName;
+		LatLon startPoint;
+		LatLon endPoint;
+		boolean ignore;
+		Map<String, String> params;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File obf = BenchmarkResources.getFile("Routing_test.obf");
+		reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+		Reader json = new FileReader(BenchmarkResources.getFile("test_routing.json"));
+		RouteEntry[] all;
+		try {
+			all = new Gson().fromJson(json, RouteEntry[].class);
+		} finally {
+			json.close();
+		}
+		entries = new ArrayList<RouteEntry>();
+		for (RouteEntry e : all) {
+			if (!e.ignore && (e.params == null || !e.params.containsKey("map"))) {
+				if (e.params == null) {
+					e.params = Collections.emptyMap();
+				}
+				entries.add(e);
+			}
+		}
+		fe = new RoutePlannerFrontEnd();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		reader.close();
+	}
+
+	@Benchmark
+	public int calculateRoutes() throws Exception {
+		int segments = 0;
+		RoutingConfiguration.Builder builder = RoutingConfiguration.getDefault();
+		for (RouteEntry e : entries) {
+			String vehicle = e.params.containsKey("vehicle") ? e.params.get("vehicle") : "car";
+			RoutingConfiguration config = builder.build(vehicle, RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3, e.params);
+			config.parallelBidirectionalSearch = parallelBidirectional;
+			RoutingContext ctx = fe.buildRoutingContext(config, null, new BinaryMapIndexReader[] { reader },
+					RouteCalculationMode.NORMAL);
+			ctx.leftSideNavigation = false;
+			List<RouteSegmentResult> res = fe.searchRoute(ctx, e.startPoint, e.endPoint, null);
+			if (res == null) {
+				throw new IllegalStateException("Route is not found " + e.testName);
+			}
+			segments += res.size();
+		}
+		return segments;
+	}
+}
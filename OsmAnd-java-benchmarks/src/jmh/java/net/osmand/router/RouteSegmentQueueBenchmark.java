@@ -0,0 +1,227 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.gson.Gson;
+
+/**
+ * Replays queue operations recorded from A* searches of test_routing.json (tests which use only Routing_test.obf)
+ * with {@link RouteSegmentQueue} (decrease-key) and with {@link PriorityQueue} which was used before:
+ * updated segment is inserted again and stale entries are skipped when polled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RouteSegmentQueueBenchmark {
+
+	private static final int POLL = -1;
+
+	private List<SegmentStream> streams;
+
+	private static class RouteEntry {
+		LatLon startPoint;
+		LatLon endPoint;
+		boolean ignore;
+		Map<String, String> params;
+	}
+
+	// operations of one queue: segment index with its distances (float bits) for add or POLL
+	private static class SegmentStream {
+		final double heuristicCoefficient;
+		final TIntArrayList ops = new TIntArrayList();
+		final TIntArrayList distanceFromStart = new TIntArrayList();
+		final TIntArrayList distanceToEnd = new TIntArrayList();
+		final List<RouteSegment> segments = new ArrayList<RouteSegment>();
+
+		SegmentStream(double heuristicCoefficient) {
+			this.heuristicCoefficient = heuristicCoefficient;
+		}
+	}
+
+	private static class RecordingQueue extends RouteSegmentQueue {
+		final SegmentStream stream;
+		final Map<RouteSegment, Integer> ids = new IdentityHashMap<RouteSegment, Integer>();
+		final RouteDataObject road = new RouteDataObject((RouteRegion) null);
+
+		RecordingQueue(double heuristicCoefficient) {
+			super(heuristicCoefficient);
+			stream = new SegmentStream(heuristicCoefficient);
+		}
+
+		@Override
+		public void add(RouteSegment segment) {
+			Integer id = ids.get(segment);
+			if (id == null) {
+				id = ids.size();
+				ids.put(segment, id);
+				stream.segments.add(new RouteSegment(road, 0));
+			}
+			stream.ops.add(id);
+			stream.distanceFromStart.add(Float.floatToRawIntBits(segment.distanceFromStart));
+			stream.distanceToEnd.add(Float.floatToRawIntBits(segment.distanceToEnd));
+			super.add(segment);
+		}
+
+		@Override
+		public RouteSegment poll() {
+			stream.ops.add(POLL);
+			stream.distanceFromStart.add(0);
+			stream.distanceToEnd.add(0);
+			return super.poll();
+		}
+	}
+
+	private static class RecordingPlanner extends BinaryRoutePlanner {
+		final List<SegmentStream> streams = new ArrayList<SegmentStream>();
+
+		@Override
+		RouteSegmentQueue createSegmentQueue(double heuristicCoefficient) {
+			RecordingQueue queue = new RecordingQueue(heuristicCoefficient);
+			streams.add(queue.stream);
+			return queue;
+		}
+	}
+
+	// entry of priority queue, key is fixed when segment is inserted
+	private static class QueueEntry {
+		final int id;
+		final double key;
+
+		QueueEntry(int id, double key) {
+			this.id = id;
+			this.key = key;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File obf = BenchmarkResources.getFile("Routing_test.obf");
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+		Reader json = new FileReader(BenchmarkResources.getFile("test_routing.json"));
+		RouteEntry[] all;
+		try {
+			all = new Gson().fromJson(json, RouteEntry[].class);
+		} finally {
+			json.close();
+		}
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		RoutingConfiguration.Builder builder = RoutingConfiguration.getDefault();
+		RecordingPlanner planner = new RecordingPlanner();
+		for (RouteEntry e : all) {
+			if (e.ignore || (e.params != null && e.params.containsKey("map"))) {
+				continue;
+			}
+			Map<String, String> params = e.params == null ? Collections.<String, String>emptyMap() : e.params;
+			String vehicle = params.containsKey("vehicle") ? params.get("vehicle") : "car";
+			RoutingConfiguration config = builder.build(vehicle, RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3, params);
+			RoutingContext ctx = fe.buildRoutingContext(config, null, new BinaryMapIndexReader[] { reader },
+					RouteCalculationMode.NORMAL);
+			ctx.calculationProgress = new RouteCalculationProgress();
+			RouteSegmentPoint start = fe.findRouteSegment(e.startPoint.getLatitude(), e.startPoint.getLongitude(), ctx, null);
+			RouteSegmentPoint end = fe.findRouteSegment(e.endPoint.getLatitude(), e.endPoint.getLongitude(), ctx, null);
+			if (start == null || end == null) {
+				continue;
+			}
+			ctx.initStartAndTargetPoints(start, end);
+			planner.searchRouteInternal(ctx, start, end, null);
+		}
+		reader.close();
+		streams = new ArrayList<SegmentStream>();
+		for (SegmentStream s : planner.streams) {
+			if (!s.ops.isEmpty()) {
+				streams.add(s);
+			}
+		}
+		if (streams.isEmpty()) {
+			throw new IllegalStateException("No queue operations recorded");
+		}
+	}
+
+	@Benchmark
+	public int routeSegmentQueue() {
+		int polled = 0;
+		for (SegmentStream s : streams) {
+			RouteSegmentQueue queue = new RouteSegmentQueue(s.heuristicCoefficient);
+			for (int i = 0; i < s.ops.size(); i++) {
+				int op = s.ops.getQuick(i);
+				if (op == POLL) {
+					if (queue.poll() != null) {
+						polled++;
+					}
+				} else {
+					RouteSegment segment = s.segments.get(op);
+					segment.distanceFromStart = Float.intBitsToFloat(s.distanceFromStart.getQuick(i));
+					segment.distanceToEnd = Float.intBitsToFloat(s.distanceToEnd.getQuick(i));
+					queue.add(segment);
+				}
+			}
+			// segments are reused by next invocation
+			queue.clear();
+		}
+		return polled;
+	}
+
+	@Benchmark
+	public int priorityQueue() {
+		int polled = 0;
+		for (SegmentStream s : streams) {
+			PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>(50, new Comparator<QueueEntry>() {
+				@Override
+				public int compare(QueueEntry o1, QueueEntry o2) {
+					return Double.compare(o1.key, o2.key);
+				}
+			});
+			// latest entry of segment, older entries are stale
+			QueueEntry[] latest = new QueueEntry[s.segments.size()];
+			for (int i = 0; i < s.ops.size(); i++) {
+				int op = s.ops.getQuick(i);
+				if (op == POLL) {
+					QueueEntry e = queue.poll();
+					while (e != null && latest[e.id] != e) {
+						e = queue.poll();
+					}
+					if (e != null) {
+						latest[e.id] = null;
+						polled++;
+					}
+				} else {
+					QueueEntry e = new QueueEntry(op, Float.intBitsToFloat(s.distanceFromStart.getQuick(i))
+							+ s.heuristicCoefficient * Float.intBitsToFloat(s.distanceToEnd.getQuick(i)));
+					latest[op] = e;
+					queue.add(e);
+				}
+			}
+		}
+		return polled;
+	}
+}
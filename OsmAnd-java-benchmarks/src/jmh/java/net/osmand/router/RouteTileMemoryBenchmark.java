@@ -0,0 +1,69 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.PackedRouteTile;
+import net.osmand.binary.RouteDataObject;
+
+/**
+ * Console utility to compare memory occupied by loaded route tiles stored as {@link RouteDataObject} lists
+ * and as {@link PackedRouteTile} (memory is not measured by jmh, so it is run with main).
+ * Without arguments Routing_test.obf of test resources is used.
+ */
+public class RouteTileMemoryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		File f = args.length == 0 ? BenchmarkResources.getFile("Routing_test.obf") : new File(args[0]);
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f);
+		List<RouteSubregion> subregions = new ArrayList<RouteSubregion>();
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE,
+					0, Integer.MAX_VALUE, null);
+			subregions.addAll(reader.searchRouteIndexTree(req, reg.getSubregions()));
+		}
+
+		long before = RoutingContext.runGCUsedMemory();
+		List<List<RouteDataObject>> objects = new ArrayList<List<RouteDataObject>>();
+		long estimated = 0;
+		int roads = 0;
+		for (RouteSubregion rs : subregions) {
+			List<RouteDataObject> l = reader.loadRouteIndexData(rs);
+			for (RouteDataObject o : l) {
+				if (o != null) {
+					estimated += RoutingContext.getEstimatedSize(o);
+					roads++;
+				}
+			}
+			objects.add(l);
+		}
+		long objectsMemory = RoutingContext.runGCUsedMemory() - before;
+
+		List<PackedRouteTile> packed = new ArrayList<PackedRouteTile>();
+		long packedEstimated = 0;
+		for (int i = 0; i < subregions.size(); i++) {
+			PackedRouteTile tile = PackedRouteTile.pack(subregions.get(i).routeReg, objects.get(i));
+			packedEstimated += tile.getEstimatedSize();
+			packed.add(tile);
+		}
+		objects.clear();
+		long packedMemory = RoutingContext.runGCUsedMemory() - before;
+		reader.close();
+
+		int tiles = Math.max(1, subregions.size());
+		float kb = 1 << 10;
+		System.out.println(String.format("%d tiles, %d roads", subregions.size(), roads));
+		System.out.println(String.format("Objects: %.1f KB per tile (estimated %.1f KB)",
+				objectsMemory / kb / tiles, estimated / kb / tiles));
+		System.out.println(String.format("Packed : %.1f KB per tile (estimated %.1f KB)",
+				packedMemory / kb / tiles, packedEstimated / kb / tiles));
+		System.out.println("Tiles kept " + packed.size());
+	}
+}
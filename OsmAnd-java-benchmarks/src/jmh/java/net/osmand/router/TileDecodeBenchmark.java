@@ -0,0 +1,95 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of all route tiles of Routing_test.obf and evaluation of car {@link GeneralRouter} rules
+ * over decoded roads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TileDecodeBenchmark {
+
+	private BinaryMapIndexReader reader;
+	private List<RouteSubregion> subregions;
+	private List<RouteDataObject> roads;
+	private VehicleRouter router;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File obf = BenchmarkResources.getFile("Routing_test.obf");
+		reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+		subregions = new ArrayList<RouteSubregion>();
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE,
+					0, Integer.MAX_VALUE, null);
+			subregions.addAll(reader.searchRouteIndexTree(req, reg.getSubregions()));
+		}
+		roads = new ArrayList<RouteDataObject>();
+		for (RouteSubregion rs : subregions) {
+			for (RouteDataObject o : reader.loadRouteIndexData(rs)) {
+				if (o != null) {
+					roads.add(o);
+				}
+			}
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpRouter() {
+		// new router every iteration, otherwise evaluation is served from router cache
+		router = RoutingConfiguration.getDefault().build("car", RoutingConfiguration.DEFAULT_MEMORY_LIMIT).router;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		reader.close();
+	}
+
+	@Benchmark
+	public int decodeTiles() throws Exception {
+		int points = 0;
+		for (RouteSubregion rs : subregions) {
+			for (RouteDataObject o : reader.loadRouteIndexData(rs)) {
+				if (o != null) {
+					points += o.getPointsLength();
+				}
+			}
+		}
+		return points;
+	}
+
+	@Benchmark
+	public void evaluateRouter(Blackhole bh) {
+		for (RouteDataObject o : roads) {
+			if (router.acceptLine(o)) {
+				bh.consume(router.defineRoutingSpeed(o));
+				bh.consume(router.defineSpeedPriority(o));
+				bh.consume(router.defineObstacle(o, 0, true));
+			}
+		}
+	}
+}
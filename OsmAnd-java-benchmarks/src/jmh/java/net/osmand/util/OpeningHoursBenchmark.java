@@ -0,0 +1,67 @@
+package net.osmand.util;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import net.osmand.util.OpeningHoursParser.OpeningHours;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of typical opening_hours values (taken from {@code OpeningHoursParserTest}) and checking them for fixed time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpeningHoursBenchmark {
+
+	private static final String[] HOURS = {
+			"Mo-Fr 08:00-20:00; Sa 09:00-18:00; Su off",
+			"Mo-Su 07:00-23:00; Dec 25 off",
+			"Mo-Fr 08:00-12:30, Mo-We 12:30-16:30 \"Sur rendez-vous\", Fr 12:30-15:30 \"Sur rendez-vous\"",
+			"2019 Apr 1 - 2020 Apr 1",
+			"2019 Jul 23 05:00-24:00; 2019 Jul 24-2019 Jul 26 00:00-24:00; 2019 Jul 27 00:00-18:00",
+			"Mo-Sa 09:00-21:00; Su 10:00-18:00; PH off",
+			"24/7",
+			"Mo-Th 09:00-03:00; Fr-Sa 09:00-05:00; Su 10:00-03:00",
+			"Apr-Sep: Mo-Su 10:00-22:00; Oct-Mar: Mo-Su 10:00-18:00",
+			"Mo,Tu,Th,Fr 12:00-18:00; Sa,PH 12:00-17:00; Th[3],Th[-1] off",
+	};
+
+	private OpeningHours[] parsed;
+	private Calendar cal;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		parsed = new OpeningHours[HOURS.length];
+		for (int i = 0; i < HOURS.length; i++) {
+			parsed[i] = OpeningHoursParser.parseOpenedHours(HOURS[i]);
+		}
+		cal = Calendar.getInstance();
+		cal.set(2019, Calendar.JULY, 24, 12, 30, 0);
+	}
+
+	@Benchmark
+	public void parse(Blackhole bh) {
+		for (String h : HOURS) {
+			bh.consume(OpeningHoursParser.parseOpenedHours(h));
+		}
+	}
+
+	@Benchmark
+	public void isOpened(Blackhole bh) {
+		for (OpeningHours h : parsed) {
+			if (h != null) {
+				bh.consume(h.isOpenedForTime(cal));
+			}
+		}
+	}
+}
@@ -33,6 +33,7 @@ package com.google.protobuf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,6 +69,15 @@ public final class CodedInputStream {
     return new CodedInputStream(raf);
   }
 
+  /**
+   * Create a new CodedInputStream reading directly from a (memory mapped) buffer
+   * without intermediate copies. Positions are absolute offsets in the buffer,
+   * the buffer is duplicated so several streams could share the same mapping.
+   */
+  public static CodedInputStream newInstance(ByteBuffer mapped) {
+    return new CodedInputStream(mapped.duplicate());
+  }
+
   /**
    * Create a new CodedInputStream wrapping the given byte array slice.
    */
@@ -222,7 +232,9 @@ public final class CodedInputStream {
   /** Read a {@code string} field value from the stream. */
   public String readString() throws IOException {
     final int size = readRawVarint32();
-    if (size <= (bufferSize - bufferPos) && size > 0) {
+    if (mapped != null) {
+      return new String(readRawBytes(size), "UTF-8");
+    } else if (size <= (bufferSize - bufferPos) && size > 0) {
       // Fast path:  We already have the bytes in a contiguous buffer, so
       //   just copy directly from it.
       final String result = new String(buffer, bufferPos, size, "UTF-8");
@@ -324,6 +336,8 @@ public final class CodedInputStream {
     final int size = readRawVarint32();
     if (size == 0) {
       return ByteString.EMPTY;
+    } else if (mapped != null) {
+      return ByteString.copyFrom(readRawBytes(size));
     } else if (size <= (bufferSize - bufferPos) && size > 0) {
       // Fast path:  We already have the bytes in a contiguous buffer, so
       //   just copy directly from it.
@@ -376,6 +390,9 @@ public final class CodedInputStream {
    * upper bits.
    */
   public int readRawVarint32() throws IOException {
+    if (mapped != null && bufferSize - bufferPos >= 10) {
+      return readMappedVarint32();
+    }
     byte tmp = readRawByte();
     if (tmp >= 0) {
       return tmp;
@@ -409,6 +426,52 @@ public final class CodedInputStream {
     return result;
   }
 
+  // osmand change
+  /**
+   * Decodes a varint straight from the mapped buffer, caller guarantees that
+   * at least 10 bytes are available before the limit.
+   */
+  private int readMappedVarint32() throws IOException {
+    final ByteBuffer buf = mapped;
+    int pos = bufferPos;
+    byte tmp = buf.get(pos++);
+    if (tmp >= 0) {
+      bufferPos = pos;
+      return tmp;
+    }
+    int result = tmp & 0x7f;
+    if ((tmp = buf.get(pos++)) >= 0) {
+      result |= tmp << 7;
+    } else {
+      result |= (tmp & 0x7f) << 7;
+      if ((tmp = buf.get(pos++)) >= 0) {
+        result |= tmp << 14;
+      } else {
+        result |= (tmp & 0x7f) << 14;
+        if ((tmp = buf.get(pos++)) >= 0) {
+          result |= tmp << 21;
+        } else {
+          result |= (tmp & 0x7f) << 21;
+          result |= (tmp = buf.get(pos++)) << 28;
+          if (tmp < 0) {
+            // Discard upper 32 bits.
+            int i = 0;
+            for (; i < 5; i++) {
+              if (buf.get(pos++) >= 0) {
+                break;
+              }
+            }
+            if (i == 5) {
+              throw InvalidProtocolBufferException.malformedVarint();
+            }
+          }
+        }
+      }
+    }
+    bufferPos = pos;
+    return result;
+  }
+
   /**
    * Reads a varint from the input one byte at a time, so that it does not
    * read any bytes after the end of the varint.  If you simply wrapped the
@@ -539,6 +602,8 @@ public final class CodedInputStream {
 
   private final byte[] buffer;
   private RandomAccessFile raf;
+  // osmand change: whole file is mapped, positions are absolute and totalBytesRetired is always 0
+  private ByteBuffer mapped;
   private int bufferSize;
   private int bufferSizeAfterLimit;
   private int bufferPos;
@@ -586,6 +651,16 @@ public final class CodedInputStream {
 		input = null;
 	}
 
+  // osmand change
+  private CodedInputStream(final ByteBuffer mapped) {
+    buffer = null;
+    this.mapped = mapped;
+    bufferSize = mapped.limit();
+    bufferPos = 0;
+    totalBytesRetired = 0;
+    input = null;
+  }
+
   private CodedInputStream(final InputStream input) {
     buffer = new byte[BUFFER_SIZE];
     bufferSize = 0;
@@ -748,6 +823,15 @@ public final class CodedInputStream {
       }
     }
 
+    if (mapped != null) {
+      // osmand change: everything is already in the buffer, so it is the end of file
+      if (mustSucceed) {
+        throw InvalidProtocolBufferException.truncatedMessage();
+      } else {
+        return false;
+      }
+    }
+
     totalBytesRetired += bufferSize;
 
     bufferPos = 0;
@@ -797,6 +881,9 @@ public final class CodedInputStream {
     if (bufferPos == bufferSize) {
       refillBuffer(true);
     }
+    if (mapped != null) {
+      return mapped.get(bufferPos++);
+    }
     return buffer[bufferPos++];
   }
 
@@ -818,7 +905,18 @@ public final class CodedInputStream {
       throw InvalidProtocolBufferException.truncatedMessage();
     }
 
-    if (size <= bufferSize - bufferPos) {
+    if (mapped != null) {
+      // osmand change
+      if (size > bufferSize - bufferPos) {
+        bufferPos = bufferSize;
+        throw InvalidProtocolBufferException.truncatedMessage();
+      }
+      final byte[] bytes = new byte[size];
+      mapped.position(bufferPos);
+      mapped.get(bytes, 0, size);
+      bufferPos += size;
+      return bytes;
+    } else if (size <= bufferSize - bufferPos) {
       // We have all the bytes we need already.
       final byte[] bytes = new byte[size];
       System.arraycopy(buffer, bufferPos, bytes, 0, size);
@@ -941,7 +1039,9 @@ public final class CodedInputStream {
       bufferPos = bufferSize;
 
       // osmand change
-      if(raf != null) {
+      if (mapped != null) {
+         throw InvalidProtocolBufferException.truncatedMessage();
+      } else if(raf != null) {
          bufferPos = 0;
          bufferSize = 0;
       	 int n = raf.skipBytes(size - pos);
@@ -966,7 +1066,13 @@ public final class CodedInputStream {
   }
   
   public void seek(long pointer) throws IOException {
-	  if (pointer - totalBytesRetired >= 0 && pointer - totalBytesRetired < bufferSize) {
+	  if (mapped != null) {
+		  // osmand change: limits stay consistent as the whole file is one buffer
+		  if (pointer < 0 || pointer > mapped.limit() || pointer > currentLimit) {
+			  throw InvalidProtocolBufferException.truncatedMessage();
+		  }
+		  bufferPos = (int) pointer;
+	  } else if (pointer - totalBytesRetired >= 0 && pointer - totalBytesRetired < bufferSize) {
 		  if (pointer > currentLimit) {
 		  // Then fail.
 			  throw InvalidProtocolBufferException.truncatedMessage();
@@ -0,0 +1,163 @@
+package net.osmand;
+
+import java.text.CollationElementIterator;
+import java.text.RuleBasedCollator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Table of primary collation keys of single characters of {@link OsmAndCollator#primaryCollator()},
+ * used to compare strings by chars instead of collator.
+ * <p>
+ * Key of character is smallest character with same primary collation elements, so 2 strings
+ * are equal for primary collator if their keys are equal after ignorable characters are skipped.
+ * Characters which expand to several collation elements, take part in contractions or are out of
+ * table range are not supported: strings with such characters should be compared by collator.
+ */
+class CollationKeyTable {
+
+	static final char IGNORABLE = '\uFFFF';
+	static final char UNSUPPORTED = '\uFFFE';
+
+	// latin, greek, cyrillic and general punctuation
+	private static final char[][] RANGES = { { 0, 0x4FF }, { 0x2000, 0x206F } };
+	private static final int SIZE = 0x2070;
+	// collator puts characters which are not defined by rules after all with 2 elements
+	private static final int UNMAPPED_PRIMARY = 0x7FFF;
+
+	private static volatile CollationKeyTable instance;
+
+	private final Locale locale;
+	private final char[] keys = new char[SIZE];
+
+	private CollationKeyTable(Locale locale, java.text.Collator collator) {
+		this.locale = locale;
+		for (int i = 0; i < SIZE; i++) {
+			keys[i] = UNSUPPORTED;
+		}
+		if (collator instanceof RuleBasedCollator) {
+			build((RuleBasedCollator) collator);
+		}
+	}
+
+	/**
+	 * @return table of current default locale
+	 */
+	static CollationKeyTable getInstance() {
+		CollationKeyTable t = instance;
+		Locale locale = Locale.getDefault();
+		if (t == null || !t.locale.equals(locale)) {
+			t = new CollationKeyTable(locale, OsmAndCollator.primaryInstance());
+			instance = t;
+		}
+		return t;
+	}
+
+	char getKey(char c) {
+		return c < SIZE ? keys[c] : UNSUPPORTED;
+	}
+
+	/**
+	 * @return keys of characters (same length as string) or null if string has unsupported characters
+	 */
+	String getKeys(String s) {
+		char[] res = new char[s.length()];
+		for (int i = 0; i < res.length; i++) {
+			char k = getKey(s.charAt(i));
+			if (k == UNSUPPORTED) {
+				return null;
+			}
+			res[i] = k;
+		}
+		return new String(res);
+	}
+
+	private void build(RuleBasedCollator collator) {
+		CollationElementIterator it = collator.getCollationElementIterator("");
+		Map<Long, Character> primaryKeys = new HashMap<Long, Character>();
+		long[] primaries = new long[SIZE];
+		for (char[] range : RANGES) {
+			for (int c = range[0]; c <= range[1]; c++) {
+				long p = getPrimaries(it, String.valueOf((char) c));
+				primaries[c] = p;
+				if (isCombiningMark(c)) {
+					// composes with previous letter (like 'c' + U+0301 = 'ć')
+					continue;
+				}
+				if (p == 0) {
+					keys[c] = IGNORABLE;
+				} else if (p > 0) {
+					Character k = primaryKeys.get(p);
+					if (k == null) {
+						k = (char) c;
+						primaryKeys.put(p, k);
+					}
+					keys[c] = k;
+				}
+			}
+		}
+		// contractions (like 'ch', 'dz', 'aa') are tailored for latin letters
+		Set<Long> contractions = new HashSet<Long>();
+		for (int c1 = 'a'; c1 <= 'z'; c1++) {
+			if (!isContractionCandidate(c1, primaries)) {
+				continue;
+			}
+			for (int c2 = 'a'; c2 <= 'z'; c2++) {
+				if (isContractionCandidate(c2, primaries)) {
+					long p = getPrimaries(it, new String(new char[] { (char) c1, (char) c2 }));
+					if (p != ((primaries[c1] << 32) | primaries[c2])) {
+						contractions.add(primaries[c1]);
+						contractions.add(primaries[c2]);
+					}
+				}
+			}
+		}
+		if (!contractions.isEmpty()) {
+			// all cases and accents of contracted letters
+			for (int c = 0; c < SIZE; c++) {
+				if (contractions.contains(primaries[c])) {
+					keys[c] = UNSUPPORTED;
+				}
+			}
+		}
+	}
+
+	private static boolean isContractionCandidate(int c, long[] primaries) {
+		// letters with single primary element
+		return primaries[c] > 0 && (primaries[c] >> 32) == 0;
+	}
+
+	private static boolean isCombiningMark(int c) {
+		int type = Character.getType(c);
+		return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+				|| type == Character.COMBINING_SPACING_MARK;
+	}
+
+	/**
+	 * @return primary orders of string packed to long (first in high bits), 0 - ignorable, -1 - not supported
+	 */
+	private static long getPrimaries(CollationElementIterator it, String s) {
+		it.setText(s);
+		long res = 0;
+		int count = 0;
+		int e;
+		while ((e = it.next()) != CollationElementIterator.NULLORDER) {
+			int p = CollationElementIterator.primaryOrder(e);
+			if (p != 0) {
+				if (count == 2 || p > 0xFFFF) {
+					return -1;
+				}
+				res = (res << 32) | p;
+				count++;
+			}
+		}
+		if (count == 2 && s.length() == 1 && (res >> 32) != UNMAPPED_PRIMARY) {
+			// expansion (like 'æ')
+			return -1;
+		}
+		return res;
+	}
+}
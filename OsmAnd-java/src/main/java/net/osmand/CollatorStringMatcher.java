@@ -15,6 +15,9 @@ public class CollatorStringMatcher implements StringMatcher {
 	private final Collator collator;
 	private final StringMatcherMode mode;
 	private final String part;
+	// collation keys of part, null if part is matched by collator
+	private final CollationKeyTable keyTable;
+	private final String partKeys;
 	
 	public static enum StringMatcherMode {
 		// tests only first word as base starts with part
@@ -44,7 +47,8 @@ public class CollatorStringMatcher implements StringMatcher {
 		}
 		this.part = part;
 		this.mode = mode;
-		
+		this.keyTable = CollationKeyTable.getInstance();
+		this.partKeys = keyTable.getKeys(part);
 	}
 
 	public Collator getCollator() {
@@ -53,7 +57,148 @@ public class CollatorStringMatcher implements StringMatcher {
 	
 	@Override
 	public boolean matches(String name) {
-		return cmatches(collator, name, part, mode);
+		return matches(name, null);
+	}
+
+	/**
+	 * Matches name with precalculated keys, so name is compared by chars and not by collator.
+	 * @param nameKeys keys of name ({@link #getNameKeys(String)}) or null if they are not known
+	 */
+	public boolean matches(String name, String nameKeys) {
+		if (partKeys == null) {
+			return cmatches(collator, name, part, mode);
+		}
+		if (mode == StringMatcherMode.CHECK_CONTAINS) {
+			// contains checks name as it is
+			String baseKeys = keyTable.getKeys(name);
+			return baseKeys == null ? ccontains(collator, name, part) : kcontains(baseKeys);
+		}
+		String searchIn = simplifyStringAndAlignChars(name);
+		if (nameKeys == null) {
+			nameKeys = keyTable.getKeys(searchIn);
+		}
+		if (nameKeys == null || nameKeys.length() != searchIn.length()) {
+			return cmatches(collator, name, part, mode);
+		}
+		switch (mode) {
+		case CHECK_EQUALS_FROM_SPACE:
+			return kstartsWith(searchIn, nameKeys, true, true, true);
+		case CHECK_STARTS_FROM_SPACE:
+			return kstartsWith(searchIn, nameKeys, true, true, false);
+		case CHECK_STARTS_FROM_SPACE_NOT_BEGINNING:
+			return kstartsWith(searchIn, nameKeys, false, true, false);
+		case CHECK_ONLY_STARTS_WITH:
+			return kstartsWith(searchIn, nameKeys, true, false, false);
+		case CHECK_EQUALS:
+			return kstartsWith(searchIn, nameKeys, false, false, true);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Calculates collation keys of name once, so it could be matched by several matchers without collator
+	 * @return keys or null if name has characters which should be compared by collator
+	 */
+	public static String getNameKeys(String name) {
+		return CollationKeyTable.getInstance().getKeys(simplifyStringAndAlignChars(name));
+	}
+
+	// same as ccontains but compares collation keys
+	private boolean kcontains(String baseKeys) {
+		int length = baseKeys.length();
+		if (length <= part.length()) {
+			return kequals(baseKeys, 0, length);
+		}
+		for (int pos = 0; pos <= length - part.length() + 1; pos++) {
+			// some prefix of base from pos is equal to part
+			if (kstartsAt(baseKeys, pos, length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// same as cstartsWith but compares collation keys
+	private boolean kstartsWith(String searchIn, String keys, boolean checkBeginning, boolean checkSpaces,
+			boolean equals) {
+		int searchInLength = searchIn.length();
+		int startLength = part.length();
+		if (startLength == 0) {
+			return true;
+		}
+		if (startLength > searchInLength) {
+			return false;
+		}
+		if (checkBeginning) {
+			if (kequals(keys, 0, startLength)) {
+				if (equals) {
+					if (startLength == searchInLength || isSpace(searchIn.charAt(startLength))) {
+						return true;
+					}
+				} else {
+					return true;
+				}
+			}
+		}
+		if (checkSpaces) {
+			for (int i = 1; i <= searchInLength - startLength; i++) {
+				if (isSpace(searchIn.charAt(i - 1)) && !isSpace(searchIn.charAt(i))) {
+					if (kequals(keys, i, i + startLength)) {
+						if (equals) {
+							if (i + startLength == searchInLength || isSpace(searchIn.charAt(i + startLength))) {
+								return true;
+							}
+						} else {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		if (!checkBeginning && !checkSpaces && equals) {
+			return kequals(keys, 0, searchInLength);
+		}
+		return false;
+	}
+
+	// keys[from, to) are equal to keys of part (as collator compares them, ignorable characters are skipped)
+	private boolean kequals(String keys, int from, int to) {
+		int i = from;
+		int j = 0;
+		while (true) {
+			i = skipIgnorable(keys, i, to);
+			j = skipIgnorable(partKeys, j, partKeys.length());
+			if (i == to || j == partKeys.length()) {
+				return i == to && j == partKeys.length();
+			}
+			if (keys.charAt(i++) != partKeys.charAt(j++)) {
+				return false;
+			}
+		}
+	}
+
+	// keys starting from position begin with keys of part
+	private boolean kstartsAt(String keys, int from, int to) {
+		int i = from;
+		int j = 0;
+		while (true) {
+			j = skipIgnorable(partKeys, j, partKeys.length());
+			if (j == partKeys.length()) {
+				return true;
+			}
+			i = skipIgnorable(keys, i, to);
+			if (i >= to || keys.charAt(i++) != partKeys.charAt(j++)) {
+				return false;
+			}
+		}
+	}
+
+	private static int skipIgnorable(String keys, int i, int to) {
+		while (i < to && keys.charAt(i) == CollationKeyTable.IGNORABLE) {
+			i++;
+		}
+		return i;
 	}
 	
 	
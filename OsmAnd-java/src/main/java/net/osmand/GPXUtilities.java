@@ -14,7 +14,11 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -31,6 +35,7 @@ import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -111,6 +116,23 @@ public class GPXUtilities {
 		void writeExtensions(XmlSerializer serializer);
 	}
 
+	/**
+	 * Receives track content while gpx is read (see {@link #loadGPXFile(InputStream, GPXExtensionsReader, GPXTrackPointsListener)}),
+	 * track name and description are read before segments if they are written before them in file.
+	 */
+	public interface GPXTrackPointsListener {
+
+		void segmentStart(Track track, TrkSegment segment);
+
+		void trackPoint(Track track, TrkSegment segment, WptPt point);
+
+		// segment extensions (route segments and types) are read
+		void segmentEnd(Track track, TrkSegment segment);
+
+		// track extensions are read
+		void trackEnd(Track track);
+	}
+
 	public interface GPXExtensionsReader {
 		boolean readExtensions(GPXFile res, XmlPullParser parser) throws IOException, XmlPullParserException;
 	}
@@ -444,6 +466,244 @@ public class GPXUtilities {
 		}
 	}
 
+	/**
+	 * Track segment stored as parallel arrays of point values instead of list of {@link WptPt}.
+	 * Point takes ~60 bytes instead of several hundreds, so analysis, splits and colorization
+	 * of long tracks don't allocate objects per point. Names, descriptions and extensions of points are not stored.
+	 */
+	public static class TrackColumns {
+		private static final byte FIRST_POINT = 1;
+		private static final byte LAST_POINT = 2;
+		// precision of compressed values, coordinates are written to gpx with 7 digits
+		private static final double COORDINATES_PRECISION = 1e7;
+		private static final double VALUES_PRECISION = 100;
+
+		public boolean generalSegment = false;
+
+		private int size;
+		double[] lat;
+		double[] lon;
+		long[] time;
+		double[] ele;
+		double[] speed;
+		double[] hdop;
+		float[] heading;
+		byte[] flags;
+
+		public TrackColumns() {
+			this(16);
+		}
+
+		public TrackColumns(int capacity) {
+			capacity = Math.max(capacity, 1);
+			lat = new double[capacity];
+			lon = new double[capacity];
+			time = new long[capacity];
+			ele = new double[capacity];
+			speed = new double[capacity];
+			hdop = new double[capacity];
+			heading = new float[capacity];
+			flags = new byte[capacity];
+		}
+
+		public static TrackColumns fromSegment(TrkSegment segment) {
+			TrackColumns c = new TrackColumns(segment.points.size());
+			c.generalSegment = segment.generalSegment;
+			for (WptPt p : segment.points) {
+				c.add(p);
+			}
+			return c;
+		}
+
+		public TrkSegment toSegment() {
+			TrkSegment segment = new TrkSegment();
+			segment.generalSegment = generalSegment;
+			for (int i = 0; i < size; i++) {
+				segment.points.add(getPoint(i));
+			}
+			return segment;
+		}
+
+		public void add(WptPt p) {
+			add(p.lat, p.lon, p.time, p.ele, p.speed, p.hdop, p.heading, p.firstPoint, p.lastPoint);
+		}
+
+		public void add(double lat, double lon, long time, double ele, double speed, double hdop, float heading,
+						boolean firstPoint, boolean lastPoint) {
+			if (size == this.lat.length) {
+				ensureCapacity(size * 2);
+			}
+			this.lat[size] = lat;
+			this.lon[size] = lon;
+			this.time[size] = time;
+			this.ele[size] = ele;
+			this.speed[size] = speed;
+			this.hdop[size] = hdop;
+			this.heading[size] = heading;
+			this.flags[size] = (byte) ((firstPoint ? FIRST_POINT : 0) | (lastPoint ? LAST_POINT : 0));
+			size++;
+		}
+
+		private void ensureCapacity(int capacity) {
+			lat = Arrays.copyOf(lat, capacity);
+			lon = Arrays.copyOf(lon, capacity);
+			time = Arrays.copyOf(time, capacity);
+			ele = Arrays.copyOf(ele, capacity);
+			speed = Arrays.copyOf(speed, capacity);
+			hdop = Arrays.copyOf(hdop, capacity);
+			heading = Arrays.copyOf(heading, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+
+		public void trimToSize() {
+			if (size < lat.length) {
+				ensureCapacity(Math.max(size, 1));
+			}
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public double getLatitude(int i) {
+			return lat[i];
+		}
+
+		public double getLongitude(int i) {
+			return lon[i];
+		}
+
+		public long getTime(int i) {
+			return time[i];
+		}
+
+		public double getElevation(int i) {
+			return ele[i];
+		}
+
+		public double getSpeed(int i) {
+			return speed[i];
+		}
+
+		public double getHdop(int i) {
+			return hdop[i];
+		}
+
+		public float getHeading(int i) {
+			return heading[i];
+		}
+
+		public boolean isFirstPoint(int i) {
+			return (flags[i] & FIRST_POINT) != 0;
+		}
+
+		public boolean isLastPoint(int i) {
+			return (flags[i] & LAST_POINT) != 0;
+		}
+
+		public WptPt getPoint(int i) {
+			WptPt p = new WptPt(lat[i], lon[i], time[i], ele[i], speed[i], hdop[i], heading[i]);
+			p.firstPoint = isFirstPoint(i);
+			p.lastPoint = isLastPoint(i);
+			return p;
+		}
+
+		public List<GPXTrackAnalysis> splitByDistance(double meters, boolean joinSegments) {
+			return split(getDistanceMetric(), getTimeSplit(), meters, joinSegments);
+		}
+
+		public List<GPXTrackAnalysis> splitByTime(int seconds, boolean joinSegments) {
+			return split(getTimeSplit(), getDistanceMetric(), seconds, joinSegments);
+		}
+
+		private List<GPXTrackAnalysis> split(SplitMetric metric, SplitMetric secondaryMetric, double metricLimit, boolean joinSegments) {
+			List<SplitSegment> splitSegments = new ArrayList<>();
+			splitSegment(metric, secondaryMetric, metricLimit, splitSegments, this, joinSegments);
+			return convert(splitSegments);
+		}
+
+		/**
+		 * Columns are written one after another as varint deltas of fixed point values:
+		 * coordinates with 1e-7 precision, elevation, speed, hdop and heading with 0.01 precision, time exactly.
+		 */
+		public byte[] compress() throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			CodedOutputStream cos = CodedOutputStream.newInstance(out);
+			cos.writeRawVarint32(size);
+			cos.writeBoolNoTag(generalSegment);
+			writeDeltas(cos, lat, COORDINATES_PRECISION);
+			writeDeltas(cos, lon, COORDINATES_PRECISION);
+			long prev = 0;
+			for (int i = 0; i < size; i++) {
+				cos.writeSInt64NoTag(time[i] - prev);
+				prev = time[i];
+			}
+			writeDeltas(cos, ele, VALUES_PRECISION);
+			writeDeltas(cos, speed, VALUES_PRECISION);
+			writeDeltas(cos, hdop, VALUES_PRECISION);
+			double[] headings = new double[size];
+			for (int i = 0; i < size; i++) {
+				headings[i] = heading[i];
+			}
+			writeDeltas(cos, headings, VALUES_PRECISION);
+			cos.writeRawBytes(flags, 0, size);
+			cos.flush();
+			return out.toByteArray();
+		}
+
+		public static TrackColumns decompress(byte[] data) throws IOException {
+			CodedInputStream cis = CodedInputStream.newInstance(data);
+			int size = cis.readRawVarint32();
+			TrackColumns c = new TrackColumns(size);
+			c.size = size;
+			c.generalSegment = cis.readBool();
+			readDeltas(cis, c.lat, size, COORDINATES_PRECISION);
+			readDeltas(cis, c.lon, size, COORDINATES_PRECISION);
+			long prev = 0;
+			for (int i = 0; i < size; i++) {
+				prev += cis.readSInt64();
+				c.time[i] = prev;
+			}
+			readDeltas(cis, c.ele, size, VALUES_PRECISION);
+			readDeltas(cis, c.speed, size, VALUES_PRECISION);
+			readDeltas(cis, c.hdop, size, VALUES_PRECISION);
+			double[] headings = new double[size];
+			readDeltas(cis, headings, size, VALUES_PRECISION);
+			for (int i = 0; i < size; i++) {
+				c.heading[i] = (float) headings[i];
+			}
+			System.arraycopy(cis.readRawBytes(size), 0, c.flags, 0, size);
+			return c;
+		}
+
+		// NaN is written as 0, other values as zigzag delta + 1 to previous not NaN value
+		private void writeDeltas(CodedOutputStream cos, double[] values, double precision) throws IOException {
+			long prev = 0;
+			for (int i = 0; i < size; i++) {
+				if (Double.isNaN(values[i])) {
+					cos.writeRawVarint64(0);
+				} else {
+					long v = Math.round(values[i] * precision);
+					cos.writeRawVarint64(CodedOutputStream.encodeZigZag64(v - prev) + 1);
+					prev = v;
+				}
+			}
+		}
+
+		private static void readDeltas(CodedInputStream cis, double[] values, int size, double precision) throws IOException {
+			long prev = 0;
+			for (int i = 0; i < size; i++) {
+				long d = cis.readRawVarint64();
+				if (d == 0) {
+					values[i] = Double.NaN;
+				} else {
+					prev += CodedInputStream.decodeZigZag64(d - 1);
+					values[i] = prev / precision;
+				}
+			}
+		}
+	}
+
 	public static class Track extends GPXExtensions {
 		public String name = null;
 		public String desc = null;
@@ -655,8 +915,60 @@ public class GPXUtilities {
 			return new GPXTrackAnalysis().prepareInformation(filetimestamp, new SplitSegment(segment));
 		}
 
+		public static GPXTrackAnalysis segment(long filetimestamp, TrackColumns segment) {
+			return new GPXTrackAnalysis().prepareInformation(filetimestamp, new SplitSegment(segment));
+		}
+
+		/**
+		 * Same as {@link GPXFile#getAnalysis(long)} for tracks stored in columns (waypoints are not counted)
+		 */
+		public static GPXTrackAnalysis segments(long filetimestamp, List<TrackColumns> segments) {
+			GPXTrackAnalysis g = new GPXTrackAnalysis();
+			List<SplitSegment> splitSegments = new ArrayList<>();
+			for (TrackColumns segment : segments) {
+				if (!segment.generalSegment) {
+					g.totalTracks++;
+					if (segment.size() > 1) {
+						splitSegments.add(new SplitSegment(segment));
+					}
+				}
+			}
+			return g.prepareInformation(filetimestamp, splitSegments.toArray(new SplitSegment[0]));
+		}
+
 		public GPXTrackAnalysis prepareInformation(long filestamp, SplitSegment... splitSegments) {
-			float[] calculations = new float[1];
+			AnalysisState state = new AnalysisState(true);
+			startInformation();
+			for (SplitSegment s : splitSegments) {
+				metricEnd += s.metricEnd;
+				secondaryMetricEnd += s.secondaryMetricEnd;
+				startSegment(state, s.isGeneralSegment(), s.metricEnd == 0);
+				final int numberOfPoints = s.getNumberOfPoints();
+				if (s.columns != null) {
+					// points are not created, values are read from columns
+					if (locationStart == null) {
+						locationStart = s.get(0);
+					}
+					for (int j = 0; j < numberOfPoints; j++) {
+						addPoint(state, s.getLatitude(j), s.getLongitude(j), s.getTime(j), s.getElevation(j),
+								s.getSpeed(j), s.isFirstPoint(j), s.isLastPoint(j));
+					}
+					locationEnd = s.get(numberOfPoints - 1);
+				} else {
+					for (int j = 0; j < numberOfPoints; j++) {
+						addPoint(state, s.get(j));
+					}
+				}
+				endSegment(state);
+			}
+			return finishInformation(state, filestamp);
+		}
+
+		// running values of analysis, points are passed one by one
+		private static class AnalysisState {
+			// elevation and speed data for every point
+			final boolean collectData;
+			final float[] calculations = new float[1];
 
 			long startTimeOfSingleSegment = 0;
 			long endTimeOfSingleSegment = 0;
@@ -670,7 +982,6 @@ public class GPXUtilities {
 			int speedCount = 0;
 			int timeDiff = 0;
 			double totalSpeedSum = 0;
-			points = 0;
 
 			double channelThresMin = 10;           // Minimum oscillation amplitude considered as relevant or as above noise for accumulated Ascent/Descent analysis
 			double channelThres = channelThresMin; // Actual oscillation amplitude considered as above noise (dynamic channel adjustment, accomodates depedency on current VDOP/getAccuracy if desired)
@@ -679,245 +990,291 @@ public class GPXUtilities {
 			double channelBottom;
 			boolean climb = false;
 
-			elevationData = new ArrayList<>();
-			speedData = new ArrayList<>();
+			// current segment
+			boolean generalSegment;
+			boolean noMetric;
+			float segmentDistance;
+			int pointIndex;
+			double prevLat;
+			double prevLon;
+			long prevTime;
+			double eleSmoothed;
+			// marked as last point if it's not the last point of segment
+			Elevation lastPointElevation;
+			Speed lastPointSpeed;
+			// LPF smooting of ele data, usually smooth over odd number of values like 5
+			final double[] lastElevations = new double[5];
 
-			for (SplitSegment s : splitSegments) {
-				final int numberOfPoints = s.getNumberOfPoints();
+			AnalysisState(boolean collectData) {
+				this.collectData = collectData;
+			}
+		}
 
-				channelBase = 99999;
-				channelTop = channelBase;
-				channelBottom = channelBase;
-				//channelThres = channelThresMin; //only for dynamic channel adjustment
+		private void startInformation() {
+			points = 0;
+			elevationData = new ArrayList<>();
+			speedData = new ArrayList<>();
+		}
 
-				float segmentDistance = 0f;
-				metricEnd += s.metricEnd;
-				secondaryMetricEnd += s.secondaryMetricEnd;
-				points += numberOfPoints;
-				for (int j = 0; j < numberOfPoints; j++) {
-					WptPt point = s.get(j);
-					if (j == 0 && locationStart == null) {
-						locationStart = point;
-					}
-					if (j == numberOfPoints - 1) {
-						locationEnd = point;
-					}
-					long time = point.time;
-					if (time != 0) {
-						if (s.metricEnd == 0) {
-							if (s.segment.generalSegment) {
-								if (point.firstPoint) {
-									startTimeOfSingleSegment = time;
-								} else if (point.lastPoint) {
-									endTimeOfSingleSegment = time;
-								}
-								if (startTimeOfSingleSegment != 0 && endTimeOfSingleSegment != 0) {
-									timeSpanWithoutGaps += endTimeOfSingleSegment - startTimeOfSingleSegment;
-									startTimeOfSingleSegment = 0;
-									endTimeOfSingleSegment = 0;
-								}
-							}
+		private void startSegment(AnalysisState st, boolean generalSegment, boolean noMetric) {
+			st.channelBase = 99999;
+			st.channelTop = st.channelBase;
+			st.channelBottom = st.channelBase;
+			//channelThres = channelThresMin; //only for dynamic channel adjustment
+			st.generalSegment = generalSegment;
+			st.noMetric = noMetric;
+			st.segmentDistance = 0f;
+			st.pointIndex = 0;
+		}
+
+		private void addPoint(AnalysisState st, WptPt point) {
+			if (st.pointIndex == 0 && locationStart == null) {
+				locationStart = point;
+			}
+			locationEnd = point;
+			addPoint(st, point.lat, point.lon, point.time, point.ele, point.speed, point.firstPoint, point.lastPoint);
+			if (st.pointIndex > 1) {
+				point.distance = st.segmentDistance;
+			}
+		}
+
+		private void addPoint(AnalysisState st, double lat, double lon, long time, double elevation,
+							  double pointSpeed, boolean firstPoint, boolean lastPoint) {
+			final int j = st.pointIndex++;
+			final float[] calculations = st.calculations;
+			if (st.lastPointElevation != null) {
+				// last point of single segment is not the last point of general segment
+				st.lastPointElevation.lastPoint = true;
+				st.lastPointSpeed.lastPoint = true;
+				st.lastPointElevation = null;
+				st.lastPointSpeed = null;
+			}
+			points++;
+			if (time != 0) {
+				if (st.noMetric) {
+					if (st.generalSegment) {
+						if (firstPoint) {
+							st.startTimeOfSingleSegment = time;
+						} else if (lastPoint) {
+							st.endTimeOfSingleSegment = time;
+						}
+						if (st.startTimeOfSingleSegment != 0 && st.endTimeOfSingleSegment != 0) {
+							timeSpanWithoutGaps += st.endTimeOfSingleSegment - st.startTimeOfSingleSegment;
+							st.startTimeOfSingleSegment = 0;
+							st.endTimeOfSingleSegment = 0;
 						}
-						startTime = Math.min(startTime, time);
-						endTime = Math.max(endTime, time);
 					}
+				}
+				startTime = Math.min(startTime, time);
+				endTime = Math.max(endTime, time);
+			}
 
-					if (left == 0 && right == 0) {
-						left = point.getLongitude();
-						right = point.getLongitude();
-						top = point.getLatitude();
-						bottom = point.getLatitude();
-					} else {
-						left = Math.min(left, point.getLongitude());
-						right = Math.max(right, point.getLongitude());
-						top = Math.max(top, point.getLatitude());
-						bottom = Math.min(bottom, point.getLatitude());
-					}
+			if (left == 0 && right == 0) {
+				left = lon;
+				right = lon;
+				top = lat;
+				bottom = lat;
+			} else {
+				left = Math.min(left, lon);
+				right = Math.max(right, lon);
+				top = Math.max(top, lat);
+				bottom = Math.min(bottom, lat);
+			}
 
-					double elevation = point.ele;
-					Elevation elevation1 = new Elevation();
-					if (!Double.isNaN(elevation)) {
-						totalElevation += elevation;
-						elevationPoints++;
-						minElevation = Math.min(elevation, minElevation);
-						maxElevation = Math.max(elevation, maxElevation);
+			Elevation elevation1 = new Elevation();
+			if (!Double.isNaN(elevation)) {
+				st.totalElevation += elevation;
+				st.elevationPoints++;
+				minElevation = Math.min(elevation, minElevation);
+				maxElevation = Math.max(elevation, maxElevation);
 
-						elevation1.elevation = (float) elevation;
+				elevation1.elevation = (float) elevation;
+			} else {
+				elevation1.elevation = Float.NaN;
+			}
+
+			float speed = (float) pointSpeed;
+			if (speed > 0) {
+				hasSpeedInTrack = true;
+			}
+
+			// Trend channel analysis for elevation gain/loss, Hardy 2015-09-22, LPF filtering added 2017-10-26:
+			// - Detect the consecutive elevation trend channels: Only use the net elevation changes of each trend channel (i.e. between the turnarounds) to accumulate the Ascent/Descent values.
+			// - Perform the channel evaluation on Low Pass Filter (LPF) smoothed ele data instead of on the raw ele data
+			// Parameters:
+			// - channelThresMin (in meters): defines the channel turnaround detection, i.e. oscillations smaller than this are ignored as irrelevant or noise.
+			// - smoothWindow (number of points): is the LPF window
+			// NOW REMOVED, as no relevant examples found: Dynamic channel adjustment: To suppress unreliable measurement points, could relax the turnaround detection from the constant channelThresMin to channelThres which is e.g. based on the maximum VDOP of any point which contributed to the current trend. (Good assumption is VDOP=2*HDOP, which accounts for invisibility of lower hemisphere satellites.)
+
+			// LPF smooting of ele data, usually smooth over odd number of values like 5
+			final int smoothWindow = st.lastElevations.length;
+			st.lastElevations[j % smoothWindow] = elevation;
+			double eleSmoothed = Double.NaN;
+			int j2 = 0;
+			for (int j1 = - smoothWindow + 1; j1 <= 0; j1++) {
+				if ((j + j1 >= 0) && !Double.isNaN(st.lastElevations[(j + j1) % smoothWindow])) {
+					j2++;
+					if (!Double.isNaN(eleSmoothed)) {
+						eleSmoothed = eleSmoothed + st.lastElevations[(j + j1) % smoothWindow];
 					} else {
-						elevation1.elevation = Float.NaN;
-					}
-
-					float speed = (float) point.speed;
-					if (speed > 0) {
-						hasSpeedInTrack = true;
+						eleSmoothed = st.lastElevations[(j + j1) % smoothWindow];
 					}
+				}
+			}
+			if (!Double.isNaN(eleSmoothed)) {
+				eleSmoothed = eleSmoothed / j2;
+			}
 
-					// Trend channel analysis for elevation gain/loss, Hardy 2015-09-22, LPF filtering added 2017-10-26:
-					// - Detect the consecutive elevation trend channels: Only use the net elevation changes of each trend channel (i.e. between the turnarounds) to accumulate the Ascent/Descent values.
-					// - Perform the channel evaluation on Low Pass Filter (LPF) smoothed ele data instead of on the raw ele data
-					// Parameters:
-					// - channelThresMin (in meters): defines the channel turnaround detection, i.e. oscillations smaller than this are ignored as irrelevant or noise.
-					// - smoothWindow (number of points): is the LPF window
-					// NOW REMOVED, as no relevant examples found: Dynamic channel adjustment: To suppress unreliable measurement points, could relax the turnaround detection from the constant channelThresMin to channelThres which is e.g. based on the maximum VDOP of any point which contributed to the current trend. (Good assumption is VDOP=2*HDOP, which accounts for invisibility of lower hemisphere satellites.)
-
-					// LPF smooting of ele data, usually smooth over odd number of values like 5
-					final int smoothWindow = 5;
-					double eleSmoothed = Double.NaN;
-					int j2 = 0;
-					for (int j1 = - smoothWindow + 1; j1 <= 0; j1++) {
-						if ((j + j1 >= 0) && !Double.isNaN(s.get(j + j1).ele)) {
-							j2++;
-							if (!Double.isNaN(eleSmoothed)) {
-								eleSmoothed = eleSmoothed + s.get(j + j1).ele;
-							} else {
-								eleSmoothed = s.get(j + j1).ele;
-							}
-						}
+			st.eleSmoothed = eleSmoothed;
+			if (!Double.isNaN(eleSmoothed)) {
+				// Init channel
+				if (st.channelBase == 99999) {
+					st.channelBase = eleSmoothed;
+					st.channelTop = st.channelBase;
+					st.channelBottom = st.channelBase;
+					//channelThres = channelThresMin; //only for dynamic channel adjustment
+				}
+				// Channel maintenance
+				if (eleSmoothed > st.channelTop) {
+					st.channelTop = eleSmoothed;
+					//if (!Double.isNaN(point.hdop)) {
+					//	channelThres = Math.max(channelThres, 2.0 * point.hdop); //only for dynamic channel adjustment
+					//}
+				} else if (eleSmoothed < st.channelBottom) {
+					st.channelBottom = eleSmoothed;
+					//if (!Double.isNaN(point.hdop)) {
+					//	channelThres = Math.max(channelThres, 2.0 * point.hdop); //only for dynamic channel adjustment
+					//}
+				}
+				// Turnaround (breakout) detection
+				if ((eleSmoothed <= (st.channelTop - st.channelThres)) && (st.climb == true)) {
+					if ((st.channelTop - st.channelBase) >= st.channelThres) {
+						diffElevationUp += st.channelTop - st.channelBase;
 					}
-					if (!Double.isNaN(eleSmoothed)) {
-						eleSmoothed = eleSmoothed / j2;
+					st.channelBase = st.channelTop;
+					st.channelBottom = eleSmoothed;
+					st.climb = false;
+					//channelThres = channelThresMin; //only for dynamic channel adjustment
+				} else if ((eleSmoothed >= (st.channelBottom + st.channelThres)) && (st.climb == false)) {
+					if ((st.channelBase - st.channelBottom) >= st.channelThres) {
+						diffElevationDown += st.channelBase - st.channelBottom;
 					}
+					st.channelBase = st.channelBottom;
+					st.channelTop = eleSmoothed;
+					st.climb = true;
+					//channelThres = channelThresMin; //only for dynamic channel adjustment
+				}
+			}
 
-					if (!Double.isNaN(eleSmoothed)) {
-						// Init channel
-						if (channelBase == 99999) {
-							channelBase = eleSmoothed;
-							channelTop = channelBase;
-							channelBottom = channelBase;
-							//channelThres = channelThresMin; //only for dynamic channel adjustment
-						}
-						// Channel maintenance
-						if (eleSmoothed > channelTop) {
-							channelTop = eleSmoothed;
-							//if (!Double.isNaN(point.hdop)) {
-							//	channelThres = Math.max(channelThres, 2.0 * point.hdop); //only for dynamic channel adjustment
-							//}
-						} else if (eleSmoothed < channelBottom) {
-							channelBottom = eleSmoothed;
-							//if (!Double.isNaN(point.hdop)) {
-							//	channelThres = Math.max(channelThres, 2.0 * point.hdop); //only for dynamic channel adjustment
-							//}
-						}
-						// Turnaround (breakout) detection
-						if ((eleSmoothed <= (channelTop - channelThres)) && (climb == true)) {
-							if ((channelTop - channelBase) >= channelThres) {
-								diffElevationUp += channelTop - channelBase;
-							}
-							channelBase = channelTop;
-							channelBottom = eleSmoothed;
-							climb = false;
-							//channelThres = channelThresMin; //only for dynamic channel adjustment
-						} else if ((eleSmoothed >= (channelBottom + channelThres)) && (climb == false)) {
-							if ((channelBase - channelBottom) >= channelThres) {
-								diffElevationDown += channelBase - channelBottom;
-							}
-							channelBase = channelBottom;
-							channelTop = eleSmoothed;
-							climb = true;
-							//channelThres = channelThresMin; //only for dynamic channel adjustment
-						}
-						// End detection without breakout
-						if (j == (numberOfPoints - 1)) {
-							if ((channelTop - channelBase) >= channelThres) {
-								diffElevationUp += channelTop - channelBase;
-							}
-							if ((channelBase - channelBottom) >= channelThres) {
-								diffElevationDown += channelBase - channelBottom;
-							}
-						}
-					}
+			if (j > 0) {
+				// Old complete summation approach for elevation gain/loss
+				//if (!Double.isNaN(point.ele) && !Double.isNaN(prev.ele)) {
+				//	double diff = point.ele - prev.ele;
+				//	if (diff > 0) {
+				//		diffElevationUp += diff;
+				//	} else {
+				//		diffElevationDown -= diff;
+				//	}
+				//}
+
+				// totalDistance += MapUtils.getDistance(prev.lat, prev.lon, point.lat, point.lon);
+				// using ellipsoidal 'distanceBetween' instead of spherical haversine (MapUtils.getDistance) is
+				// a little more exact, also seems slightly faster:
+				net.osmand.Location.distanceBetween(st.prevLat, st.prevLon, lat, lon, calculations);
+				totalDistance += calculations[0];
+				st.segmentDistance += calculations[0];
+				long prevTime = st.prevTime;
+				st.timeDiff = (int)((time - prevTime) / 1000);
+
+				//Last resort: Derive speed values from displacement if track does not originally contain speed
+				if (!hasSpeedInTrack && speed == 0 && st.timeDiff > 0) {
+					speed = calculations[0] / st.timeDiff;
+				}
 
-					if (j > 0) {
-						WptPt prev = s.get(j - 1);
-
-						// Old complete summation approach for elevation gain/loss
-						//if (!Double.isNaN(point.ele) && !Double.isNaN(prev.ele)) {
-						//	double diff = point.ele - prev.ele;
-						//	if (diff > 0) {
-						//		diffElevationUp += diff;
-						//	} else {
-						//		diffElevationDown -= diff;
-						//	}
-						//}
-
-						// totalDistance += MapUtils.getDistance(prev.lat, prev.lon, point.lat, point.lon);
-						// using ellipsoidal 'distanceBetween' instead of spherical haversine (MapUtils.getDistance) is
-						// a little more exact, also seems slightly faster:
-						net.osmand.Location.distanceBetween(prev.lat, prev.lon, point.lat, point.lon, calculations);
-						totalDistance += calculations[0];
-						segmentDistance += calculations[0];
-						point.distance = segmentDistance;
-						timeDiff = (int)((point.time - prev.time) / 1000);
-
-						//Last resort: Derive speed values from displacement if track does not originally contain speed
-						if (!hasSpeedInTrack && speed == 0 && timeDiff > 0) {
-							speed = calculations[0] / timeDiff;
-						}
+				// Motion detection:
+				//   speed > 0  uses GPS chipset's motion detection
+				//   calculations[0] > minDisplacment * time  is heuristic needed because tracks may be filtered at recording time, so points at rest may not be present in file at all
+				if ((speed > 0) && (calculations[0] > 0.1 / 1000f * (time - prevTime)) && time != 0 && prevTime != 0) {
+					timeMoving = timeMoving + (time - prevTime);
+					totalDistanceMoving += calculations[0];
+					if (st.generalSegment && !firstPoint) {
+						st.timeMovingOfSingleSegment += time - prevTime;
+						st.distanceMovingOfSingleSegment += calculations[0];
+					}
+				}
 
-						// Motion detection:
-						//   speed > 0  uses GPS chipset's motion detection
-						//   calculations[0] > minDisplacment * time  is heuristic needed because tracks may be filtered at recording time, so points at rest may not be present in file at all
-						if ((speed > 0) && (calculations[0] > 0.1 / 1000f * (point.time - prev.time)) && point.time != 0 && prev.time != 0) {
-							timeMoving = timeMoving + (point.time - prev.time);
-							totalDistanceMoving += calculations[0];
-							if (s.segment.generalSegment && !point.firstPoint) {
-								timeMovingOfSingleSegment += point.time - prev.time;
-								distanceMovingOfSingleSegment += calculations[0];
-							}
-						}
+				//Next few lines for Issue 3222 heuristic testing only
+				//	if (speed > 0 && point.time != 0 && prev.time != 0) {
+				//		timeMoving0 = timeMoving0 + (point.time - prev.time);
+				//		totalDistanceMoving0 += calculations[0];
+				//	}
+			}
 
-						//Next few lines for Issue 3222 heuristic testing only
-						//	if (speed > 0 && point.time != 0 && prev.time != 0) {
-						//		timeMoving0 = timeMoving0 + (point.time - prev.time);
-						//		totalDistanceMoving0 += calculations[0];
-						//	}
-					}
+			elevation1.time = st.timeDiff;
+			elevation1.distance = (j > 0) ? calculations[0] : 0;
+			if (st.collectData) {
+				elevationData.add(elevation1);
+			}
+			if (!hasElevationData && !Float.isNaN(elevation1.elevation) && totalDistance > 0) {
+				hasElevationData = true;
+			}
 
-					elevation1.time = timeDiff;
-					elevation1.distance = (j > 0) ? calculations[0] : 0;
-					elevationData.add(elevation1);
-					if (!hasElevationData && !Float.isNaN(elevation1.elevation) && totalDistance > 0) {
-						hasElevationData = true;
-					}
+			minSpeed = Math.min(speed, minSpeed);
+			if (speed > 0) {
+				st.totalSpeedSum += speed;
+				maxSpeed = Math.max(speed, maxSpeed);
+				st.speedCount++;
+			}
 
-					minSpeed = Math.min(speed, minSpeed);
-					if (speed > 0) {
-						totalSpeedSum += speed;
-						maxSpeed = Math.max(speed, maxSpeed);
-						speedCount++;
+			Speed speed1 = new Speed();
+			speed1.speed = speed;
+			speed1.time = st.timeDiff;
+			speed1.distance = elevation1.distance;
+			if (st.collectData) {
+				speedData.add(speed1);
+			}
+			if (!hasSpeedData && speed1.speed > 0 && totalDistance > 0) {
+				hasSpeedData = true;
+			}
+			if (st.generalSegment) {
+				st.distanceOfSingleSegment += calculations[0];
+				if (firstPoint) {
+					st.distanceOfSingleSegment = 0;
+					st.timeMovingOfSingleSegment = 0;
+					st.distanceMovingOfSingleSegment = 0;
+					if (j > 0) {
+						elevation1.firstPoint = true;
+						speed1.firstPoint = true;
 					}
+				}
+				if (lastPoint) {
+					totalDistanceWithoutGaps += st.distanceOfSingleSegment;
+					timeMovingWithoutGaps += st.timeMovingOfSingleSegment;
+					totalDistanceMovingWithoutGaps += st.distanceMovingOfSingleSegment;
+					st.lastPointElevation = elevation1;
+					st.lastPointSpeed = speed1;
+				}
+			}
+			st.prevLat = lat;
+			st.prevLon = lon;
+			st.prevTime = time;
+		}
 
-					Speed speed1 = new Speed();
-					speed1.speed = speed;
-					speed1.time = timeDiff;
-					speed1.distance = elevation1.distance;
-					speedData.add(speed1);
-					if (!hasSpeedData && speed1.speed > 0 && totalDistance > 0) {
-						hasSpeedData = true;
-					}
-					if (s.segment.generalSegment) {
-						distanceOfSingleSegment += calculations[0];
-						if (point.firstPoint) {
-							distanceOfSingleSegment = 0;
-							timeMovingOfSingleSegment = 0;
-							distanceMovingOfSingleSegment = 0;
-							if (j > 0) {
-								elevation1.firstPoint = true;
-								speed1.firstPoint = true;
-							}
-						}
-						if (point.lastPoint) {
-							totalDistanceWithoutGaps += distanceOfSingleSegment;
-							timeMovingWithoutGaps += timeMovingOfSingleSegment;
-							totalDistanceMovingWithoutGaps += distanceMovingOfSingleSegment;
-							if (j < numberOfPoints - 1) {
-								elevation1.lastPoint = true;
-								speed1.lastPoint = true;
-							}
-						}
-					}
+		private void endSegment(AnalysisState st) {
+			// End detection without breakout
+			if (st.pointIndex > 0 && !Double.isNaN(st.eleSmoothed)) {
+				if ((st.channelTop - st.channelBase) >= st.channelThres) {
+					diffElevationUp += st.channelTop - st.channelBase;
+				}
+				if ((st.channelBase - st.channelBottom) >= st.channelThres) {
+					diffElevationDown += st.channelBase - st.channelBottom;
 				}
 			}
+			st.lastPointElevation = null;
+			st.lastPointSpeed = null;
+		}
+
+		private GPXTrackAnalysis finishInformation(AnalysisState st, long filestamp) {
 			if (totalDistance < 0) {
 				hasElevationData = false;
 				hasSpeedData = false;
@@ -936,18 +1293,18 @@ public class GPXUtilities {
 
 			// 3. Time moving, if any
 			// 4. Elevation, eleUp, eleDown, if recorded
-			if (elevationPoints > 0) {
-				avgElevation = totalElevation / elevationPoints;
+			if (st.elevationPoints > 0) {
+				avgElevation = st.totalElevation / st.elevationPoints;
 			}
 
 
 			// 5. Max speed and Average speed, if any. Average speed is NOT overall (effective) speed, but only calculated for "moving" periods.
 			//    Averaging speed values is less precise than totalDistanceMoving/timeMoving
-			if (speedCount > 0) {
+			if (st.speedCount > 0) {
 				if (timeMoving > 0) {
 					avgSpeed = (float) totalDistanceMoving / (float) timeMoving * 1000f;
 				} else {
-					avgSpeed = (float) totalSpeedSum / (float) speedCount;
+					avgSpeed = (float) st.totalSpeedSum / (float) st.speedCount;
 				}
 			} else {
 				avgSpeed = -1;
@@ -957,8 +1314,66 @@ public class GPXUtilities {
 
 	}
 
+	/**
+	 * Analysis of track points passed one by one by streaming parser, same as {@link GPXFile#getAnalysis(long)}
+	 * though elevation and speed data of every point are not collected (memory doesn't depend on number of points).
+	 */
+	public static class GPXTrackPointsAnalysis implements GPXTrackPointsListener {
+
+		private final GPXTrackAnalysis analysis = new GPXTrackAnalysis();
+		private final GPXTrackAnalysis.AnalysisState state = new GPXTrackAnalysis.AnalysisState(false);
+		// first point is analysed when segment has second point (as segments with 1 point are skipped)
+		private WptPt firstPoint;
+		private boolean segmentStarted;
+
+		public GPXTrackPointsAnalysis() {
+			analysis.startInformation();
+		}
+
+		@Override
+		public void segmentStart(Track track, TrkSegment segment) {
+			firstPoint = null;
+			segmentStarted = false;
+		}
+
+		@Override
+		public void trackPoint(Track track, TrkSegment segment, WptPt point) {
+			if (firstPoint == null) {
+				firstPoint = point;
+				return;
+			}
+			if (!segmentStarted) {
+				segmentStarted = true;
+				analysis.startSegment(state, false, true);
+				analysis.addPoint(state, firstPoint);
+			}
+			analysis.addPoint(state, point);
+		}
+
+		@Override
+		public void segmentEnd(Track track, TrkSegment segment) {
+			analysis.totalTracks++;
+			if (segmentStarted) {
+				analysis.endSegment(state);
+			}
+			firstPoint = null;
+			segmentStarted = false;
+		}
+
+		@Override
+		public void trackEnd(Track track) {
+		}
+
+		public GPXTrackAnalysis getAnalysis(GPXFile file, long fileTimestamp) {
+			analysis.wptPoints = file.points.size();
+			analysis.wptCategoryNames = file.getWaypointCategories(true);
+			return analysis.finishInformation(state, fileTimestamp);
+		}
+	}
+
 	private static class SplitSegment {
 		TrkSegment segment;
+		TrackColumns columns;
 		double startCoeff = 0;
 		int startPointInd;
 		double endCoeff = 0;
@@ -980,6 +1395,23 @@ public class GPXUtilities {
 			this.startCoeff = cf;
 		}
 
+		public SplitSegment(TrackColumns c) {
+			startPointInd = 0;
+			startCoeff = 0;
+			endPointInd = c.size() - 2;
+			endCoeff = 1;
+			this.columns = c;
+		}
+
+		public SplitSegment(TrackColumns c, int pointInd, double cf) {
+			this.columns = c;
+			this.startPointInd = pointInd;
+			this.startCoeff = cf;
+		}
+
+		public boolean isGeneralSegment() {
+			return columns != null ? columns.generalSegment : segment.generalSegment;
+		}
 
 		public int getNumberOfPoints() {
 			return endPointInd - startPointInd + 2;
@@ -987,6 +1419,13 @@ public class GPXUtilities {
 
 		public WptPt get(int j) {
 			final int ind = j + startPointInd;
+			if (columns != null) {
+				if (isApproximated(j)) {
+					return new WptPt(getLatitude(j), getLongitude(j), getTime(j), getElevation(j), getSpeed(j),
+							value(columns.hdop, j, 0));
+				}
+				return columns.getPoint(ind);
+			}
 			if (j == 0) {
 				if (startCoeff == 0) {
 					return segment.points.get(ind);
@@ -1003,6 +1442,58 @@ public class GPXUtilities {
 		}
 
 
+		private boolean isApproximated(int j) {
+			if (j == 0) {
+				return startCoeff != 0;
+			}
+			return j == getNumberOfPoints() - 1 && endCoeff != 1;
+		}
+
+		// columns values of point j, interpolated same as approx(w1, w2, cf)
+		public double getLatitude(int j) {
+			return value(columns.lat, j, -360);
+		}
+
+		public double getLongitude(int j) {
+			return value(columns.lon, j, -360);
+		}
+
+		public double getElevation(int j) {
+			return value(columns.ele, j, 0);
+		}
+
+		public double getSpeed(int j) {
+			return value(columns.speed, j, 0);
+		}
+
+		public long getTime(int j) {
+			final int ind = j + startPointInd;
+			if (j == 0) {
+				return startCoeff == 0 ? columns.time[ind] : value(columns.time[ind], columns.time[ind + 1], 0, startCoeff);
+			} else if (j == getNumberOfPoints() - 1 && endCoeff != 1) {
+				return value(columns.time[ind - 1], columns.time[ind], 0, endCoeff);
+			}
+			return columns.time[ind];
+		}
+
+		public boolean isFirstPoint(int j) {
+			return !isApproximated(j) && columns.isFirstPoint(j + startPointInd);
+		}
+
+		public boolean isLastPoint(int j) {
+			return !isApproximated(j) && columns.isLastPoint(j + startPointInd);
+		}
+
+		private double value(double[] column, int j, double none) {
+			final int ind = j + startPointInd;
+			if (j == 0) {
+				return startCoeff == 0 ? column[ind] : value(column[ind], column[ind + 1], none, startCoeff);
+			} else if (j == getNumberOfPoints() - 1 && endCoeff != 1) {
+				return value(column[ind - 1], column[ind], none, endCoeff);
+			}
+			return column[ind];
+		}
+
 		private WptPt approx(WptPt w1, WptPt w2, double cf) {
 			long time = value(w1.time, w2.time, 0, cf);
 			double speed = value(w1.speed, w2.speed, 0, cf);
@@ -1050,6 +1541,12 @@ public class GPXUtilities {
 				net.osmand.Location.distanceBetween(p1.lat, p1.lon, p2.lat, p2.lon, calculations);
 				return calculations[0];
 			}
+
+			@Override
+			public double metric(TrackColumns c, int i1, int i2) {
+				net.osmand.Location.distanceBetween(c.lat[i1], c.lon[i1], c.lat[i2], c.lon[i2], calculations);
+				return calculations[0];
+			}
 		};
 	}
 
@@ -1063,6 +1560,14 @@ public class GPXUtilities {
 				}
 				return 0;
 			}
+
+			@Override
+			public double metric(TrackColumns c, int i1, int i2) {
+				if (c.time[i1] != 0 && c.time[i2] != 0) {
+					return (int) Math.abs((c.time[i2] - c.time[i1]) / 1000l);
+				}
+				return 0;
+			}
 		};
 	}
 
@@ -1070,6 +1575,8 @@ public class GPXUtilities {
 
 		public abstract double metric(WptPt p1, WptPt p2);
 
+		public abstract double metric(TrackColumns c, int i1, int i2);
+
 	}
 
 	private static void splitSegment(SplitMetric metric, SplitMetric secondaryMetric,
@@ -1112,6 +1619,41 @@ public class GPXUtilities {
 		}
 	}
 
+	private static void splitSegment(SplitMetric metric, SplitMetric secondaryMetric,
+									 double metricLimit, List<SplitSegment> splitSegments,
+									 TrackColumns columns, boolean joinSegments) {
+		double currentMetricEnd = metricLimit;
+		double secondaryMetricEnd = 0;
+		SplitSegment sp = new SplitSegment(columns, 0, 0);
+		double total = 0;
+		int size = columns.size();
+		for (int k = 1; k < size; k++) {
+			double currentSegment = 0;
+			if (!(columns.generalSegment && !joinSegments && columns.isFirstPoint(k))) {
+				currentSegment = metric.metric(columns, k - 1, k);
+				secondaryMetricEnd += secondaryMetric.metric(columns, k - 1, k);
+			}
+			while (total + currentSegment > currentMetricEnd) {
+				double p = currentMetricEnd - total;
+				double cf = (p / currentSegment);
+				sp.setLastPoint(k - 1, cf);
+				sp.metricEnd = currentMetricEnd;
+				sp.secondaryMetricEnd = secondaryMetricEnd;
+				splitSegments.add(sp);
+
+				sp = new SplitSegment(columns, k - 1, cf);
+				currentMetricEnd += metricLimit;
+			}
+			total += currentSegment;
+		}
+		if (size > 0 && !(sp.endPointInd == size - 1 && sp.startCoeff == 1)) {
+			sp.metricEnd = total;
+			sp.secondaryMetricEnd = secondaryMetricEnd;
+			sp.setLastPoint(size - 2, 1);
+			splitSegments.add(sp);
+		}
+	}
+
 	private static List<GPXTrackAnalysis> convert(List<SplitSegment> splitSegments) {
 		List<GPXTrackAnalysis> ls = new ArrayList<>();
 		for (SplitSegment s : splitSegments) {
@@ -1840,9 +2382,44 @@ public class GPXUtilities {
 
 	public static Exception writeGpx(Writer output, GPXFile file) {
 		try {
-			SimpleDateFormat format = new SimpleDateFormat(GPX_TIME_FORMAT, Locale.US);
+			GPXStreamWriter writer = new GPXStreamWriter(output, file);
+			for (Track track : file.tracks) {
+				if (!track.generalTrack) {
+					writer.startTrack(track);
+					for (TrkSegment segment : track.segments) {
+						writer.startSegment();
+						for (WptPt p : segment.points) {
+							writer.writePoint(p);
+						}
+						writer.endSegment(segment);
+					}
+					writer.endTrack(track);
+				}
+			}
+			writer.finish();
+		} catch (Exception e) {
+			log.error("Error saving gpx", e); //$NON-NLS-1$
+			return e;
+		}
+		return null;
+	}
+
+	/**
+	 * Writes gpx incrementally, so track points don't need to be kept in memory: header (metadata, waypoints and
+	 * routes of file) is written by constructor, then tracks are written point by point and {@link #finish()} writes
+	 * extensions of file. Output is not closed.
+	 */
+	public static class GPXStreamWriter {
+
+		private final XmlSerializer serializer;
+		private final SimpleDateFormat format;
+		private final GPXFile file;
+
+		public GPXStreamWriter(Writer output, GPXFile file) throws IOException {
+			this.file = file;
+			format = new SimpleDateFormat(GPX_TIME_FORMAT, Locale.US);
 			format.setTimeZone(TimeZone.getTimeZone("UTC"));
-			XmlSerializer serializer = PlatformUtil.newSerializer();
+			serializer = PlatformUtil.newSerializer();
 			serializer.setOutput(output);
 			serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true); //$NON-NLS-1$
 			serializer.startDocument("UTF-8", true); //$NON-NLS-1$
@@ -1903,38 +2480,42 @@ public class GPXUtilities {
 				writeExtensions(serializer, track);
 				serializer.endTag(null, "rte"); //$NON-NLS-1$
 			}
+		}
 
-			for (Track track : file.tracks) {
-				if (!track.generalTrack) {
-					serializer.startTag(null, "trk"); //$NON-NLS-1$
-					writeNotNullText(serializer, "name", track.name);
-					writeNotNullText(serializer, "desc", track.desc);
-					for (TrkSegment segment : track.segments) {
-						serializer.startTag(null, "trkseg"); //$NON-NLS-1$
-						for (WptPt p : segment.points) {
-							serializer.startTag(null, "trkpt"); //$NON-NLS-1$
-							writeWpt(format, serializer, p);
-							serializer.endTag(null, "trkpt"); //$NON-NLS-1$
-						}
-						assignRouteExtensionWriter(segment);
-						writeExtensions(serializer, segment);
-						serializer.endTag(null, "trkseg"); //$NON-NLS-1$
-					}
-					writeExtensions(serializer, track);
-					serializer.endTag(null, "trk"); //$NON-NLS-1$
-				}
-			}
+		public void startTrack(Track track) throws IOException {
+			serializer.startTag(null, "trk"); //$NON-NLS-1$
+			writeNotNullText(serializer, "name", track.name);
+			writeNotNullText(serializer, "desc", track.desc);
+		}
 
+		public void startSegment() throws IOException {
+			serializer.startTag(null, "trkseg"); //$NON-NLS-1$
+		}
+
+		public void writePoint(WptPt p) throws IOException {
+			serializer.startTag(null, "trkpt"); //$NON-NLS-1$
+			writeWpt(format, serializer, p);
+			serializer.endTag(null, "trkpt"); //$NON-NLS-1$
+		}
+
+		public void endSegment(TrkSegment segment) throws IOException {
+			assignRouteExtensionWriter(segment);
+			writeExtensions(serializer, segment);
+			serializer.endTag(null, "trkseg"); //$NON-NLS-1$
+		}
+
+		public void endTrack(Track track) throws IOException {
+			writeExtensions(serializer, track);
+			serializer.endTag(null, "trk"); //$NON-NLS-1$
+		}
+
+		public void finish() throws IOException {
 			writeExtensions(serializer, file);
 
 			serializer.endTag(null, "gpx"); //$NON-NLS-1$
 			serializer.endDocument();
 			serializer.flush();
-		} catch (Exception e) {
-			log.error("Error saving gpx", e); //$NON-NLS-1$
-			return e;
 		}
-		return null;
 	}
 
 	private static void assignRouteExtensionWriter(final TrkSegment segment) {
@@ -2193,6 +2774,15 @@ public class GPXUtilities {
 	}
 
 	public static GPXFile loadGPXFile(InputStream stream, GPXExtensionsReader extensionsReader) {
+		return loadGPXFile(stream, extensionsReader, null);
+	}
+
+	/**
+	 * Reads gpx file, if listener is set track points are passed to it and are not stored in track segments
+	 * (so memory doesn't depend on number of track points). Waypoints and routes are stored in file as usual.
+	 */
+	public static GPXFile loadGPXFile(InputStream stream, GPXExtensionsReader extensionsReader,
+			GPXTrackPointsListener listener) {
 		GPXFile gpxFile = new GPXFile(null);
 		SimpleDateFormat format = new SimpleDateFormat(GPX_TIME_FORMAT, Locale.US);
 		format.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -2212,6 +2802,10 @@ public class GPXUtilities {
 			List<RouteType> routeTypes = new ArrayList<>();
 			boolean routeExtension = false;
 			boolean typesExtension = false;
+			// track point which is passed to listener when it's read
+			WptPt streamPoint = null;
+			Track streamTrack = null;
+			TrkSegment streamSegment = null;
 			parserState.push(gpxFile);
 			int tok;
 			while ((tok = parser.next()) != XmlPullParser.END_DOCUMENT) {
@@ -2289,6 +2883,7 @@ public class GPXUtilities {
 								Track track = new Track();
 								((GPXFile) parse).tracks.add(track);
 								parserState.push(track);
+								streamTrack = track;
 							}
 							if (tag.equals("rte")) {
 								Route route = new Route();
@@ -2377,6 +2972,10 @@ public class GPXUtilities {
 								TrkSegment trkSeg = new TrkSegment();
 								((Track) parse).segments.add(trkSeg);
 								parserState.push(trkSeg);
+								if (listener != null) {
+									streamSegment = trkSeg;
+									listener.segmentStart(streamTrack, trkSeg);
+								}
 							} else if (tag.equals("trkpt") || tag.equals("rpt")) {
 								WptPt wptPt = parseWptAttributes(parser);
 								int size = ((Track) parse).segments.size();
@@ -2384,13 +2983,26 @@ public class GPXUtilities {
 									((Track) parse).segments.add(new TrkSegment());
 									size++;
 								}
-								((Track) parse).segments.get(size - 1).points.add(wptPt);
+								if (listener != null) {
+									if (streamSegment == null) {
+										// points without trkseg
+										streamSegment = ((Track) parse).segments.get(size - 1);
+										listener.segmentStart(streamTrack, streamSegment);
+									}
+									streamPoint = wptPt;
+								} else {
+									((Track) parse).segments.get(size - 1).points.add(wptPt);
+								}
 								parserState.push(wptPt);
 							}
 						} else if (parse instanceof TrkSegment) {
 							if (tag.equals("trkpt") || tag.equals("rpt")) {
 								WptPt wptPt = parseWptAttributes(parser);
-								((TrkSegment) parse).points.add(wptPt);
+								if (listener != null) {
+									streamPoint = wptPt;
+								} else {
+									((TrkSegment) parse).points.add(wptPt);
+								}
 								parserState.push(wptPt);
 							}
 							if (tag.equals("csvattributes")) {
@@ -2404,10 +3016,14 @@ public class GPXUtilities {
 											WptPt wptPt = new WptPt();
 											wptPt.lon = Double.parseDouble(pointAttrs[0]);
 											wptPt.lat = Double.parseDouble(pointAttrs[1]);
-											((TrkSegment) parse).points.add(wptPt);
 											if (arrLength > 2) {
 												wptPt.ele = Double.parseDouble(pointAttrs[2]);
 											}
+											if (listener != null) {
+												listener.trackPoint(streamTrack, (TrkSegment) parse, wptPt);
+											} else {
+												((TrkSegment) parse).points.add(wptPt);
+											}
 										}
 									} catch (NumberFormatException e) {
 									}
@@ -2498,6 +3114,10 @@ public class GPXUtilities {
 					} else if (tag.equals("trkpt")) {
 						Object pop = parserState.pop();
 						assert pop instanceof WptPt;
+						if (pop == streamPoint) {
+							listener.trackPoint(streamTrack, streamSegment, streamPoint);
+							streamPoint = null;
+						}
 					} else if (tag.equals("wpt")) {
 						Object pop = parserState.pop();
 						assert pop instanceof WptPt;
@@ -2507,6 +3127,14 @@ public class GPXUtilities {
 					} else if (tag.equals("trk")) {
 						Object pop = parserState.pop();
 						assert pop instanceof Track;
+						if (listener != null && pop instanceof Track) {
+							Track track = (Track) pop;
+							if (streamSegment != null) {
+								listener.segmentEnd(track, streamSegment);
+								streamSegment = null;
+							}
+							listener.trackEnd(track);
+						}
 					} else if (tag.equals("rte")) {
 						Object pop = parserState.pop();
 						assert pop instanceof Route;
@@ -2521,11 +3149,19 @@ public class GPXUtilities {
 							if (firstSegment == null) {
 								firstSegment = segment;
 							}
+							if (listener != null) {
+								listener.segmentEnd(streamTrack, segment);
+								streamSegment = null;
+							}
 						}
 						assert pop instanceof TrkSegment;
 					} else if (tag.equals("rpt")) {
 						Object pop = parserState.pop();
 						assert pop instanceof WptPt;
+						if (pop == streamPoint) {
+							listener.trackPoint(streamTrack, streamSegment, streamPoint);
+							streamPoint = null;
+						}
 					}
 				}
 			}
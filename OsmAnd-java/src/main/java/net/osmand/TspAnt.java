@@ -55,6 +55,9 @@ public class TspAnt {
     // probability of pure random selection of the next town
     private double pr = 0.01;
 
+    // cost of not found route
+    private static final double UNREACHABLE_COST = 1e7;
+
     // Reasonable number of iterations
     // - results typically settle down by 500
     private int maxIterations = 2000;
@@ -116,13 +119,36 @@ public class TspAnt {
             l.add(end);
         }
         n = l.size() ;
+        double[][] costs = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 1; j < n; j++) {
+				costs[i][j] = MapUtils.getDistance(l.get(i), l.get(j));
+			}
+		}
+		return initGraph(costs, keepEndPoint);
+    }
+
+    // Read in route costs between points (i.e. routing times of RoutePlannerFrontEnd.calculateRouteMatrix),
+    // first point is start, last is end if it should be kept. Negative cost means point is not reachable.
+    public TspAnt readGraph(float[][] routeCosts, boolean keepEndPoint) {
+        n = routeCosts.length;
+        double[][] costs = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 1; j < n; j++) {
+				costs[i][j] = routeCosts[i][j] < 0 ? UNREACHABLE_COST : routeCosts[i][j];
+			}
+		}
+		return initGraph(costs, keepEndPoint);
+    }
+
+    private TspAnt initGraph(double[][] costs, boolean keepEndPoint) {
 //        System.out.println("Cost");
         graph = new double[n][n];
         double maxSum = 0;
 		for (int i = 0; i < n ; i++) {
 			double maxIWeight = 0;
 			for (int j = 1; j < n ; j++) {
-				double d = Math.rint(MapUtils.getDistance(l.get(i), l.get(j))) + 0.1;
+				double d = Math.rint(costs[i][j]) + 0.1;
 				maxIWeight = Math.max(d, maxIWeight);
 				graph[i][j] = d;
 			}
@@ -17,6 +17,8 @@ public class TspHeldKarp {
   private int n;
   // cost matrix
   private double[][] cost;
+  // cost of not found route
+  private static final double UNREACHABLE_COST = 1e7;
   private int[] order;
   // matrix of adjusted costs
   private double[][] costWithPi;
@@ -43,6 +45,31 @@ public class TspHeldKarp {
 		
 		return this;
 	}
+
+	/**
+	 * Reads route costs between points (i.e. routing times of RoutePlannerFrontEnd.calculateRouteMatrix),
+	 * negative cost means that point is not reachable. Solver works with symmetric costs,
+	 * so costs of both directions are averaged.
+	 */
+	public TspHeldKarp readInput(float[][] costs, boolean returnToInitialPoint) {
+		n = costs.length;
+		order = new int[n];
+		cost = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (!returnToInitialPoint && (j == 0)) {
+					cost[i][j] = 0;
+				} else if (i != j) {
+					cost[i][j] = Math.rint((routeCost(costs[i][j]) + routeCost(costs[j][i])) / 2);
+				}
+			}
+		}
+		return this;
+	}
+
+	private static double routeCost(float c) {
+		return c < 0 ? UNREACHABLE_COST : c;
+	}
   //
   
 
@@ -614,6 +614,12 @@ public class BinaryMapAddressReaderAdapter {
 		};
 		long time = System.currentTimeMillis();
 		int indexOffset = 0;
+		TIntArrayList[] refs = new TIntArrayList[5];
+		TIntArrayList[] refsContainer = new TIntArrayList[5];
+		for (int i = 0; i < refs.length; i++) {
+			refs[i] = new TIntArrayList();
+			refsContainer[i] = new TIntArrayList();
+		}
 		while (true) {
 			if (req.isCancelled()) {
 				return;
@@ -626,6 +632,14 @@ public class BinaryMapAddressReaderAdapter {
 			case OsmAndAddressNameIndexData.TABLE_FIELD_NUMBER:
 				int length = readInt();
 				indexOffset = codedIS.getTotalBytesRead();
+				NamePrefixIndex.PrefixTable table = map.getNamePrefixIndex() == null ? null :
+						map.getNamePrefixIndex().getAddressTable(map, reg);
+				if (table != null) {
+					// name index is already decoded, offsets stay empty and atoms are not read
+					searchAddressNamePrefixTable(table, req, refs, refsContainer);
+					codedIS.skipRawBytes(length);
+					break;
+				}
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
 				TIntArrayList charsList = new TIntArrayList();
@@ -636,13 +650,6 @@ public class BinaryMapAddressReaderAdapter {
 			case OsmAndAddressNameIndexData.ATOM_FIELD_NUMBER:
 				// also offsets can be randomly skipped by limit
 				loffsets.sort();
-				
-				TIntArrayList[] refs = new TIntArrayList[5];
-				TIntArrayList[] refsContainer = new TIntArrayList[5];
-				for (int i = 0; i < refs.length; i++) {
-					refs[i] = new TIntArrayList();
-					refsContainer[i] = new TIntArrayList();
-				}
 
 				LOG.info("Searched address structure in " + (System.currentTimeMillis() - time) + "ms. Found " + loffsets.size()
 						+ " subtress");
@@ -755,6 +762,121 @@ public class BinaryMapAddressReaderAdapter {
 
 	}
 
+	private void searchAddressNamePrefixTable(NamePrefixIndex.PrefixTable table, SearchRequest<MapObject> req,
+			TIntArrayList[] refs, TIntArrayList[] refsContainer) {
+		int[] range = table.findAtoms(req.nameQuery);
+		for (int i = range[0]; i < range[1]; i++) {
+			int x31 = table.x31[i];
+			int y31 = table.y31[i];
+			if (x31 != -1 && req.isBboxSpecified() && !req.contains(x31, y31, x31, y31)) {
+				continue;
+			}
+			int type = table.types[i];
+			if (table.shifts[i] != 0) {
+				refs[type].add(table.shifts[i]);
+			}
+			if (table.containers[i] != 0) {
+				refsContainer[type].add(table.containers[i]);
+			}
+		}
+	}
+
+	void buildNamePrefixTable(NamePrefixIndex.PrefixTableBuilder builder) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		List<TIntArrayList> values = new ArrayList<TIntArrayList>();
+		int indexOffset = 0;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmAndAddressNameIndexData.TABLE_FIELD_NUMBER:
+				int length = readInt();
+				indexOffset = codedIS.getTotalBytesRead();
+				int oldLimit = codedIS.pushLimit(length);
+				map.readIndexedStringTable("", keys, values);
+				codedIS.popLimit(oldLimit);
+				break;
+			case OsmAndAddressNameIndexData.ATOM_FIELD_NUMBER:
+				for (int k = 0; k < keys.size(); k++) {
+					String key = keys.get(k);
+					builder.addKey(key);
+					TIntArrayList offsets = values.get(k);
+					for (int j = 0; j < offsets.size(); j++) {
+						int fp = indexOffset + offsets.get(j);
+						codedIS.seek(fp);
+						int len = codedIS.readRawVarint32();
+						int oldLim = codedIS.pushLimit(len);
+						int stag = 0;
+						do {
+							int st = codedIS.readTag();
+							stag = WireFormat.getTagFieldNumber(st);
+							if (stag == AddressNameIndexData.ATOM_FIELD_NUMBER) {
+								int slen = codedIS.readRawVarint32();
+								int soldLim = codedIS.pushLimit(slen);
+								readAddressNamePrefixes(key, builder, fp);
+								codedIS.popLimit(soldLim);
+							} else if (stag != 0) {
+								skipUnknownField(st);
+							}
+						} while (stag != 0);
+						codedIS.popLimit(oldLim);
+					}
+				}
+				return;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	// same as readAddressNameData, but keeps all atoms with their positions
+	private void readAddressNamePrefixes(String key, NamePrefixIndex.PrefixTableBuilder builder, int fp) throws IOException {
+		int type = -1;
+		int shiftindex = 0;
+		int shiftcityindex = 0;
+		int x31 = -1;
+		int y31 = -1;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			if (tag == 0 || tag == AddressNameIndexDataAtom.SHIFTTOINDEX_FIELD_NUMBER) {
+				if (type != -1 && (shiftindex != 0 || shiftcityindex != 0)) {
+					builder.addAtom(key, type, x31, y31, shiftindex, shiftcityindex);
+				}
+			}
+			switch (tag) {
+			case 0:
+				return;
+			case AddressNameIndexDataAtom.NAMEEN_FIELD_NUMBER:
+				codedIS.readString();
+				break;
+			case AddressNameIndexDataAtom.NAME_FIELD_NUMBER:
+				codedIS.readString();
+				break;
+			case AddressNameIndexDataAtom.SHIFTTOCITYINDEX_FIELD_NUMBER:
+				shiftcityindex = fp - codedIS.readInt32();
+				break;
+			case AddressNameIndexDataAtom.XY16_FIELD_NUMBER:
+				int in32 = codedIS.readInt32();
+				x31 = (in32 >>> 16) << 15;
+				y31 = (in32 & ((1 << 16) - 1)) << 15;
+				break;
+			case AddressNameIndexDataAtom.SHIFTTOINDEX_FIELD_NUMBER:
+				shiftindex = fp - codedIS.readInt32();
+				break;
+			case AddressNameIndexDataAtom.TYPE_FIELD_NUMBER:
+				type = codedIS.readInt32();
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	private void readAddressNameData(SearchRequest<MapObject> req, TIntArrayList[] refs,
 			TIntArrayList[] refsContainer, int fp) throws IOException {
 		TIntArrayList toAdd = null;
@@ -55,6 +55,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -86,6 +87,8 @@ public class BinaryMapIndexReader {
 	public static final int LABEL_ZOOM_ENCODE = 31 - SHIFT_COORDINATES;
 	private final static Log log = PlatformUtil.getLog(BinaryMapIndexReader.class);
 	public static boolean READ_STATS = false;
+	// read files through shared memory mapping instead of RandomAccessFile buffer (files < 2 GB)
+	public static boolean USE_MEMORY_MAPPED_FILES = false;
 	public static final SearchPoiTypeFilter ACCEPT_ALL_POI_TYPE_FILTER = new SearchPoiTypeFilter() {
 		@Override
 		public boolean isEmpty() {
@@ -112,6 +115,10 @@ public class BinaryMapIndexReader {
 	/*private*/ List<RouteRegion> routingIndexes = new ArrayList<RouteRegion>();
 	/*private*/ List<BinaryIndexPart> indexes = new ArrayList<BinaryIndexPart>();
 	TLongObjectHashMap<IncompleteTransportRoute> incompleteTransportRoutes = null;
+	// optional index of name tables shared by all readers
+	private NamePrefixIndex namePrefixIndex;
+	// optional index of walking transfers between transport stops shared by all readers
+	private TransportTransferIndex transportTransferIndex;
 	
 	protected CodedInputStream codedIS;
 
@@ -126,7 +133,7 @@ public class BinaryMapIndexReader {
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file) throws IOException {
 		this.raf = raf;
 		this.file = file;
-		codedIS = CodedInputStream.newInstance(raf);
+		codedIS = createCodedInputStream(raf, file);
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
 		transportAdapter = new BinaryMapTransportReaderAdapter(this);
 		addressAdapter = new BinaryMapAddressReaderAdapter(this);
@@ -138,7 +145,7 @@ public class BinaryMapIndexReader {
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init) throws IOException {
 		this.raf = raf;
 		this.file = file;
-		codedIS = CodedInputStream.newInstance(raf);
+		codedIS = createCodedInputStream(raf, file);
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
 		transportAdapter = new BinaryMapTransportReaderAdapter(this);
 		addressAdapter = new BinaryMapAddressReaderAdapter(this);
@@ -150,9 +157,21 @@ public class BinaryMapIndexReader {
 	}
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, BinaryMapIndexReader referenceToSameFile) throws IOException {
+		this(raf, createCodedInputStream(raf, referenceToSameFile.file), referenceToSameFile);
+	}
+
+	/**
+	 * Cursor without own file handle, reads through the mapping shared with other readers of the same file
+	 * @see SharedBinaryMapIndexReader
+	 */
+	BinaryMapIndexReader(ByteBuffer mapping, BinaryMapIndexReader referenceToSameFile) {
+		this(null, CodedInputStream.newInstance(mapping), referenceToSameFile);
+	}
+
+	private BinaryMapIndexReader(RandomAccessFile raf, CodedInputStream codedIS, BinaryMapIndexReader referenceToSameFile) {
 		this.raf = raf;
 		this.file = referenceToSameFile.file;
-		codedIS = CodedInputStream.newInstance(raf);
+		this.codedIS = codedIS;
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
 		version = referenceToSameFile.version;
 		dateCreated = referenceToSameFile.dateCreated;
@@ -167,10 +186,22 @@ public class BinaryMapIndexReader {
 		routingIndexes = new ArrayList<RouteRegion>(referenceToSameFile.routingIndexes);
 		indexes = new ArrayList<BinaryIndexPart>(referenceToSameFile.indexes);
 		basemap = referenceToSameFile.basemap;
+		namePrefixIndex = referenceToSameFile.namePrefixIndex;
+		transportTransferIndex = referenceToSameFile.transportTransferIndex;
 		calculateCenterPointForRegions();
 	}
 
 
+	private static CodedInputStream createCodedInputStream(RandomAccessFile raf, File file) {
+		if (USE_MEMORY_MAPPED_FILES && file != null) {
+			ByteBuffer mapping = MappedObfFiles.getMapping(file, raf);
+			if (mapping != null) {
+				return CodedInputStream.newInstance(mapping);
+			}
+		}
+		return CodedInputStream.newInstance(raf);
+	}
+
 	public long getDateCreated() {
 		return dateCreated;
 	}
@@ -396,6 +427,22 @@ public class BinaryMapIndexReader {
 		return file;
 	}
 
+	public NamePrefixIndex getNamePrefixIndex() {
+		return namePrefixIndex;
+	}
+
+	public void setNamePrefixIndex(NamePrefixIndex namePrefixIndex) {
+		this.namePrefixIndex = namePrefixIndex;
+	}
+
+	public TransportTransferIndex getTransportTransferIndex() {
+		return transportTransferIndex;
+	}
+
+	public void setTransportTransferIndex(TransportTransferIndex transportTransferIndex) {
+		this.transportTransferIndex = transportTransferIndex;
+	}
+
 
 	public String getCountryName() {
 		List<String> rg = getRegionNames();
@@ -880,11 +927,13 @@ public class BinaryMapIndexReader {
 				continue;
 			}
 			// lazy initializing rules
-			if (mapIndex.encodingRules.isEmpty()) {
-				codedIS.seek(mapIndex.filePointer);
-				int oldLimit = codedIS.pushLimit(mapIndex.length);
-				readMapIndex(mapIndex, true);
-				codedIS.popLimit(oldLimit);
+			synchronized (mapIndex) {
+				if (mapIndex.encodingRules.isEmpty()) {
+					codedIS.seek(mapIndex.filePointer);
+					int oldLimit = codedIS.pushLimit(mapIndex.length);
+					readMapIndex(mapIndex, true);
+					codedIS.popLimit(oldLimit);
+				}
 			}
 			for (MapRoot index : mapIndex.getRoots()) {
 				if (index.minZoom <= req.zoom && index.maxZoom >= req.zoom) {
@@ -895,12 +944,14 @@ public class BinaryMapIndexReader {
 
 
 					// lazy initializing trees
-					if (index.trees == null) {
-						index.trees = new ArrayList<MapTree>();
-						codedIS.seek(index.filePointer);
-						int oldLimit = codedIS.pushLimit(index.length);
-						readMapLevel(index);
-						codedIS.popLimit(oldLimit);
+					synchronized (index) {
+						if (index.trees == null) {
+							index.trees = new ArrayList<MapTree>();
+							codedIS.seek(index.filePointer);
+							int oldLimit = codedIS.pushLimit(index.length);
+							readMapLevel(index);
+							codedIS.popLimit(oldLimit);
+						}
 					}
 
 					for (MapTree tree : index.trees) {
@@ -1310,6 +1361,21 @@ public class BinaryMapIndexReader {
 		return req.getSearchResults();
 	}
 
+	void buildAddressNamePrefixTable(AddressRegion reg, NamePrefixIndex.PrefixTableBuilder builder) throws IOException {
+		codedIS.seek(reg.indexNameOffset);
+		int len = readInt();
+		int old = codedIS.pushLimit(len);
+		addressAdapter.buildNamePrefixTable(builder);
+		codedIS.popLimit(old);
+	}
+
+	void buildPoiNamePrefixTable(PoiRegion reg, NamePrefixIndex.PrefixTableBuilder builder) throws IOException {
+		codedIS.seek(reg.filePointer);
+		int old = codedIS.pushLimit(reg.length);
+		poiAdapter.buildNamePrefixTable(builder);
+		codedIS.popLimit(old);
+	}
+
 	public List<MapObject> searchAddressDataByName(SearchRequest<MapObject> req) throws IOException {
 		return searchAddressDataByName(req, null);
 	}
@@ -1602,7 +1668,9 @@ public class BinaryMapIndexReader {
 
 	public void close() throws IOException {
 		if (codedIS != null) {
-			raf.close();
+			if (raf != null) {
+				raf.close();
+			}
 			codedIS = null;
 			mapIndexes.clear();
 			addressIndexes.clear();
@@ -2463,6 +2531,45 @@ public class BinaryMapIndexReader {
 		}
 	}
 
+	/**
+	 * Reads all keys of indexed string table (keys of subtables are prefixed with parent key)
+	 */
+	void readIndexedStringTable(String prefix, List<String> keys, List<TIntArrayList> values) throws IOException {
+		int keyIndex = -1;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER :
+				keys.add(prefix + codedIS.readString());
+				values.add(new TIntArrayList());
+				keyIndex = keys.size() - 1;
+				break;
+			case OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER :
+				int val = readInt();
+				if (keyIndex != -1) {
+					values.get(keyIndex).add(val);
+				}
+				break;
+			case OsmandOdb.IndexedStringTable.SUBTABLES_FIELD_NUMBER :
+				int len = codedIS.readRawVarint32();
+				int oldLim = codedIS.pushLimit(len);
+				if (keyIndex != -1) {
+					readIndexedStringTable(keys.get(keyIndex), keys, values);
+				} else {
+					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+				}
+				codedIS.popLimit(oldLim);
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	private static void testAddressSearchByName(BinaryMapIndexReader reader) throws IOException {
 		SearchRequest<MapObject> req = buildAddressByNameRequest(new ResultMatcher<MapObject>() {
 			@Override
@@ -284,11 +284,13 @@ public class BinaryMapPoiReaderAdapter {
 	}
 
 	public void initCategories(PoiRegion region) throws IOException {
-		if (region.categories.isEmpty()) {
-			codedIS.seek(region.filePointer);
-			int oldLimit = codedIS.pushLimit(region.length);
-			readPoiIndex(region, true);
-			codedIS.popLimit(oldLimit);
+		synchronized (region) {
+			if (region.categories.isEmpty()) {
+				codedIS.seek(region.filePointer);
+				int oldLimit = codedIS.pushLimit(region.length);
+				readPoiIndex(region, true);
+				codedIS.popLimit(oldLimit);
+			}
 		}
 	}
 
@@ -314,6 +316,14 @@ public class BinaryMapPoiReaderAdapter {
 				return;
 			case OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER:
 				int length = readInt();
+				NamePrefixIndex.PrefixTable table = map.getNamePrefixIndex() == null ? null :
+						map.getNamePrefixIndex().getPoiTable(map, region);
+				if (table != null) {
+					// name index is already decoded
+					offsets = searchPoiNamePrefixTable(table, query, req);
+					codedIS.skipRawBytes(length);
+					break;
+				}
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
 				offsets = readPoiNameIndex(matcher.getCollator(), query, req);
@@ -371,6 +381,145 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 
+	private TIntLongHashMap searchPoiNamePrefixTable(NamePrefixIndex.PrefixTable table, String query,
+			SearchRequest<Amenity> req) {
+		TIntLongHashMap offsets = null;
+		for (String word : query.split(" ")) {
+			if (word.trim().length() == 0) {
+				continue;
+			}
+			int[] range = table.findAtoms(word.trim());
+			TIntLongHashMap mp = new TIntLongHashMap();
+			for (int i = range[0]; i < range[1]; i++) {
+				int x31 = table.x31[i];
+				int y31 = table.y31[i];
+				if (req.contains(x31, y31, x31, y31)) {
+					long d = Math.abs(req.x - x31) + Math.abs(req.y - y31);
+					mp.put(table.shifts[i], d);
+				}
+			}
+			if (offsets == null) {
+				offsets = mp;
+			} else {
+				// calculate intersection of mp & offsets
+				for (int chKey : offsets.keys()) {
+					if (!mp.containsKey(chKey)) {
+						offsets.remove(chKey);
+					}
+				}
+			}
+		}
+		return offsets == null ? new TIntLongHashMap() : offsets;
+	}
+
+	void buildNamePrefixTable(NamePrefixIndex.PrefixTableBuilder builder) throws IOException {
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER:
+				int length = readInt();
+				int oldLimit = codedIS.pushLimit(length);
+				readPoiNameIndexPrefixes(builder);
+				codedIS.popLimit(oldLimit);
+				// poi data is not needed
+				return;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readPoiNameIndexPrefixes(NamePrefixIndex.PrefixTableBuilder builder) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		List<TIntArrayList> values = new ArrayList<TIntArrayList>();
+		int offset = 0;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiNameIndex.TABLE_FIELD_NUMBER: {
+				int length = readInt();
+				int oldLimit = codedIS.pushLimit(length);
+				offset = codedIS.getTotalBytesRead();
+				map.readIndexedStringTable("", keys, values);
+				codedIS.popLimit(oldLimit);
+				break;
+			}
+			case OsmandOdb.OsmAndPoiNameIndex.DATA_FIELD_NUMBER: {
+				for (int k = 0; k < keys.size(); k++) {
+					String key = keys.get(k);
+					builder.addKey(key);
+					TIntArrayList dataOffsets = values.get(k);
+					for (int i = 0; i < dataOffsets.size(); i++) {
+						codedIS.seek(dataOffsets.get(i) + offset);
+						int len = codedIS.readRawVarint32();
+						int oldLim = codedIS.pushLimit(len);
+						readPoiNameIndexDataPrefixes(key, builder);
+						codedIS.popLimit(oldLim);
+					}
+				}
+				codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+				return;
+			}
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readPoiNameIndexDataPrefixes(String key, NamePrefixIndex.PrefixTableBuilder builder) throws IOException {
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmAndPoiNameIndexData.ATOMS_FIELD_NUMBER:
+				int len = codedIS.readRawVarint32();
+				int oldLim = codedIS.pushLimit(len);
+				int x = 0;
+				int y = 0;
+				int zoom = 15;
+				int atomTag;
+				do {
+					int at = codedIS.readTag();
+					atomTag = WireFormat.getTagFieldNumber(at);
+					switch (atomTag) {
+					case 0:
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.X_FIELD_NUMBER:
+						x = codedIS.readUInt32();
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.Y_FIELD_NUMBER:
+						y = codedIS.readUInt32();
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.ZOOM_FIELD_NUMBER:
+						zoom = codedIS.readUInt32();
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.SHIFTTO_FIELD_NUMBER:
+						builder.addAtom(key, 0, x << (31 - zoom), y << (31 - zoom), readInt(), 0);
+						break;
+					default:
+						skipUnknownField(at);
+						break;
+					}
+				} while (atomTag != 0);
+				codedIS.popLimit(oldLim);
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	private TIntLongHashMap readPoiNameIndex(Collator instance, String query, SearchRequest<Amenity> req) throws IOException {
 		TIntLongHashMap offsets = new TIntLongHashMap();
 		List<TIntArrayList> listOffsets = null;
@@ -22,6 +22,7 @@ import org.apache.commons.logging.Log;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
@@ -292,7 +293,12 @@ public class BinaryMapRouteReaderAdapter {
 
 	public static class RouteRegion extends BinaryIndexPart {
 		public int regionsRead;
+		// region could be shared by readers of the same file (see SharedBinaryMapIndexReader):
+		// rules are added only under region lock, ids should be obtained through synchronized methods
+		// and rules should be read without lock only by quickGetEncodingRule
 		public List<RouteTypeRule> routeEncodingRules = new ArrayList<BinaryMapRouteReaderAdapter.RouteTypeRule>();
+		// copy of rules for lock-free reads, array is replaced when it's full and republished after every change
+		private volatile RouteTypeRule[] quickEncodingRules = new RouteTypeRule[0];
 		public int routeEncodingRulesBytes = 0;
 		public Map<String, Integer> decodingRules = null;
 		List<RouteSubregion> subregions = new ArrayList<RouteSubregion>();
@@ -321,7 +327,7 @@ public class BinaryMapRouteReaderAdapter {
 			return OsmandOdb.OsmAndStructure.ROUTINGINDEX_FIELD_NUMBER;
 		}
 		
-		public int searchRouteEncodingRule(String tag, String value) {
+		public synchronized int searchRouteEncodingRule(String tag, String value) {
 			if(decodingRules == null) {
 				decodingRules = new LinkedHashMap<String, Integer>();
 				for(int i = 1; i < routeEncodingRules.size(); i++) {
@@ -346,15 +352,36 @@ public class BinaryMapRouteReaderAdapter {
 		}
 
 		public RouteTypeRule quickGetEncodingRule(int id) {
-			return routeEncodingRules.get(id);
+			return quickEncodingRules[id];
 		}
 
-		public void initRouteEncodingRule(int id, String tags, String val) {
+		/**
+		 * @return rule or null if rule with id is not published yet (i.e. created by another thread)
+		 */
+		public RouteTypeRule quickGetEncodingRuleIfPresent(int id) {
+			RouteTypeRule[] rules = quickEncodingRules;
+			return id >= 0 && id < rules.length ? rules[id] : null;
+		}
+
+		// called under region lock
+		private void publishEncodingRule(int id, RouteTypeRule rule) {
+			RouteTypeRule[] rules = quickEncodingRules;
+			if (id >= rules.length) {
+				rules = Arrays.copyOf(rules, Math.max(id + 1, rules.length * 2));
+			}
+			rules[id] = rule;
+			// volatile write makes the rule visible to readers of the array
+			quickEncodingRules = rules;
+		}
+
+		public synchronized void initRouteEncodingRule(int id, String tags, String val) {
 			decodingRules = null;
 			while (routeEncodingRules.size() <= id) {
 				routeEncodingRules.add(null);
 			}
-			routeEncodingRules.set(id, new RouteTypeRule(tags, val));
+			RouteTypeRule rule = new RouteTypeRule(tags, val);
+			routeEncodingRules.set(id, rule);
+			publishEncodingRule(id, rule);
 			if (tags.equals("name")) {
 				nameTypeRule = id;
 			} else if (tags.equals("ref")) {
@@ -387,7 +414,7 @@ public class BinaryMapRouteReaderAdapter {
 		}
 		
 		
-		public void completeRouteEncodingRules() {
+		public synchronized void completeRouteEncodingRules() {
 			for(int i = 0; i < routeEncodingRules.size(); i++) {
 				RouteTypeRule rtr = routeEncodingRules.get(i);
 				if(rtr != null && rtr.conditional()) {
@@ -452,13 +479,16 @@ public class BinaryMapRouteReaderAdapter {
 		}
 
 
-		public RouteDataObject adopt(RouteDataObject o) {
+		public synchronized RouteDataObject adopt(RouteDataObject o) {
 			if(o.region == this || o.region == referenceRouteRegion) {
 				return o;
 			}
 			
 			if(routeEncodingRules.isEmpty()) {
 				routeEncodingRules.addAll(o.region.routeEncodingRules);
+				for (int i = 0; i < routeEncodingRules.size(); i++) {
+					publishEncodingRule(i, routeEncodingRules.get(i));
+				}
 				referenceRouteRegion= o.region;
 				return o;
 			}
@@ -472,7 +502,7 @@ public class BinaryMapRouteReaderAdapter {
 			if (o.types != null) {
 				rdo.types = new int[o.types.length];
 				for (int i = 0; i < o.types.length; i++) {
-					RouteTypeRule tp = o.region.routeEncodingRules.get(o.types[i]);
+					RouteTypeRule tp = o.region.quickGetEncodingRule(o.types[i]);
 					int ruleId = findOrCreateRouteType(tp.getTag(), tp.getValue());
 					rdo.types[i] = ruleId;
 				}
@@ -483,7 +513,7 @@ public class BinaryMapRouteReaderAdapter {
 					if (o.pointTypes[i] != null) {
 						rdo.pointTypes[i] = new int[o.pointTypes[i].length];
 						for (int j = 0; j < o.pointTypes[i].length; j++) {
-							RouteTypeRule tp = o.region.routeEncodingRules.get(o.pointTypes[i][j]);
+							RouteTypeRule tp = o.region.quickGetEncodingRule(o.pointTypes[i][j]);
 							int ruleId = searchRouteEncodingRule(tp.getTag(), tp.getValue());
 							if(ruleId != -1) {
 								rdo.pointTypes[i][j] = ruleId;
@@ -500,7 +530,7 @@ public class BinaryMapRouteReaderAdapter {
 				rdo.nameIds = new int[o.nameIds.length];
 				rdo.names = new TIntObjectHashMap<>();
 				for (int i = 0; i < o.nameIds.length; i++) {
-					RouteTypeRule tp = o.region.routeEncodingRules.get(o.nameIds[i]);
+					RouteTypeRule tp = o.region.quickGetEncodingRule(o.nameIds[i]);
 					int ruleId = searchRouteEncodingRule(tp.getTag(), null);
 					if(ruleId != -1) {
 						rdo.nameIds[i] = ruleId;
@@ -521,7 +551,7 @@ public class BinaryMapRouteReaderAdapter {
 						rdo.pointNameTypes[i] = new int[o.pointNameTypes[i].length];
 						// rdo.pointNames[i] = new String[o.pointNameTypes[i].length];
 						for (int j = 0; j < o.pointNameTypes[i].length; j++) {
-							RouteTypeRule tp = o.region.routeEncodingRules.get(o.pointNameTypes[i][j]);
+							RouteTypeRule tp = o.region.quickGetEncodingRule(o.pointNameTypes[i][j]);
 							int ruleId = searchRouteEncodingRule(tp.getTag(), null);
 							if(ruleId != -1) {
 								rdo.pointNameTypes[i][j] = ruleId;
@@ -539,7 +569,7 @@ public class BinaryMapRouteReaderAdapter {
 		}
 
 
-		public int findOrCreateRouteType(String tag, String value) {
+		public synchronized int findOrCreateRouteType(String tag, String value) {
 			int ruleId = searchRouteEncodingRule(tag, value);
 			if(ruleId == -1) {
 				ruleId = routeEncodingRules.size() ;
@@ -576,7 +606,6 @@ public class BinaryMapRouteReaderAdapter {
 		public int bottom;
 		public int shiftToData;
 		public List<RouteSubregion> subregions = null;
-		public List<RouteDataObject> dataObjects = null;
 
 		public int getEstimatedSize(){
 			int shallow = 7 * INT_SIZE + 4*3;
@@ -795,9 +824,10 @@ public class BinaryMapRouteReaderAdapter {
 			}
 		}
 	}
-	private void readRouteTreeData(RouteSubregion routeTree,  TLongArrayList idTables,
+	private List<RouteDataObject> readRouteTreeData(RouteSubregion routeTree,  TLongArrayList idTables,
 			TLongObjectHashMap<RestrictionInfo> restrictions) throws IOException {
-		routeTree.dataObjects = new ArrayList<RouteDataObject>();
+		// objects are not stored in shared route tree, so several readers could load same subregion concurrently
+		List<RouteDataObject> dataObjects = new ArrayList<RouteDataObject>();
 		idTables.clear();
 		restrictions.clear();
 		List<String> stringTable = null;
@@ -810,7 +840,7 @@ public class BinaryMapRouteReaderAdapter {
 				while (it.hasNext()) {
 					it.advance();
 					int from = (int) it.key();
-					RouteDataObject fromr = routeTree.dataObjects.get(from);
+					RouteDataObject fromr = dataObjects.get(from);
 					fromr.restrictions = new long[it.value().length()];
 					RestrictionInfo val = it.value();
 					for (int k = 0; k < fromr.restrictions.length; k++) {
@@ -825,7 +855,7 @@ public class BinaryMapRouteReaderAdapter {
 					}
 //					fromr.restrictionsVia = new 
 				}
-				for (RouteDataObject o : routeTree.dataObjects) {
+				for (RouteDataObject o : dataObjects) {
 					if (o != null) {
 						if (o.id < idTables.size()) {
 							o.id = idTables.get((int) o.id);
@@ -847,15 +877,15 @@ public class BinaryMapRouteReaderAdapter {
 						}
 					}
 				}
-				return;
+				return dataObjects;
 			case RouteDataBlock.DATAOBJECTS_FIELD_NUMBER :
 				int length = codedIS.readRawVarint32();
 				int oldLimit = codedIS.pushLimit(length);
 				RouteDataObject obj = readRouteDataObject(routeTree.routeReg, routeTree.left, routeTree.top);
-				while(obj.id >= routeTree.dataObjects.size()) {
-					routeTree.dataObjects.add(null);
+				while(obj.id >= dataObjects.size()) {
+					dataObjects.add(null);
 				}
-				routeTree.dataObjects.set((int) obj.id,obj);
+				dataObjects.set((int) obj.id,obj);
 				codedIS.popLimit(oldLimit);
 				break;
 			case RouteDataBlock.IDTABLE_FIELD_NUMBER :
@@ -1033,11 +1063,13 @@ public class BinaryMapRouteReaderAdapter {
 	}
 
 	public void initRouteRegion(RouteRegion routeReg) throws IOException, InvalidProtocolBufferException {
-		if (routeReg.routeEncodingRules.isEmpty()) {
-			codedIS.seek(routeReg.filePointer);
-			int oldLimit = codedIS.pushLimit(routeReg.length);
-			readRouteIndex(routeReg);
-			codedIS.popLimit(oldLimit);
+		synchronized (routeReg) {
+			if (routeReg.routeEncodingRules.isEmpty()) {
+				codedIS.seek(routeReg.filePointer);
+				int oldLimit = codedIS.pushLimit(routeReg.length);
+				readRouteIndex(routeReg);
+				codedIS.popLimit(oldLimit);
+			}
 		}
 	}
 
@@ -1045,15 +1077,11 @@ public class BinaryMapRouteReaderAdapter {
 	public List<RouteDataObject> loadRouteRegionData(RouteSubregion rs) throws IOException {
 		TLongArrayList idMap = new TLongArrayList();
 		TLongObjectHashMap<RestrictionInfo> restrictionMap = new TLongObjectHashMap<RestrictionInfo>();
-		if (rs.dataObjects == null) {
-			codedIS.seek(rs.filePointer + rs.shiftToData);
-			int limit = codedIS.readRawVarint32();
-			int oldLimit = codedIS.pushLimit(limit);
-			readRouteTreeData(rs, idMap, restrictionMap);
-			codedIS.popLimit(oldLimit);
-		}
-		List<RouteDataObject> res = rs.dataObjects;
-		rs.dataObjects = null;
+		codedIS.seek(rs.filePointer + rs.shiftToData);
+		int limit = codedIS.readRawVarint32();
+		int oldLimit = codedIS.pushLimit(limit);
+		List<RouteDataObject> res = readRouteTreeData(rs, idMap, restrictionMap);
+		codedIS.popLimit(oldLimit);
 		return res;
 	}
 	
@@ -1069,20 +1097,28 @@ public class BinaryMapRouteReaderAdapter {
 		TLongArrayList idMap = new TLongArrayList();
 		TLongObjectHashMap<RestrictionInfo> restrictionMap = new TLongObjectHashMap<RestrictionInfo>();
 		for (RouteSubregion rs : toLoad) {
-			if (rs.dataObjects == null) {
-				codedIS.seek(rs.filePointer + rs.shiftToData);
-				int limit = codedIS.readRawVarint32();
-				int oldLimit = codedIS.pushLimit(limit);
-				readRouteTreeData(rs, idMap, restrictionMap);
-				codedIS.popLimit(oldLimit);
-			}
-			for (RouteDataObject ro : rs.dataObjects) {
+			codedIS.seek(rs.filePointer + rs.shiftToData);
+			int limit = codedIS.readRawVarint32();
+			int oldLimit = codedIS.pushLimit(limit);
+			List<RouteDataObject> dataObjects = readRouteTreeData(rs, idMap, restrictionMap);
+			codedIS.popLimit(oldLimit);
+			for (RouteDataObject ro : dataObjects) {
 				if (ro != null) {
 					matcher.publish(ro);
 				}
 			}
-			// free objects
-			rs.dataObjects = null;
+		}
+	}
+
+	private void initRouteTree(SearchRequest<?> req, RouteSubregion rs) throws IOException {
+		// subtree could be shared between readers of the same file
+		synchronized (rs) {
+			if (rs.subregions == null) {
+				codedIS.seek(rs.filePointer);
+				int old = codedIS.pushLimit(rs.length);
+				readRouteTree(rs, null, req.contains(rs.left, rs.top, rs.right, rs.bottom) ? -1 : 1, false);
+				codedIS.popLimit(old);
+			}
 		}
 	}
 
@@ -1090,12 +1126,7 @@ public class BinaryMapRouteReaderAdapter {
 			List<RouteSubregion> toLoad) throws IOException {
 		for (RouteSubregion rs : list) {
 			if (req.intersects(rs.left, rs.top, rs.right, rs.bottom)) {
-				if (rs.subregions == null) {
-					codedIS.seek(rs.filePointer);
-					int old = codedIS.pushLimit(rs.length);
-					readRouteTree(rs, null, req.contains(rs.left, rs.top, rs.right, rs.bottom) ? -1 : 1, false);
-					codedIS.popLimit(old);
-				}
+				initRouteTree(req, rs);
 				searchRouteRegionTree(req, rs.subregions, toLoad);
 
 				if (rs.shiftToData != 0) {
@@ -1111,12 +1142,7 @@ public class BinaryMapRouteReaderAdapter {
 			List<RouteSubregion> toLoad) throws IOException {
 		for (RouteSubregion rs : list) {
 			if (req.intersects(rs.left, rs.top, rs.right, rs.bottom)) {
-				if (rs.subregions == null) {
-					codedIS.seek(rs.filePointer);
-					int old = codedIS.pushLimit(rs.length);
-					readRouteTree(rs, null, req.contains(rs.left, rs.top, rs.right, rs.bottom) ? -1 : 1, false);
-					codedIS.popLimit(old);
-				}
+				initRouteTree(req, rs);
 				searchRouteRegionTree(req, rs.subregions, toLoad);
 
 				if (rs.shiftToData != 0) {
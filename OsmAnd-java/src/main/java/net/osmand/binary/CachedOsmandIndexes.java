@@ -28,6 +28,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class CachedOsmandIndexes {
 
@@ -35,9 +42,108 @@ public class CachedOsmandIndexes {
 	private OsmAndStoredIndex.Builder storedIndexBuilder;
 	private Log log = PlatformUtil.getLog(CachedOsmandIndexes.class);
 	private boolean hasChanged = true;
+	private NamePrefixIndex namePrefixIndex;
+	private TransportTransferIndex transportTransferIndex;
+	// builds indexes of registered files in background one by one
+	private ThreadPoolExecutor indexBuilder;
 
 	public static final int VERSION = 2;
 
+	public NamePrefixIndex getNamePrefixIndex() {
+		return namePrefixIndex;
+	}
+
+	/**
+	 * Name prefix index is built in background for files registered by {@link #getReader(File, boolean)}
+	 * (if it doesn't have them yet) and is used by these readers for search by name
+	 */
+	public void setNamePrefixIndex(NamePrefixIndex namePrefixIndex) {
+		this.namePrefixIndex = namePrefixIndex;
+	}
+
+	public TransportTransferIndex getTransportTransferIndex() {
+		return transportTransferIndex;
+	}
+
+	/**
+	 * Transfer index is built in background for transport sections of files registered by
+	 * {@link #getReader(File, boolean)} (if it doesn't have them yet) and is used by transport routing
+	 * instead of searching stops around
+	 */
+	public void setTransportTransferIndex(TransportTransferIndex transportTransferIndex) {
+		this.transportTransferIndex = transportTransferIndex;
+	}
+
+	private synchronized ThreadPoolExecutor getIndexBuilder() {
+		if (indexBuilder == null) {
+			indexBuilder = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Build indexes");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			indexBuilder.allowCoreThreadTimeOut(true);
+		}
+		return indexBuilder;
+	}
+
+	/**
+	 * Waits until indexes of files registered so far are built (i.e. before writing them)
+	 * @return false if timeout elapsed
+	 */
+	public boolean waitForIndexes(long timeout, TimeUnit unit) throws InterruptedException {
+		Future<?> f = getIndexBuilder().submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+		try {
+			f.get(timeout, unit);
+		} catch (ExecutionException e) {
+			// not possible
+		} catch (TimeoutException e) {
+			return false;
+		}
+		return true;
+	}
+
+	private void buildIndexes(final BinaryMapIndexReader reader) {
+		getIndexBuilder().execute(new Runnable() {
+			@Override
+			public void run() {
+				long time = System.currentTimeMillis();
+				RandomAccessFile raf = null;
+				try {
+					// own file handle, registered reader is used meanwhile
+					raf = new RandomAccessFile(reader.getFile(), "r");
+					BinaryMapIndexReader r = new BinaryMapIndexReader(raf, reader);
+					if (namePrefixIndex != null && !namePrefixIndex.containsFile(r)) {
+						namePrefixIndex.addFile(r);
+					}
+					if (transportTransferIndex != null && !r.getTransportIndexes().isEmpty()
+							&& !transportTransferIndex.containsFile(r)) {
+						transportTransferIndex.addFile(r);
+					}
+					log.info("Indexes of " + reader.getFile().getName() + " are built in "
+							+ (System.currentTimeMillis() - time) + " ms");
+				} catch (IOException e) {
+					log.error("Indexes of " + reader.getFile().getName() + " are not built", e);
+				} finally {
+					if (raf != null) {
+						try {
+							raf.close();
+						} catch (IOException e) {
+							log.error(e.getMessage(), e);
+						}
+					}
+				}
+			}
+		});
+	}
+
 	public void addToCache(BinaryMapIndexReader reader, File f) {
 		hasChanged = true;
 		if (storedIndexBuilder == null) {
@@ -198,6 +304,18 @@ public class CachedOsmandIndexes {
 		} else {
 			reader = initFileIndex(found, mf, f);
 		}
+		boolean buildIndexes = false;
+		if (namePrefixIndex != null) {
+			buildIndexes = !namePrefixIndex.containsFile(reader);
+			reader.setNamePrefixIndex(namePrefixIndex);
+		}
+		if (transportTransferIndex != null && !reader.getTransportIndexes().isEmpty()) {
+			buildIndexes |= !transportTransferIndex.containsFile(reader);
+			reader.setTransportTransferIndex(transportTransferIndex);
+		}
+		if (buildIndexes) {
+			buildIndexes(reader);
+		}
 		return reader;
 	}
 
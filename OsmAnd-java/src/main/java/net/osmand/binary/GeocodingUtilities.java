@@ -14,6 +14,7 @@ import net.osmand.router.BinaryRoutePlanner;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
 import net.osmand.router.RoutePlannerFrontEnd;
 import net.osmand.router.RoutingContext;
+import net.osmand.router.RoutingContextFactory;
 import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
 
@@ -22,14 +23,22 @@ import org.apache.commons.logging.Log;
 import java.io.IOException;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gnu.trove.set.hash.TLongHashSet;
 
@@ -49,6 +58,11 @@ public class GeocodingUtilities {
 	public static final float THRESHOLD_MULTIPLIER_SKIP_BUILDINGS_AFTER = 1.5f;
 	public static final float DISTANCE_BUILDING_PROXIMITY = 100;
 
+	// points of batch search are grouped by tiles of this zoom (~2.5 km), address candidates are shared inside group
+	public static final int BATCH_GROUP_ZOOM = 14;
+	// z-order of points is calculated on tiles of this zoom
+	private static final int BATCH_ORDER_ZOOM = 16;
+
 
 	public static final Comparator<GeocodingResult> DISTANCE_COMPARATOR = new Comparator<GeocodingResult>() {
 
@@ -141,12 +155,190 @@ public class GeocodingUtilities {
 	}
 
 
+	public static class BatchGeocodingResult {
+		// index of point in the input list
+		public final int index;
+		public final LatLon point;
+		// sorted by distance (best first), empty if nothing was found
+		public final List<GeocodingResult> results;
+
+		public BatchGeocodingResult(int index, LatLon point, List<GeocodingResult> results) {
+			this.index = index;
+			this.point = point;
+			this.results = results;
+		}
+	}
+
+	// streets found by name and preloaded buildings, shared by points of one tile group
+	private static class AddressCache {
+		private final LatLon center;
+		private final int radius;
+		private final Map<BinaryMapIndexReader, Map<String, List<Street>>> streets = new HashMap<BinaryMapIndexReader, Map<String, List<Street>>>();
+		private final Set<Street> preloadedStreets = Collections.newSetFromMap(new IdentityHashMap<Street, Boolean>());
+
+		AddressCache(LatLon center, int radius) {
+			this.center = center;
+			this.radius = radius;
+		}
+	}
+
+	/**
+	 * Reverse geocoding of many points (same as {@link #reverseGeocodingSearch(RoutingContext, double, double, boolean)}
+	 * followed by justification and filtering of duplicates for every point).
+	 * Points are sorted in z-order and split into tile groups, so neighbor points share loaded route tiles,
+	 * streets and buildings. Groups are processed by several threads, each with own routing context
+	 * (factory should create contexts with own readers of address index).
+	 * Results are published as soon as point is processed (not in order of input, publish is synchronized).
+	 */
+	public void reverseGeocodingSearch(List<LatLon> points, final RoutingContextFactory factory,
+			final boolean allowEmptyNames, int threads, final ResultMatcher<BatchGeocodingResult> result)
+			throws IOException {
+		// z-order in high bits, index of point in low bits
+		final long[] order = new long[points.size()];
+		for (int i = 0; i < order.length; i++) {
+			LatLon l = points.get(i);
+			int shift = 31 - BATCH_ORDER_ZOOM;
+			int x = MapUtils.get31TileNumberX(l.getLongitude()) >>> shift;
+			int y = MapUtils.get31TileNumberY(l.getLatitude()) >>> shift;
+			order[i] = (interleaveBits(x, y) << 32) | i;
+		}
+		Arrays.sort(order);
+		final List<LatLon> input = points;
+		final List<int[]> groups = new ArrayList<int[]>();
+		int groupShift = 32 + 2 * (BATCH_ORDER_ZOOM - BATCH_GROUP_ZOOM);
+		for (int i = 0; i < order.length; i++) {
+			if (i == 0 || (order[i] >>> groupShift) != (order[i - 1] >>> groupShift)) {
+				groups.add(new int[] { i, i + 1 });
+			} else {
+				groups.get(groups.size() - 1)[1] = i + 1;
+			}
+		}
+		final AtomicInteger nextGroup = new AtomicInteger();
+		Callable<Void> worker = new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				RoutingContext ctx = factory.createRoutingContext();
+				try {
+					int g;
+					while ((g = nextGroup.getAndIncrement()) < groups.size()) {
+						int[] group = groups.get(g);
+						LatLon first = input.get((int) order[group[0]]);
+						AddressCache cache = createGroupCache(first);
+						for (int i = group[0]; i < group[1]; i++) {
+							if (result.isCancelled()) {
+								return null;
+							}
+							int index = (int) order[i];
+							LatLon point = input.get(index);
+							List<GeocodingResult> res = reverseGeocodingPoint(ctx, point, allowEmptyNames, cache, result);
+							synchronized (result) {
+								result.publish(new BatchGeocodingResult(index, point, res));
+							}
+						}
+					}
+				} finally {
+					ctx.unloadAllData();
+				}
+				return null;
+			}
+		};
+		threads = Math.max(1, Math.min(threads, groups.size()));
+		if (threads <= 1) {
+			try {
+				worker.call();
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(worker));
+			}
+			for (Future<Void> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private AddressCache createGroupCache(LatLon point) {
+		double tx = Math.floor(MapUtils.getTileNumberX(BATCH_GROUP_ZOOM, point.getLongitude()));
+		double ty = Math.floor(MapUtils.getTileNumberY(BATCH_GROUP_ZOOM, point.getLatitude()));
+		LatLon center = new LatLon(MapUtils.getLatitudeFromTile(BATCH_GROUP_ZOOM, ty + 0.5),
+				MapUtils.getLongitudeFromTile(BATCH_GROUP_ZOOM, tx + 0.5));
+		double halfDiagonal = MapUtils.getDistance(center, MapUtils.getLatitudeFromTile(BATCH_GROUP_ZOOM, ty),
+				MapUtils.getLongitudeFromTile(BATCH_GROUP_ZOOM, tx));
+		// streets are searched around every point of group
+		return new AddressCache(center, (int) Math.ceil(DISTANCE_STREET_NAME_PROXIMITY_BY_NAME + halfDiagonal));
+	}
+
+	private List<GeocodingResult> reverseGeocodingPoint(RoutingContext ctx, LatLon point, boolean allowEmptyNames,
+			AddressCache cache, ResultMatcher<?> cancel) throws IOException {
+		List<GeocodingResult> roads = reverseGeocodingSearch(ctx, point.getLatitude(), point.getLongitude(),
+				allowEmptyNames);
+		List<GeocodingResult> complete = new ArrayList<GeocodingResult>();
+		double minBuildingDistance = 0;
+		for (GeocodingResult r : roads) {
+			BinaryMapIndexReader reader = ctx.getReader(r.point.getRoad().region);
+			if (reader == null) {
+				complete.add(r);
+				continue;
+			}
+			if (cancel.isCancelled()) {
+				break;
+			}
+			List<GeocodingResult> justified = justifyReverseGeocodingSearch(r, reader, minBuildingDistance, cancel,
+					cache);
+			if (!justified.isEmpty()) {
+				double md = justified.get(0).getDistance();
+				if (minBuildingDistance == 0) {
+					minBuildingDistance = md;
+				} else {
+					minBuildingDistance = Math.min(md, minBuildingDistance);
+				}
+				complete.addAll(justified);
+			}
+		}
+		filterDuplicateRegionResults(complete);
+		return complete;
+	}
+
+	// z-order of 2 16-bit numbers
+	private static long interleaveBits(int x, int y) {
+		return spreadBits(x) | (spreadBits(y) << 1);
+	}
+
+	private static long spreadBits(int v) {
+		long x = v & 0xFFFFL;
+		x = (x | (x << 8)) & 0x00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0FL;
+		x = (x | (x << 2)) & 0x33333333L;
+		x = (x | (x << 1)) & 0x55555555L;
+		return x;
+	}
+
 	public List<GeocodingResult> reverseGeocodingSearch(RoutingContext ctx, double lat, double lon, boolean allowEmptyNames) throws IOException {
 		RoutePlannerFrontEnd rp = new RoutePlannerFrontEnd();
 		List<GeocodingResult> lst = new ArrayList<GeocodingUtilities.GeocodingResult>();
 		List<RouteSegmentPoint> listR = new ArrayList<BinaryRoutePlanner.RouteSegmentPoint>();
 		// we allow duplications to search in both files for boundary regions 
-		rp.findRouteSegment(lat, lon, ctx, listR, false, true);
+		// roads are checked up to the first one further than stop radius
+		rp.findRouteSegment(lat, lon, ctx, listR, false, true,
+				STOP_SEARCHING_STREET_WITHOUT_MULTIPLIER_RADIUS * STOP_SEARCHING_STREET_WITHOUT_MULTIPLIER_RADIUS, 1);
 		double distSquare = 0;
 		Map<String, List<RouteRegion>> streetNames = new HashMap<>();
 		for (RouteSegmentPoint p : listR) {
@@ -225,6 +417,11 @@ public class GeocodingUtilities {
 
 	public List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
 			double knownMinBuildingDistance, final ResultMatcher<GeocodingResult> result) throws IOException {
+		return justifyReverseGeocodingSearch(road, reader, knownMinBuildingDistance, result, null);
+	}
+
+	private List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
+			double knownMinBuildingDistance, final ResultMatcher<?> result, AddressCache cache) throws IOException {
 		// test address index search
 		final List<GeocodingResult> streetsList = new ArrayList<GeocodingResult>();
 		boolean addCommonWords = false;
@@ -233,47 +430,41 @@ public class GeocodingUtilities {
 			addCommonWords = true;
 			streetNamesUsed = prepareStreetName(road.streetName, addCommonWords);
 		}
-		final boolean addCommonWordsFinal = addCommonWords;
-		final List<String> streetNamesUsedFinal = streetNamesUsed;
-		if (streetNamesUsedFinal.size() > 0) {
-			log.info("Search street by name " + road.streetName + " " + streetNamesUsedFinal);
-			String mainWord = "";
-			for (int i = 0; i < streetNamesUsedFinal.size(); i++) {
-				String s = streetNamesUsedFinal.get(i);
-				if (s.length() > mainWord.length()) {
-					mainWord = s;
+		if (streetNamesUsed.size() > 0) {
+			List<Street> streets = null;
+			Map<String, List<Street>> cachedStreets = null;
+			String cacheKey = addCommonWords + " " + streetNamesUsed;
+			if (cache != null) {
+				cachedStreets = cache.streets.get(reader);
+				if (cachedStreets == null) {
+					cachedStreets = new HashMap<String, List<Street>>();
+					cache.streets.put(reader, cachedStreets);
+				}
+				streets = cachedStreets.get(cacheKey);
+			}
+			if (streets == null) {
+				if (cache != null) {
+					streets = searchStreetsByName(reader, road.streetName, streetNamesUsed, addCommonWords,
+							cache.center, cache.radius, result);
+					cachedStreets.put(cacheKey, streets);
+				} else {
+					streets = searchStreetsByName(reader, road.streetName, streetNamesUsed, addCommonWords,
+							road.getLocation(), DISTANCE_STREET_NAME_PROXIMITY_BY_NAME, result);
+				}
+			}
+			for (Street street : streets) {
+				double d = MapUtils.getDistance(street.getLocation(), road.searchPoint.getLatitude(),
+						road.searchPoint.getLongitude());
+				// double check to suport old format
+				if (d < DISTANCE_STREET_NAME_PROXIMITY_BY_NAME) {
+					GeocodingResult rs = new GeocodingResult(road);
+					rs.street = street;
+					// set connection point to sort
+					rs.connectionPoint = rs.street.getLocation();
+					rs.city = rs.street.getCity();
+					streetsList.add(rs);
 				}
 			}
-			SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(
-					new ResultMatcher<MapObject>() {
-						@Override
-						public boolean publish(MapObject object) {
-							if (object instanceof Street
-									&& prepareStreetName(object.getName(), addCommonWordsFinal).equals(streetNamesUsedFinal)) {
-								double d = MapUtils.getDistance(object.getLocation(), road.searchPoint.getLatitude(),
-										road.searchPoint.getLongitude());
-								// double check to suport old format
-								if (d < DISTANCE_STREET_NAME_PROXIMITY_BY_NAME) {
-									GeocodingResult rs = new GeocodingResult(road);
-									rs.street = (Street) object;
-									// set connection point to sort
-									rs.connectionPoint = rs.street.getLocation();
-									rs.city = rs.street.getCity();
-									streetsList.add(rs);
-									return true;
-								}
-								return false;
-							}
-							return false;
-						}
-
-						@Override
-						public boolean isCancelled() {
-							return result != null && result.isCancelled();
-						}
-					}, mainWord, StringMatcherMode.CHECK_EQUALS_FROM_SPACE);
-			req.setBBoxRadius(road.getLocation().getLatitude(), road.getLocation().getLongitude(), DISTANCE_STREET_NAME_PROXIMITY_BY_NAME);
-			reader.searchAddressDataByName(req);
 		}
 
 		final List<GeocodingResult> res = new ArrayList<GeocodingResult>();
@@ -291,7 +482,7 @@ public class GeocodingUtilities {
 					continue;
 				}
 				street.connectionPoint = road.connectionPoint;
-				final List<GeocodingResult> streetBuildings = loadStreetBuildings(road, reader, street);
+				final List<GeocodingResult> streetBuildings = loadStreetBuildings(road, reader, street, cache);
 				Collections.sort(streetBuildings, DISTANCE_COMPARATOR);
 				if (streetBuildings.size() > 0) {
 					Iterator<GeocodingResult> it = streetBuildings.iterator();
@@ -361,11 +552,47 @@ public class GeocodingUtilities {
 		return 0;
 	}
 
+	private List<Street> searchStreetsByName(BinaryMapIndexReader reader, String streetName,
+			final List<String> streetNamesUsed, final boolean addCommonWords, LatLon location, int radius,
+			final ResultMatcher<?> result) throws IOException {
+		final List<Street> streets = new ArrayList<Street>();
+		log.info("Search street by name " + streetName + " " + streetNamesUsed);
+		String mainWord = "";
+		for (int i = 0; i < streetNamesUsed.size(); i++) {
+			String s = streetNamesUsed.get(i);
+			if (s.length() > mainWord.length()) {
+				mainWord = s;
+			}
+		}
+		SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(
+				new ResultMatcher<MapObject>() {
+					@Override
+					public boolean publish(MapObject object) {
+						if (object instanceof Street
+								&& prepareStreetName(object.getName(), addCommonWords).equals(streetNamesUsed)) {
+							streets.add((Street) object);
+							return true;
+						}
+						return false;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return result != null && result.isCancelled();
+					}
+				}, mainWord, StringMatcherMode.CHECK_EQUALS_FROM_SPACE);
+		req.setBBoxRadius(location.getLatitude(), location.getLongitude(), radius);
+		reader.searchAddressDataByName(req);
+		return streets;
+	}
+
 	private List<GeocodingResult> loadStreetBuildings(final GeocodingResult road, BinaryMapIndexReader reader,
-			GeocodingResult street) throws IOException {
+			GeocodingResult street, AddressCache cache) throws IOException {
 		final List<GeocodingResult> streetBuildings = new ArrayList<GeocodingResult>();
-		reader.preloadBuildings(street.street, null);
-		log.info("Preload buildings " + street.street.getName() + " " + street.city.getName() + " " + street.street.getId());
+		if (cache == null || cache.preloadedStreets.add(street.street)) {
+			reader.preloadBuildings(street.street, null);
+			log.info("Preload buildings " + street.street.getName() + " " + street.city.getName() + " " + street.street.getId());
+		}
 		for (Building b : street.street.getBuildings()) {
 			if (b.getLatLon2() != null) {
 				double slat = b.getLocation().getLatitude();
@@ -0,0 +1,71 @@
+package net.osmand.binary;
+
+import net.osmand.PlatformUtil;
+
+import org.apache.commons.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps one read-only memory mapping per obf file, so all readers opened for the same file
+ * (see {@link BinaryMapIndexReader#BinaryMapIndexReader(RandomAccessFile, BinaryMapIndexReader)})
+ * decode from the same pages. Mapping is released by GC when no reader references it anymore.
+ */
+public class MappedObfFiles {
+
+	private static final Log log = PlatformUtil.getLog(MappedObfFiles.class);
+
+	private static final Map<String, WeakReference<MappedByteBuffer>> mappings =
+			new HashMap<String, WeakReference<MappedByteBuffer>>();
+
+	/**
+	 * @return shared mapping of the file or null if file can't be mapped (> 2 GB or mapping failed)
+	 */
+	public static ByteBuffer getMapping(File file, RandomAccessFile raf) {
+		try {
+			long length = raf.length();
+			if (length > Integer.MAX_VALUE) {
+				return null;
+			}
+			String key = file.getAbsolutePath() + "_" + length + "_" + file.lastModified();
+			synchronized (mappings) {
+				WeakReference<MappedByteBuffer> ref = mappings.get(key);
+				MappedByteBuffer buf = ref == null ? null : ref.get();
+				if (buf == null) {
+					buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+					cleanUp();
+					mappings.put(key, new WeakReference<MappedByteBuffer>(buf));
+				}
+				return buf;
+			}
+		} catch (IOException e) {
+			log.warn("Failed to map file " + file.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	public static int getMappedFilesCount() {
+		synchronized (mappings) {
+			cleanUp();
+			return mappings.size();
+		}
+	}
+
+	private static void cleanUp() {
+		Iterator<WeakReference<MappedByteBuffer>> it = mappings.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().get() == null) {
+				it.remove();
+			}
+		}
+	}
+}
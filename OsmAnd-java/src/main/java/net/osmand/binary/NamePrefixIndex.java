@@ -0,0 +1,452 @@
+package net.osmand.binary;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * In memory index of name prefixes of poi and address sections of all registered files.
+ * For each key of the name index table it keeps already decoded atoms of name index data,
+ * so search by name doesn't decode name index of every file on each request.
+ * Keys are normalized (lower case without diacritics) and stored sorted per region, so
+ * keys starting with query form a continuous range found by binary search.
+ * <p>
+ * Memory is limited by total number of atoms (20 bytes each), regions which don't fit are searched in file.
+ * Index is built in background when file is registered ({@link CachedOsmandIndexes#getReader(File, boolean)})
+ * and persisted with {@link #writeToFile(File)} / {@link #readFromFile(File)}. Files are identified by name,
+ * size and creation date of obf, files which were not registered since index was read are not written.
+ */
+public class NamePrefixIndex {
+
+	public static final int VERSION = 2;
+	public static final int DEFAULT_MAX_ATOMS = 1 << 20;
+	private static final Log log = PlatformUtil.getLog(NamePrefixIndex.class);
+
+	private final Map<String, FileEntry> files = new ConcurrentHashMap<String, FileEntry>();
+	private final int maxAtoms;
+	private int atomsCount;
+	private volatile boolean hasChanged;
+
+	public NamePrefixIndex() {
+		this(DEFAULT_MAX_ATOMS);
+	}
+
+	/**
+	 * @param maxAtoms maximum number of atoms of all files kept in memory
+	 */
+	public NamePrefixIndex(int maxAtoms) {
+		this.maxAtoms = maxAtoms;
+	}
+
+	public boolean containsFile(BinaryMapIndexReader reader) {
+		return getFileEntry(reader) != null;
+	}
+
+	public void removeFile(File f) {
+		FileEntry e = files.remove(f.getName());
+		if (e != null) {
+			releaseAtoms(e.atomsCount);
+			hasChanged = true;
+		}
+	}
+
+	public int getFilesCount() {
+		return files.size();
+	}
+
+	synchronized int getAtomsCount() {
+		return atomsCount;
+	}
+
+	private synchronized boolean reserveAtoms(int count) {
+		if (atomsCount + count > maxAtoms) {
+			return false;
+		}
+		atomsCount += count;
+		return true;
+	}
+
+	private synchronized void releaseAtoms(int count) {
+		atomsCount -= count;
+	}
+
+	/**
+	 * Reads name index tables of all poi and address regions of the file
+	 */
+	public void addFile(BinaryMapIndexReader reader) throws IOException {
+		long time = System.currentTimeMillis();
+		File f = reader.getFile();
+		FileEntry e = new FileEntry(f.getName(), f.length(), reader.getDateCreated());
+		e.used = true;
+		FileEntry old = files.remove(e.fileName);
+		if (old != null) {
+			releaseAtoms(old.atomsCount);
+		}
+		for (PoiRegion reg : reader.getPoiIndexes()) {
+			PrefixTableBuilder builder = new PrefixTableBuilder();
+			reader.buildPoiNamePrefixTable(reg, builder);
+			e.putTable(e.poiTables, reg.filePointer, builder.build());
+		}
+		for (AddressRegion reg : reader.getAddressIndexes()) {
+			if (reg.indexNameOffset != -1) {
+				PrefixTableBuilder builder = new PrefixTableBuilder();
+				reader.buildAddressNamePrefixTable(reg, builder);
+				e.putTable(e.addressTables, reg.indexNameOffset, builder.build());
+			}
+		}
+		files.put(e.fileName, e);
+		hasChanged = true;
+		if (log.isDebugEnabled()) {
+			log.debug("Name prefix index of " + f.getName() + " is built in " + (System.currentTimeMillis() - time) + "ms");
+		}
+	}
+
+	PrefixTable getPoiTable(BinaryMapIndexReader reader, PoiRegion reg) {
+		FileEntry e = getFileEntry(reader);
+		return e == null ? null : e.poiTables.get(reg.filePointer);
+	}
+
+	PrefixTable getAddressTable(BinaryMapIndexReader reader, AddressRegion reg) {
+		FileEntry e = getFileEntry(reader);
+		return e == null ? null : e.addressTables.get(reg.indexNameOffset);
+	}
+
+	private FileEntry getFileEntry(BinaryMapIndexReader reader) {
+		File file = reader.getFile();
+		if (file == null) {
+			return null;
+		}
+		FileEntry e = files.get(file.getName());
+		if (e == null || e.size != file.length() || e.dateCreated != reader.getDateCreated()) {
+			return null;
+		}
+		e.used = true;
+		return e;
+	}
+
+	/**
+	 * Normalized form of key used to compare names as primary collator does (case and diacritics are ignored)
+	 */
+	public static String normalize(String s) {
+		String l = s.toLowerCase(Locale.ROOT);
+		if (l.indexOf('ß') != -1) {
+			l = l.replace("ß", "ss");
+		}
+		boolean ascii = true;
+		for (int i = 0; i < l.length() && ascii; i++) {
+			ascii = l.charAt(i) < 128;
+		}
+		if (ascii) {
+			return l;
+		}
+		String d = Normalizer.normalize(l, Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(d.length());
+		for (int i = 0; i < d.length(); i++) {
+			char c = d.charAt(i);
+			if (Character.getType(c) != Character.NON_SPACING_MARK) {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	public void readFromFile(File f) throws IOException {
+		long time = System.currentTimeMillis();
+		DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			if (is.readInt() != VERSION) {
+				return;
+			}
+			int count = is.readInt();
+			for (int i = 0; i < count; i++) {
+				FileEntry e = new FileEntry(is.readUTF(), is.readLong(), is.readLong());
+				readTables(is, e, e.poiTables);
+				readTables(is, e, e.addressTables);
+				FileEntry old = files.put(e.fileName, e);
+				if (old != null) {
+					releaseAtoms(old.atomsCount);
+				}
+			}
+			hasChanged = false;
+		} finally {
+			is.close();
+		}
+		log.info("Initialize name prefix index " + (System.currentTimeMillis() - time));
+	}
+
+	public void writeToFile(File f) throws IOException {
+		// files removed or not used anymore
+		for (FileEntry e : files.values()) {
+			if (!e.used && files.remove(e.fileName, e)) {
+				releaseAtoms(e.atomsCount);
+				hasChanged = true;
+			}
+		}
+		if (!hasChanged) {
+			return;
+		}
+		DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			os.writeInt(VERSION);
+			FileEntry[] entries = files.values().toArray(new FileEntry[0]);
+			os.writeInt(entries.length);
+			for (FileEntry e : entries) {
+				os.writeUTF(e.fileName);
+				os.writeLong(e.size);
+				os.writeLong(e.dateCreated);
+				writeTables(os, e.poiTables);
+				writeTables(os, e.addressTables);
+			}
+		} finally {
+			os.close();
+		}
+		hasChanged = false;
+	}
+
+	private void readTables(DataInputStream is, FileEntry e, TIntObjectHashMap<PrefixTable> tables) throws IOException {
+		int count = is.readInt();
+		for (int i = 0; i < count; i++) {
+			int pointer = is.readInt();
+			e.putTable(tables, pointer, PrefixTable.read(is));
+		}
+	}
+
+	private static void writeTables(DataOutputStream os, TIntObjectHashMap<PrefixTable> tables) throws IOException {
+		os.writeInt(tables.size());
+		TIntObjectIterator<PrefixTable> it = tables.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			os.writeInt(it.key());
+			it.value().write(os);
+		}
+	}
+
+	private class FileEntry {
+		final String fileName;
+		final long size;
+		final long dateCreated;
+		// keyed by region file pointer (poi) or name index offset (address)
+		final TIntObjectHashMap<PrefixTable> poiTables = new TIntObjectHashMap<PrefixTable>();
+		final TIntObjectHashMap<PrefixTable> addressTables = new TIntObjectHashMap<PrefixTable>();
+		int atomsCount;
+		// file is registered since index was read
+		volatile boolean used;
+
+		FileEntry(String fileName, long size, long dateCreated) {
+			this.fileName = fileName;
+			this.size = size;
+			this.dateCreated = dateCreated;
+		}
+
+		void putTable(TIntObjectHashMap<PrefixTable> tables, int pointer, PrefixTable table) {
+			if (reserveAtoms(table.getAtomsCount())) {
+				atomsCount += table.getAtomsCount();
+				tables.put(pointer, table);
+			} else {
+				log.info("Name prefix index of " + fileName + " is limited by " + maxAtoms + " atoms");
+			}
+		}
+	}
+
+	/**
+	 * Sorted normalized keys of one region with atoms of each key in primitive arrays.
+	 * Poi atom: position (x31, y31) and shift to poi box from region start.
+	 * Address atom: object type, position (-1 if not specified), offset of object and offset of its city.
+	 */
+	static class PrefixTable {
+		final String[] keys;
+		// atoms of key i are [offsets[i], offsets[i + 1])
+		final int[] offsets;
+		final int[] types;
+		final int[] x31;
+		final int[] y31;
+		final int[] shifts;
+		final int[] containers;
+
+		private PrefixTable(String[] keys, int[] offsets, int[] types, int[] x31, int[] y31, int[] shifts, int[] containers) {
+			this.keys = keys;
+			this.offsets = offsets;
+			this.types = types;
+			this.x31 = x31;
+			this.y31 = y31;
+			this.shifts = shifts;
+			this.containers = containers;
+		}
+
+		/**
+		 * Matches keys the same way as name index table of the file is searched: keys starting with query
+		 * or (if there are no such keys) the longest key which is prefix of the query.
+		 * @return range of atoms {start, end}
+		 */
+		int[] findAtoms(String query) {
+			String q = normalize(query);
+			int start = lowerBound(q);
+			if (start < keys.length && keys[start].startsWith(q)) {
+				int end = lowerBound(q + Character.MAX_VALUE);
+				return new int[] { offsets[start], offsets[end] };
+			}
+			for (int len = q.length() - 1; len > 0; len--) {
+				int k = Arrays.binarySearch(keys, q.substring(0, len));
+				if (k >= 0) {
+					return new int[] { offsets[k], offsets[k + 1] };
+				}
+			}
+			return new int[] { 0, 0 };
+		}
+
+		private int lowerBound(String q) {
+			int lo = 0;
+			int hi = keys.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (keys[mid].compareTo(q) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		int size() {
+			return keys.length;
+		}
+
+		int getAtomsCount() {
+			return shifts.length;
+		}
+
+		static PrefixTable read(DataInputStream is) throws IOException {
+			int count = is.readInt();
+			String[] keys = new String[count];
+			String prev = "";
+			for (int i = 0; i < count; i++) {
+				// keys are front coded
+				int common = is.readShort();
+				prev = prev.substring(0, common) + is.readUTF();
+				keys[i] = prev;
+			}
+			int[] offsets = readInts(is, count + 1);
+			int atoms = offsets[count];
+			return new PrefixTable(keys, offsets, readInts(is, atoms), readInts(is, atoms), readInts(is, atoms),
+					readInts(is, atoms), readInts(is, atoms));
+		}
+
+		void write(DataOutputStream os) throws IOException {
+			os.writeInt(keys.length);
+			String prev = "";
+			for (String k : keys) {
+				int common = 0;
+				while (common < prev.length() && common < k.length() && prev.charAt(common) == k.charAt(common)) {
+					common++;
+				}
+				os.writeShort(common);
+				os.writeUTF(k.substring(common));
+				prev = k;
+			}
+			writeInts(os, offsets);
+			writeInts(os, types);
+			writeInts(os, x31);
+			writeInts(os, y31);
+			writeInts(os, shifts);
+			writeInts(os, containers);
+		}
+
+		private static int[] readInts(DataInputStream is, int count) throws IOException {
+			int[] res = new int[count];
+			for (int i = 0; i < count; i++) {
+				res[i] = is.readInt();
+			}
+			return res;
+		}
+
+		private static void writeInts(DataOutputStream os, int[] ar) throws IOException {
+			for (int v : ar) {
+				os.writeInt(v);
+			}
+		}
+	}
+
+	/**
+	 * Collects keys and atoms while name index of region is read, keys equal after normalization are merged
+	 */
+	static class PrefixTableBuilder {
+		private static final int ATOM_SIZE = 5;
+		private final TreeMap<String, TIntArrayList> atoms = new TreeMap<String, TIntArrayList>();
+
+		void addKey(String key) {
+			getAtoms(key);
+		}
+
+		void addAtom(String key, int type, int x31, int y31, int shift, int container) {
+			TIntArrayList l = getAtoms(key);
+			l.add(type);
+			l.add(x31);
+			l.add(y31);
+			l.add(shift);
+			l.add(container);
+		}
+
+		private TIntArrayList getAtoms(String key) {
+			String k = normalize(key);
+			TIntArrayList l = atoms.get(k);
+			if (l == null) {
+				l = new TIntArrayList();
+				atoms.put(k, l);
+			}
+			return l;
+		}
+
+		PrefixTable build() {
+			int count = 0;
+			for (TIntArrayList l : atoms.values()) {
+				count += l.size() / ATOM_SIZE;
+			}
+			String[] keys = new String[atoms.size()];
+			int[] offsets = new int[keys.length + 1];
+			int[] types = new int[count];
+			int[] x31 = new int[count];
+			int[] y31 = new int[count];
+			int[] shifts = new int[count];
+			int[] containers = new int[count];
+			int i = 0;
+			int a = 0;
+			for (Entry<String, TIntArrayList> e : atoms.entrySet()) {
+				keys[i] = e.getKey();
+				TIntArrayList l = e.getValue();
+				for (int j = 0; j < l.size(); j += ATOM_SIZE) {
+					types[a] = l.get(j);
+					x31[a] = l.get(j + 1);
+					y31[a] = l.get(j + 2);
+					shifts[a] = l.get(j + 3);
+					containers[a] = l.get(j + 4);
+					a++;
+				}
+				offsets[++i] = a;
+			}
+			return new PrefixTable(keys, offsets, types, x31, y31, shifts, containers);
+		}
+	}
+}
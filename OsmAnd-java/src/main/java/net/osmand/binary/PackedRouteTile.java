@@ -0,0 +1,221 @@
+package net.osmand.binary;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+/**
+ * Compact storage of decoded route tile: coordinates, types and names of all roads are kept
+ * in few large primitive arrays (struct of arrays) indexed by offsets, instead of many small arrays per road.
+ * {@link RouteDataObject} is materialized on demand by {@link #get(int)},
+ * so long living tiles (i.e. in shared cache) have no per road object headers.
+ * Rarely present per point data (point types, point names) and restrictions are kept in arrays per road,
+ * per point arrays are copied on packing and on materializing, as they could be modified in place.
+ */
+public class PackedRouteTile {
+
+	private final RouteRegion region;
+	private final long[] ids;
+	// offsets of road i are [offsets[i], offsets[i + 1])
+	private final int[] pointOffsets;
+	private final int[] pointsX;
+	private final int[] pointsY;
+	private final int[] typeOffsets;
+	private final int[] types;
+	private final int[] nameIdOffsets;
+	private final int[] nameIds;
+	private final BitSet nullNameIds = new BitSet();
+	private final int[] nameOffsets;
+	private final int[] nameKeys;
+	private final String[] nameValues;
+	// sparse data, null for most of the roads
+	private final long[][] restrictions;
+	private final long[][] restrictionsVia;
+	private final int[][][] pointTypes;
+	private final String[][][] pointNames;
+	private final int[][][] pointNameTypes;
+
+	private PackedRouteTile(RouteRegion region, List<RouteDataObject> objects) {
+		this.region = region;
+		int size = objects.size();
+		ids = new long[size];
+		pointOffsets = new int[size + 1];
+		typeOffsets = new int[size + 1];
+		nameIdOffsets = new int[size + 1];
+		nameOffsets = new int[size + 1];
+		restrictions = new long[size][];
+		restrictionsVia = new long[size][];
+		pointTypes = new int[size][][];
+		pointNames = new String[size][][];
+		pointNameTypes = new int[size][][];
+		for (int i = 0; i < size; i++) {
+			RouteDataObject o = objects.get(i);
+			pointOffsets[i + 1] = pointOffsets[i] + o.pointsX.length;
+			typeOffsets[i + 1] = typeOffsets[i] + (o.types == null ? 0 : o.types.length);
+			nameIdOffsets[i + 1] = nameIdOffsets[i] + (o.nameIds == null ? 0 : o.nameIds.length);
+			nameOffsets[i + 1] = nameOffsets[i] + (o.names == null ? 0 : o.names.size());
+		}
+		pointsX = new int[pointOffsets[size]];
+		pointsY = new int[pointOffsets[size]];
+		types = new int[typeOffsets[size]];
+		nameIds = new int[nameIdOffsets[size]];
+		nameKeys = new int[nameOffsets[size]];
+		nameValues = new String[nameOffsets[size]];
+		for (int i = 0; i < size; i++) {
+			RouteDataObject o = objects.get(i);
+			ids[i] = o.id;
+			System.arraycopy(o.pointsX, 0, pointsX, pointOffsets[i], o.pointsX.length);
+			System.arraycopy(o.pointsY, 0, pointsY, pointOffsets[i], o.pointsY.length);
+			if (o.types != null) {
+				System.arraycopy(o.types, 0, types, typeOffsets[i], o.types.length);
+			}
+			if (o.nameIds == null) {
+				nullNameIds.set(i);
+			} else {
+				System.arraycopy(o.nameIds, 0, nameIds, nameIdOffsets[i], o.nameIds.length);
+			}
+			if (o.names != null) {
+				int k = nameOffsets[i];
+				TIntObjectIterator<String> it = o.names.iterator();
+				while (it.hasNext()) {
+					it.advance();
+					nameKeys[k] = it.key();
+					nameValues[k] = it.value();
+					k++;
+				}
+			}
+			restrictions[i] = o.restrictions;
+			restrictionsVia[i] = o.restrictionsVia;
+			// per point arrays could be modified in place (setPointTypes, processConditionalTags)
+			pointTypes[i] = copyOf(o.pointTypes);
+			pointNames[i] = copyOf(o.pointNames);
+			pointNameTypes[i] = copyOf(o.pointNameTypes);
+		}
+	}
+
+	/**
+	 * Packs decoded objects of one route region, null objects are skipped.
+	 * Tile doesn't share modifiable arrays with given objects, so they could be still used by caller.
+	 */
+	public static PackedRouteTile pack(RouteRegion region, List<RouteDataObject> objects) {
+		List<RouteDataObject> nonNull = new ArrayList<RouteDataObject>(objects.size());
+		for (RouteDataObject o : objects) {
+			if (o != null) {
+				nonNull.add(o);
+			}
+		}
+		return new PackedRouteTile(region, nonNull);
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public long getId(int i) {
+		return ids[i];
+	}
+
+	public int getPointsLength(int i) {
+		return pointOffsets[i + 1] - pointOffsets[i];
+	}
+
+	public int getPoint31XTile(int i, int point) {
+		return pointsX[pointOffsets[i] + point];
+	}
+
+	public int getPoint31YTile(int i, int point) {
+		return pointsY[pointOffsets[i] + point];
+	}
+
+	/**
+	 * @return new object with its own arrays, so it could be modified by caller
+	 */
+	public RouteDataObject get(int i) {
+		RouteDataObject o = new RouteDataObject(region);
+		o.id = ids[i];
+		o.pointsX = Arrays.copyOfRange(pointsX, pointOffsets[i], pointOffsets[i + 1]);
+		o.pointsY = Arrays.copyOfRange(pointsY, pointOffsets[i], pointOffsets[i + 1]);
+		o.types = Arrays.copyOfRange(types, typeOffsets[i], typeOffsets[i + 1]);
+		if (!nullNameIds.get(i)) {
+			o.nameIds = Arrays.copyOfRange(nameIds, nameIdOffsets[i], nameIdOffsets[i + 1]);
+		}
+		if (nameOffsets[i + 1] > nameOffsets[i]) {
+			o.names = new TIntObjectHashMap<String>();
+			for (int k = nameOffsets[i]; k < nameOffsets[i + 1]; k++) {
+				o.names.put(nameKeys[k], nameValues[k]);
+			}
+		}
+		o.restrictions = restrictions[i];
+		o.restrictionsVia = restrictionsVia[i];
+		// per point arrays could be modified in place (setPointTypes, processConditionalTags)
+		o.pointTypes = copyOf(pointTypes[i]);
+		o.pointNames = copyOf(pointNames[i]);
+		o.pointNameTypes = copyOf(pointNameTypes[i]);
+		return o;
+	}
+
+	private static int[][] copyOf(int[][] arrays) {
+		if (arrays == null) {
+			return null;
+		}
+		int[][] res = new int[arrays.length][];
+		for (int k = 0; k < arrays.length; k++) {
+			res[k] = arrays[k] == null ? null : arrays[k].clone();
+		}
+		return res;
+	}
+
+	private static String[][] copyOf(String[][] arrays) {
+		if (arrays == null) {
+			return null;
+		}
+		String[][] res = new String[arrays.length][];
+		for (int k = 0; k < arrays.length; k++) {
+			res[k] = arrays[k] == null ? null : arrays[k].clone();
+		}
+		return res;
+	}
+
+	public List<RouteDataObject> unpack() {
+		List<RouteDataObject> res = new ArrayList<RouteDataObject>(size());
+		for (int i = 0; i < size(); i++) {
+			res.add(get(i));
+		}
+		return res;
+	}
+
+	/**
+	 * @return estimated size in bytes (array headers, primitive data and references)
+	 */
+	public int getEstimatedSize() {
+		int sz = 16 * 17; // object and array headers
+		sz += 8 * ids.length;
+		sz += 4 * (pointOffsets.length + typeOffsets.length + nameIdOffsets.length + nameOffsets.length);
+		sz += 4 * (pointsX.length + pointsY.length + types.length + nameIds.length + nameKeys.length);
+		sz += 4 * (nameValues.length + 5 * ids.length);
+		for (String s : nameValues) {
+			sz += 40 + 2 * s.length();
+		}
+		for (int i = 0; i < ids.length; i++) {
+			if (restrictions[i] != null) {
+				sz += 16 + 8 * restrictions[i].length;
+			}
+			if (restrictionsVia[i] != null) {
+				sz += 16 + 8 * restrictionsVia[i].length;
+			}
+			if (pointTypes[i] != null) {
+				sz += 16 + 4 * pointTypes[i].length;
+				for (int[] p : pointTypes[i]) {
+					sz += p == null ? 0 : 16 + 4 * p.length;
+				}
+			}
+		}
+		return sz;
+	}
+}
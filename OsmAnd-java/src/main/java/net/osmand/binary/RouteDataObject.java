@@ -34,7 +34,7 @@ public class RouteDataObject {
 	public final static float NONE_MAX_SPEED = 40f;
 	public int[] nameIds;
 	// mixed array [0, height, cumulative_distance height, cumulative_distance, height, ...] - length is length(points)*2
-	public float[] heightDistanceArray = null;
+	public volatile float[] heightDistanceArray = null;
 	public float heightByCurrentLocation = Float.NaN;
 	private static final Log LOG = PlatformUtil.getLog(RouteDataObject.class);
 
@@ -90,10 +90,10 @@ public class RouteDataObject {
 					equals = false;
 				} else {
 					for (int i = 0; i < this.types.length && equals; i++) {
-						String thisTag = region.routeEncodingRules.get(types[i]).getTag();
-						String thisValue = region.routeEncodingRules.get(types[i]).getValue();
-						String thatTag = thatObj.region.routeEncodingRules.get(thatObj.types[i]).getTag();
-						String thatValue = thatObj.region.routeEncodingRules.get(thatObj.types[i]).getValue();
+						String thisTag = region.quickGetEncodingRule(types[i]).getTag();
+						String thisValue = region.quickGetEncodingRule(types[i]).getValue();
+						String thatTag = thatObj.region.quickGetEncodingRule(thatObj.types[i]).getTag();
+						String thatValue = thatObj.region.quickGetEncodingRule(thatObj.types[i]).getValue();
 						equals = (thisTag.equals(thatTag) && thisValue.equals(thatValue));
 					}
 				}
@@ -105,9 +105,9 @@ public class RouteDataObject {
 					equals = false;
 				} else {
 					for (int i = 0; i < this.nameIds.length && equals; i++) {
-						String thisTag = region.routeEncodingRules.get(nameIds[i]).getTag();
+						String thisTag = region.quickGetEncodingRule(nameIds[i]).getTag();
 						String thisValue = names.get(nameIds[i]);
-						String thatTag = thatObj.region.routeEncodingRules.get(thatObj.nameIds[i]).getTag();
+						String thatTag = thatObj.region.quickGetEncodingRule(thatObj.nameIds[i]).getTag();
 						String thatValue = thatObj.names.get(thatObj.nameIds[i]);
 						equals = (Algorithms.objectEquals(thisTag, thatTag) && Algorithms.objectEquals(thisValue, thatValue));
 					}
@@ -126,10 +126,10 @@ public class RouteDataObject {
 							equals = false;
 						} else {
 							for (int j = 0; j < this.pointTypes[i].length && equals; j++) {
-								String thisTag = region.routeEncodingRules.get(pointTypes[i][j]).getTag();
-								String thisValue = region.routeEncodingRules.get(pointTypes[i][j]).getValue();
-								String thatTag = thatObj.region.routeEncodingRules.get(thatObj.pointTypes[i][j]).getTag();
-								String thatValue = thatObj.region.routeEncodingRules.get(thatObj.pointTypes[i][j]).getValue();
+								String thisTag = region.quickGetEncodingRule(pointTypes[i][j]).getTag();
+								String thisValue = region.quickGetEncodingRule(pointTypes[i][j]).getValue();
+								String thatTag = thatObj.region.quickGetEncodingRule(thatObj.pointTypes[i][j]).getTag();
+								String thatValue = thatObj.region.quickGetEncodingRule(thatObj.pointTypes[i][j]).getValue();
 								equals = (Algorithms.objectEquals(thisTag, thatTag) && Algorithms.objectEquals(thisValue, thatValue));
 							}
 						}
@@ -149,9 +149,9 @@ public class RouteDataObject {
 							equals = false;
 						} else {
 							for (int j = 0; j < this.pointNameTypes[i].length && equals; j++) {
-								String thisTag = region.routeEncodingRules.get(pointNameTypes[i][j]).getTag();
+								String thisTag = region.quickGetEncodingRule(pointNameTypes[i][j]).getTag();
 								String thisValue = pointNames[i][j];
-								String thatTag = thatObj.region.routeEncodingRules.get(thatObj.pointNameTypes[i][j]).getTag();
+								String thatTag = thatObj.region.quickGetEncodingRule(thatObj.pointNameTypes[i][j]).getTag();
 								String thatValue = thatObj.pointNames[i][j];
 								equals = (Algorithms.objectEquals(thisTag, thatTag) && Algorithms.objectEquals(thisValue, thatValue));
 							}
@@ -169,21 +169,24 @@ public class RouteDataObject {
 	}
 
 	public float[] calculateHeightArray(LatLon currentLocation) {
-		if (heightDistanceArray != null) {
-			return heightDistanceArray;
+		float[] heights = heightDistanceArray;
+		if (heights != null) {
+			return heights;
 		}
 		int startHeight = Algorithms.parseIntSilently(getValue("osmand_ele_start"), HEIGHT_UNDEFINED);
 		int endHeight = Algorithms.parseIntSilently(getValue("osmand_ele_end"), startHeight);
 		if (startHeight == HEIGHT_UNDEFINED) {
-			heightDistanceArray = new float[0];
-			return heightDistanceArray;
+			heights = new float[0];
+			heightDistanceArray = heights;
+			return heights;
 		}
 
-		heightDistanceArray = new float[2 * getPointsLength()];
+		// array is published when filled, so routing threads could calculate it concurrently
+		heights = new float[2 * getPointsLength()];
 		double plon = 0;
 		double plat = 0;
 		float prevHeight = startHeight;
-		heightByCurrentLocation = Float.NaN;
+		float heightByLocation = Float.NaN;
 		double prevDistance = 0;
 		for (int k = 0; k < getPointsLength(); k++) {
 			double lon = MapUtils.get31LongitudeX(getPoint31XTile(k));
@@ -204,14 +207,14 @@ public class RouteDataObject {
 						}
 					}
 				}
-				heightDistanceArray[2 * k] = (float) dd;
-				heightDistanceArray[2 * k + 1] = height;
+				heights[2 * k] = (float) dd;
+				heights[2 * k + 1] = height;
 
 				if (currentLocation != null) {
 					double distance = MapUtils.getDistance(currentLocation, lat, lon);
 					if (height != HEIGHT_UNDEFINED && distance < prevDistance) {
 						prevDistance = distance;
-						heightByCurrentLocation = height;
+						heightByLocation = height;
 					}
 				}
 
@@ -219,22 +222,22 @@ public class RouteDataObject {
 					// interpolate undefined
 					double totalDistance = dd;
 					int startUndefined = k;
-					while (startUndefined - 1 >= 0 && heightDistanceArray[2 * (startUndefined - 1) + 1] == HEIGHT_UNDEFINED) {
+					while (startUndefined - 1 >= 0 && heights[2 * (startUndefined - 1) + 1] == HEIGHT_UNDEFINED) {
 						startUndefined--;
-						totalDistance += heightDistanceArray[2 * (startUndefined)];
+						totalDistance += heights[2 * (startUndefined)];
 					}
 					if (totalDistance > 0) {
 						double angle = (height - prevHeight) / totalDistance;
 						for (int j = startUndefined; j < k; j++) {
-							heightDistanceArray[2 * j + 1] = (float) ((heightDistanceArray[2 * j] * angle) + heightDistanceArray[2 * j - 1]);
+							heights[2 * j + 1] = (float) ((heights[2 * j] * angle) + heights[2 * j - 1]);
 						}
 					}
 					prevHeight = height;
 				}
 
 			} else {
-				heightDistanceArray[0] = 0;
-				heightDistanceArray[1] = startHeight;
+				heights[0] = 0;
+				heights[1] = startHeight;
 			}
 			plat = lat;
 			plon = lon;
@@ -242,7 +245,9 @@ public class RouteDataObject {
 				prevDistance = MapUtils.getDistance(currentLocation, plat, plon);
 			}
 		}
-		return heightDistanceArray;
+		heightByCurrentLocation = heightByLocation;
+		heightDistanceArray = heights;
+		return heights;
 	}
 
 	public long getId() {
@@ -269,8 +274,9 @@ public class RouteDataObject {
 			int[] kt = names.keys();
 			for (int i = 0; i < kt.length; i++) {
 				int k = kt[i];
-				if (region.routeEncodingRules.size() > k) {
-					if (("name:" + lang).equals(region.routeEncodingRules.get(k).getTag())) {
+				RouteTypeRule rt = region.quickGetEncodingRuleIfPresent(k);
+				if (rt != null) {
+					if (("name:" + lang).equals(rt.getTag())) {
 						return names.get(k);
 					}
 				}
@@ -303,8 +309,9 @@ public class RouteDataObject {
 			int[] kt = names.keys();
 			for (int i = 0; i < kt.length; i++) {
 				int k = kt[i];
-				if (region.routeEncodingRules.size() > k) {
-					if (("ref:" + lang).equals(region.routeEncodingRules.get(k).getTag())) {
+				RouteTypeRule rt = region.quickGetEncodingRuleIfPresent(k);
+				if (rt != null) {
+					if (("ref:" + lang).equals(rt.getTag())) {
 						return names.get(k);
 					}
 				}
@@ -327,11 +334,12 @@ public class RouteDataObject {
 
 			for (int i = 0; i < kt.length; i++) {
 				int k = kt[i];
-				if (region.routeEncodingRules.size() > k) {
-					if (refTag.equals(region.routeEncodingRules.get(k).getTag())) {
+				RouteTypeRule rt = region.quickGetEncodingRuleIfPresent(k);
+				if (rt != null) {
+					if (refTag.equals(rt.getTag())) {
 						return names.get(k);
 					}
-					if (refTagDefault.equals(region.routeEncodingRules.get(k).getTag())) {
+					if (refTagDefault.equals(rt.getTag())) {
 						refDefault = names.get(k);
 					}
 				}
@@ -372,17 +380,18 @@ public class RouteDataObject {
 
 			for (int i = 0; i < kt.length; i++) {
 				int k = kt[i];
-				if (region.routeEncodingRules.size() > k) {
-					if (!Algorithms.isEmpty(lang) && destinationTagLangFB.equals(region.routeEncodingRules.get(k).getTag())) {
+				RouteTypeRule rt = region.quickGetEncodingRuleIfPresent(k);
+				if (rt != null) {
+					if (!Algorithms.isEmpty(lang) && destinationTagLangFB.equals(rt.getTag())) {
 						return destRef1 + ((transliterate) ? TransliterationHelper.transliterate(names.get(k)) : names.get(k));
 					}
-					if (destinationTagFB.equals(region.routeEncodingRules.get(k).getTag())) {
+					if (destinationTagFB.equals(rt.getTag())) {
 						return destRef1 + ((transliterate) ? TransliterationHelper.transliterate(names.get(k)) : names.get(k));
 					}
-					if (!Algorithms.isEmpty(lang) && destinationTagLang.equals(region.routeEncodingRules.get(k).getTag())) {
+					if (!Algorithms.isEmpty(lang) && destinationTagLang.equals(rt.getTag())) {
 						return destRef1 + ((transliterate) ? TransliterationHelper.transliterate(names.get(k)) : names.get(k));
 					}
-					if (destinationTagDefault.equals(region.routeEncodingRules.get(k).getTag())) {
+					if (destinationTagDefault.equals(rt.getTag())) {
 						destinationDefault = names.get(k);
 					}
 				}
@@ -744,7 +753,7 @@ public class RouteDataObject {
 				if (point != null) {
 					int pSz = point.length;
 					for (int j = 0; j < pSz; j++) {
-						if (region.routeEncodingRules.get(point[j]).getValue().equals("motorway_junction")) {
+						if (region.quickGetEncodingRule(point[j]).getValue().equals("motorway_junction")) {
 							return true;
 						}
 					}
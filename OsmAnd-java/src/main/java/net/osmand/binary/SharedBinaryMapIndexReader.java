@@ -0,0 +1,116 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Reader of one obf file which could be used from many threads at the same time.
+ * Index structure (MapIndex, RouteRegion, PoiRegion, AddressRegion trees) is parsed once and shared,
+ * every thread gets own cursor {@link #getReader()} which only keeps position in the memory mapped file.
+ * <p>
+ * Lazily read parts of shared structures (map rules and trees, route rules and subtrees, poi categories,
+ * transport string tables) are initialized under lock of the structure, route rules created while routing
+ * are added under lock of RouteRegion. Address regions are read completely when file is opened.
+ * Objects returned by searches (cities, streets, stops, routes) and incomplete transport routes belong
+ * to the cursor and must not be shared between threads.
+ * <p>
+ * Cursors are held weakly, so cursor of finished thread is collected with it. Thread which doesn't need
+ * the file anymore (e.g. pooled thread) could release its cursor by {@link #releaseReader()}.
+ */
+public class SharedBinaryMapIndexReader {
+
+	private final File file;
+	private final BinaryMapIndexReader initialReader;
+	private final ByteBuffer mapping;
+	// cursors are strongly referenced only by thread locals of their threads
+	private final Set<BinaryMapIndexReader> cursors = Collections.newSetFromMap(
+			new WeakHashMap<BinaryMapIndexReader, Boolean>());
+	private final ThreadLocal<BinaryMapIndexReader> threadCursor = new ThreadLocal<BinaryMapIndexReader>();
+	private volatile boolean closed;
+
+	public SharedBinaryMapIndexReader(File file) throws IOException {
+		this(file, null);
+	}
+
+	public SharedBinaryMapIndexReader(File file, BinaryMapIndexReader initialReader) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			mapping = MappedObfFiles.getMapping(file, raf);
+		} finally {
+			raf.close();
+		}
+		if (mapping == null) {
+			throw new IOException("File can't be mapped to memory: " + file.getName());
+		}
+		if (initialReader == null) {
+			initialReader = new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file);
+		}
+		this.initialReader = initialReader;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	// should not use methods to read from file!
+	public BinaryMapIndexReader getShallowReader() {
+		return initialReader;
+	}
+
+	/**
+	 * @return cursor owned by the current thread, it must not be passed to other threads
+	 */
+	public BinaryMapIndexReader getReader() {
+		if (closed) {
+			throw new IllegalStateException("Reader is closed " + file.getName());
+		}
+		BinaryMapIndexReader cursor = threadCursor.get();
+		if (cursor == null) {
+			cursor = new BinaryMapIndexReader(mapping, initialReader);
+			threadCursor.set(cursor);
+			synchronized (cursors) {
+				cursors.add(cursor);
+			}
+		}
+		return cursor;
+	}
+
+	/**
+	 * Releases cursor of the current thread, next {@link #getReader()} of the thread creates new one
+	 */
+	public void releaseReader() throws IOException {
+		BinaryMapIndexReader cursor = threadCursor.get();
+		if (cursor != null) {
+			threadCursor.remove();
+			synchronized (cursors) {
+				cursors.remove(cursor);
+			}
+			cursor.close();
+		}
+	}
+
+	// cursors of finished threads are counted until they are collected
+	public int getCursorsCount() {
+		synchronized (cursors) {
+			return cursors.size();
+		}
+	}
+
+	public void close() throws IOException {
+		closed = true;
+		synchronized (cursors) {
+			for (BinaryMapIndexReader r : new ArrayList<BinaryMapIndexReader>(cursors)) {
+				r.close();
+			}
+			cursors.clear();
+		}
+		initialReader.close();
+	}
+}
@@ -0,0 +1,382 @@
+package net.osmand.binary;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Walking transfers between stops of transport sections of all registered files.
+ * For every stop it keeps stops within radius (and distance to them) in compressed sparse row arrays,
+ * so transport routing doesn't search stops around every reached stop geometrically.
+ * <p>
+ * Index is built in background when file is registered ({@link CachedOsmandIndexes#getReader(File, boolean)})
+ * and persisted with {@link #writeToFile(File)} / {@link #readFromFile(File)}. Files are identified by name,
+ * size and creation date of obf.
+ */
+public class TransportTransferIndex {
+
+	public static final int VERSION = 2;
+	public static final int DEFAULT_RADIUS = 500;
+	private static final Log log = PlatformUtil.getLog(TransportTransferIndex.class);
+
+	private final int radius;
+	private final Map<String, FileEntry> files = new ConcurrentHashMap<String, FileEntry>();
+	private volatile boolean hasChanged;
+
+	public TransportTransferIndex() {
+		this(DEFAULT_RADIUS);
+	}
+
+	/**
+	 * @param radius maximum walking distance of transfer in meters
+	 */
+	public TransportTransferIndex(int radius) {
+		this.radius = radius;
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+	public boolean containsFile(BinaryMapIndexReader reader) {
+		return getFileEntry(reader) != null;
+	}
+
+	private FileEntry getFileEntry(BinaryMapIndexReader reader) {
+		File f = reader.getFile();
+		if (f == null) {
+			return null;
+		}
+		FileEntry e = files.get(f.getName());
+		if (e == null || e.size != f.length() || e.dateCreated != reader.getDateCreated()) {
+			return null;
+		}
+		return e;
+	}
+
+	public void removeFile(File f) {
+		if (files.remove(f.getName()) != null) {
+			hasChanged = true;
+		}
+	}
+
+	/**
+	 * Reads all stops of every transport section of the file and connects stops within radius
+	 */
+	public void addFile(BinaryMapIndexReader reader) throws IOException {
+		long time = System.currentTimeMillis();
+		File f = reader.getFile();
+		FileEntry e = new FileEntry(f.getName(), f.length(), reader.getDateCreated());
+		for (TransportIndex index : reader.getTransportIndexes()) {
+			List<TransportStop> stops = reader.searchTransportIndex(index,
+					BinaryMapIndexReader.buildSearchTransportRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, -1, null));
+			e.graphs.put(index.filePointer, TransferGraph.build(stops, radius));
+		}
+		files.put(e.fileName, e);
+		hasChanged = true;
+		if (log.isDebugEnabled()) {
+			log.debug("Transfer index of " + f.getName() + " is built in " + (System.currentTimeMillis() - time) + "ms");
+		}
+	}
+
+	/**
+	 * @return transfers of transport section or null if file is not indexed (yet)
+	 */
+	public TransferGraph getTransferGraph(BinaryMapIndexReader reader, TransportIndex index) {
+		FileEntry e = getFileEntry(reader);
+		return e == null ? null : e.graphs.get(index.filePointer);
+	}
+
+	public void readFromFile(File f) throws IOException {
+		long time = System.currentTimeMillis();
+		DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			if (is.readInt() != VERSION || is.readInt() != radius) {
+				return;
+			}
+			int count = is.readInt();
+			for (int i = 0; i < count; i++) {
+				FileEntry e = new FileEntry(is.readUTF(), is.readLong(), is.readLong());
+				int graphs = is.readInt();
+				for (int j = 0; j < graphs; j++) {
+					int pointer = is.readInt();
+					e.graphs.put(pointer, TransferGraph.read(is));
+				}
+				files.put(e.fileName, e);
+			}
+			hasChanged = false;
+		} finally {
+			is.close();
+		}
+		log.info("Initialize transport transfer index " + (System.currentTimeMillis() - time));
+	}
+
+	public void writeToFile(File f) throws IOException {
+		if (!hasChanged) {
+			return;
+		}
+		DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			os.writeInt(VERSION);
+			os.writeInt(radius);
+			FileEntry[] entries = files.values().toArray(new FileEntry[0]);
+			os.writeInt(entries.length);
+			for (FileEntry e : entries) {
+				os.writeUTF(e.fileName);
+				os.writeLong(e.size);
+				os.writeLong(e.dateCreated);
+				os.writeInt(e.graphs.size());
+				TIntObjectIterator<TransferGraph> it = e.graphs.iterator();
+				while (it.hasNext()) {
+					it.advance();
+					os.writeInt(it.key());
+					it.value().write(os);
+				}
+			}
+		} finally {
+			os.close();
+		}
+		hasChanged = false;
+	}
+
+	private static class FileEntry {
+		final String fileName;
+		final long size;
+		final long dateCreated;
+		// keyed by transport section file pointer
+		final TIntObjectHashMap<TransferGraph> graphs = new TIntObjectHashMap<TransferGraph>();
+
+		FileEntry(String fileName, long size, long dateCreated) {
+			this.fileName = fileName;
+			this.size = size;
+			this.dateCreated = dateCreated;
+		}
+	}
+
+	/**
+	 * Stops of one transport section sorted by id, transfers of stop i are
+	 * transferStop[transfersStart[i]..transfersStart[i + 1]) (indexes of stops) with distances in meters.
+	 */
+	public static class TransferGraph {
+		final long[] stopIds;
+		final int[] x31;
+		final int[] y31;
+		final int[] transfersStart;
+		final int[] transferStop;
+		final float[] transferDist;
+		// bbox of stops
+		private int left = Integer.MAX_VALUE;
+		private int right = Integer.MIN_VALUE;
+		private int top = Integer.MAX_VALUE;
+		private int bottom = Integer.MIN_VALUE;
+
+		TransferGraph(long[] stopIds, int[] x31, int[] y31, int[] transfersStart, int[] transferStop, float[] transferDist) {
+			this.stopIds = stopIds;
+			this.x31 = x31;
+			this.y31 = y31;
+			this.transfersStart = transfersStart;
+			this.transferStop = transferStop;
+			this.transferDist = transferDist;
+			for (int i = 0; i < stopIds.length; i++) {
+				left = Math.min(left, x31[i]);
+				right = Math.max(right, x31[i]);
+				top = Math.min(top, y31[i]);
+				bottom = Math.max(bottom, y31[i]);
+			}
+		}
+
+		public int size() {
+			return stopIds.length;
+		}
+
+		/**
+		 * @return true if some stop of the section could be inside of bbox
+		 */
+		public boolean intersects(int left, int top, int right, int bottom) {
+			return this.left <= right && left <= this.right && this.top <= bottom && top <= this.bottom;
+		}
+
+		/**
+		 * @return index of stop or -1 if stop is not in the section
+		 */
+		public int indexOf(long stopId) {
+			int ind = Arrays.binarySearch(stopIds, stopId);
+			return ind >= 0 ? ind : -1;
+		}
+
+		public long getStopId(int ind) {
+			return stopIds[ind];
+		}
+
+		public int getStopX31(int ind) {
+			return x31[ind];
+		}
+
+		public int getStopY31(int ind) {
+			return y31[ind];
+		}
+
+		public int getTransfersStart(int ind) {
+			return transfersStart[ind];
+		}
+
+		public int getTransfersEnd(int ind) {
+			return transfersStart[ind + 1];
+		}
+
+		public int getTransferStop(int transfer) {
+			return transferStop[transfer];
+		}
+
+		public float getTransferDistance(int transfer) {
+			return transferDist[transfer];
+		}
+
+		public static TransferGraph build(List<TransportStop> sectionStops, int radius) {
+			List<TransportStop> stops = new ArrayList<TransportStop>(sectionStops.size());
+			TLongObjectHashMap<TransportStop> unique = new TLongObjectHashMap<TransportStop>();
+			for (TransportStop s : sectionStops) {
+				if (!s.isDeleted() && !s.isMissingStop() && !unique.containsKey(s.getId())) {
+					unique.put(s.getId(), s);
+					stops.add(s);
+				}
+			}
+			Collections.sort(stops, new Comparator<TransportStop>() {
+				@Override
+				public int compare(TransportStop o1, TransportStop o2) {
+					return Long.compare(o1.getId(), o2.getId());
+				}
+			});
+			int n = stops.size();
+			long[] ids = new long[n];
+			int[] x31 = new int[n];
+			int[] y31 = new int[n];
+			// stops are put to cells of radius size (at the most northern/southern stop), so transfers are in 3x3 cells around
+			double maxLat = 0;
+			for (TransportStop s : stops) {
+				maxLat = Math.max(maxLat, Math.min(85, Math.abs(s.getLocation().getLatitude())));
+			}
+			int cellSize = Math.max(1, (int) Math.ceil(radius / (MapUtils.getTileDistanceWidth(31) * Math.cos(Math.toRadians(maxLat)))));
+			TLongObjectHashMap<TIntArrayList> cells = new TLongObjectHashMap<TIntArrayList>();
+			for (int i = 0; i < n; i++) {
+				TransportStop s = stops.get(i);
+				ids[i] = s.getId();
+				x31[i] = s.x31;
+				y31[i] = s.y31;
+				long cell = cellId(s.x31 / cellSize, s.y31 / cellSize);
+				TIntArrayList l = cells.get(cell);
+				if (l == null) {
+					l = new TIntArrayList();
+					cells.put(cell, l);
+				}
+				l.add(i);
+			}
+			int[] transfersStart = new int[n + 1];
+			TIntArrayList transferStop = new TIntArrayList();
+			List<Float> dists = new ArrayList<Float>();
+			for (int i = 0; i < n; i++) {
+				transfersStart[i] = transferStop.size();
+				int cx = x31[i] / cellSize;
+				int cy = y31[i] / cellSize;
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						TIntArrayList l = cells.get(cellId(cx + dx, cy + dy));
+						if (l == null) {
+							continue;
+						}
+						for (int k = 0; k < l.size(); k++) {
+							int j = l.getQuick(k);
+							if (j == i) {
+								continue;
+							}
+							double d = MapUtils.getDistance(stops.get(i).getLocation(), stops.get(j).getLocation());
+							if (d <= radius) {
+								transferStop.add(j);
+								dists.add((float) d);
+							}
+						}
+					}
+				}
+			}
+			transfersStart[n] = transferStop.size();
+			float[] transferDist = new float[dists.size()];
+			for (int i = 0; i < transferDist.length; i++) {
+				transferDist[i] = dists.get(i);
+			}
+			return new TransferGraph(ids, x31, y31, transfersStart, transferStop.toArray(), transferDist);
+		}
+
+		private static long cellId(int cx, int cy) {
+			return (((long) cx) << 32) | (cy & 0xffffffffL);
+		}
+
+		static TransferGraph read(DataInputStream is) throws IOException {
+			int n = is.readInt();
+			long[] ids = new long[n];
+			for (int i = 0; i < n; i++) {
+				ids[i] = is.readLong();
+			}
+			int[] x31 = readInts(is, n);
+			int[] y31 = readInts(is, n);
+			int[] transfersStart = readInts(is, n + 1);
+			int[] transferStop = readInts(is, transfersStart[n]);
+			float[] transferDist = new float[transfersStart[n]];
+			for (int i = 0; i < transferDist.length; i++) {
+				transferDist[i] = is.readFloat();
+			}
+			return new TransferGraph(ids, x31, y31, transfersStart, transferStop, transferDist);
+		}
+
+		void write(DataOutputStream os) throws IOException {
+			os.writeInt(stopIds.length);
+			for (long id : stopIds) {
+				os.writeLong(id);
+			}
+			writeInts(os, x31);
+			writeInts(os, y31);
+			writeInts(os, transfersStart);
+			writeInts(os, transferStop);
+			for (float d : transferDist) {
+				os.writeFloat(d);
+			}
+		}
+
+		private static int[] readInts(DataInputStream is, int count) throws IOException {
+			int[] ar = new int[count];
+			for (int i = 0; i < count; i++) {
+				ar[i] = is.readInt();
+			}
+			return ar;
+		}
+
+		private static void writeInts(DataOutputStream os, int[] ar) throws IOException {
+			for (int v : ar) {
+				os.writeInt(v);
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ public class TransportRoute extends MapObject {
 	private Integer dist = null;
 	private String color;
 	private List<Way> forwardWays;
+	private boolean forwardWaysMerged;
 	private TransportSchedule schedule;
 	private Map<String, String> tags = new HashMap<>();
 	public static final double SAME_STOP = 40;
@@ -92,6 +93,7 @@ public class TransportRoute extends MapObject {
 
 	public void setForwardWays(List<Way> forwardWays) {
 		this.forwardWays = forwardWays;
+		this.forwardWaysMerged = false;
 	}
 
 	public void setSchedule(TransportSchedule schedule) {
@@ -105,9 +107,13 @@ public class TransportRoute extends MapObject {
 		return forwardWays;
 	}
 	
+	// ways are merged only once, so routes shared by routing contexts (TransportRouteCache) are merged before caching
 	public void mergeForwardWays() {
-		mergeRouteWays(forwardWays);
-		resortWaysToStopsOrder(forwardWays, forwardStops);
+		if (!forwardWaysMerged) {
+			mergeRouteWays(forwardWays);
+			resortWaysToStopsOrder(forwardWays, forwardStops);
+			forwardWaysMerged = true;
+		}
 	}
 	
 	// intrusive operation cause it changes ways itself!
@@ -238,6 +244,7 @@ public class TransportRoute extends MapObject {
 			forwardWays = new ArrayList<>();
 		}
 		forwardWays.add(w);
+		forwardWaysMerged = false;
 	}
 
 	public String getRef() {
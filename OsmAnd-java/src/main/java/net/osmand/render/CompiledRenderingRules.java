@@ -0,0 +1,310 @@
+package net.osmand.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rules of storage specialized for (state, tag, value, minzoom, maxzoom, layer) of search request.
+ * Tests of these properties are evaluated once while compiling: failed rules (with their children) are removed,
+ * passed tests are skipped, so only tests of other input properties (additional, nameTag, custom properties...)
+ * are left in arrays of compiled rule together with output properties.
+ * <p>
+ * Compiled rules are memoized by key and evaluated by {@link RenderingRuleSearchRequest} exactly as original rules.
+ * Zooms and layer of key are replaced by values with same results of tests which rules of tag and value have
+ * (e.g. all zooms between two minzoom thresholds), so number of compiled rules is limited by storage.
+ * Storage should be completely loaded before compilation.
+ */
+public class CompiledRenderingRules {
+
+	private static final CompiledRule FAIL = new CompiledRule(new RenderingRuleProperty[0], new int[0], new float[0], true, false);
+
+	private final RenderingRulesStorage storage;
+	private final Map<Long, CompiledRule> rules = new ConcurrentHashMap<Long, CompiledRule>();
+	private final Map<RenderingRule, KeyValues> keyValues = Collections.synchronizedMap(
+			new IdentityHashMap<RenderingRule, KeyValues>());
+
+	public CompiledRenderingRules(RenderingRulesStorage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * @return key of compiled rules or -1 if request values couldn't be compiled
+	 */
+	public static long getKey(int state, int tag, int value, int minzoom, int maxzoom, int layer) {
+		if (state < 0 || state >= RenderingRulesStorage.LENGTH_RULES || tag < 0 || tag > 0xffff || value < 0
+				|| value > 0xffff || minzoom < 0 || minzoom > 0xff || maxzoom < 0 || maxzoom > 0xff
+				|| layer < -128 || layer > 127) {
+			return -1;
+		}
+		return ((((((long) tag << 16 | value) << 3 | state) << 8 | minzoom) << 8 | maxzoom) << 8) | (layer + 128);
+	}
+
+	public CompiledRule getRule(long key) {
+		int state = (int) ((key >> 24) & 0x7);
+		int value = (int) ((key >> 27) & 0xffff);
+		int tag = (int) ((key >> 43) & 0xffff);
+		RenderingRule root = storage.getRule(state, tag, value);
+		if (root == null) {
+			return FAIL;
+		}
+		KeyValues kv = keyValues.get(root);
+		if (kv == null) {
+			kv = new KeyValues(root);
+			keyValues.put(root, kv);
+		}
+		int layer = (int) (key & 0xff) - 128;
+		int maxzoom = (int) ((key >> 8) & 0xff);
+		int minzoom = (int) ((key >> 16) & 0xff);
+		key = getKey(state, tag, value, kv.getMinzoom(minzoom), kv.getMaxzoom(maxzoom), kv.getLayer(layer));
+		CompiledRule rule = rules.get(key);
+		if (rule == null) {
+			rule = compile(key);
+			rules.put(key, rule);
+		}
+		return rule;
+	}
+
+	public int getCompiledRulesCount() {
+		return rules.size();
+	}
+
+	private CompiledRule compile(long key) {
+		int layer = (int) (key & 0xff) - 128;
+		int maxzoom = (int) ((key >> 8) & 0xff);
+		int minzoom = (int) ((key >> 16) & 0xff);
+		int state = (int) ((key >> 24) & 0x7);
+		int value = (int) ((key >> 27) & 0xffff);
+		int tag = (int) ((key >> 43) & 0xffff);
+		RenderingRule rule = storage.getRule(state, tag, value);
+		if (rule == null) {
+			return FAIL;
+		}
+		RenderingRuleStorageProperties props = storage.PROPS;
+		int[] staticValues = new int[props.getPoperties().length];
+		boolean[] isStatic = new boolean[staticValues.length];
+		setStatic(isStatic, staticValues, props.R_TAG, tag);
+		setStatic(isStatic, staticValues, props.R_VALUE, value);
+		setStatic(isStatic, staticValues, props.R_MINZOOM, minzoom);
+		setStatic(isStatic, staticValues, props.R_MAXZOOM, maxzoom);
+		setStatic(isStatic, staticValues, props.R_LAYER, layer);
+		return new Compiler(isStatic, staticValues).compile(rule);
+	}
+
+	private static void setStatic(boolean[] isStatic, int[] staticValues, RenderingRuleProperty p, int value) {
+		isStatic[p.getId()] = true;
+		staticValues[p.getId()] = value;
+	}
+
+	// values of zooms and layer which are tested by rules of one tag and value
+	private class KeyValues {
+		// minzoom passes if threshold <= value, maxzoom if threshold >= value, layer if equal (sorted arrays)
+		final int[] minzooms;
+		final int[] maxzooms;
+		final int[] layers;
+		// layer which isn't tested by any rule
+		final int otherLayer;
+
+		KeyValues(RenderingRule root) {
+			Set<Integer> minzooms = new TreeSet<Integer>();
+			Set<Integer> maxzooms = new TreeSet<Integer>();
+			Set<Integer> layers = new TreeSet<Integer>();
+			collect(root, Collections.newSetFromMap(new IdentityHashMap<RenderingRule, Boolean>()), minzooms, maxzooms,
+					layers);
+			this.minzooms = toArray(minzooms);
+			this.maxzooms = toArray(maxzooms);
+			this.layers = toArray(layers);
+			int other = -128;
+			while (layers.contains(other)) {
+				other++;
+			}
+			otherLayer = other;
+		}
+
+		private void collect(RenderingRule rule, Set<RenderingRule> visited, Set<Integer> minzooms,
+				Set<Integer> maxzooms, Set<Integer> layers) {
+			if (!visited.add(rule)) {
+				return;
+			}
+			RenderingRuleStorageProperties props = storage.PROPS;
+			RenderingRuleProperty[] properties = rule.getProperties();
+			for (int i = 0; i < properties.length; i++) {
+				if (properties[i] == props.R_MINZOOM) {
+					minzooms.add(rule.getIntProp(i));
+				} else if (properties[i] == props.R_MAXZOOM) {
+					maxzooms.add(rule.getIntProp(i));
+				} else if (properties[i] == props.R_LAYER) {
+					layers.add(rule.getIntProp(i));
+				}
+				RenderingRule attr = rule.getAttrProp(i);
+				if (attr != null) {
+					collect(attr, visited, minzooms, maxzooms, layers);
+				}
+			}
+			for (RenderingRule ch : rule.getIfElseChildren()) {
+				collect(ch, visited, minzooms, maxzooms, layers);
+			}
+			for (RenderingRule ch : rule.getIfChildren()) {
+				collect(ch, visited, minzooms, maxzooms, layers);
+			}
+		}
+
+		// greatest threshold <= minzoom
+		int getMinzoom(int minzoom) {
+			int res = 0;
+			for (int t : minzooms) {
+				if (t > minzoom) {
+					break;
+				}
+				res = Math.max(t, 0);
+			}
+			return res;
+		}
+
+		// least threshold >= maxzoom
+		int getMaxzoom(int maxzoom) {
+			for (int t : maxzooms) {
+				if (t >= maxzoom) {
+					return Math.min(t, 0xff);
+				}
+			}
+			return 0xff;
+		}
+
+		int getLayer(int layer) {
+			return Arrays.binarySearch(layers, layer) >= 0 ? layer : otherLayer;
+		}
+	}
+
+	private static int[] toArray(Set<Integer> set) {
+		int[] res = new int[set.size()];
+		int i = 0;
+		for (Integer v : set) {
+			res[i++] = v;
+		}
+		return res;
+	}
+
+	private class Compiler {
+		final boolean[] isStatic;
+		final int[] staticValues;
+		// attribute rules are referenced from many rules
+		final Map<RenderingRule, CompiledRule> compiled = new IdentityHashMap<RenderingRule, CompiledRule>();
+
+		Compiler(boolean[] isStatic, int[] staticValues) {
+			this.isStatic = isStatic;
+			this.staticValues = staticValues;
+		}
+
+		CompiledRule compile(RenderingRule rule) {
+			CompiledRule c = compiled.get(rule);
+			if (c != null) {
+				return c;
+			}
+			RenderingRuleProperty[] properties = rule.getProperties();
+			List<RenderingRuleProperty> inputs = new ArrayList<RenderingRuleProperty>();
+			List<Integer> inputInts = new ArrayList<Integer>();
+			List<Float> inputFloats = new ArrayList<Float>();
+			boolean fail = false;
+			boolean sideEffects = false;
+			for (int i = 0; i < properties.length && !fail; i++) {
+				RenderingRuleProperty rp = properties[i];
+				if (rp.isInputProperty() && isStatic[rp.getId()]) {
+					fail = !rp.accept(rule.getIntProp(i), staticValues[rp.getId()], null);
+				} else if (rp.isInputProperty() || rp == storage.PROPS.R_DISABLE) {
+					// disable is set even if rule doesn't match later
+					sideEffects |= !rp.isInputProperty();
+					inputs.add(rp);
+					inputInts.add(rule.getIntProp(i));
+					inputFloats.add(rule.getFloatProp(i));
+				}
+			}
+			if (fail && !sideEffects) {
+				compiled.put(rule, FAIL);
+				return FAIL;
+			}
+			int[] ints = new int[inputInts.size()];
+			float[] floats = new float[inputFloats.size()];
+			for (int i = 0; i < ints.length; i++) {
+				ints[i] = inputInts.get(i);
+				floats[i] = inputFloats.get(i);
+			}
+			c = new CompiledRule(inputs.toArray(new RenderingRuleProperty[0]), ints, floats, fail, rule.isGroup());
+			compiled.put(rule, c);
+			if (!fail) {
+				compileOutput(rule, c);
+				c.ifElseChildren = compileChildren(rule.getIfElseChildren());
+				c.ifChildren = compileChildren(rule.getIfChildren());
+			}
+			return c;
+		}
+
+		private void compileOutput(RenderingRule rule, CompiledRule c) {
+			RenderingRuleProperty[] properties = rule.getProperties();
+			List<Integer> outputs = new ArrayList<Integer>();
+			for (int i = 0; i < properties.length; i++) {
+				if (properties[i].isOutputProperty()) {
+					outputs.add(i);
+				}
+			}
+			c.outputs = new RenderingRuleProperty[outputs.size()];
+			c.outputInts = new int[outputs.size()];
+			c.outputFloats = new float[outputs.size()];
+			c.outputAttrs = new CompiledRule[outputs.size()];
+			for (int k = 0; k < outputs.size(); k++) {
+				int i = outputs.get(k);
+				c.outputs[k] = properties[i];
+				c.outputInts[k] = rule.getIntProp(i);
+				c.outputFloats[k] = rule.getFloatProp(i);
+				RenderingRule attr = rule.getAttrProp(i);
+				// failed attribute rule is still visited (it doesn't load output)
+				c.outputAttrs[k] = attr == null ? null : compile(attr);
+			}
+		}
+
+		private CompiledRule[] compileChildren(List<RenderingRule> children) {
+			List<CompiledRule> res = new ArrayList<CompiledRule>(children.size());
+			for (RenderingRule ch : children) {
+				CompiledRule c = compile(ch);
+				// failed rules without side effects are never matched
+				if (c != FAIL) {
+					res.add(c);
+				}
+			}
+			return res.toArray(new CompiledRule[0]);
+		}
+	}
+
+	/**
+	 * Rule with input tests (in original order, {@link RenderingRuleStorageProperties#R_DISABLE} is set when it's reached)
+	 * and output properties. Failed rule is kept only if it sets disable before failed test.
+	 */
+	public static class CompiledRule {
+		final RenderingRuleProperty[] inputs;
+		final int[] inputInts;
+		final float[] inputFloats;
+		final boolean fail;
+		final boolean group;
+
+		RenderingRuleProperty[] outputs = new RenderingRuleProperty[0];
+		int[] outputInts = new int[0];
+		float[] outputFloats = new float[0];
+		CompiledRule[] outputAttrs = new CompiledRule[0];
+		CompiledRule[] ifElseChildren = new CompiledRule[0];
+		CompiledRule[] ifChildren = new CompiledRule[0];
+
+		CompiledRule(RenderingRuleProperty[] inputs, int[] inputInts, float[] inputFloats, boolean fail, boolean group) {
+			this.inputs = inputs;
+			this.inputInts = inputInts;
+			this.inputFloats = inputFloats;
+			this.fail = fail;
+			this.group = group;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package net.osmand.render;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.binary.BinaryMapDataObject;
+
+/**
+ * LRU cache of search results (output properties) of {@link RenderingRuleSearchRequest#search(int, boolean)}
+ * shared by requests of the storage. Most objects on the map share few combinations of type, additional types and zoom,
+ * so searches of them are resolved once.
+ * <p>
+ * Result is keyed by state, tag, value and values of input properties which are tested by rules of tag/value
+ * (i.e. zoom, layer, area, custom properties). Additional types of object are part of key only if rules test them.
+ * Output properties left by previous search (not cleared state, e.g. order search of sorted objects) are part of key,
+ * as rules overwrite them only partially. Searches which depend on name (text length, name tag) are not cached.
+ */
+public class RenderingRuleSearchCache {
+
+	private final RenderingRulesStorage storage;
+	private final int maxEntries;
+	private final LinkedHashMap<ResultKey, Result> results = new LinkedHashMap<ResultKey, Result>(16, 0.75f, true);
+	// input properties tested by rules of (state, tag, value), null if results are not cached
+	private final Map<Long, int[]> dependencies = new ConcurrentHashMap<Long, int[]>();
+	private final int[] outputIds;
+	private final int[] defaultOutputValues;
+	private static final int[] NOT_CACHED = new int[0];
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong notCached = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public RenderingRuleSearchCache(RenderingRulesStorage storage, int maxEntries) {
+		this.storage = storage;
+		this.maxEntries = maxEntries;
+		RenderingRuleProperty[] props = storage.PROPS.getPoperties();
+		TIntArrayList ids = new TIntArrayList();
+		for (RenderingRuleProperty p : props) {
+			if (p.isOutputProperty()) {
+				ids.add(p.getId());
+			}
+		}
+		outputIds = ids.toArray();
+		defaultOutputValues = new int[outputIds.length];
+		for (int i = 0; i < outputIds.length; i++) {
+			defaultOutputValues[i] = props[outputIds[i]].isColor() ? 0 : -1;
+		}
+	}
+
+	/**
+	 * @return key of search result or null if result couldn't be cached
+	 */
+	ResultKey getKey(RenderingRuleSearchRequest req, int state, boolean loadOutput) {
+		int[] values = req.values;
+		float[] fvalues = req.fvalues;
+		RenderingRuleStorageProperties props = storage.PROPS;
+		int tag = values[props.R_TAG.getId()];
+		int value = values[props.R_VALUE.getId()];
+		int[] deps = getDependencies(state, tag, value);
+		if (deps == NOT_CACHED) {
+			notCached.incrementAndGet();
+			return null;
+		}
+		TIntArrayList leftOutputs = null;
+		for (int i = 0; i < outputIds.length; i++) {
+			if (values[outputIds[i]] != defaultOutputValues[i] || fvalues[outputIds[i]] != 0) {
+				if (leftOutputs == null) {
+					leftOutputs = new TIntArrayList();
+				}
+				leftOutputs.add(i);
+				leftOutputs.add(values[outputIds[i]]);
+				leftOutputs.add(Float.floatToIntBits(fvalues[outputIds[i]]));
+			}
+		}
+		int[] key = new int[deps.length + 4 + (leftOutputs == null ? 0 : leftOutputs.size())];
+		key[0] = state;
+		key[1] = loadOutput ? 1 : 0;
+		key[2] = tag;
+		key[3] = value;
+		Object mapIndex = null;
+		int[] additionalTypes = null;
+		for (int i = 0; i < deps.length; i++) {
+			RenderingRuleProperty p = req.props[deps[i]];
+			key[i + 4] = p.isFloat() ? Float.floatToIntBits(fvalues[deps[i]]) : values[deps[i]];
+			BinaryMapDataObject obj = req.getObject();
+			if (p == props.R_ADDITIONAL && obj != null) {
+				mapIndex = obj.getMapIndex();
+				additionalTypes = obj.getAdditionalTypes();
+			}
+		}
+		if (leftOutputs != null) {
+			leftOutputs.toArray(key, 0, deps.length + 4, leftOutputs.size());
+		}
+		return new ResultKey(key, mapIndex, additionalTypes);
+	}
+
+	boolean loadResult(ResultKey key, RenderingRuleSearchRequest req) {
+		Result r;
+		synchronized (this) {
+			r = results.get(key);
+		}
+		if (r == null) {
+			misses.incrementAndGet();
+			return false;
+		}
+		hits.incrementAndGet();
+		for (int i = 0; i < outputIds.length; i++) {
+			req.values[outputIds[i]] = r.values[i];
+			req.fvalues[outputIds[i]] = r.fvalues[i];
+		}
+		req.values[storage.PROPS.R_TAG.getId()] = r.tag;
+		req.values[storage.PROPS.R_VALUE.getId()] = r.value;
+		req.searchResult = r.found;
+		return true;
+	}
+
+	void putResult(ResultKey key, RenderingRuleSearchRequest req) {
+		Result r = new Result(outputIds.length);
+		for (int i = 0; i < outputIds.length; i++) {
+			r.values[i] = req.values[outputIds[i]];
+			r.fvalues[i] = req.fvalues[outputIds[i]];
+		}
+		r.tag = req.values[storage.PROPS.R_TAG.getId()];
+		r.value = req.values[storage.PROPS.R_VALUE.getId()];
+		r.found = req.searchResult;
+		synchronized (this) {
+			results.put(key, r);
+			Iterator<Entry<ResultKey, Result>> it = results.entrySet().iterator();
+			while (results.size() > maxEntries && it.hasNext()) {
+				it.next();
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private int[] getDependencies(int state, int tag, int value) {
+		long key = (((long) tag) << 32 | (value & 0xffffffffL)) * RenderingRulesStorage.LENGTH_RULES + state;
+		int[] deps = dependencies.get(key);
+		if (deps == null) {
+			deps = collectDependencies(state, tag, value);
+			dependencies.put(key, deps);
+		}
+		return deps;
+	}
+
+	// input properties of rules visited by search (except tag and value)
+	private int[] collectDependencies(int state, int tag, int value) {
+		boolean[] inputs = new boolean[storage.PROPS.getPoperties().length];
+		Map<RenderingRule, Boolean> visited = new IdentityHashMap<RenderingRule, Boolean>();
+		List<RenderingRule> queue = new ArrayList<RenderingRule>();
+		if (state >= 0 && state < RenderingRulesStorage.LENGTH_RULES) {
+			for (RenderingRule r : new RenderingRule[] { storage.getRule(state, tag, value), storage.getRule(state, tag, 0),
+					storage.getRule(state, 0, 0) }) {
+				if (r != null) {
+					queue.add(r);
+				}
+			}
+		}
+		while (!queue.isEmpty()) {
+			RenderingRule r = queue.remove(queue.size() - 1);
+			if (visited.put(r, Boolean.TRUE) != null) {
+				continue;
+			}
+			RenderingRuleProperty[] properties = r.getProperties();
+			for (int i = 0; i < properties.length; i++) {
+				if (properties[i].isInputProperty()) {
+					inputs[properties[i].getId()] = true;
+				} else if (r.getAttrProp(i) != null) {
+					queue.add(r.getAttrProp(i));
+				}
+			}
+			queue.addAll(r.getIfElseChildren());
+			queue.addAll(r.getIfChildren());
+		}
+		RenderingRuleStorageProperties props = storage.PROPS;
+		if (inputs[props.R_TEXT_LENGTH.getId()] || inputs[props.R_NAME_TAG.getId()]) {
+			return NOT_CACHED;
+		}
+		inputs[props.R_TAG.getId()] = false;
+		inputs[props.R_VALUE.getId()] = false;
+		TIntArrayList deps = new TIntArrayList();
+		for (int i = 0; i < inputs.length; i++) {
+			if (inputs[i]) {
+				deps.add(i);
+			}
+		}
+		return deps.toArray();
+	}
+
+	public synchronized void clear() {
+		results.clear();
+	}
+
+	public synchronized int getResultsCount() {
+		return results.size();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getNotCached() {
+		return notCached.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Rendering search cache " + getResultsCount() + " of " + maxEntries + " results, hits " + getHits()
+				+ ", misses " + getMisses() + ", not cached " + getNotCached() + ", evictions " + getEvictions();
+	}
+
+	private static class Result {
+		final int[] values;
+		final float[] fvalues;
+		int tag;
+		int value;
+		boolean found;
+
+		Result(int size) {
+			values = new int[size];
+			fvalues = new float[size];
+		}
+	}
+
+	static class ResultKey {
+		final int[] inputs;
+		// additional types are ids of map index rules, index is not held by cache after file is closed
+		final WeakReference<Object> mapIndex;
+		final int[] additionalTypes;
+		final int hash;
+
+		ResultKey(int[] inputs, Object mapIndex, int[] additionalTypes) {
+			this.inputs = inputs;
+			this.mapIndex = mapIndex == null ? null : new WeakReference<Object>(mapIndex);
+			this.additionalTypes = additionalTypes;
+			this.hash = (Arrays.hashCode(inputs) * 31 + System.identityHashCode(mapIndex)) * 31
+					+ Arrays.hashCode(additionalTypes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ResultKey)) {
+				return false;
+			}
+			ResultKey other = (ResultKey) obj;
+			return hash == other.hash && sameMapIndex(other) && Arrays.equals(inputs, other.inputs)
+					&& Arrays.equals(additionalTypes, other.additionalTypes);
+		}
+
+		private boolean sameMapIndex(ResultKey other) {
+			if (mapIndex == null || other.mapIndex == null) {
+				return mapIndex == other.mapIndex;
+			}
+			// results of collected index are never matched again and will be evicted
+			Object m = mapIndex.get();
+			return m != null && m == other.mapIndex.get();
+		}
+	}
+}
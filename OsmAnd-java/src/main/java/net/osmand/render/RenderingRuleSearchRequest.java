@@ -1,6 +1,7 @@
 package net.osmand.render;
 
 import net.osmand.binary.BinaryMapDataObject;
+import net.osmand.render.CompiledRenderingRules.CompiledRule;
 import net.osmand.util.Algorithms;
 
 
@@ -127,22 +128,31 @@ public class RenderingRuleSearchRequest {
 	}
 	
 	public boolean search(int state, boolean loadOutput) {
-		searchResult = false;
+		RenderingRuleSearchCache cache = storage.getSearchCache();
+		RenderingRuleSearchCache.ResultKey key = cache == null ? null : cache.getKey(this, state, loadOutput);
+		if (key != null && cache.loadResult(key, this)) {
+			return searchResult;
+		}
+		searchResult = searchTagValue(state, loadOutput);
+		if (key != null) {
+			cache.putResult(key, this);
+		}
+		return searchResult;
+	}
+
+	private boolean searchTagValue(int state, boolean loadOutput) {
 		int tagKey = values[storage.PROPS.R_TAG.getId()];
 		int valueKey = values[storage.PROPS.R_VALUE.getId()];
 		boolean result = searchInternal(state, tagKey, valueKey, loadOutput);
 		if (result) {
-			searchResult = true;
 			return true;
 		}
 		result = searchInternal(state, tagKey, 0, loadOutput);
 		if (result) {
-			searchResult = true;
 			return true;
 		}
 		result = searchInternal(state, 0, 0, loadOutput);
 		if (result) {
-			searchResult = true;
 			return true;
 		}
 		
@@ -154,6 +164,18 @@ public class RenderingRuleSearchRequest {
 		values[storage.PROPS.R_TAG.getId()] = tagKey;
 		values[storage.PROPS.R_VALUE.getId()] = valueKey;
 		values[storage.PROPS.R_DISABLE.getId()] = 0;
+		CompiledRenderingRules compiledRules = storage.getCompiledRules();
+		if (compiledRules != null) {
+			long key = CompiledRenderingRules.getKey(state, tagKey, valueKey, values[storage.PROPS.R_MINZOOM.getId()],
+					values[storage.PROPS.R_MAXZOOM.getId()], values[storage.PROPS.R_LAYER.getId()]);
+			if (key != -1) {
+				boolean match = visitRule(compiledRules.getRule(key), loadOutput);
+				if (match && values[storage.PROPS.R_DISABLE.getId()] != 0) {
+					return false;
+				}
+				return match;
+			}
+		}
 		RenderingRule accept = storage.getRule(state, tagKey, valueKey);
 		if (accept == null) {
 			return false;
@@ -198,6 +220,77 @@ public class RenderingRuleSearchRequest {
 		
 	}
 
+	// same as visitRule(RenderingRule) for compiled rule
+	private boolean visitRule(CompiledRule rule, boolean loadOutput) {
+		if (!checkInputProperties(rule)) {
+			return false;
+		}
+		if (!loadOutput && !rule.group) {
+			return true;
+		}
+		if (!rule.group) {
+			loadOutputProperties(rule, true);
+		}
+		boolean match = false;
+		for (CompiledRule rr : rule.ifElseChildren) {
+			match = visitRule(rr, loadOutput);
+			if (match) {
+				break;
+			}
+		}
+		boolean fit = (match || !rule.group);
+		if (fit && loadOutput) {
+			if (rule.group) {
+				loadOutputProperties(rule, false);
+			}
+			for (CompiledRule rr : rule.ifChildren) {
+				visitRule(rr, loadOutput);
+			}
+		}
+		return fit;
+	}
+
+	private void loadOutputProperties(CompiledRule rule, boolean override) {
+		for (int i = 0; i < rule.outputs.length; i++) {
+			RenderingRuleProperty rp = rule.outputs[i];
+			if (!isSpecified(rp) || override) {
+				CompiledRule rr = rule.outputAttrs[i];
+				if (rr != null) {
+					visitRule(rr, true);
+					if (isSpecified(storage.PROPS.R_ATTR_COLOR_VALUE)) {
+						values[rp.getId()] = getIntPropertyValue(storage.PROPS.R_ATTR_COLOR_VALUE);
+					} else if (isSpecified(storage.PROPS.R_ATTR_INT_VALUE)) {
+						values[rp.getId()] = getIntPropertyValue(storage.PROPS.R_ATTR_INT_VALUE);
+						fvalues[rp.getId()] = getFloatPropertyValue(storage.PROPS.R_ATTR_INT_VALUE);
+					} else if (isSpecified(storage.PROPS.R_ATTR_BOOL_VALUE)) {
+						values[rp.getId()] = getIntPropertyValue(storage.PROPS.R_ATTR_BOOL_VALUE);
+					}
+				} else if (rp.isFloat()) {
+					fvalues[rp.getId()] = rule.outputFloats[i];
+					values[rp.getId()] = rule.outputInts[i];
+				} else {
+					values[rp.getId()] = rule.outputInts[i];
+				}
+			}
+		}
+	}
+
+	private boolean checkInputProperties(CompiledRule rule) {
+		for (int i = 0; i < rule.inputs.length; i++) {
+			RenderingRuleProperty rp = rule.inputs[i];
+			if (rp == storage.PROPS.R_DISABLE) {
+				values[rp.getId()] = rule.inputInts[i];
+			} else if (rp.isFloat()) {
+				if (!rp.accept(rule.inputFloats[i], fvalues[rp.getId()], this)) {
+					return false;
+				}
+			} else if (!rp.accept(rule.inputInts[i], values[rp.getId()], this)) {
+				return false;
+			}
+		}
+		return !rule.fail;
+	}
+
 	protected void loadOutputProperties(RenderingRule rule, boolean override) {
 		RenderingRuleProperty[] properties = rule.getProperties();
 		for (int i = 0; i < properties.length; i++) {
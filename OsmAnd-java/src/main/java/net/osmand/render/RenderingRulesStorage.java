@@ -59,6 +59,11 @@ public class RenderingRulesStorage {
 	protected String renderingName;
 	protected String internalRenderingName;
 	
+	// optional rules specialized for search requests
+	private CompiledRenderingRules compiledRules;
+	// optional cache of search results shared by requests
+	private RenderingRuleSearchCache searchCache;
+	
 	
 	public static interface RenderingRulesStorageResolver {
 		
@@ -486,6 +491,32 @@ public class RenderingRulesStorage {
 		return null;
 	}
 	
+	/**
+	 * Search requests will use rules compiled (lazily) for their tag, value, zoom and layer,
+	 * should be called after storage is loaded
+	 */
+	public synchronized CompiledRenderingRules compileRules() {
+		if (compiledRules == null) {
+			compiledRules = new CompiledRenderingRules(this);
+		}
+		return compiledRules;
+	}
+	
+	public CompiledRenderingRules getCompiledRules() {
+		return compiledRules;
+	}
+	
+	public RenderingRuleSearchCache getSearchCache() {
+		return searchCache;
+	}
+	
+	/**
+	 * Cache should be created for this storage after it is loaded
+	 */
+	public void setSearchCache(RenderingRuleSearchCache searchCache) {
+		this.searchCache = searchCache;
+	}
+	
 	public RenderingRule getRenderingAttributeRule(String attribute){
 		return renderingAttributes.get(attribute);
 	}
@@ -4,10 +4,19 @@ import gnu.trove.map.hash.TLongObjectHashMap;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.osmand.PlatformUtil;
 import net.osmand.binary.RouteDataObject;
@@ -31,6 +40,32 @@ public class BinaryRoutePlanner {
 	private static final int ROUTE_POINTS = 11;
 	private static final boolean TRACE_ROUTING = false;
 
+	// direct search continues through visited target roads to reach other targets
+	private boolean oneToManySearch = false;
+	// state of running parallel search (see RoutingConfiguration.parallelBidirectionalSearch)
+	private volatile ParallelSearchState parallelSearch;
+
+	// threads expanding reverse frontier of parallel searches
+	private static ThreadPoolExecutor reverseSearchExecutor;
+
+	private static synchronized ThreadPoolExecutor getReverseSearchExecutor() {
+		if (reverseSearchExecutor == null) {
+			// every search needs own thread immediately, otherwise its direct frontier would expand alone
+			reverseSearchExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30L, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger number = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Reverse route search " + number.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return reverseSearchExecutor;
+	}
+
 
 	public static double squareRootDist(int x1, int y1, int x2, int y2) {
 		return MapUtils.squareRootDist31(x1, y1, x2, y2);
@@ -38,19 +73,6 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private static class SegmentsComparator implements Comparator<RouteSegment> {
-		final RoutingContext ctx;
-
-		public SegmentsComparator(RoutingContext ctx) {
-			this.ctx = ctx;
-		}
-
-		@Override
-		public int compare(RouteSegment o1, RouteSegment o2) {
-			return ctx.roadPriorityComparator(o1.distanceFromStart, o1.distanceToEnd, o2.distanceFromStart, o2.distanceToEnd);
-		}
-	}
-
 	private static class NonHeuristicSegmentsComparator implements Comparator<RouteSegment> {
 		public NonHeuristicSegmentsComparator() {
 		}
@@ -72,8 +94,8 @@ public class BinaryRoutePlanner {
 
 		// Initializing priority queue to visit way segments 
 		Comparator<RouteSegment> nonHeuristicSegmentsComparator = new NonHeuristicSegmentsComparator();
-		PriorityQueue<RouteSegment> graphDirectSegments = new PriorityQueue<RouteSegment>(50, new SegmentsComparator(ctx));
-		PriorityQueue<RouteSegment> graphReverseSegments = new PriorityQueue<RouteSegment>(50, new SegmentsComparator(ctx));
+		RouteSegmentQueue graphDirectSegments = createSegmentQueue(ctx.config.heuristicCoefficient);
+		RouteSegmentQueue graphReverseSegments = createSegmentQueue(ctx.config.heuristicCoefficient);
 
 		// Set to not visit one segment twice (stores road.id << X + segmentStart)
 		TLongObjectHashMap<RouteSegment> visitedDirectSegments = new TLongObjectHashMap<RouteSegment>();
@@ -81,11 +103,15 @@ public class BinaryRoutePlanner {
 
 		initQueuesWithStartEnd(ctx, start, end, recalculationEnd, graphDirectSegments, graphReverseSegments, 
 				visitedDirectSegments, visitedOppositeSegments);
+		if (ctx.config.parallelBidirectionalSearch && ctx.planRouteIn2Directions() && ctx.visitor == null) {
+			return searchRouteInParallel(ctx, start, end, graphDirectSegments, graphReverseSegments,
+					visitedDirectSegments, visitedOppositeSegments);
+		}
 
 		// Extract & analyze segment with min(f(x)) from queue while final segment is not found
 		boolean forwardSearch = true;
 
-		PriorityQueue<RouteSegment> graphSegments = graphDirectSegments;
+		RouteSegmentQueue graphSegments = graphDirectSegments;
 
 		FinalRouteSegment finalSegment = null;
 		boolean onlyBackward = ctx.getPlanRoadDirection() < 0;
@@ -131,7 +157,7 @@ public class BinaryRoutePlanner {
 				processRouteSegment(ctx, true, graphReverseSegments, visitedOppositeSegments, segment,
 						visitedDirectSegments, doNotAddIntersections);
 			}
-			updateCalculationProgress(ctx, graphDirectSegments, graphReverseSegments);
+			updateCalculationProgress(ctx, ctx.calculationProgress, graphDirectSegments, graphReverseSegments);
 
 			checkIfGraphIsEmpty(ctx, ctx.getPlanRoadDirection() <= 0, graphReverseSegments, end, visitedOppositeSegments,
 					"Route is not found to selected target point.");
@@ -176,8 +202,363 @@ public class BinaryRoutePlanner {
 		return finalSegment;
 	}
 
+	// could be overridden to record queue operations (see RouteSegmentQueueBenchmark)
+	RouteSegmentQueue createSegmentQueue(double heuristicCoefficient) {
+		return new RouteSegmentQueue(heuristicCoefficient);
+	}
+
+	/**
+	 * Calculates routes from one start to many targets with a single Dijkstra search (no heuristic):
+	 * every target road is expanded in reverse direction up to the nearest intersections first,
+	 * then direct search runs until all targets are reached or graph is exhausted.
+	 * Targets which share same road intervals are searched in the next rounds.
+	 * @return final segments of routes (index of target), null if target is not reachable
+	 */
+	FinalRouteSegment[] searchRouteOneToMany(final RoutingContext ctx, RouteSegmentPoint start,
+			RouteSegmentPoint[] targets) throws InterruptedException, IOException {
+		return searchRouteOneToMany(ctx, start, targets, 0);
+	}
+
+	/**
+	 * @param maxDistance if positive, segments further than this distance (m) from start point are not expanded,
+	 *            so only targets reachable by routes not longer than maxDistance are guaranteed to be found
+	 */
+	FinalRouteSegment[] searchRouteOneToMany(final RoutingContext ctx, RouteSegmentPoint start,
+			RouteSegmentPoint[] targets, double maxDistance) throws InterruptedException, IOException {
+		FinalRouteSegment[] result = new FinalRouteSegment[targets.length];
+		boolean[] searched = new boolean[targets.length];
+		int left = targets.length;
+		oneToManySearch = true;
+		try {
+			while (left > 0) {
+				TLongObjectHashMap<RouteSegment> visitedTargets = new TLongObjectHashMap<RouteSegment>();
+				Map<RouteSegment, Integer> targetRoots = new IdentityHashMap<RouteSegment, Integer>();
+				int groupSize = 0;
+				for (int t = 0; t < targets.length; t++) {
+					if (searched[t]) {
+						continue;
+					}
+					// points are copied as segments keep search state
+					RouteSegmentPoint target = new RouteSegmentPoint(targets[t]);
+					ctx.initStartAndTargetPoints(start, target);
+					TLongObjectHashMap<RouteSegment> visited = new TLongObjectHashMap<RouteSegment>();
+					RouteSegment endPos = initRouteSegment(ctx, target, true);
+					RouteSegment endNeg = initRouteSegment(ctx, target, false);
+					RouteSegmentQueue ignored = new RouteSegmentQueue(0);
+					TLongObjectHashMap<RouteSegment> noOpposite = new TLongObjectHashMap<RouteSegment>();
+					for (RouteSegment end : new RouteSegment[] { endPos, endNeg }) {
+						if (end != null) {
+							targetRoots.put(end, t);
+							processRouteSegment(ctx, true, ignored, visited, end, noOpposite, true);
+						}
+					}
+					if (groupSize > 0 && intersects(visitedTargets, visited)) {
+						continue;
+					}
+					visitedTargets.putAll(visited);
+					searched[t] = true;
+					groupSize++;
+					left--;
+				}
+				RouteSegmentPoint groupStart = new RouteSegmentPoint(start);
+				if (start.others != null) {
+					groupStart.others = new ArrayList<RouteSegmentPoint>(start.others);
+				}
+				searchTargets(ctx, groupStart, visitedTargets, targetRoots, groupSize, result, maxDistance);
+			}
+		} finally {
+			oneToManySearch = false;
+		}
+		return result;
+	}
+
+	private static boolean intersects(TLongObjectHashMap<RouteSegment> m1, TLongObjectHashMap<RouteSegment> m2) {
+		for (long k : m2.keys()) {
+			if (m1.containsKey(k)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void searchTargets(final RoutingContext ctx, RouteSegmentPoint start,
+			TLongObjectHashMap<RouteSegment> visitedTargets, Map<RouteSegment, Integer> targetRoots, int targetsCount,
+			FinalRouteSegment[] result, double maxDistance) throws InterruptedException, IOException {
+		RouteSegmentQueue graphSegments = new RouteSegmentQueue(0);
+		TLongObjectHashMap<RouteSegment> visitedSegments = new TLongObjectHashMap<RouteSegment>();
+		RouteSegment startPos = initRouteSegment(ctx, start, true);
+		RouteSegment startNeg = initRouteSegment(ctx, start, false);
+		if (startPos != null) {
+			graphSegments.add(startPos);
+		}
+		if (startNeg != null) {
+			graphSegments.add(startNeg);
+		}
+		int found = 0;
+		while (found < targetsCount && !graphSegments.isEmpty()) {
+			RouteSegment segment = graphSegments.poll();
+			ctx.memoryOverhead = (visitedSegments.size() + visitedTargets.size()) * STANDARD_ROAD_VISITED_OVERHEAD
+					+ graphSegments.size() * STANDARD_ROAD_IN_QUEUE_OVERHEAD;
+			if (segment instanceof FinalRouteSegment) {
+				FinalRouteSegment frs = (FinalRouteSegment) segment;
+				RouteSegment root = frs.opposite;
+				while (root.getParentRoute() != null) {
+					root = root.getParentRoute();
+				}
+				Integer t = targetRoots.get(root);
+				// segments are polled in order of time, so first found route is the fastest one
+				if (t != null && result[t] == null) {
+					result[t] = frs;
+					found++;
+				}
+				continue;
+			}
+			if (ctx.memoryOverhead > ctx.config.memoryLimitation * 0.95) {
+				throw new IllegalStateException("There is not enough memory " + ctx.config.memoryLimitation / (1 << 20) + " Mb");
+			}
+			if (maxDistance > 0 && squareRootDist(start.preciseX, start.preciseY,
+					segment.getRoad().getPoint31XTile(segment.getSegmentStart()),
+					segment.getRoad().getPoint31YTile(segment.getSegmentStart())) > maxDistance) {
+				continue;
+			}
+			if (ctx.calculationProgress != null) {
+				ctx.calculationProgress.visitedSegments++;
+			}
+			processRouteSegment(ctx, false, graphSegments, visitedSegments, segment, visitedTargets, false);
+			// bounded search ends when all segments around start are visited
+			checkIfGraphIsEmpty(ctx, maxDistance <= 0, graphSegments, start, visitedSegments,
+					"Route is not found from selected start point.");
+			if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+				throw new InterruptedException("Route calculation interrupted");
+			}
+		}
+		if (ctx.calculationProgress != null) {
+			ctx.calculationProgress.visitedDirectSegments += visitedSegments.size();
+			ctx.calculationProgress.visitedOppositeSegments += visitedTargets.size();
+		}
+	}
+
+	/**
+	 * Expands reverse frontier in a pooled thread while current thread expands direct frontier.
+	 * Threads share only tile loading (synchronized in RoutingContext) and visited maps (to detect meeting).
+	 * Polled final segment is accepted only when the other frontier has passed it (as serial search alternates
+	 * directions by the same order), otherwise the thread waits while the other one could find a better meeting.
+	 * Each direction keeps own progress counters, they are merged into context after both threads stop.
+	 */
+	private FinalRouteSegment searchRouteInParallel(final RoutingContext ctx, final RouteSegmentPoint start,
+			final RouteSegmentPoint end, final RouteSegmentQueue graphDirectSegments,
+			final RouteSegmentQueue graphReverseSegments, final TLongObjectHashMap<RouteSegment> visitedDirectSegments,
+			final TLongObjectHashMap<RouteSegment> visitedOppositeSegments) throws InterruptedException, IOException {
+		final ParallelSearchState state = new ParallelSearchState();
+		parallelSearch = state;
+		try {
+			Future<?> reverseSearch = getReverseSearchExecutor().submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						searchRouteInOneDirection(ctx, state, true, graphReverseSegments, visitedOppositeSegments,
+								visitedDirectSegments, end);
+					} catch (Throwable e) {
+						state.fail(e);
+					}
+				}
+			});
+			try {
+				searchRouteInOneDirection(ctx, state, false, graphDirectSegments, visitedDirectSegments,
+						visitedOppositeSegments, start);
+			} catch (Throwable e) {
+				state.fail(e);
+			}
+			try {
+				reverseSearch.get();
+			} catch (ExecutionException e) {
+				state.fail(e.getCause());
+			} catch (InterruptedException e) {
+				// stop reverse thread as well
+				state.fail(e);
+				throw e;
+			}
+		} finally {
+			parallelSearch = null;
+		}
+		mergeCalculationProgress(ctx, state);
+		if (state.error instanceof InterruptedException) {
+			throw (InterruptedException) state.error;
+		} else if (state.error instanceof IOException) {
+			throw (IOException) state.error;
+		} else if (state.error instanceof RuntimeException) {
+			throw (RuntimeException) state.error;
+		} else if (state.error instanceof Error) {
+			throw (Error) state.error;
+		}
+		FinalRouteSegment finalSegment = state.finalSegment;
+		if (finalSegment != null && RoutingContext.SHOW_GC_SIZE) {
+			log.warn("Estimated overhead " + (ctx.memoryOverhead / (1 << 20)) + " mb");
+			printMemoryConsumption("Memory occupied after calculation : ");
+		}
+		if (ctx.calculationProgress != null) {
+			ctx.calculationProgress.visitedDirectSegments += visitedDirectSegments.size();
+			ctx.calculationProgress.visitedOppositeSegments += visitedOppositeSegments.size();
+			ctx.calculationProgress.directQueueSize += graphDirectSegments.size();
+			ctx.calculationProgress.oppositeQueueSize += graphReverseSegments.size();
+			ctx.calculationProgress.visitedOppositeSegments += visitedOppositeSegments.size();
+		}
+		return finalSegment;
+	}
+
+	private void mergeCalculationProgress(final RoutingContext ctx, ParallelSearchState state) {
+		ctx.memoryOverhead = state.getMemoryOverhead();
+		RouteCalculationProgress p = ctx.calculationProgress;
+		if (p != null) {
+			RouteCalculationProgress direct = state.directProgress;
+			RouteCalculationProgress reverse = state.reverseProgress;
+			p.visitedSegments += direct.visitedSegments + reverse.visitedSegments;
+			p.directSegmentQueueSize = direct.directSegmentQueueSize;
+			p.distanceFromBegin = Math.max(p.distanceFromBegin, direct.distanceFromBegin);
+			p.directDistance = direct.directDistance;
+			p.reverseSegmentQueueSize = reverse.reverseSegmentQueueSize;
+			p.distanceFromEnd = Math.max(p.distanceFromEnd, reverse.distanceFromEnd);
+			p.reverseDistance = reverse.reverseDistance;
+		}
+	}
+
+	private void searchRouteInOneDirection(final RoutingContext ctx, ParallelSearchState state, boolean reverseWaySearch,
+			RouteSegmentQueue graphSegments, TLongObjectHashMap<RouteSegment> visitedSegments,
+			TLongObjectHashMap<RouteSegment> oppositeSegments, RouteSegmentPoint pnt)
+			throws InterruptedException, IOException {
+		RouteCalculationProgress progress = reverseWaySearch ? state.reverseProgress : state.directProgress;
+		while (!state.finished && !graphSegments.isEmpty()) {
+			RouteSegment segment = graphSegments.poll();
+			// each thread estimates only own structures
+			int memoryOverhead = visitedSegments.size() * STANDARD_ROAD_VISITED_OVERHEAD +
+					graphSegments.size() * STANDARD_ROAD_IN_QUEUE_OVERHEAD;
+			if (reverseWaySearch) {
+				state.reverseMemoryOverhead = memoryOverhead;
+			} else {
+				state.directMemoryOverhead = memoryOverhead;
+			}
+			if (TRACE_ROUTING) {
+				printRoad(">", segment, reverseWaySearch);
+			}
+			if (segment instanceof FinalRouteSegment) {
+				if (TRACE_ROUTING) {
+					println("Final segment found");
+				}
+				state.offer((FinalRouteSegment) segment, reverseWaySearch);
+				// segments left in queue can't improve the route
+				state.await(ctx);
+				return;
+			}
+			state.poll(segment, reverseWaySearch);
+			if (state.getMemoryOverhead() > ctx.config.memoryLimitation * 0.95) {
+				throw new IllegalStateException("There is not enough memory " + ctx.config.memoryLimitation / (1 << 20) + " Mb");
+			}
+			progress.visitedSegments++;
+			processRouteSegment(ctx, reverseWaySearch, graphSegments, visitedSegments, segment, oppositeSegments, false);
+			updateCalculationProgress(ctx, progress, graphSegments, reverseWaySearch);
+			checkIfGraphIsEmpty(ctx, true, graphSegments, pnt, visitedSegments, reverseWaySearch ?
+					"Route is not found to selected target point." : "Route is not found from selected start point.");
+			// check if interrupted
+			if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+				throw new InterruptedException("Route calculation interrupted");
+			}
+		}
+		// if queue is empty this direction can't be expanded anymore,
+		// the other one will still find the route by meeting visited segments
+		state.stop(reverseWaySearch);
+	}
+
+	private static class ParallelSearchState {
+		// written only by thread of own direction
+		final RouteCalculationProgress directProgress = new RouteCalculationProgress();
+		final RouteCalculationProgress reverseProgress = new RouteCalculationProgress();
+		volatile int directMemoryOverhead;
+		volatile int reverseMemoryOverhead;
+
+		// priority of last polled segment in each direction
+		volatile double directFrontier;
+		volatile double reverseFrontier;
+		// best route found so far, waits until both frontiers pass it
+		volatile FinalRouteSegment candidate;
+
+		volatile boolean finished;
+		volatile FinalRouteSegment finalSegment;
+		volatile Throwable error;
+
+		int getMemoryOverhead() {
+			return directMemoryOverhead + reverseMemoryOverhead;
+		}
+
+		// same order as NonHeuristicSegmentsComparator which chooses direction in serial search
+		static double getPriority(RouteSegment segment) {
+			return segment.distanceFromStart + 0.5 * segment.distanceToEnd;
+		}
+
+		void poll(RouteSegment segment, boolean reverseWaySearch) {
+			setFrontier(reverseWaySearch, getPriority(segment));
+			if (candidate != null) {
+				tryFinish();
+			}
+		}
+
+		synchronized void offer(FinalRouteSegment segment, boolean reverseWaySearch) {
+			if (candidate == null || segment.distanceFromStart < candidate.distanceFromStart) {
+				candidate = segment;
+			}
+			setFrontier(reverseWaySearch, getPriority(segment));
+			tryFinish();
+		}
+
+		synchronized void stop(boolean reverseWaySearch) {
+			setFrontier(reverseWaySearch, Double.POSITIVE_INFINITY);
+			tryFinish();
+		}
+
+		private void setFrontier(boolean reverseWaySearch, double priority) {
+			if (reverseWaySearch) {
+				reverseFrontier = priority;
+			} else {
+				directFrontier = priority;
+			}
+		}
+
+		private synchronized void tryFinish() {
+			if (candidate != null) {
+				double priority = getPriority(candidate);
+				if (directFrontier >= priority && reverseFrontier >= priority) {
+					finish(candidate);
+				}
+			}
+		}
+
+		synchronized void await(RoutingContext ctx) throws InterruptedException {
+			while (!finished) {
+				wait(100);
+				if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+					throw new InterruptedException("Route calculation interrupted");
+				}
+			}
+		}
+
+		synchronized void finish(FinalRouteSegment segment) {
+			if (!finished) {
+				finalSegment = segment;
+				finished = true;
+				notifyAll();
+			}
+		}
+
+		synchronized void fail(Throwable e) {
+			if (!finished) {
+				error = e;
+				finished = true;
+				notifyAll();
+			}
+		}
+	}
+
 	protected void checkIfGraphIsEmpty(final RoutingContext ctx, boolean allowDirection,
-			PriorityQueue<RouteSegment> graphSegments, RouteSegmentPoint pnt, TLongObjectHashMap<RouteSegment> visited,
+			RouteSegmentQueue graphSegments, RouteSegmentPoint pnt, TLongObjectHashMap<RouteSegment> visited,
 			String msg) {
 		if (allowDirection && graphSegments.isEmpty()) {
 			if (pnt.others != null) {
@@ -247,7 +628,7 @@ public class BinaryRoutePlanner {
 
 
 	private void initQueuesWithStartEnd(final RoutingContext ctx, RouteSegment start, RouteSegment end,
-			RouteSegment recalculationEnd, PriorityQueue<RouteSegment> graphDirectSegments, PriorityQueue<RouteSegment> graphReverseSegments, 
+			RouteSegment recalculationEnd, RouteSegmentQueue graphDirectSegments, RouteSegmentQueue graphReverseSegments, 
 			TLongObjectHashMap<RouteSegment> visitedDirectSegments, TLongObjectHashMap<RouteSegment> visitedOppositeSegments) {
 		RouteSegment startPos = initRouteSegment(ctx, start, true);
 		RouteSegment startNeg = initRouteSegment(ctx, start, false);
@@ -302,6 +683,11 @@ public class BinaryRoutePlanner {
 	}
 
 
+	private int getMemoryOverhead(final RoutingContext ctx) {
+		ParallelSearchState state = parallelSearch;
+		return state != null ? state.getMemoryOverhead() : ctx.memoryOverhead;
+	}
+
 	private void printMemoryConsumption(String string) {
 		long h1 = RoutingContext.runGCUsedMemory();
 		float mb = (1 << 20);
@@ -309,22 +695,30 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private void updateCalculationProgress(final RoutingContext ctx, PriorityQueue<RouteSegment> graphDirectSegments,
-			PriorityQueue<RouteSegment> graphReverseSegments) {
-		if (ctx.calculationProgress != null) {
-			ctx.calculationProgress.reverseSegmentQueueSize = graphReverseSegments.size();
-			ctx.calculationProgress.directSegmentQueueSize = graphDirectSegments.size();
-			if (graphDirectSegments.size() > 0 && ctx.getPlanRoadDirection() >= 0) {
-				RouteSegment peek = graphDirectSegments.peek();
-				ctx.calculationProgress.distanceFromBegin = Math.max(peek.distanceFromStart,
-						ctx.calculationProgress.distanceFromBegin);
-				ctx.calculationProgress.directDistance = peek.distanceFromStart + peek.distanceToEnd;
-			}
-			if (graphReverseSegments.size() > 0 && ctx.getPlanRoadDirection() <= 0) {
-				RouteSegment peek = graphReverseSegments.peek();
-				ctx.calculationProgress.distanceFromEnd = Math.max(peek.distanceFromStart + peek.distanceToEnd,
-							ctx.calculationProgress.distanceFromEnd);
-				ctx.calculationProgress.reverseDistance = peek.distanceFromStart + peek.distanceToEnd;
+	private void updateCalculationProgress(final RoutingContext ctx, RouteCalculationProgress progress,
+			RouteSegmentQueue graphDirectSegments, RouteSegmentQueue graphReverseSegments) {
+		updateCalculationProgress(ctx, progress, graphDirectSegments, false);
+		updateCalculationProgress(ctx, progress, graphReverseSegments, true);
+	}
+
+	private void updateCalculationProgress(final RoutingContext ctx, RouteCalculationProgress progress,
+			RouteSegmentQueue graphSegments, boolean reverseWaySearch) {
+		if (progress != null) {
+			if (!reverseWaySearch) {
+				progress.directSegmentQueueSize = graphSegments.size();
+				if (graphSegments.size() > 0 && ctx.getPlanRoadDirection() >= 0) {
+					RouteSegment peek = graphSegments.peek();
+					progress.distanceFromBegin = Math.max(peek.distanceFromStart, progress.distanceFromBegin);
+					progress.directDistance = peek.distanceFromStart + peek.distanceToEnd;
+				}
+			} else {
+				progress.reverseSegmentQueueSize = graphSegments.size();
+				if (graphSegments.size() > 0 && ctx.getPlanRoadDirection() <= 0) {
+					RouteSegment peek = graphSegments.peek();
+					progress.distanceFromEnd = Math.max(peek.distanceFromStart + peek.distanceToEnd,
+							progress.distanceFromEnd);
+					progress.reverseDistance = peek.distanceFromStart + peek.distanceToEnd;
+				}
 			}
 		}
 	}
@@ -395,7 +789,7 @@ public class BinaryRoutePlanner {
 
 	@SuppressWarnings("unused")
 	private void processRouteSegment(final RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegment> graphSegments, TLongObjectHashMap<RouteSegment> visitedSegments, 
+			RouteSegmentQueue graphSegments, TLongObjectHashMap<RouteSegment> visitedSegments, 
             RouteSegment segment, TLongObjectHashMap<RouteSegment> oppositeSegments, boolean doNotAddIntersections) throws IOException {
 		final RouteDataObject road = segment.road;
 		boolean initDirectionAllowed = checkIfInitialMovementAllowedOnSegment(ctx, reverseWaySearch, visitedSegments, segment, road);
@@ -431,8 +825,11 @@ public class BinaryRoutePlanner {
 				continue;
 			}
 			// store <segment> in order to not have unique <segment, direction> in visitedSegments 
-			visitedSegments.put(calculateRoutePointId(segment.getRoad(), segment.isPositive() ? segmentPoint - 1 : segmentPoint,
-					segment.isPositive()), previous != null ? previous : segment);
+			// (synchronized as opposite search could read it concurrently)
+			synchronized (visitedSegments) {
+				visitedSegments.put(calculateRoutePointId(segment.getRoad(), segment.isPositive() ? segmentPoint - 1 : segmentPoint,
+						segment.isPositive()), previous != null ? previous : segment);
+			}
 			final int x = road.getPoint31XTile(segmentPoint);
 			final int y = road.getPoint31YTile(segmentPoint);
 			final int prevx = road.getPoint31XTile(prevInd);
@@ -461,7 +858,7 @@ public class BinaryRoutePlanner {
 					segmentPoint, segmentDist, obstaclesTime);
 			obstaclesTime += obstacle;
 			obstaclesTime += heightObstacle;
-			if (alreadyVisited) {
+			if (alreadyVisited && !oneToManySearch) {
 				directionAllowed = false;
 				continue;
 			}
@@ -479,7 +876,7 @@ public class BinaryRoutePlanner {
 			}
 			// could be expensive calculation
 			// 3. get intersected ways
-			final RouteSegment roadNext = ctx.loadRouteSegment(x, y, ctx.config.memoryLimitation - ctx.memoryOverhead);
+			final RouteSegment roadNext = ctx.loadRouteSegment(x, y, ctx.config.memoryLimitation - getMemoryOverhead(ctx));
 			float distStartObstacles = segment.distanceFromStart + calculateTimeWithObstacles(ctx, road, segmentDist, obstaclesTime);
 			if (ctx.precalculatedRouteDirection != null && ctx.precalculatedRouteDirection.isFollowNext()) {
 				// reset to f
@@ -559,12 +956,15 @@ public class BinaryRoutePlanner {
 	}
 
 	private boolean checkIfOppositeSegmentWasVisited(final RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegment> graphSegments, RouteSegment segment, TLongObjectHashMap<RouteSegment> oppositeSegments,
+			RouteSegmentQueue graphSegments, RouteSegment segment, TLongObjectHashMap<RouteSegment> oppositeSegments,
 			int segmentPoint, float segmentDist, float obstaclesTime) {
 		RouteDataObject road = segment.getRoad();
 		long opp = calculateRoutePointId(road, segment.isPositive() ? segmentPoint - 1 : segmentPoint, !segment.isPositive());
-		if (oppositeSegments.containsKey(opp)) {
-			RouteSegment opposite = oppositeSegments.get(opp);
+		RouteSegment opposite;
+		synchronized (oppositeSegments) {
+			opposite = oppositeSegments.get(opp);
+		}
+		if (opposite != null) {
 			RouteSegment to = reverseWaySearch ? getParentDiffId(segment) : getParentDiffId(opposite);
 			RouteSegment from = !reverseWaySearch ? getParentDiffId(segment) : getParentDiffId(opposite);
 			if (checkViaRestrictions(from, to)) {
@@ -631,8 +1031,8 @@ public class BinaryRoutePlanner {
 				(parent == null || parent.getRoad().getRestrictionLength() == 0)) {
 			return false;
 		}
-		ctx.segmentsToVisitPrescripted.clear();
-		ctx.segmentsToVisitNotForbidden.clear();
+		segmentsToVisitPrescripted(ctx, reverseWay).clear();
+		segmentsToVisitNotForbidden(ctx, reverseWay).clear();
 		processRestriction(ctx, inputNext, reverseWay, 0, road);
 		if (parent != null) {
 			processRestriction(ctx, inputNext, reverseWay, road.id, parent.getRoad());
@@ -641,8 +1041,18 @@ public class BinaryRoutePlanner {
 	}
 
 
+	private static List<RouteSegment> segmentsToVisitPrescripted(RoutingContext ctx, boolean reverseWay) {
+		return reverseWay ? ctx.reverseSegmentsToVisitPrescripted : ctx.segmentsToVisitPrescripted;
+	}
+
+	private static List<RouteSegment> segmentsToVisitNotForbidden(RoutingContext ctx, boolean reverseWay) {
+		return reverseWay ? ctx.reverseSegmentsToVisitNotForbidden : ctx.segmentsToVisitNotForbidden;
+	}
+
 	protected void processRestriction(RoutingContext ctx, RouteSegment inputNext, boolean reverseWay, long viaId,
 			RouteDataObject road) {
+		List<RouteSegment> segmentsToVisitPrescripted = segmentsToVisitPrescripted(ctx, reverseWay);
+		List<RouteSegment> segmentsToVisitNotForbidden = segmentsToVisitNotForbidden(ctx, reverseWay);
 		boolean via = viaId != 0;
 		RouteSegment next = inputNext;
 		boolean exclusiveRestriction = false;
@@ -705,11 +1115,11 @@ public class BinaryRoutePlanner {
 					|| type == MapRenderingTypes.RESTRICTION_NO_STRAIGHT_ON || type == MapRenderingTypes.RESTRICTION_NO_U_TURN) {
 				// next = next.next; continue;
 				if (via) {
-					ctx.segmentsToVisitPrescripted.remove(next);
+					segmentsToVisitPrescripted.remove(next);
 				}
 			} else if (type == -1) {
 				// case no restriction
-				ctx.segmentsToVisitNotForbidden.add(next);
+				segmentsToVisitNotForbidden.add(next);
 			} else {
 				if (!via) {
 					// case exclusive restriction (only_right, only_straight, ...)
@@ -718,22 +1128,22 @@ public class BinaryRoutePlanner {
 					// 2. in case we are going forward we have one "in" and many "out"
 					if (!reverseWay) {
 						exclusiveRestriction = true;
-						ctx.segmentsToVisitNotForbidden.clear();
-						ctx.segmentsToVisitPrescripted.add(next);
+						segmentsToVisitNotForbidden.clear();
+						segmentsToVisitPrescripted.add(next);
 					} else {
-						ctx.segmentsToVisitNotForbidden.add(next);
+						segmentsToVisitNotForbidden.add(next);
 					}
 				}
 			}
 			next = next.next;
 		}
 		if (!via) {
-			ctx.segmentsToVisitPrescripted.addAll(ctx.segmentsToVisitNotForbidden);
+			segmentsToVisitPrescripted.addAll(segmentsToVisitNotForbidden);
 		}
 	}
 
 
-	private RouteSegment processIntersections(RoutingContext ctx, PriorityQueue<RouteSegment> graphSegments,
+	private RouteSegment processIntersections(RoutingContext ctx, RouteSegmentQueue graphSegments,
 			TLongObjectHashMap<RouteSegment> visitedSegments,  float distFromStart, RouteSegment segment,
 			short segmentPoint, RouteSegment inputNext, boolean reverseWaySearch, boolean doNotAddIntersections, 
 			boolean[] processFurther) {
@@ -746,7 +1156,7 @@ public class BinaryRoutePlanner {
 		} else {
 			thereAreRestrictions = proccessRestrictions(ctx, segment, inputNext, reverseWaySearch);
 			if (thereAreRestrictions) {
-				nextIterator = ctx.segmentsToVisitPrescripted.iterator();
+				nextIterator = segmentsToVisitPrescripted(ctx, reverseWaySearch).iterator();
 				if (TRACE_ROUTING) {
 					println("  >> There are restrictions");
 				}
@@ -804,7 +1214,7 @@ public class BinaryRoutePlanner {
 
 
 	@SuppressWarnings("unused")
-	private void processOneRoadIntersection(RoutingContext ctx, PriorityQueue<RouteSegment> graphSegments,
+	private void processOneRoadIntersection(RoutingContext ctx, RouteSegmentQueue graphSegments,
 			TLongObjectHashMap<RouteSegment> visitedSegments, float distFromStart, float distanceToEnd,  RouteSegment segment,
 			int segmentPoint, RouteSegment next) {
 		if (next != null) {
@@ -919,6 +1329,8 @@ public class BinaryRoutePlanner {
 		// distance measured in time (seconds)
 		float distanceFromStart = 0;
 		float distanceToEnd = 0;
+		// position in RouteSegmentQueue, -1 if not queued
+		int queueIndex = -1;
 
 		public RouteSegment(RouteDataObject road, int segmentStart) {
 			this.road = road;
@@ -0,0 +1,759 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.osm.MapRenderingTypes;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Precomputed contraction hierarchy of the road graph for one routing profile
+ * (see {@link ContractionHierarchyBuilder}).
+ * Nodes are road intersections, original edges are parts of roads between them (with routing time as weight),
+ * shortcut edges replace 2 edges via less important node. Route is found by bidirectional Dijkstra
+ * which goes only to more important nodes, so it settles few hundreds nodes even for cross-country routes.
+ * <p>
+ * Turn restrictions are not part of the graph, they are checked on the unpacked route and route passing
+ * restricted turn is not used (A* is used instead). Turn penalties are ignored and conditional tags are not
+ * supported (see {@link #isApplicable(RoutingContext)}). Graph stores creation dates of the maps it was built from
+ * and it's not used with other versions of these maps.
+ */
+public class ContractionHierarchy {
+
+	private static final Log log = PlatformUtil.getLog(ContractionHierarchy.class);
+
+	public static final String FILE_EXT = ".chg";
+	private static final int MAGIC = 0x4F434847; // OCHG
+	private static final int VERSION = 2;
+
+	private final String routerName;
+	private final Map<String, String> routerParams;
+	// file name -> date created of the maps used to build the graph
+	private final Map<String, Long> sourceMaps;
+
+	// nodes
+	final int[] nodeX;
+	final int[] nodeY;
+	final int[] rank;
+
+	// edges, child edges are -1 for original edges
+	final int[] edgeFrom;
+	final int[] edgeTo;
+	final float[] edgeWeight;
+	final int[] edgeChild1;
+	final int[] edgeChild2;
+	final long[] edgeRoadId;
+	final int[] edgeStartPoint;
+	final int[] edgeEndPoint;
+
+	// upward graph in compressed rows: edges to more important nodes and edges from more important nodes
+	private final int[] upOutStart;
+	private final int[] upOutEdges;
+	private final int[] upInStart;
+	private final int[] upInEdges;
+	// original edges by road id
+	private final TLongObjectHashMap<int[]> roadEdges = new TLongObjectHashMap<int[]>();
+
+	private final List<QueryState> statesPool = new ArrayList<QueryState>();
+
+	ContractionHierarchy(String routerName, Map<String, String> routerParams, Map<String, Long> sourceMaps,
+			int[] nodeX, int[] nodeY, int[] rank, int[] edgeFrom, int[] edgeTo, float[] edgeWeight, int[] edgeChild1,
+			int[] edgeChild2, long[] edgeRoadId, int[] edgeStartPoint, int[] edgeEndPoint) {
+		this.routerName = routerName;
+		this.routerParams = routerParams;
+		this.sourceMaps = sourceMaps;
+		this.nodeX = nodeX;
+		this.nodeY = nodeY;
+		this.rank = rank;
+		this.edgeFrom = edgeFrom;
+		this.edgeTo = edgeTo;
+		this.edgeWeight = edgeWeight;
+		this.edgeChild1 = edgeChild1;
+		this.edgeChild2 = edgeChild2;
+		this.edgeRoadId = edgeRoadId;
+		this.edgeStartPoint = edgeStartPoint;
+		this.edgeEndPoint = edgeEndPoint;
+		int nodes = nodeX.length;
+		int edges = edgeFrom.length;
+		upOutStart = new int[nodes + 1];
+		upInStart = new int[nodes + 1];
+		TLongObjectHashMap<TIntArrayList> byRoad = new TLongObjectHashMap<TIntArrayList>();
+		int upOut = 0;
+		for (int e = 0; e < edges; e++) {
+			if (rank[edgeTo[e]] > rank[edgeFrom[e]]) {
+				upOutStart[edgeFrom[e] + 1]++;
+				upOut++;
+			} else {
+				upInStart[edgeTo[e] + 1]++;
+			}
+			if (edgeChild1[e] == -1) {
+				TIntArrayList l = byRoad.get(edgeRoadId[e]);
+				if (l == null) {
+					l = new TIntArrayList(2);
+					byRoad.put(edgeRoadId[e], l);
+				}
+				l.add(e);
+			}
+		}
+		for (int n = 0; n < nodes; n++) {
+			upOutStart[n + 1] += upOutStart[n];
+			upInStart[n + 1] += upInStart[n];
+		}
+		upOutEdges = new int[upOut];
+		upInEdges = new int[edges - upOut];
+		int[] outPos = Arrays.copyOf(upOutStart, nodes);
+		int[] inPos = Arrays.copyOf(upInStart, nodes);
+		for (int e = 0; e < edges; e++) {
+			if (rank[edgeTo[e]] > rank[edgeFrom[e]]) {
+				upOutEdges[outPos[edgeFrom[e]]++] = e;
+			} else {
+				upInEdges[inPos[edgeTo[e]]++] = e;
+			}
+		}
+		for (long roadId : byRoad.keys()) {
+			roadEdges.put(roadId, byRoad.get(roadId).toArray());
+		}
+	}
+
+	public String getRouterName() {
+		return routerName;
+	}
+
+	public Map<String, String> getRouterParams() {
+		return routerParams;
+	}
+
+	public Map<String, Long> getSourceMaps() {
+		return sourceMaps;
+	}
+
+	/**
+	 * @return true if all maps used to build the graph are opened in the same versions
+	 */
+	public boolean isBuiltFor(BinaryMapIndexReader[] maps) {
+		for (Entry<String, Long> e : sourceMaps.entrySet()) {
+			boolean found = false;
+			for (BinaryMapIndexReader r : maps) {
+				if (r.getFile() != null && r.getFile().getName().equals(e.getKey())
+						&& r.getDateCreated() == e.getValue()) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Graph doesn't know about conditional tags, so it's used only for Java routing (not base)
+	 * without conditional time and with the same maps.
+	 */
+	public boolean isApplicable(RoutingContext ctx) {
+		return ctx.nativeLib == null && ctx.calculationMode != RouteCalculationMode.BASE
+				&& ctx.config.routeCalculationTime == 0 && isBuiltFor(ctx.getMaps());
+	}
+
+	public int getNodesCount() {
+		return nodeX.length;
+	}
+
+	public int getEdgesCount() {
+		return edgeFrom.length;
+	}
+
+	/**
+	 * Calculates route between start and end points (as found by {@link RoutePlannerFrontEnd#findRouteSegment}).
+	 * @return route segments (not prepared) or null if points are not covered by the graph, not connected,
+	 * roads of the graph are not found in maps or route passes restricted turn of restrictions aware router
+	 */
+	public List<RouteSegmentResult> searchRoute(RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end)
+			throws IOException {
+		QueryState q = acquireState();
+		try {
+			float[] direct = new float[1];
+			int directEdge = seed(q, start, end, direct);
+			if (q.forwardQueue.isEmpty() && q.backwardQueue.isEmpty() && directEdge == -1) {
+				return null;
+			}
+			int meeting = search(q, directEdge == -1 ? Float.POSITIVE_INFINITY : direct[0]);
+			if (meeting == -1 && directEdge == -1) {
+				return null;
+			}
+			List<RouteSegmentResult> result = new ArrayList<RouteSegmentResult>();
+			if (meeting == -1) {
+				result.add(new RouteSegmentResult(start.getRoad(), startPointIndex(start, directEdge),
+						endPointIndex(end, directEdge)));
+				ctx.routingTime += direct[0];
+			} else {
+				TIntArrayList path = new TIntArrayList();
+				int startEdge = collectForward(q, meeting, path);
+				int endEdge = collectBackward(q, meeting, path);
+				addResult(result, start.getRoad(), startPointIndex(start, startEdge), edgeEndPoint[startEdge]);
+				for (int i = 0; i < path.size(); i++) {
+					int e = path.get(i);
+					RouteDataObject road = loadRoad(ctx, e);
+					if (road == null) {
+						log.warn("Road " + (edgeRoadId[e] >> RouteResultPreparation.SHIFT_ID)
+								+ " is not found in maps, contraction hierarchy is outdated");
+						return null;
+					}
+					addResult(result, road, edgeStartPoint[e], edgeEndPoint[e]);
+				}
+				addResult(result, end.getRoad(), edgeStartPoint[endEdge], endPointIndex(end, endEdge));
+				if (ctx.getRouter().restrictionsAware() && passesRestrictedTurn(ctx, result)) {
+					log.info("Route of contraction hierarchy passes restricted turn");
+					return null;
+				}
+				ctx.routingTime += q.forwardDist[meeting] + q.backwardDist[meeting];
+			}
+			return result;
+		} finally {
+			releaseState(q);
+		}
+	}
+
+	/**
+	 * @return routing time between 2 graph nodes or -1 if there is no route
+	 */
+	float calculateRoutingTime(int startNode, int endNode) {
+		QueryState q = acquireState();
+		try {
+			q.touchForward(startNode, 0, -1);
+			q.forwardQueue.add(startNode, 0);
+			q.touchBackward(endNode, 0, -1);
+			q.backwardQueue.add(endNode, 0);
+			int meeting = search(q, Float.POSITIVE_INFINITY);
+			return meeting == -1 ? -1 : q.forwardDist[meeting] + q.backwardDist[meeting];
+		} finally {
+			releaseState(q);
+		}
+	}
+
+	private int search(QueryState q, float best) {
+		int meeting = -1;
+		while (!q.forwardQueue.isEmpty() || !q.backwardQueue.isEmpty()) {
+			boolean forward = q.backwardQueue.isEmpty() || (!q.forwardQueue.isEmpty()
+					&& q.forwardQueue.peekKey() <= q.backwardQueue.peekKey());
+			NodeQueue queue = forward ? q.forwardQueue : q.backwardQueue;
+			if (queue.peekKey() >= best) {
+				// nothing better could be found in this direction
+				queue.clear();
+				continue;
+			}
+			float d = queue.peekKey();
+			int node = queue.poll();
+			float[] dist = forward ? q.forwardDist : q.backwardDist;
+			float[] oppositeDist = forward ? q.backwardDist : q.forwardDist;
+			if (d > dist[node]) {
+				// stale entry
+				continue;
+			}
+			if (oppositeDist[node] + d < best) {
+				best = oppositeDist[node] + d;
+				meeting = node;
+			}
+			int[] start = forward ? upOutStart : upInStart;
+			int[] edges = forward ? upOutEdges : upInEdges;
+			for (int i = start[node]; i < start[node + 1]; i++) {
+				int e = edges[i];
+				int next = forward ? edgeTo[e] : edgeFrom[e];
+				float nd = d + edgeWeight[e];
+				if (nd < dist[next]) {
+					if (forward) {
+						q.touchForward(next, nd, e);
+					} else {
+						q.touchBackward(next, nd, e);
+					}
+					queue.add(next, nd);
+				}
+			}
+		}
+		return meeting;
+	}
+
+	/**
+	 * Initializes search with parts of original edges containing start & end points.
+	 * @return original edge containing both points in the right order (or -1)
+	 */
+	private int seed(QueryState q, RouteSegmentPoint start, RouteSegmentPoint end, float[] direct) {
+		int directEdge = -1;
+		int[] startEdges = roadEdges.get(start.getRoad().getId());
+		int[] endEdges = roadEdges.get(end.getRoad().getId());
+		if (startEdges == null || endEdges == null) {
+			return -1;
+		}
+		for (int e : startEdges) {
+			float pos = position(start, e);
+			if (pos >= 0) {
+				int node = edgeTo[e];
+				float w = edgeWeight[e] * (1 - pos);
+				if (w < q.forwardDist[node]) {
+					q.touchForward(node, w, -1);
+					q.forwardSeed[node] = e;
+					q.forwardQueue.add(node, w);
+				}
+				if (start.getRoad().getId() == end.getRoad().getId()) {
+					float endPos = position(end, e);
+					if (endPos >= pos && (directEdge == -1 || edgeWeight[e] * (endPos - pos) < direct[0])) {
+						directEdge = e;
+						direct[0] = edgeWeight[e] * (endPos - pos);
+					}
+				}
+			}
+		}
+		for (int e : endEdges) {
+			float pos = position(end, e);
+			if (pos >= 0) {
+				int node = edgeFrom[e];
+				float w = edgeWeight[e] * pos;
+				if (w < q.backwardDist[node]) {
+					q.touchBackward(node, w, -1);
+					q.backwardSeed[node] = e;
+					q.backwardQueue.add(node, w);
+				}
+			}
+		}
+		return directEdge;
+	}
+
+	/**
+	 * @return relative position of the point on the original edge (0 - start, 1 - end) or -1 if it's not on the edge
+	 */
+	private float position(RouteSegmentPoint pnt, int e) {
+		// point is between segStart - 1 and segStart
+		int segEnd = Math.max(pnt.getSegmentStart(), 1);
+		int s = edgeStartPoint[e];
+		int t = edgeEndPoint[e];
+		if (Math.min(s, t) > segEnd - 1 || Math.max(s, t) < segEnd) {
+			return -1;
+		}
+		RouteDataObject road = pnt.getRoad();
+		int step = s < t ? 1 : -1;
+		double total = 0;
+		double passed = -1;
+		for (int i = s; i != t; i += step) {
+			int px = road.getPoint31XTile(i);
+			int py = road.getPoint31YTile(i);
+			int nx = road.getPoint31XTile(i + step);
+			int ny = road.getPoint31YTile(i + step);
+			if (passed < 0 && Math.min(i, i + step) == segEnd - 1) {
+				passed = total + MapUtils.squareRootDist31(px, py, pnt.preciseX, pnt.preciseY);
+			}
+			total += MapUtils.squareRootDist31(px, py, nx, ny);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		return (float) Math.min(1, Math.max(0, passed / total));
+	}
+
+	private int startPointIndex(RouteSegmentPoint start, int e) {
+		int segEnd = Math.max(start.getSegmentStart(), 1);
+		return edgeStartPoint[e] < edgeEndPoint[e] ? segEnd - 1 : segEnd;
+	}
+
+	private int endPointIndex(RouteSegmentPoint end, int e) {
+		int segEnd = Math.max(end.getSegmentStart(), 1);
+		return edgeStartPoint[e] < edgeEndPoint[e] ? segEnd : segEnd - 1;
+	}
+
+	private int collectForward(QueryState q, int meeting, TIntArrayList path) {
+		TIntArrayList reversed = new TIntArrayList();
+		int node = meeting;
+		while (q.forwardParent[node] != -1) {
+			int e = q.forwardParent[node];
+			reversed.add(e);
+			node = edgeFrom[e];
+		}
+		for (int i = reversed.size() - 1; i >= 0; i--) {
+			unpack(reversed.get(i), path);
+		}
+		return q.forwardSeed[node];
+	}
+
+	private int collectBackward(QueryState q, int meeting, TIntArrayList path) {
+		int node = meeting;
+		while (q.backwardParent[node] != -1) {
+			int e = q.backwardParent[node];
+			unpack(e, path);
+			node = edgeTo[e];
+		}
+		return q.backwardSeed[node];
+	}
+
+	private void unpack(int e, TIntArrayList path) {
+		if (edgeChild1[e] == -1) {
+			path.add(e);
+		} else {
+			unpack(edgeChild1[e], path);
+			unpack(edgeChild2[e], path);
+		}
+	}
+
+	/**
+	 * Checks turns of the route the same way as A* does: restrictions of the road to the next road
+	 * and restrictions of the previous road via this road.
+	 */
+	private boolean passesRestrictedTurn(RoutingContext ctx, List<RouteSegmentResult> result) throws IOException {
+		for (int k = 1; k < result.size(); k++) {
+			RouteSegmentResult junction = result.get(k - 1);
+			RouteDataObject road = junction.getObject();
+			RouteDataObject next = result.get(k).getObject();
+			if (road.getId() == next.getId()) {
+				continue;
+			}
+			int type = -1;
+			boolean onlyToOther = false;
+			for (int i = 0; i < road.getRestrictionLength(); i++) {
+				int rt = road.getRestrictionType(i);
+				long id = road.getRestrictionId(i);
+				if (id == next.getId()) {
+					type = rt;
+					break;
+				}
+				if (!isNoRestriction(rt) && !onlyToOther) {
+					onlyToOther = containsRoad(ctx, id, road.getPoint31XTile(junction.getEndPointIndex()),
+							road.getPoint31YTile(junction.getEndPointIndex()));
+				}
+			}
+			if (type != -1 ? isNoRestriction(type) : onlyToOther) {
+				return true;
+			}
+			RouteDataObject parent = null;
+			for (int p = k - 2; p >= 0 && parent == null; p--) {
+				if (result.get(p).getObject().getId() != road.getId()) {
+					parent = result.get(p).getObject();
+				}
+			}
+			for (int i = 0; parent != null && i < parent.getRestrictionLength(); i++) {
+				if (parent.getRestrictionVia(i) != road.getId()) {
+					continue;
+				}
+				int rt = parent.getRestrictionType(i);
+				if (parent.getRestrictionId(i) == next.getId()) {
+					if (isNoRestriction(rt)) {
+						return true;
+					}
+					break;
+				}
+				if (rt == MapRenderingTypes.RESTRICTION_ONLY_STRAIGHT_ON) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNoRestriction(int type) {
+		return type == MapRenderingTypes.RESTRICTION_NO_LEFT_TURN || type == MapRenderingTypes.RESTRICTION_NO_RIGHT_TURN
+				|| type == MapRenderingTypes.RESTRICTION_NO_STRAIGHT_ON || type == MapRenderingTypes.RESTRICTION_NO_U_TURN;
+	}
+
+	private boolean containsRoad(RoutingContext ctx, long roadId, int x31, int y31) throws IOException {
+		RouteSegment s = ctx.loadRouteSegment(x31, y31, 0);
+		while (s != null) {
+			if (s.getRoad().getId() == roadId) {
+				return true;
+			}
+			s = s.getNext();
+		}
+		return false;
+	}
+
+	private RouteDataObject loadRoad(RoutingContext ctx, int e) throws IOException {
+		RouteSegment s = ctx.loadRouteSegment(nodeX[edgeFrom[e]], nodeY[edgeFrom[e]], 0);
+		while (s != null) {
+			if (s.getRoad().getId() == edgeRoadId[e]) {
+				return s.getRoad();
+			}
+			s = s.getNext();
+		}
+		return null;
+	}
+
+	private void addResult(List<RouteSegmentResult> result, RouteDataObject road, int startPoint, int endPoint) {
+		if (startPoint == endPoint) {
+			return;
+		}
+		if (result.size() > 0) {
+			RouteSegmentResult last = result.get(result.size() - 1);
+			if (last.getObject().getId() == road.getId() && last.getEndPointIndex() == startPoint
+					&& (last.getEndPointIndex() > last.getStartPointIndex()) == (endPoint > startPoint)) {
+				last.setEndPointIndex(endPoint);
+				return;
+			}
+		}
+		result.add(new RouteSegmentResult(road, startPoint, endPoint));
+	}
+
+	private QueryState acquireState() {
+		synchronized (statesPool) {
+			if (!statesPool.isEmpty()) {
+				return statesPool.remove(statesPool.size() - 1);
+			}
+		}
+		return new QueryState(nodeX.length);
+	}
+
+	private void releaseState(QueryState q) {
+		q.reset();
+		synchronized (statesPool) {
+			statesPool.add(q);
+		}
+	}
+
+	public void writeToFile(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(routerName);
+			out.writeInt(routerParams.size());
+			for (Entry<String, String> e : routerParams.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeUTF(e.getValue());
+			}
+			out.writeInt(sourceMaps.size());
+			for (Entry<String, Long> e : sourceMaps.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeLong(e.getValue());
+			}
+			out.writeInt(nodeX.length);
+			for (int n = 0; n < nodeX.length; n++) {
+				out.writeInt(nodeX[n]);
+				out.writeInt(nodeY[n]);
+				out.writeInt(rank[n]);
+			}
+			out.writeInt(edgeFrom.length);
+			for (int e = 0; e < edgeFrom.length; e++) {
+				out.writeInt(edgeFrom[e]);
+				out.writeInt(edgeTo[e]);
+				out.writeFloat(edgeWeight[e]);
+				out.writeInt(edgeChild1[e]);
+				out.writeInt(edgeChild2[e]);
+				out.writeLong(edgeRoadId[e]);
+				out.writeInt(edgeStartPoint[e]);
+				out.writeInt(edgeEndPoint[e]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads graph and checks that it was built from the same versions of opened maps.
+	 */
+	public static ContractionHierarchy readFromFile(File file, BinaryMapIndexReader[] maps) throws IOException {
+		ContractionHierarchy ch = readFromFile(file);
+		if (!ch.isBuiltFor(maps)) {
+			throw new IOException("Contraction hierarchy " + file.getName() + " is outdated, it was built from "
+					+ ch.sourceMaps.keySet());
+		}
+		return ch;
+	}
+
+	public static ContractionHierarchy readFromFile(File file) throws IOException {
+		long time = System.currentTimeMillis();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("File " + file.getName() + " is not a contraction hierarchy");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported contraction hierarchy version " + version);
+			}
+			String routerName = in.readUTF();
+			Map<String, String> params = new LinkedHashMap<String, String>();
+			int paramsSize = in.readInt();
+			for (int i = 0; i < paramsSize; i++) {
+				params.put(in.readUTF(), in.readUTF());
+			}
+			Map<String, Long> sourceMaps = new LinkedHashMap<String, Long>();
+			int mapsSize = in.readInt();
+			for (int i = 0; i < mapsSize; i++) {
+				sourceMaps.put(in.readUTF(), in.readLong());
+			}
+			int nodes = in.readInt();
+			int[] nodeX = new int[nodes];
+			int[] nodeY = new int[nodes];
+			int[] rank = new int[nodes];
+			for (int n = 0; n < nodes; n++) {
+				nodeX[n] = in.readInt();
+				nodeY[n] = in.readInt();
+				rank[n] = in.readInt();
+			}
+			int edges = in.readInt();
+			int[] from = new int[edges];
+			int[] to = new int[edges];
+			float[] weight = new float[edges];
+			int[] child1 = new int[edges];
+			int[] child2 = new int[edges];
+			long[] roadId = new long[edges];
+			int[] startPoint = new int[edges];
+			int[] endPoint = new int[edges];
+			for (int e = 0; e < edges; e++) {
+				from[e] = in.readInt();
+				to[e] = in.readInt();
+				weight[e] = in.readFloat();
+				child1[e] = in.readInt();
+				child2[e] = in.readInt();
+				roadId[e] = in.readLong();
+				startPoint[e] = in.readInt();
+				endPoint[e] = in.readInt();
+			}
+			ContractionHierarchy ch = new ContractionHierarchy(routerName, Collections.unmodifiableMap(params),
+					Collections.unmodifiableMap(sourceMaps), nodeX, nodeY, rank, from, to, weight, child1, child2, roadId, startPoint, endPoint);
+			log.info("Contraction hierarchy " + file.getName() + " loaded in " + (System.currentTimeMillis() - time)
+					+ " ms: " + nodes + " nodes, " + edges + " edges");
+			return ch;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Search arrays are allocated once per state and only touched nodes are reset after query.
+	 */
+	private static class QueryState {
+		final float[] forwardDist;
+		final float[] backwardDist;
+		final int[] forwardParent;
+		final int[] backwardParent;
+		final int[] forwardSeed;
+		final int[] backwardSeed;
+		final TIntArrayList touched = new TIntArrayList();
+		final NodeQueue forwardQueue = new NodeQueue();
+		final NodeQueue backwardQueue = new NodeQueue();
+
+		QueryState(int nodes) {
+			forwardDist = new float[nodes];
+			backwardDist = new float[nodes];
+			forwardParent = new int[nodes];
+			backwardParent = new int[nodes];
+			forwardSeed = new int[nodes];
+			backwardSeed = new int[nodes];
+			Arrays.fill(forwardDist, Float.POSITIVE_INFINITY);
+			Arrays.fill(backwardDist, Float.POSITIVE_INFINITY);
+		}
+
+		void touchForward(int node, float dist, int parent) {
+			touched.add(node);
+			forwardDist[node] = dist;
+			forwardParent[node] = parent;
+		}
+
+		void touchBackward(int node, float dist, int parent) {
+			touched.add(node);
+			backwardDist[node] = dist;
+			backwardParent[node] = parent;
+		}
+
+		void reset() {
+			for (int i = 0; i < touched.size(); i++) {
+				int n = touched.get(i);
+				forwardDist[n] = Float.POSITIVE_INFINITY;
+				backwardDist[n] = Float.POSITIVE_INFINITY;
+			}
+			touched.clear();
+			forwardQueue.clear();
+			backwardQueue.clear();
+		}
+	}
+
+	/**
+	 * Binary heap of nodes with lazy deletion (node could be added several times, stale entries are skipped
+	 * by the caller because their key is bigger than settled distance).
+	 */
+	static class NodeQueue {
+		private int[] nodes = new int[64];
+		private float[] keys = new float[64];
+		private int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		float peekKey() {
+			return keys[0];
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		void add(int node, float key) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				nodes[i] = nodes[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+
+		int poll() {
+			int result = nodes[0];
+			int last = --size;
+			if (last > 0) {
+				int node = nodes[last];
+				float key = keys[last];
+				int i = 0;
+				while (true) {
+					int c = (i << 1) + 1;
+					if (c >= size) {
+						break;
+					}
+					if (c + 1 < size && keys[c + 1] < keys[c]) {
+						c++;
+					}
+					if (key <= keys[c]) {
+						break;
+					}
+					nodes[i] = nodes[c];
+					keys[i] = keys[c];
+					i = c;
+				}
+				nodes[i] = node;
+				keys[i] = key;
+			}
+			return result;
+		}
+	}
+}
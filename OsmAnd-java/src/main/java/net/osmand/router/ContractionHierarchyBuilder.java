@@ -0,0 +1,477 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.ContractionHierarchy.NodeQueue;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Offline tool to build {@link ContractionHierarchy} from route sections of obf files.
+ * Edge weights are calculated the same way as in {@link BinaryRoutePlanner} (speed, priority, obstacles),
+ * nodes are contracted in order of edge difference with limited witness search.
+ */
+public class ContractionHierarchyBuilder {
+
+	private static final Log log = PlatformUtil.getLog(ContractionHierarchyBuilder.class);
+
+	public static int WITNESS_SEARCH_SETTLED_LIMIT = 500;
+
+	private final String routerName;
+	private final Map<String, String> routerParams;
+	private final Map<String, Long> sourceMaps = new LinkedHashMap<String, Long>();
+
+	private final TIntArrayList nodeX = new TIntArrayList();
+	private final TIntArrayList nodeY = new TIntArrayList();
+	private final TLongObjectHashMap<Integer> nodeByPoint = new TLongObjectHashMap<Integer>();
+
+	private int edgesCount;
+	private int[] edgeFrom = new int[1024];
+	private int[] edgeTo = new int[1024];
+	private float[] edgeWeight = new float[1024];
+	private int[] edgeChild1 = new int[1024];
+	private int[] edgeChild2 = new int[1024];
+	private final TLongArrayList edgeRoadId = new TLongArrayList();
+	private final TIntArrayList edgeStartPoint = new TIntArrayList();
+	private final TIntArrayList edgeEndPoint = new TIntArrayList();
+
+	public ContractionHierarchyBuilder(String routerName, Map<String, String> routerParams) {
+		this.routerName = routerName;
+		this.routerParams = routerParams;
+	}
+
+	public void addSourceMap(BinaryMapIndexReader reader) {
+		addSourceMap(reader.getFile().getName(), reader.getDateCreated());
+	}
+
+	void addSourceMap(String fileName, long dateCreated) {
+		sourceMaps.put(fileName, dateCreated);
+	}
+
+	private static long pointKey(int x31, int y31) {
+		return (((long) x31) << 31) + (long) y31;
+	}
+
+	public int addNode(int x31, int y31) {
+		long key = pointKey(x31, y31);
+		Integer node = nodeByPoint.get(key);
+		if (node == null) {
+			node = nodeX.size();
+			nodeX.add(x31);
+			nodeY.add(y31);
+			nodeByPoint.put(key, node);
+		}
+		return node;
+	}
+
+	public int addEdge(int from, int to, float weight, long roadId, int startPoint, int endPoint) {
+		int e = addEdge(from, to, weight, -1, -1);
+		edgeRoadId.set(e, roadId);
+		edgeStartPoint.set(e, startPoint);
+		edgeEndPoint.set(e, endPoint);
+		return e;
+	}
+
+	private int addEdge(int from, int to, float weight, int child1, int child2) {
+		if (edgesCount == edgeFrom.length) {
+			int capacity = edgesCount * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+			edgeTo = Arrays.copyOf(edgeTo, capacity);
+			edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+			edgeChild1 = Arrays.copyOf(edgeChild1, capacity);
+			edgeChild2 = Arrays.copyOf(edgeChild2, capacity);
+		}
+		int e = edgesCount++;
+		edgeFrom[e] = from;
+		edgeTo[e] = to;
+		edgeWeight[e] = weight;
+		edgeChild1[e] = child1;
+		edgeChild2[e] = child2;
+		edgeRoadId.add(0);
+		edgeStartPoint.add(-1);
+		edgeEndPoint.add(-1);
+		return e;
+	}
+
+	/**
+	 * Splits roads into edges by intersections (points shared by several roads) and road ends.
+	 */
+	public void addRoads(Collection<RouteDataObject> roads, VehicleRouter router) {
+		TLongHashSet points = new TLongHashSet();
+		TLongHashSet intersections = new TLongHashSet();
+		List<RouteDataObject> accepted = new ArrayList<RouteDataObject>();
+		for (RouteDataObject road : roads) {
+			if (!router.acceptLine(road) || road.getPointsLength() < 2) {
+				continue;
+			}
+			accepted.add(road);
+			for (int i = 0; i < road.getPointsLength(); i++) {
+				long key = pointKey(road.getPoint31XTile(i), road.getPoint31YTile(i));
+				if (!points.add(key)) {
+					intersections.add(key);
+				}
+			}
+		}
+		for (RouteDataObject road : accepted) {
+			int oneway = router.isOneWay(road);
+			int last = road.getPointsLength() - 1;
+			int start = 0;
+			for (int i = 1; i <= last; i++) {
+				long key = pointKey(road.getPoint31XTile(i), road.getPoint31YTile(i));
+				if (i == last || intersections.contains(key)) {
+					int from = addNode(road.getPoint31XTile(start), road.getPoint31YTile(start));
+					int to = addNode(road.getPoint31XTile(i), road.getPoint31YTile(i));
+					if (oneway >= 0) {
+						float w = calculateRoadTime(router, road, start, i);
+						if (w >= 0) {
+							addEdge(from, to, w, road.getId(), start, i);
+						}
+					}
+					if (oneway <= 0) {
+						float w = calculateRoadTime(router, road, i, start);
+						if (w >= 0) {
+							addEdge(to, from, w, road.getId(), i, start);
+						}
+					}
+					start = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return routing time to pass road from start to end point or -1 if it's not passable
+	 */
+	private float calculateRoadTime(VehicleRouter router, RouteDataObject road, int start, int end) {
+		boolean dir = start < end;
+		int step = dir ? 1 : -1;
+		float obstaclesTime = 0;
+		float distOnRoadToPass = 0;
+		for (int i = start; i != end; i += step) {
+			int next = i + step;
+			distOnRoadToPass += BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(i), road.getPoint31YTile(i),
+					road.getPoint31XTile(next), road.getPoint31YTile(next));
+			float obstacle = router.defineRoutingObstacle(road, next, dir);
+			if (obstacle < 0) {
+				return -1;
+			}
+			double heightObstacle = router.defineHeightObstacle(road, (short) i, (short) next);
+			if (heightObstacle < 0) {
+				return -1;
+			}
+			obstaclesTime += obstacle + heightObstacle;
+		}
+		float priority = router.defineSpeedPriority(road);
+		float speed = router.defineRoutingSpeed(road) * priority;
+		if (speed == 0) {
+			speed = router.getDefaultSpeed() * priority;
+		}
+		if (speed > router.getMaxSpeed()) {
+			speed = router.getMaxSpeed();
+		}
+		return obstaclesTime + distOnRoadToPass / speed;
+	}
+
+	public ContractionHierarchy build() {
+		long time = System.currentTimeMillis();
+		int nodes = nodeX.size();
+		ContractionState st = new ContractionState(nodes);
+		for (int e = 0; e < edgesCount; e++) {
+			if (edgeFrom[e] != edgeTo[e]) {
+				st.out[edgeFrom[e]].add(e);
+				st.in[edgeTo[e]].add(e);
+			}
+		}
+		NodeQueue queue = new NodeQueue();
+		for (int n = 0; n < nodes; n++) {
+			queue.add(n, priority(st, n));
+		}
+		int rank = 0;
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			if (st.contracted[node]) {
+				continue;
+			}
+			// lazy update: priority could grow after neighbours were contracted
+			float p = priority(st, node);
+			if (!queue.isEmpty() && p > queue.peekKey()) {
+				queue.add(node, p);
+				continue;
+			}
+			contract(st, node, false);
+			st.contracted[node] = true;
+			st.rank[node] = rank++;
+			if (rank % 100000 == 0) {
+				log.info("Contracted " + rank + " of " + nodes + " nodes, edges " + edgesCount);
+			}
+		}
+		log.info("Contraction hierarchy built in " + (System.currentTimeMillis() - time) + " ms: " + nodes
+				+ " nodes, " + edgesCount + " edges");
+		return new ContractionHierarchy(routerName, routerParams, sourceMaps, nodeX.toArray(), nodeY.toArray(),
+				st.rank, Arrays.copyOf(edgeFrom, edgesCount), Arrays.copyOf(edgeTo, edgesCount),
+				Arrays.copyOf(edgeWeight, edgesCount), Arrays.copyOf(edgeChild1, edgesCount),
+				Arrays.copyOf(edgeChild2, edgesCount), edgeRoadId.toArray(), edgeStartPoint.toArray(),
+				edgeEndPoint.toArray());
+	}
+
+	private float priority(ContractionState st, int node) {
+		int shortcuts = contract(st, node, true);
+		int degree = 0;
+		for (int i = 0; i < st.in[node].size(); i++) {
+			if (!st.contracted[edgeFrom[st.in[node].get(i)]]) {
+				degree++;
+			}
+		}
+		for (int i = 0; i < st.out[node].size(); i++) {
+			if (!st.contracted[edgeTo[st.out[node].get(i)]]) {
+				degree++;
+			}
+		}
+		return shortcuts - degree + st.contractedNeighbours[node];
+	}
+
+	/**
+	 * Adds shortcuts u -> w for every path u -> node -> w which has no shorter witness path avoiding node.
+	 * @return number of shortcuts (added or needed if simulate)
+	 */
+	private int contract(ContractionState st, int node, boolean simulate) {
+		TIntArrayList in = st.in[node];
+		TIntArrayList out = st.out[node];
+		int shortcuts = 0;
+		for (int i = 0; i < in.size(); i++) {
+			int inEdge = in.get(i);
+			int u = edgeFrom[inEdge];
+			if (st.contracted[u]) {
+				continue;
+			}
+			if (!simulate) {
+				st.contractedNeighbours[u]++;
+			}
+			float maxCost = 0;
+			for (int j = 0; j < out.size(); j++) {
+				int w = edgeTo[out.get(j)];
+				if (!st.contracted[w] && w != u) {
+					maxCost = Math.max(maxCost, edgeWeight[inEdge] + edgeWeight[out.get(j)]);
+				}
+			}
+			if (maxCost == 0) {
+				continue;
+			}
+			witnessSearch(st, u, node, maxCost);
+			for (int j = 0; j < out.size(); j++) {
+				int outEdge = out.get(j);
+				int w = edgeTo[outEdge];
+				if (st.contracted[w] || w == u) {
+					continue;
+				}
+				float via = edgeWeight[inEdge] + edgeWeight[outEdge];
+				if (st.dist[w] > via) {
+					shortcuts++;
+					if (!simulate) {
+						int e = addEdge(u, w, via, inEdge, outEdge);
+						st.out[u].add(e);
+						st.in[w].add(e);
+						// following witness searches from u should see the shortcut
+						st.touch(w, via);
+					}
+				}
+			}
+			st.resetDist();
+		}
+		if (!simulate) {
+			for (int j = 0; j < out.size(); j++) {
+				int w = edgeTo[out.get(j)];
+				if (!st.contracted[w]) {
+					st.contractedNeighbours[w]++;
+				}
+			}
+		}
+		return shortcuts;
+	}
+
+	private void witnessSearch(ContractionState st, int source, int ignore, float maxCost) {
+		NodeQueue queue = st.queue;
+		queue.clear();
+		st.touch(source, 0);
+		queue.add(source, 0);
+		int settled = 0;
+		while (!queue.isEmpty() && settled < WITNESS_SEARCH_SETTLED_LIMIT) {
+			float d = queue.peekKey();
+			int n = queue.poll();
+			if (d > st.dist[n]) {
+				continue;
+			}
+			if (d > maxCost) {
+				break;
+			}
+			settled++;
+			TIntArrayList out = st.out[n];
+			for (int i = 0; i < out.size(); i++) {
+				int e = out.get(i);
+				int next = edgeTo[e];
+				if (next == ignore || st.contracted[next]) {
+					continue;
+				}
+				float nd = d + edgeWeight[e];
+				if (nd < st.dist[next]) {
+					st.touch(next, nd);
+					queue.add(next, nd);
+				}
+			}
+		}
+	}
+
+	private static class ContractionState {
+		final TIntArrayList[] out;
+		final TIntArrayList[] in;
+		final boolean[] contracted;
+		final int[] contractedNeighbours;
+		final int[] rank;
+		final float[] dist;
+		final TIntArrayList touched = new TIntArrayList();
+		final NodeQueue queue = new NodeQueue();
+
+		ContractionState(int nodes) {
+			out = new TIntArrayList[nodes];
+			in = new TIntArrayList[nodes];
+			for (int n = 0; n < nodes; n++) {
+				out[n] = new TIntArrayList(4);
+				in[n] = new TIntArrayList(4);
+			}
+			contracted = new boolean[nodes];
+			contractedNeighbours = new int[nodes];
+			rank = new int[nodes];
+			dist = new float[nodes];
+			Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		}
+
+		void touch(int node, float d) {
+			touched.add(node);
+			dist[node] = d;
+		}
+
+		void resetDist() {
+			for (int i = 0; i < touched.size(); i++) {
+				dist[touched.get(i)] = Float.POSITIVE_INFINITY;
+			}
+			touched.clear();
+		}
+	}
+
+	private static List<RouteDataObject> loadRoads(List<BinaryMapIndexReader> readers) throws IOException {
+		final TLongObjectHashMap<RouteDataObject> roads = new TLongObjectHashMap<RouteDataObject>();
+		for (BinaryMapIndexReader reader : readers) {
+			for (RouteRegion reg : reader.getRoutingIndexes()) {
+				SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0,
+						Integer.MAX_VALUE, 0, Integer.MAX_VALUE, null);
+				List<RouteSubregion> subregs = reader.searchRouteIndexTree(req, reg.getSubregions());
+				reader.loadRouteIndexData(subregs, new ResultMatcher<RouteDataObject>() {
+					@Override
+					public boolean publish(RouteDataObject object) {
+						// same road could be stored in several maps at the border
+						if (!roads.containsKey(object.getId())) {
+							roads.put(object.getId(), object);
+						}
+						return false;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return false;
+					}
+				});
+			}
+		}
+		return new ArrayList<RouteDataObject>(roads.valueCollection());
+	}
+
+	public static void info() {
+		System.out.println("Builds contraction hierarchy of road network for routing profile.");
+		System.out.println("\nUsage : -obfDir=PATH -out=FILE [-routingXmlPath=PATH] [-vehicle=VEHICLE_STRING] "
+				+ "[-params=param1=value1,param2=value2] {obfFile}");
+	}
+
+	public static void main(String[] args) throws Exception {
+		String obfDirectory = null;
+		String routingXmlFile = null;
+		String vehicle = "car";
+		String out = null;
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		List<File> files = new ArrayList<File>();
+		for (String a : args) {
+			if (a.startsWith("-obfDir=")) {
+				obfDirectory = a.substring("-obfDir=".length());
+			} else if (a.startsWith("-routingXmlPath=")) {
+				routingXmlFile = a.substring("-routingXmlPath=".length());
+			} else if (a.startsWith("-vehicle=")) {
+				vehicle = a.substring("-vehicle=".length());
+			} else if (a.startsWith("-out=")) {
+				out = a.substring("-out=".length());
+			} else if (a.startsWith("-params=")) {
+				for (String p : a.substring("-params=".length()).split(",")) {
+					int i = p.indexOf('=');
+					if (i > 0) {
+						params.put(p.substring(0, i), p.substring(i + 1));
+					}
+				}
+			} else if (!a.startsWith("-")) {
+				files.add(new File(a));
+			}
+		}
+		if (obfDirectory != null) {
+			for (File f : new File(obfDirectory).listFiles()) {
+				if (f.getName().endsWith(".obf")) {
+					files.add(f);
+				}
+			}
+		}
+		if (files.isEmpty() || out == null) {
+			info();
+			return;
+		}
+		RoutingConfiguration.Builder builder;
+		if (routingXmlFile == null) {
+			builder = RoutingConfiguration.getDefault();
+		} else {
+			builder = RoutingConfiguration.parseFromInputStream(new FileInputStream(routingXmlFile));
+		}
+		RoutingConfiguration config = builder.build(vehicle, RoutingConfiguration.DEFAULT_MEMORY_LIMIT, params);
+		List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+		for (File f : files) {
+			readers.add(new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f));
+		}
+		long time = System.currentTimeMillis();
+		List<RouteDataObject> roads = loadRoads(readers);
+		log.info("Loaded " + roads.size() + " roads in " + (System.currentTimeMillis() - time) + " ms");
+		ContractionHierarchyBuilder chBuilder = new ContractionHierarchyBuilder(config.routerName, params);
+		chBuilder.addRoads(roads, config.router);
+		for (BinaryMapIndexReader r : readers) {
+			chBuilder.addSourceMap(r);
+			r.close();
+		}
+		ContractionHierarchy ch = chBuilder.build();
+		ch.writeToFile(new File(out));
+		System.out.println("Contraction hierarchy is written to " + out);
+	}
+}
@@ -4,7 +4,6 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -12,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TLongHashSet;
@@ -43,9 +43,21 @@ public class GeneralRouter implements VehicleRouter {
 	public static final String VEHICLE_LENGTH = "length";
 	public static final String CHECK_ALLOW_PRIVATE_NEEDED = "check_allow_private_needed";
 
-	private static boolean USE_CACHE = true;
 	public static long TIMER = 0;
 
+	// columns of compiled road and point tables
+	private static final int ROAD_ACCESS = 0;
+	private static final int ROAD_ONEWAY = 1;
+	private static final int ROAD_PENALTY_TRANSITION = 2;
+	private static final int ROAD_SPEED = 3;
+	private static final int ROAD_PRIORITY = 4;
+	private static final int ROAD_COLUMNS = 5;
+	private static final int POINT_OBSTACLE_FORWARD = 0;
+	private static final int POINT_OBSTACLE_BACKWARD = 1;
+	private static final int POINT_ROUTING_OBSTACLE_FORWARD = 2;
+	private static final int POINT_ROUTING_OBSTACLE_BACKWARD = 3;
+	private static final int POINT_COLUMNS = 4;
+
 	private final RouteAttributeContext[] objectAttributes;
 	public final Map<String, String> attributes;
 	private final Map<String, RoutingParameter> parameters;
@@ -59,7 +71,9 @@ public class GeneralRouter implements VehicleRouter {
 	private String filename = null;
 	private String profileName = "";
 
-	private Map<RouteRegion, Map<Integer, Integer>> regionConvert = new LinkedHashMap<RouteRegion, Map<Integer,Integer>>();
+	// router could be used by forward and reverse search threads at the same time
+	private final ConcurrentHashMap<RouteRegion, RegionRules> regionRules = new ConcurrentHashMap<RouteRegion, RegionRules>();
+	private volatile RegionRules lastRegionRules;
 	
 	// cached values
 	private boolean restrictionsAware = true;
@@ -79,8 +93,6 @@ public class GeneralRouter implements VehicleRouter {
 	
 	private GeneralRouterProfile profile;
 	
-	Map<RouteRegion, Map<IntHolder, Float>>[] evalCache;	
-	
 	public enum RouteDataObjectAttribute {
 		ROAD_SPEED("speed"),
 		ROAD_PRIORITIES("priority"),
@@ -156,7 +168,6 @@ public class GeneralRouter implements VehicleRouter {
 		if (shortestRoute) {
 			maxSpeed = Math.min(CAR_SHORTEST_DEFAULT_SPEED, maxSpeed);
 		}
-		initCaches();
 	}
 	
 	public GeneralRouter(GeneralRouterProfile profile, Map<String, String> attributes) {
@@ -176,18 +187,6 @@ public class GeneralRouter implements VehicleRouter {
 		tagRuleMask = new LinkedHashMap<String, BitSet>();
 		ruleToValue = new ArrayList<Object>();
 		parameters = new LinkedHashMap<String, GeneralRouter.RoutingParameter>();
-		
-		initCaches();
-
-	}
-
-	@SuppressWarnings("unchecked")
-	private void initCaches() {
-		int l = RouteDataObjectAttribute.values().length;
-		evalCache = new Map[l];
-		for (int i = 0; i < l; i++) {
-			evalCache[i] = new HashMap<>();
-		}
 	}
 
 	public String getFilename() {
@@ -268,11 +267,7 @@ public class GeneralRouter implements VehicleRouter {
 
 	@Override
 	public boolean acceptLine(RouteDataObject way) {
-		Float res = getCache(RouteDataObjectAttribute.ACCESS, way);
-		if (res == null) {
-			res = (float) getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(way, 0);
-			putCache(RouteDataObjectAttribute.ACCESS, way, res);
-		}
+		float res = getRoadValue(way, ROAD_ACCESS);
 		if (impassableRoads != null && impassableRoads.contains(way.id)) {
 			return false;
 		}
@@ -360,48 +355,26 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float defineObstacle(RouteDataObject road, int point, boolean dir) {
-		int[] pointTypes = road.getPointTypes(point);
-		if(pointTypes != null) {
-			Float obst = getCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, dir);
-			if(obst == null) {
-				int[] filteredPointTypes = filterDirectionTags(road, pointTypes, dir);
-				obst = getObjContext(RouteDataObjectAttribute.OBSTACLES).evaluateFloat(road.region, filteredPointTypes, 0);
-				putCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, obst, dir);
-			}
-			return obst;
-		}
-		return 0;
+		return getPointValue(road, point, dir ? POINT_OBSTACLE_FORWARD : POINT_OBSTACLE_BACKWARD);
 	}
 	
-	TIntArrayList filteredRules = new TIntArrayList();
-	
 	@Override
 	public float defineRoutingObstacle(RouteDataObject road, int point, boolean dir) {
-		int[] pointTypes = road.getPointTypes(point);
-		if(pointTypes != null) {
-			Float obst = getCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, dir);
-			if(obst == null) {
-				int[] filteredPointTypes = filterDirectionTags(road, pointTypes, dir);
-				obst = getObjContext(RouteDataObjectAttribute.ROUTING_OBSTACLES).evaluateFloat(road.region, filteredPointTypes, 0);
-				putCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, obst, dir);
-			}
-			return obst;
-		}
-		return 0;
+		return getPointValue(road, point, dir ? POINT_ROUTING_OBSTACLE_FORWARD : POINT_ROUTING_OBSTACLE_BACKWARD);
 	}
 	
-	private int[] filterDirectionTags(RouteDataObject road, int[] pointTypes, boolean dir) {
+	int[] filterDirectionTags(RouteRegion reg, int[] pointTypes, boolean dir) {
 		int wayOppositeDirection = dir ? -1 : 1;
 		int direction = 0;
 		int tdirection = 0;
 		for (int i = 0; i < pointTypes.length; i++) {
-			if (pointTypes[i] == road.region.directionBackward) {
+			if (pointTypes[i] == reg.directionBackward) {
 				direction = -1;
-			} else if(pointTypes[i] == road.region.directionForward) {
+			} else if(pointTypes[i] == reg.directionForward) {
 				direction = 1;
-			} else if (pointTypes[i] == road.region.directionTrafficSignalsBackward) {
+			} else if (pointTypes[i] == reg.directionTrafficSignalsBackward) {
 				tdirection = -1;
-			} else if(pointTypes[i] == road.region.directionTrafficSignalsForward) {
+			} else if(pointTypes[i] == reg.directionTrafficSignalsForward) {
 				tdirection = 1;
 			}
 		}
@@ -409,10 +382,10 @@ public class GeneralRouter implements VehicleRouter {
 			TIntArrayList filteredRules = new TIntArrayList();
 			for (int i = 0; i < pointTypes.length; i++) {
 				boolean skip = false;
-				if ((pointTypes[i] == road.region.stopSign || pointTypes[i] == road.region.giveWaySign)
+				if ((pointTypes[i] == reg.stopSign || pointTypes[i] == reg.giveWaySign)
 						&& direction == wayOppositeDirection) {
 					skip = true;
-				} else if (pointTypes[i] == road.region.trafficSignals && tdirection == wayOppositeDirection) {
+				} else if (pointTypes[i] == reg.trafficSignals && tdirection == wayOppositeDirection) {
 					skip = true;
 				}
 				if (!skip) {
@@ -437,6 +410,9 @@ public class GeneralRouter implements VehicleRouter {
 		double sum = 0;
 		int knext;
 		RouteAttributeContext objContext = getObjContext(RouteDataObjectAttribute.OBSTACLE_SRTM_ALT_SPEED);
+		BitSet types = null;
+		// incline is passed through own context, router is used by forward and reverse search threads
+		ParameterContext inclineContext = null;
 		for(int k = startIndex; k != endIndex; k = knext) {
 			knext = startIndex < endIndex ? k + 1 : k - 1;
 			double dist = startIndex < endIndex ? heightArray[2 * knext] : heightArray[2 * k]  ;
@@ -446,8 +422,13 @@ public class GeneralRouter implements VehicleRouter {
 				int percentIncl = (int) (incl * 100);
 				percentIncl = (percentIncl + 2)/ 3 * 3 - 2; // 1, 4, 7, 10, .   
 				if(percentIncl >= 1) {
-					objContext.paramContext.incline = diff > 0 ? percentIncl : -percentIncl;
-					sum += objContext.evaluateFloat(road, 0) * (diff > 0? diff : -diff );
+					if (inclineContext == null) {
+						types = convert(road.region, road.types);
+						inclineContext = new ParameterContext();
+						inclineContext.vars = objContext.paramContext.vars;
+					}
+					inclineContext.incline = diff > 0 ? percentIncl : -percentIncl;
+					sum += objContext.evaluateFloat(types, inclineContext, 0) * (diff > 0? diff : -diff );
 				}
 			}
 		}
@@ -457,12 +438,7 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public int isOneWay(RouteDataObject road) {
-		Float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
-		if(res == null) {
-			res = (float) getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
-			putCache(RouteDataObjectAttribute.ONEWAY, road, res);
-		}
-		return res.intValue();
+		return (int) getRoadValue(road, ROAD_ONEWAY);
 	}
 	
 	@Override
@@ -472,122 +448,137 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float getPenaltyTransition(RouteDataObject road) {
-		Float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
-		if (vl == null) {
-			vl = (float) getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
-			putCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, vl);
-		}
-		return vl;
+		return getRoadValue(road, ROAD_PENALTY_TRANSITION);
 	}
 
 	@Override
 	public float defineRoutingSpeed(RouteDataObject road) {
-		Float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
-		if (definedSpd == null) {
-			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
-			definedSpd = Math.max(Math.min(spd, maxSpeed), minSpeed);
-			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, definedSpd);
-		}
-		return definedSpd;
+		return getRoadValue(road, ROAD_SPEED);
 	}
 	
 	@Override
 	public float defineVehicleSpeed(RouteDataObject road) {
-		// don't use cache cause max/min is different for routing speed
+		// don't use compiled value cause max/min is different for routing speed
 		if (maxVehicleSpeed != maxSpeed) {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			return Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
 		}
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
-		if (sp == null) {
-			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
-			sp = Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
-			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, sp);
-		}
-		return sp;
+		return getRoadValue(road, ROAD_SPEED);
 	}
 	
 	@Override
 	public float defineSpeedPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road);
-		if(sp == null) {
-			sp = getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).evaluateFloat(road, 1f);
-			putCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, sp, false);
+		return getRoadValue(road, ROAD_PRIORITY);
+	}
+
+	private float getRoadValue(RouteDataObject road, int column) {
+		TypeCombinationTable roads = getRegionRules(road.region).roads;
+		int entry = roads.find(road.types);
+		if (entry < 0) {
+			entry = roads.add(road.types, compileRoad(road.region, road.types));
 		}
-		return sp;
+		return roads.get(entry, column);
 	}
 
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val) {
-		putCache(attr, road.region, road.types, val, false);
+	private float getPointValue(RouteDataObject road, int point, int column) {
+		int[] pointTypes = road.getPointTypes(point);
+		if (pointTypes == null) {
+			return 0;
+		}
+		TypeCombinationTable points = getRegionRules(road.region).points;
+		int entry = points.find(pointTypes);
+		if (entry < 0) {
+			entry = points.add(pointTypes, compilePoint(road.region, pointTypes));
+		}
+		return points.get(entry, column);
 	}
-	
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val, boolean extra) {
-		putCache(attr, road.region, road.types, val, extra);
+
+	/**
+	 * Evaluates all cached road attributes for type combination at once
+	 */
+	private float[] compileRoad(RouteRegion reg, int[] types) {
+		BitSet bs = convert(reg, types);
+		float[] row = new float[ROAD_COLUMNS];
+		row[ROAD_ACCESS] = getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(bs, 0);
+		row[ROAD_ONEWAY] = getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(bs, 0);
+		row[ROAD_PENALTY_TRANSITION] = getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(bs, 0);
+		float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(bs, defaultSpeed);
+		row[ROAD_SPEED] = Math.max(Math.min(spd, maxSpeed), minSpeed);
+		row[ROAD_PRIORITY] = getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).evaluateFloat(bs, 1f);
+		return row;
 	}
-	
-	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, Float val, boolean extra) {
-//		TIMER -= System.nanoTime();
-		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
-		if (USE_CACHE) {
-			Map<IntHolder, Float> rM = ch.get(reg);
-			if (rM == null) {
-				rM = new HashMap<IntHolder, Float>();
-				ch.put(reg, rM);
+
+	private float[] compilePoint(RouteRegion reg, int[] pointTypes) {
+		float[] row = new float[POINT_COLUMNS];
+		RouteAttributeContext obstacles = getObjContext(RouteDataObjectAttribute.OBSTACLES);
+		RouteAttributeContext routingObstacles = getObjContext(RouteDataObjectAttribute.ROUTING_OBSTACLES);
+		BitSet fwd = convert(reg, filterDirectionTags(reg, pointTypes, true));
+		BitSet bwd = convert(reg, filterDirectionTags(reg, pointTypes, false));
+		row[POINT_OBSTACLE_FORWARD] = obstacles.evaluateFloat(fwd, 0);
+		row[POINT_OBSTACLE_BACKWARD] = obstacles.evaluateFloat(bwd, 0);
+		row[POINT_ROUTING_OBSTACLE_FORWARD] = routingObstacles.evaluateFloat(fwd, 0);
+		row[POINT_ROUTING_OBSTACLE_BACKWARD] = routingObstacles.evaluateFloat(bwd, 0);
+		return row;
+	}
+
+	private RegionRules getRegionRules(RouteRegion reg) {
+		RegionRules rules = lastRegionRules;
+		if (rules != null && rules.region == reg) {
+			return rules;
+		}
+		rules = regionRules.get(reg);
+		if (rules == null) {
+			synchronized (this) {
+				rules = regionRules.get(reg);
+				if (rules == null) {
+					rules = new RegionRules(reg);
+					regionRules.put(reg, rules);
+				}
 			}
-			rM.put(new IntHolder(types, extra), val);
 		}
-//		TIMER += System.nanoTime();
+		lastRegionRules = rules;
+		return rules;
 	}
-	
-	class IntHolder {
-		private final int[] array;
-		private final boolean extra;
 
-		IntHolder(int[] ts, boolean extra) {
-			array = ts;
-			this.extra = extra;
+	private BitSet convert(RouteRegion reg, int[] types) {
+		synchronized (this) {
+			RegionRules rules = getRegionRules(reg);
+			BitSet b = new BitSet(universalRules.size());
+			for (int k = 0; k < types.length; k++) {
+				b.set(rules.resolveRule(types[k]));
+			}
+			return b;
 		}
+	}
 
-		@Override
-		public int hashCode() {
-			return Arrays.hashCode(array) + (extra ? 1 : 0);
-		}
+	/**
+	 * Region encoding rules resolved to router tag-value ids and compiled values of road and point type combinations.
+	 */
+	private class RegionRules {
+		final RouteRegion region;
+		final TypeCombinationTable roads = new TypeCombinationTable(ROAD_COLUMNS);
+		final TypeCombinationTable points = new TypeCombinationTable(POINT_COLUMNS);
+		// region type -> universal rule id (-1 not resolved), resolved lazily under router lock
+		int[] typeRules = new int[0];
 
-		@Override
-		public boolean equals(Object other) {
-			if (array == other) {
-				return true;
-			}
-			if (!(other instanceof IntHolder)) {
-				return false;
-			}
-			if (((IntHolder) other).extra != this.extra) {
-				return false;
-			}
-			// noinspection unchecked
-			return Arrays.equals(array, ((IntHolder) other).array);
+		RegionRules(RouteRegion region) {
+			this.region = region;
 		}
-	}
 
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
-		return getCache(attr, road.region, road.types, false);
-	}
-	
-	private Float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
-		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
-//		TIMER -= System.nanoTime();
-		if (USE_CACHE) {
-			Map<IntHolder, Float> rM = ch.get(reg);
-			if (rM == null) {
-				return null;
+		int resolveRule(int type) {
+			if (type >= typeRules.length) {
+				int l = typeRules.length;
+				typeRules = Arrays.copyOf(typeRules, Math.max(type + 1, l * 2));
+				Arrays.fill(typeRules, l, typeRules.length, -1);
 			}
-			Float vl = rM.get(new IntHolder(types, extra));
-			if(vl != null) {
-//				TIMER += System.nanoTime();
-				return vl;
+			if (typeRules[type] == -1) {
+				RouteTypeRule r = region.quickGetEncodingRule(type);
+				if (r != null) {
+					typeRules[type] = registerTagValueAttribute(r.getTag(), r.getValue());
+				}
 			}
+			return typeRules[type];
 		}
-		return null;
 	}
 
 	@Override
@@ -797,14 +788,21 @@ public class GeneralRouter implements VehicleRouter {
 		}
 
 		private Object evaluate(BitSet types) {
-			for (int k = 0; k < rules.size(); k++) {
-				RouteAttributeEvalRule r = rules.get(k);
-				Object o = r.eval(types, paramContext);
-				if (o != null) {
-					return o;
+			return evaluate(types, paramContext);
+		}
+
+		private Object evaluate(BitSet types, ParameterContext paramContext) {
+			// tag masks are extended by convert
+			synchronized (GeneralRouter.this) {
+				for (int k = 0; k < rules.size(); k++) {
+					RouteAttributeEvalRule r = rules.get(k);
+					Object o = r.eval(types, paramContext);
+					if (o != null) {
+						return o;
+					}
 				}
+				return null;
 			}
-			return null;
 		}
 
 		private boolean checkParameter(RouteAttributeEvalRule r) {
@@ -873,24 +871,13 @@ public class GeneralRouter implements VehicleRouter {
 			}
 			return ((Number)o).floatValue();
 		}
-		
-		private BitSet convert(RouteRegion reg, int[] types) {
-			BitSet b = new BitSet(universalRules.size());
-			Map<Integer, Integer> map = regionConvert.get(reg);
-			if(map == null){
-				map = new HashMap<Integer, Integer>();
-				regionConvert.put(reg, map);
-			}
-			for(int k = 0; k < types.length; k++) {
-				Integer nid = map.get(types[k]);
-				if (nid == null) {
-					RouteTypeRule r = reg.quickGetEncodingRule(types[k]);
-					nid = registerTagValueAttribute(r.getTag(), r.getValue());
-					map.put(types[k], nid);
-				}
-				b.set(nid);
+
+		private float evaluateFloat(BitSet rawTypes, ParameterContext paramContext, float defValue) {
+			Object o = evaluate(rawTypes, paramContext);
+			if(!(o instanceof Number)){
+				return defValue;
 			}
-			return b;
+			return ((Number)o).floatValue();
 		}
 	}
 
@@ -0,0 +1,430 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.util.MapUtils;
+
+/**
+ * Map matching of track with hidden Markov model (Newson, Krumm "Hidden Markov Map Matching Through Noise and
+ * Sparseness"). States of a track point are nearest roads, emission probability depends on distance from point to
+ * road and transition probability on difference between route distance and straight distance of 2 points. Routes
+ * from every state are calculated with one-to-many search limited by distance around start.
+ * <p>
+ * Most probable states are decoded with Viterbi algorithm in a sliding window: routes are written to points
+ * (GpxPoint.routeToTarget) as soon as paths of all states of last point pass the same state of some previous point
+ * or when window is full, so points could be added as they are recorded.
+ */
+public class HMMRouteMatcher {
+
+	// standard deviation of GPS error (m)
+	private static final double SIGMA = 10;
+	// scale of difference between route distance and straight distance (m)
+	private static final double BETA = 30;
+	private static final int MAX_CANDIDATES = 8;
+	// routes are searched not longer than straight distance * factor + 2 * MINIMUM_POINT_APPROXIMATION
+	private static final double MAX_ROUTE_FACTOR = 2;
+	// points closer to previous one are passed by routes without own states
+	private static final double MIN_POINT_DISTANCE = 2 * SIGMA;
+	private static final int WINDOW = 50;
+	// routes emptied by connection with next route are replaced by it, so a few last routes are not prepared
+	private static final int PENDING_ROUTES = 3;
+
+	private final RoutePlannerFrontEnd planner;
+	private final GpxRouteApproximation gctx;
+	private final BinaryRoutePlanner routePlanner = new BinaryRoutePlanner();
+	private final RouteResultPreparation preparation = new RouteResultPreparation();
+	// first layer has a decided state (or starts chain of connected points)
+	private final List<Layer> window = new ArrayList<Layer>();
+	private GpxPoint skippedPoint;
+	private boolean chainStart;
+	// routes are prepared when they couldn't be changed by connection with next routes
+	private final List<GpxPoint> pendingRoutes = new ArrayList<GpxPoint>();
+	private GpxPoint lastRouteEnd;
+
+	private static class Layer {
+		final GpxPoint point;
+		final RouteSegmentPoint[] candidates;
+		// log probability of most probable states ending with candidate
+		final double[] score;
+		// candidate of previous layer and route from it
+		final int[] parent;
+		final List<List<RouteSegmentResult>> routes;
+
+		Layer(GpxPoint point, RouteSegmentPoint[] candidates) {
+			this.point = point;
+			this.candidates = candidates;
+			score = new double[candidates.length];
+			Arrays.fill(score, Double.NEGATIVE_INFINITY);
+			parent = new int[candidates.length];
+			routes = new ArrayList<List<RouteSegmentResult>>(candidates.length);
+			for (int i = 0; i < candidates.length; i++) {
+				routes.add(null);
+			}
+		}
+
+		int getBestCandidate() {
+			int best = 0;
+			for (int i = 1; i < score.length; i++) {
+				if (score[i] > score[best]) {
+					best = i;
+				}
+			}
+			return best;
+		}
+	}
+
+	public HMMRouteMatcher(RoutePlannerFrontEnd planner, GpxRouteApproximation gctx) {
+		this.planner = planner;
+		this.gctx = gctx;
+	}
+
+	public void match(List<GpxPoint> gpxPoints) throws IOException, InterruptedException {
+		for (GpxPoint p : gpxPoints) {
+			if (gctx.ctx.calculationProgress != null && gctx.ctx.calculationProgress.isCancelled) {
+				return;
+			}
+			addPoint(p);
+		}
+		finish();
+	}
+
+	/**
+	 * Adds next point of track, routes to previous points could be written to them.
+	 */
+	public void addPoint(GpxPoint point) throws IOException, InterruptedException {
+		Layer prev = window.isEmpty() ? null : window.get(window.size() - 1);
+		if (prev != null && MapUtils.getDistance(prev.point.loc, point.loc) < MIN_POINT_DISTANCE) {
+			skippedPoint = point;
+			return;
+		}
+		skippedPoint = null;
+		addLayer(point, prev);
+	}
+
+	/**
+	 * Writes routes of most probable states to all remaining points.
+	 */
+	public void finish() throws IOException, InterruptedException {
+		if (skippedPoint != null) {
+			addLayer(skippedPoint, window.get(window.size() - 1));
+			skippedPoint = null;
+		}
+		finishChain();
+	}
+
+	private void addLayer(GpxPoint point, Layer prev) throws IOException, InterruptedException {
+		if (gctx.ctx.calculationProgress != null) {
+			gctx.ctx.calculationProgress.iteration = (int) (point.cumDist / gctx.MAXIMUM_STEP_APPROXIMATION);
+		}
+		RouteSegmentPoint[] candidates = findCandidates(point);
+		if (candidates.length == 0) {
+			// point is passed by route between neighbour points or by straight line
+			return;
+		}
+		Layer layer = new Layer(point, candidates);
+		boolean connected = false;
+		if (prev != null) {
+			double dist = MapUtils.getDistance(prev.point.loc, point.loc);
+			if (dist <= gctx.MAXIMUM_STEP_APPROXIMATION) {
+				connected = calculateTransitions(prev, layer, dist);
+			}
+		}
+		if (!connected) {
+			// points are not connected by routes: previous points are decided and straight line is used in between
+			finishChain();
+			Arrays.fill(layer.score, 0);
+			chainStart = true;
+		}
+		for (int j = 0; j < candidates.length; j++) {
+			layer.score[j] -= 0.5 * candidates[j].distSquare / (SIGMA * SIGMA);
+		}
+		window.add(layer);
+		if (window.size() > WINDOW) {
+			decideState(window.size() - 1 - WINDOW / 2);
+		}
+		writeDecidedRoutes();
+	}
+
+	private RouteSegmentPoint[] findCandidates(GpxPoint point) {
+		gctx.routePointsSearched++;
+		int px = MapUtils.get31TileNumberX(point.loc.getLongitude());
+		int py = MapUtils.get31TileNumberY(point.loc.getLatitude());
+		double radius = gctx.MINIMUM_POINT_APPROXIMATION;
+		List<RouteSegmentPoint> list = RouteSegmentIndex.findNearestSegments(
+				planner.loadRouteSegmentIndexes(gctx.ctx, px, py), px, py, null, false, radius * radius, 0);
+		List<RouteSegmentPoint> candidates = new ArrayList<RouteSegmentPoint>();
+		for (RouteSegmentPoint p : list) {
+			if (gctx.ctx.getRouter().acceptLine(p.getRoad())) {
+				candidates.add(p);
+				if (candidates.size() == MAX_CANDIDATES) {
+					break;
+				}
+			}
+		}
+		return candidates.toArray(new RouteSegmentPoint[candidates.size()]);
+	}
+
+	private boolean calculateTransitions(Layer prev, Layer layer, double dist) throws IOException,
+			InterruptedException {
+		double maxDistance = dist * MAX_ROUTE_FACTOR + 2 * gctx.MINIMUM_POINT_APPROXIMATION;
+		boolean connected = false;
+		for (int i = 0; i < prev.candidates.length; i++) {
+			if (prev.score[i] == Double.NEGATIVE_INFINITY) {
+				continue;
+			}
+			// search modifies points
+			RouteSegmentPoint[] targets = new RouteSegmentPoint[layer.candidates.length];
+			for (int j = 0; j < targets.length; j++) {
+				targets[j] = new RouteSegmentPoint(layer.candidates[j]);
+			}
+			gctx.routeCalculations++;
+			gctx.routeDistCalculations += dist;
+			FinalRouteSegment[] res = routePlanner.searchRouteOneToMany(gctx.ctx,
+					new RouteSegmentPoint(prev.candidates[i]), targets, maxDistance);
+			for (int j = 0; j < res.length; j++) {
+				List<RouteSegmentResult> route;
+				if (isSameSegment(prev.candidates[i], layer.candidates[j])) {
+					// point projected behind previous one on the same segment is not a turn back
+					route = new ArrayList<RouteSegmentResult>();
+				} else if (res[j] != null) {
+					route = preparation.convertFinalSegmentToResults(gctx.ctx, res[j]);
+					trimRoute(route, prev.candidates[i], layer.candidates[j]);
+				} else {
+					continue;
+				}
+				double routeDist = getRouteDistance(route, prev.candidates[i], layer.candidates[j]);
+				double score = prev.score[i] - Math.abs(routeDist - dist) / BETA;
+				if (score > layer.score[j]) {
+					layer.score[j] = score;
+					layer.parent[j] = i;
+					layer.routes.set(j, route);
+					connected = true;
+				}
+			}
+		}
+		return connected;
+	}
+
+	// search starts and finishes at ends of roads of points, route is cut to road points around them
+	private static void trimRoute(List<RouteSegmentResult> route, RouteSegmentPoint start, RouteSegmentPoint end) {
+		if (!route.isEmpty() && route.get(0).getObject().getId() == start.getRoad().getId()) {
+			RouteSegmentResult first = route.get(0);
+			int behind = first.isForwardDirection() ? start.getSegmentStart() - 1 : start.getSegmentStart();
+			if (isBetween(first.getStartPointIndex(), behind, first.getEndPointIndex())) {
+				first.setStartPointIndex(behind);
+				if (behind == first.getEndPointIndex()) {
+					route.remove(0);
+				}
+			}
+		}
+		if (!route.isEmpty() && route.get(route.size() - 1).getObject().getId() == end.getRoad().getId()) {
+			RouteSegmentResult last = route.get(route.size() - 1);
+			int ahead = last.isForwardDirection() ? end.getSegmentStart() : end.getSegmentStart() - 1;
+			if (isBetween(last.getStartPointIndex(), ahead, last.getEndPointIndex())) {
+				last.setEndPointIndex(ahead);
+				if (ahead == last.getStartPointIndex()) {
+					route.remove(route.size() - 1);
+				}
+			}
+		}
+	}
+
+	private static boolean isSameSegment(RouteSegmentPoint a, RouteSegmentPoint b) {
+		return a.getRoad().getId() == b.getRoad().getId() && a.getSegmentStart() == b.getSegmentStart();
+	}
+
+	private static boolean isBetween(int a, int x, int b) {
+		return Math.min(a, b) <= x && x <= Math.max(a, b);
+	}
+
+	// route distance between projections of points (route starts and ends at road points)
+	private static double getRouteDistance(List<RouteSegmentResult> route, RouteSegmentPoint start,
+			RouteSegmentPoint end) {
+		if (route.isEmpty()) {
+			return MapUtils.squareRootDist31(start.preciseX, start.preciseY, end.preciseX, end.preciseY);
+		}
+		double dist = 0;
+		for (RouteSegmentResult r : route) {
+			RouteDataObject o = r.getObject();
+			int inc = r.isForwardDirection() ? 1 : -1;
+			for (int k = r.getStartPointIndex(); k != r.getEndPointIndex(); k += inc) {
+				dist += MapUtils.squareRootDist31(o.getPoint31XTile(k), o.getPoint31YTile(k),
+						o.getPoint31XTile(k + inc), o.getPoint31YTile(k + inc));
+			}
+		}
+		dist += getDistanceToRoute(route.get(0), start, true);
+		dist += getDistanceToRoute(route.get(route.size() - 1), end, false);
+		return Math.max(dist, 0);
+	}
+
+	// distance from point to first (last) point of route, negative if point lies on first (last) segment of route
+	private static double getDistanceToRoute(RouteSegmentResult r, RouteSegmentPoint pnt, boolean start) {
+		int inc = r.isForwardDirection() ? 1 : -1;
+		int ind = start ? r.getStartPointIndex() : r.getEndPointIndex();
+		int next = start ? ind + inc : ind - inc;
+		RouteDataObject o = r.getObject();
+		double d = MapUtils.squareRootDist31(pnt.preciseX, pnt.preciseY, o.getPoint31XTile(ind), o.getPoint31YTile(ind));
+		// point lies between segmentStart - 1 and segmentStart
+		if (o.getId() == pnt.getRoad().getId() && Math.min(ind, next) == pnt.getSegmentStart() - 1
+				&& Math.max(ind, next) == pnt.getSegmentStart()) {
+			return -d;
+		}
+		return d;
+	}
+
+	// keeps only states which paths pass the most probable state of last layer at layer ind
+	private void decideState(int ind) {
+		Layer last = window.get(window.size() - 1);
+		int state = last.getBestCandidate();
+		for (int m = window.size() - 1; m > ind; m--) {
+			state = window.get(m).parent[state];
+		}
+		boolean[] alive = new boolean[window.get(ind).candidates.length];
+		alive[state] = true;
+		for (int m = ind + 1; m < window.size(); m++) {
+			Layer l = window.get(m);
+			boolean[] next = new boolean[l.candidates.length];
+			for (int i = 0; i < next.length; i++) {
+				next[i] = l.score[i] != Double.NEGATIVE_INFINITY && alive[l.parent[i]];
+				if (!next[i]) {
+					l.score[i] = Double.NEGATIVE_INFINITY;
+				}
+			}
+			alive = next;
+		}
+	}
+
+	// finds last layer where paths of all states meet and writes routes up to it
+	private void writeDecidedRoutes() throws IOException {
+		Layer last = window.get(window.size() - 1);
+		boolean[] alive = new boolean[last.candidates.length];
+		for (int i = 0; i < alive.length; i++) {
+			alive[i] = last.score[i] != Double.NEGATIVE_INFINITY;
+		}
+		for (int m = window.size() - 1; m > 0; m--) {
+			Layer l = window.get(m);
+			boolean[] parents = new boolean[window.get(m - 1).candidates.length];
+			int count = 0;
+			int state = -1;
+			for (int i = 0; i < alive.length; i++) {
+				if (alive[i] && !parents[l.parent[i]]) {
+					parents[l.parent[i]] = true;
+					state = l.parent[i];
+					count++;
+				}
+			}
+			if (count == 1) {
+				writeRoutes(m - 1, state);
+				return;
+			}
+			alive = parents;
+		}
+	}
+
+	private void writeRoutes(int ind, int state) throws IOException {
+		int[] states = new int[ind + 1];
+		states[ind] = state;
+		for (int m = ind; m > 0; m--) {
+			states[m - 1] = window.get(m).parent[states[m]];
+		}
+		for (int m = 1; m <= ind; m++) {
+			List<RouteSegmentResult> route = window.get(m).routes.get(states[m]);
+			GpxPoint start = window.get(m - 1).point;
+			GpxPoint end = window.get(m).point;
+			while (!pendingRoutes.isEmpty() && !route.isEmpty()) {
+				GpxPoint last = pendingRoutes.get(pendingRoutes.size() - 1);
+				connectRoutes(last.routeToTarget, route);
+				if (!last.routeToTarget.isEmpty()) {
+					break;
+				}
+				// previous route is passed back by this one, so it starts from the end of route before
+				pendingRoutes.remove(pendingRoutes.size() - 1);
+				last.routeToTarget = null;
+				last.targetInd = -1;
+				start = last;
+			}
+			if (route.isEmpty()) {
+				// point on the same road segment is passed by previous route (or next route)
+				if (!pendingRoutes.isEmpty()) {
+					pendingRoutes.get(pendingRoutes.size() - 1).targetInd = end.ind;
+					lastRouteEnd = end;
+				}
+				continue;
+			}
+			start.routeToTarget = route;
+			start.targetInd = end.ind;
+			pendingRoutes.add(start);
+			lastRouteEnd = end;
+			if (pendingRoutes.size() > PENDING_ROUTES) {
+				prepareRoute(pendingRoutes.remove(0), false);
+			}
+		}
+		window.subList(0, ind).clear();
+	}
+
+	private void prepareRoute(GpxPoint start, boolean chainEnd) throws IOException {
+		List<RouteSegmentResult> route = start.routeToTarget;
+		preparation.prepareResult(gctx.ctx, route, false);
+		if (chainStart) {
+			planner.makeSegmentPointPrecise(route.get(0), start.loc, true);
+			chainStart = false;
+		}
+		if (chainEnd) {
+			planner.makeSegmentPointPrecise(route.get(route.size() - 1), lastRouteEnd.loc, false);
+		}
+	}
+
+	// routes start and end at road points around point, so next route starts where previous one ends
+	// (if it is a point of the same road) and common part is removed if route turns back on the same road
+	private static void connectRoutes(List<RouteSegmentResult> prevRoute, List<RouteSegmentResult> route) {
+		RouteSegmentResult prev = prevRoute.get(prevRoute.size() - 1);
+		RouteSegmentResult first = route.get(0);
+		RouteDataObject o = first.getObject();
+		int x = prev.getObject().getPoint31XTile(prev.getEndPointIndex());
+		int y = prev.getObject().getPoint31YTile(prev.getEndPointIndex());
+		int k = 0;
+		while (k < o.getPointsLength() && (o.getPoint31XTile(k) != x || o.getPoint31YTile(k) != y)) {
+			k++;
+		}
+		if (k == o.getPointsLength()) {
+			return;
+		}
+		int end = first.getEndPointIndex();
+		if (o.getId() == prev.getObject().getId()) {
+			int st = prev.getStartPointIndex();
+			if ((st < k && end < k) || (st > k && end > k)) {
+				k = st < k ? Math.max(st, end) : Math.min(st, end);
+				prev.setEndPointIndex(k);
+				if (st == k) {
+					prevRoute.remove(prevRoute.size() - 1);
+				}
+			}
+		} else if (first.isForwardDirection() ? k > end : k < end) {
+			return;
+		}
+		first.setStartPointIndex(k);
+		if (end == k) {
+			route.remove(0);
+		}
+	}
+
+	private void finishChain() throws IOException {
+		if (window.isEmpty()) {
+			return;
+		}
+		Layer last = window.get(window.size() - 1);
+		writeRoutes(window.size() - 1, last.getBestCandidate());
+		while (!pendingRoutes.isEmpty()) {
+			prepareRoute(pendingRoutes.remove(0), pendingRoutes.isEmpty());
+		}
+		window.clear();
+	}
+}
@@ -3,6 +3,7 @@ package net.osmand.router;
 import net.osmand.GPXUtilities.GPXFile;
 import net.osmand.GPXUtilities.GPXTrackAnalysis;
 import net.osmand.GPXUtilities.Track;
+import net.osmand.GPXUtilities.TrackColumns;
 import net.osmand.GPXUtilities.TrkSegment;
 import net.osmand.GPXUtilities.WptPt;
 import net.osmand.PlatformUtil;
@@ -143,6 +144,52 @@ public class RouteColorize {
         sortPalette();
     }
 
+    /**
+     * Same as {@link #RouteColorize(int, GPXFile, GPXTrackAnalysis, ColorizationType, float)} for track stored in columns,
+     * points are read from columns arrays without creating objects
+     */
+    public RouteColorize(int zoom, List<TrackColumns> segments, GPXTrackAnalysis analysis, ColorizationType type, float maxProfileSpeed) {
+        if (analysis == null) {
+            analysis = GPXTrackAnalysis.segments(System.currentTimeMillis(), segments);
+        }
+        int size = 0;
+        for (TrackColumns ts : segments) {
+            if (!ts.generalSegment && ts.size() >= 2) {
+                size += ts.size();
+            }
+        }
+        this.zoom = zoom;
+        colorizationType = type;
+        latitudes = new double[size];
+        longitudes = new double[size];
+        double[] vals = new double[size];
+        int wptIdx = 0;
+        for (TrackColumns ts : segments) {
+            if (ts.generalSegment || ts.size() < 2) {
+                continue;
+            }
+            for (int i = 0; i < ts.size(); i++) {
+                latitudes[wptIdx] = ts.getLatitude(i);
+                longitudes[wptIdx] = ts.getLongitude(i);
+                if (type == ColorizationType.SPEED) {
+                    // speed could be derived from displacement by analysis
+                    vals[wptIdx] = analysis.speedData.get(wptIdx).speed;
+                } else {
+                    vals[wptIdx] = ts.getElevation(i);
+                }
+                wptIdx++;
+            }
+        }
+        if (type == ColorizationType.SLOPE) {
+            values = calculateSlopesByElevations(latitudes, longitudes, vals, SLOPE_RANGE);
+        } else {
+            values = vals;
+        }
+        calculateMinMaxValue(analysis, maxProfileSpeed);
+        checkPalette();
+        sortPalette();
+    }
+
     public int getZoom() {
         return zoom;
     }
@@ -10,6 +10,7 @@ import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
 import net.osmand.data.QuadPoint;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
 import net.osmand.util.MapUtils;
@@ -17,12 +18,21 @@ import net.osmand.util.MapUtils;
 import org.apache.commons.logging.Log;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gnu.trove.list.array.TIntArrayList;
 
@@ -31,6 +41,9 @@ public class RoutePlannerFrontEnd {
 	protected static final Log log = PlatformUtil.getLog(RoutePlannerFrontEnd.class);
 	// Check issue #8649
 	protected static final double GPS_POSSIBLE_ERROR = 7;
+	// nearest roads found for start, end and intermediate points (others are used if route can't start from first)
+	public static final int ROUTE_SEGMENT_CANDIDATES = 32;
+	private static final long GPX_CHUNK_PROGRESS_INTERVAL_MS = 100;
 	public boolean useSmartRouteRecalculation = true;
 
 	
@@ -52,6 +65,12 @@ public class RoutePlannerFrontEnd {
 		public double MINIMUM_STEP_APPROXIMATION = 100;
 		// Parameter to smoother the track itself (could be 0 if it's not recorded track)
 		public double SMOOTHEN_POINTS_NO_ROUTE = 5;
+		// match track with hidden Markov model (HMMRouteMatcher) instead of step by step routing
+		public boolean USE_HMM_MATCHING = false;
+		// long tracks are split into chunks approximated in parallel (see searchGpxRoute with RoutingContextFactory)
+		public double CHUNK_DISTANCE = 50000;
+		// chunks overlap to join their routes on the same roads
+		public double CHUNK_OVERLAP = 10000;
 		
 		public final RoutingContext ctx;
 		public int routeCalculations = 0;
@@ -114,6 +133,22 @@ public class RoutePlannerFrontEnd {
 		}
 	}
 
+	public static class RouteMatrix {
+		// routing time in seconds (cost of A*), -1 if route is not found
+		public final float[][] times;
+		// distance in meters, -1 if route is not found
+		public final float[][] distances;
+
+		public RouteMatrix(int sources, int targets) {
+			times = new float[sources][targets];
+			distances = new float[sources][targets];
+			for (int i = 0; i < sources; i++) {
+				Arrays.fill(times[i], -1);
+				Arrays.fill(distances[i], -1);
+			}
+		}
+	}
+
 	public RoutingContext buildRoutingContext(RoutingConfiguration config, NativeLibrary nativeLibrary, BinaryMapIndexReader[] map, RouteCalculationMode rm) {
 		return new RoutingContext(config, nativeLibrary, map, rm);
 	}
@@ -123,74 +158,67 @@ public class RoutePlannerFrontEnd {
 	}
 
 
-	private static double squareDist(int x1, int y1, int x2, int y2) {
+	private static boolean isEmpty(List<RouteSegmentIndex> indexes) {
+		for (RouteSegmentIndex index : indexes) {
+			if (index.getObjectsCount() > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static double squareDist(int x1, int y1, int x2, int y2) {
 		// translate into meters 
 		double dy = MapUtils.convert31YToMeters(y1, y2, x1);
 		double dx = MapUtils.convert31XToMeters(x1, x2, y1);
 		return dx * dx + dy * dy;
 	}
 
+	// indexes of tiles around point, tiles of lower zooms are loaded if there are no roads around
+	List<RouteSegmentIndex> loadRouteSegmentIndexes(RoutingContext ctx, int px, int py) {
+		List<RouteSegmentIndex> indexes = new ArrayList<RouteSegmentIndex>();
+		ctx.loadTileSegmentIndexes(px, py, 17, indexes);
+		if (isEmpty(indexes)) {
+			indexes.clear();
+			ctx.loadTileSegmentIndexes(px, py, 15, indexes);
+		}
+		if (isEmpty(indexes)) {
+			indexes.clear();
+			ctx.loadTileSegmentIndexes(px, py, 14, indexes);
+		}
+		return indexes;
+	}
+
 	public RouteSegmentPoint findRouteSegment(double lat, double lon, RoutingContext ctx, List<RouteSegmentPoint> list) throws IOException {
 		return findRouteSegment(lat, lon, ctx, list, false);
 	}
 
 	public RouteSegmentPoint findRouteSegment(double lat, double lon, RoutingContext ctx, List<RouteSegmentPoint> list, boolean transportStop) throws IOException {
-		return findRouteSegment(lat, lon, ctx, list, false, false);
+		return findRouteSegment(lat, lon, ctx, list, false, false, 0, ROUTE_SEGMENT_CANDIDATES);
 	}
 	
 	public RouteSegmentPoint findRouteSegment(double lat, double lon, RoutingContext ctx, List<RouteSegmentPoint> list, boolean transportStop, 
 			boolean allowDuplications) throws IOException {
+		return findRouteSegment(lat, lon, ctx, list, transportStop, allowDuplications, Double.POSITIVE_INFINITY, 0);
+	}
+
+	/**
+	 * Finds nearest segments of roads around point sorted by distance (adjusted by road priority), first is returned
+	 * and all are set as others.
+	 * @param maxDistSquare all roads with (adjusted) square distance up to this value are searched
+	 * @param candidatesBeyond number of nearest roads searched after roads within maxDistSquare
+	 */
+	public RouteSegmentPoint findRouteSegment(double lat, double lon, RoutingContext ctx, List<RouteSegmentPoint> list,
+			boolean transportStop, boolean allowDuplications, double maxDistSquare, int candidatesBeyond) throws IOException {
 		long now = System.nanoTime();
 		int px = MapUtils.get31TileNumberX(lon);
 		int py = MapUtils.get31TileNumberY(lat);
-		ArrayList<RouteDataObject> dataObjects = new ArrayList<RouteDataObject>();
-		ctx.loadTileData(px, py, 17, dataObjects, allowDuplications);
-		if (dataObjects.isEmpty()) {
-			ctx.loadTileData(px, py, 15, dataObjects, allowDuplications);
-		}
-		if (dataObjects.isEmpty()) {
-			ctx.loadTileData(px, py, 14, dataObjects, allowDuplications);
-		}
+		List<RouteSegmentIndex> indexes = loadRouteSegmentIndexes(ctx, px, py);
 		if (list == null) {
 			list = new ArrayList<BinaryRoutePlanner.RouteSegmentPoint>();
 		}
-		for (RouteDataObject r : dataObjects) {
-			if (r.getPointsLength() > 1) {
-				RouteSegmentPoint road = null;
-				for (int j = 1; j < r.getPointsLength(); j++) {
-					QuadPoint pr = MapUtils.getProjectionPoint31(px, py, r.getPoint31XTile(j - 1),
-							r.getPoint31YTile(j - 1), r.getPoint31XTile(j), r.getPoint31YTile(j));
-					double currentsDistSquare = squareDist((int) pr.x, (int) pr.y, px, py);
-					if (road == null || currentsDistSquare < road.distSquare) {
-						RouteDataObject ro = new RouteDataObject(r);
-						
-						road = new RouteSegmentPoint(ro, j, currentsDistSquare);
-						road.preciseX = (int) pr.x;
-						road.preciseY = (int) pr.y;
-					}
-				}
-				if (road != null) {
-					if(!transportStop) {
-						float prio = Math.max(ctx.getRouter().defineSpeedPriority(road.road), 0.3f);
-						if (prio > 0) {
-							road.distSquare = (road.distSquare + GPS_POSSIBLE_ERROR * GPS_POSSIBLE_ERROR)
-									/ (prio * prio);
-							list.add(road);
-						}
-					} else {
-						list.add(road);
-					}
-					
-				}
-			}
-		}
-		Collections.sort(list, new Comparator<RouteSegmentPoint>() {
-
-			@Override
-			public int compare(RouteSegmentPoint o1, RouteSegmentPoint o2) {
-				return Double.compare(o1.distSquare, o2.distSquare);
-			}
-		});
+		list.addAll(RouteSegmentIndex.findNearestSegments(indexes, px, py, transportStop ? null : ctx.getRouter(),
+				allowDuplications, maxDistSquare, candidatesBeyond));
 		if (ctx.calculationProgress != null) {
 			ctx.calculationProgress.timeToFindInitialSegments += (System.nanoTime() - now);
 		}
@@ -235,10 +263,345 @@ public class RoutePlannerFrontEnd {
 		if (gctx.ctx.calculationProgress == null) {
 			gctx.ctx.calculationProgress = new RouteCalculationProgress();
 		}
+		if (gpxPoints.size() > 0) {
+			gctx.ctx.calculationProgress.totalIterations = (int) (gpxPoints.get(gpxPoints.size() - 1).cumDist / gctx.MAXIMUM_STEP_APPROXIMATION + 1); 
+		}
+		if (gctx.USE_HMM_MATCHING) {
+			new HMMRouteMatcher(this, gctx).match(gpxPoints);
+		} else {
+			searchGpxRouteSegments(gctx, gpxPoints);
+		}
+		if (gctx.ctx.calculationProgress != null) {
+			gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
+		}
+		gctx.ctx.deleteNativeRoutingContext();
+		BinaryRoutePlanner.printDebugMemoryInformation(gctx.ctx);
+		calculateGpxRoute(gctx, gpxPoints);
+		if (!gctx.result.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
+			new RouteResultPreparation().printResults(gctx.ctx, gpxPoints.get(0).loc, gpxPoints.get(gpxPoints.size() - 1).loc, gctx.result);
+			System.out.println(gctx);
+		}
+		if (resultMatcher != null) {
+			resultMatcher.publish(gctx.ctx.calculationProgress.isCancelled ? null : gctx);
+		}
+		return gctx;
+	}
+
+	/**
+	 * Same as {@link #searchGpxRoute(GpxRouteApproximation, List, ResultMatcher)} for long tracks: points are split
+	 * into chunks of {@link GpxRouteApproximation#CHUNK_DISTANCE} overlapping by
+	 * {@link GpxRouteApproximation#CHUNK_OVERLAP} which are approximated by several threads, each with own routing
+	 * context (set {@link RoutingConfiguration#tileCache} to share decoded tiles between them). Routes of neighbour
+	 * chunks are joined at the first road point in overlap they both pass, if there is no such point the track
+	 * between chunks is kept as straight line. Workers have own progress, progress of gctx is updated
+	 * and cancellation is passed to workers by calling thread while it waits for them.
+	 */
+	public GpxRouteApproximation searchGpxRoute(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints,
+			final RoutingContextFactory factory, int threads, ResultMatcher<GpxRouteApproximation> resultMatcher)
+			throws IOException, InterruptedException {
+		final List<GpxChunk> chunks = splitGpxChunks(gctx, gpxPoints);
+		threads = Math.max(1, Math.min(threads, chunks.size()));
+		if (threads == 1) {
+			return searchGpxRoute(gctx, gpxPoints, resultMatcher);
+		}
+		long timeToCalculate = System.nanoTime();
+		if (gctx.ctx.calculationProgress == null) {
+			gctx.ctx.calculationProgress = new RouteCalculationProgress();
+		}
+		// progress is updated only by calling thread, every worker has own progress
+		final RouteCalculationProgress progress = gctx.ctx.calculationProgress;
+		progress.totalIterations = (int) (gpxPoints.get(gpxPoints.size() - 1).cumDist / gctx.MAXIMUM_STEP_APPROXIMATION + 1);
+		final GpxRouteApproximation params = gctx;
+		final AtomicInteger nextChunk = new AtomicInteger();
+		final AtomicInteger approximatedIterations = new AtomicInteger();
+		final List<RouteCalculationProgress> workerProgress = new ArrayList<RouteCalculationProgress>();
+		for (int i = 0; i < threads; i++) {
+			workerProgress.add(new RouteCalculationProgress());
+		}
+		final AtomicInteger nextWorker = new AtomicInteger();
+		Callable<Void> worker = new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				RoutingContext ctx = factory.createRoutingContext();
+				RouteCalculationProgress wp = workerProgress.get(nextWorker.getAndIncrement());
+				ctx.calculationProgress = wp;
+				ctx.keepNativeRoutingContext = true;
+				try {
+					int c;
+					while ((c = nextChunk.getAndIncrement()) < chunks.size() && !wp.isCancelled) {
+						GpxChunk chunk = chunks.get(c);
+						chunk.gctx = createChunkApproximation(params, ctx);
+						if (params.USE_HMM_MATCHING) {
+							new HMMRouteMatcher(RoutePlannerFrontEnd.this, chunk.gctx).match(chunk.points);
+						} else {
+							searchGpxRouteSegments(chunk.gctx, chunk.points);
+						}
+						double chunkDist = chunk.points.get(chunk.points.size() - 1).cumDist - chunk.points.get(0).cumDist;
+						approximatedIterations.addAndGet((int) (chunkDist / params.MAXIMUM_STEP_APPROXIMATION));
+					}
+				} finally {
+					ctx.deleteNativeRoutingContext();
+					ctx.unloadAllData();
+				}
+				return null;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(worker));
+			}
+			for (Future<Void> f : futures) {
+				while (true) {
+					try {
+						f.get(GPX_CHUNK_PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException e) {
+						// cancellation is passed to workers, their iterations are shown as iteration of whole track
+						for (RouteCalculationProgress wp : workerProgress) {
+							wp.isCancelled |= progress.isCancelled;
+						}
+						progress.iteration = Math.min(approximatedIterations.get(), progress.totalIterations - 1);
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof InterruptedException) {
+				throw (InterruptedException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		// workers are finished, their counters are visible here
+		for (RouteCalculationProgress wp : workerProgress) {
+			mergeChunkProgress(progress, wp);
+		}
+		for (GpxChunk chunk : chunks) {
+			gctx.routeCalculations += chunk.gctx.routeCalculations;
+			gctx.routePointsSearched += chunk.gctx.routePointsSearched;
+			gctx.routeDistCalculations += chunk.gctx.routeDistCalculations;
+		}
+		if (!progress.isCancelled) {
+			joinGpxChunks(gctx, chunks, gpxPoints);
+		}
+		progress.timeToCalculate = System.nanoTime() - timeToCalculate;
+		calculateGpxRoute(gctx, gpxPoints);
+		if (!gctx.result.isEmpty() && !progress.isCancelled) {
+			new RouteResultPreparation().printResults(gctx.ctx, gpxPoints.get(0).loc, gpxPoints.get(gpxPoints.size() - 1).loc, gctx.result);
+			System.out.println(gctx);
+		}
+		if (resultMatcher != null) {
+			resultMatcher.publish(progress.isCancelled ? null : gctx);
+		}
+		return gctx;
+	}
+
+	private static void mergeChunkProgress(RouteCalculationProgress progress, RouteCalculationProgress chunk) {
+		progress.relaxedSegments += chunk.relaxedSegments;
+		progress.visitedSegments += chunk.visitedSegments;
+		progress.visitedDirectSegments += chunk.visitedDirectSegments;
+		progress.visitedOppositeSegments += chunk.visitedOppositeSegments;
+		progress.directQueueSize += chunk.directQueueSize;
+		progress.oppositeQueueSize += chunk.oppositeQueueSize;
+		progress.routingCalculatedTime += chunk.routingCalculatedTime;
+		progress.timeNanoToCalcDeviation += chunk.timeNanoToCalcDeviation;
+		progress.timeToLoad += chunk.timeToLoad;
+		progress.timeToLoadHeaders += chunk.timeToLoadHeaders;
+		progress.timeToFindInitialSegments += chunk.timeToFindInitialSegments;
+		progress.distinctLoadedTiles += chunk.distinctLoadedTiles;
+		progress.maxLoadedTiles = Math.max(progress.maxLoadedTiles, chunk.maxLoadedTiles);
+		progress.loadedPrevUnloadedTiles += chunk.loadedPrevUnloadedTiles;
+		progress.unloadedTiles += chunk.unloadedTiles;
+		progress.loadedTiles += chunk.loadedTiles;
+	}
+
+	// points of chunk are copied with own indexes (starting from 0)
+	private static class GpxChunk {
+		final int start;
+		final List<GpxPoint> points = new ArrayList<GpxPoint>();
+		GpxRouteApproximation gctx;
+
+		GpxChunk(int start) {
+			this.start = start;
+		}
+
+		GpxPoint get(int ind) {
+			return points.get(ind - start);
+		}
+
+		int end() {
+			return start + points.size();
+		}
+	}
+
+	private List<GpxChunk> splitGpxChunks(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) {
+		List<GpxChunk> chunks = new ArrayList<GpxChunk>();
+		int start = 0;
+		while (start < gpxPoints.size() - 1) {
+			GpxChunk chunk = new GpxChunk(start);
+			double startDist = gpxPoints.get(start).cumDist;
+			int next = -1;
+			for (int i = start; i < gpxPoints.size(); i++) {
+				GpxPoint p = gpxPoints.get(i);
+				if (next == -1 && p.cumDist - startDist >= gctx.CHUNK_DISTANCE) {
+					next = i;
+				}
+				if (p.cumDist - startDist > gctx.CHUNK_DISTANCE + gctx.CHUNK_OVERLAP && chunk.points.size() > 1) {
+					break;
+				}
+				GpxPoint cp = new GpxPoint(p);
+				cp.ind = i - start;
+				chunk.points.add(cp);
+			}
+			chunks.add(chunk);
+			if (next == -1 || chunk.end() == gpxPoints.size()) {
+				break;
+			}
+			start = next;
+		}
+		return chunks;
+	}
+
+	private GpxRouteApproximation createChunkApproximation(GpxRouteApproximation gctx, RoutingContext ctx) {
+		GpxRouteApproximation chunk = new GpxRouteApproximation(ctx);
+		chunk.MINIMUM_POINT_APPROXIMATION = gctx.MINIMUM_POINT_APPROXIMATION;
+		chunk.MAXIMUM_STEP_APPROXIMATION = gctx.MAXIMUM_STEP_APPROXIMATION;
+		chunk.MINIMUM_STEP_APPROXIMATION = gctx.MINIMUM_STEP_APPROXIMATION;
+		chunk.SMOOTHEN_POINTS_NO_ROUTE = gctx.SMOOTHEN_POINTS_NO_ROUTE;
+		chunk.USE_HMM_MATCHING = gctx.USE_HMM_MATCHING;
+		return chunk;
+	}
+
+	// copies routes of chunks to points, routes of previous chunk are used until they are joined with next chunk
+	private void joinGpxChunks(GpxRouteApproximation gctx, List<GpxChunk> chunks, List<GpxPoint> gpxPoints)
+			throws IOException {
+		int from = 0;
+		for (int c = 0; c < chunks.size(); c++) {
+			GpxChunk chunk = chunks.get(c);
+			GpxChunk next = c + 1 < chunks.size() ? chunks.get(c + 1) : null;
+			int until = chunk.end();
+			if (next != null) {
+				until = joinGpxChunkRoutes(gctx, chunk, next, from, gpxPoints);
+				if (until == -1) {
+					// routes are taken up to the middle of overlap, points in between are not matched
+					until = next.end();
+					for (int i = (next.start + chunk.end()) / 2; i < next.end(); i++) {
+						if (next.get(i).routeToTarget != null) {
+							until = i;
+							break;
+						}
+					}
+					copyChunkRoutes(chunk, from, until, gpxPoints);
+				}
+			} else {
+				copyChunkRoutes(chunk, from, until, gpxPoints);
+			}
+			from = until;
+		}
+	}
+
+	private void copyChunkRoutes(GpxChunk chunk, int from, int until, List<GpxPoint> gpxPoints) {
+		for (int i = Math.max(from, chunk.start); i < chunk.end(); i++) {
+			GpxPoint cp = chunk.get(i);
+			if (cp.routeToTarget != null && cp.targetInd + chunk.start <= until) {
+				GpxPoint p = gpxPoints.get(i);
+				p.routeToTarget = cp.routeToTarget;
+				p.targetInd = cp.targetInd + chunk.start;
+			}
+		}
+	}
+
+	// finds first route of next chunk which passes the same road point as a route of chunk and replaces both of them
+	// by joined route, returns index of point where next chunk continues or -1 if routes are not joined
+	private int joinGpxChunkRoutes(GpxRouteApproximation gctx, GpxChunk chunk, GpxChunk next, int from,
+			List<GpxPoint> gpxPoints) throws IOException {
+		for (int j = next.start; j < next.end(); j++) {
+			GpxPoint np = next.get(j);
+			if (np.routeToTarget == null) {
+				continue;
+			}
+			int target = np.targetInd + next.start;
+			for (int i = Math.max(from, chunk.start); i < chunk.end() && i < target; i++) {
+				GpxPoint cp = chunk.get(i);
+				if (cp.routeToTarget == null || cp.targetInd + chunk.start <= next.start) {
+					continue;
+				}
+				List<RouteSegmentResult> joined = joinRoutes(cp.routeToTarget, np.routeToTarget);
+				if (joined != null) {
+					copyChunkRoutes(chunk, from, i, gpxPoints);
+					new RouteResultPreparation().prepareResult(gctx.ctx, joined, false);
+					GpxPoint p = gpxPoints.get(i);
+					p.routeToTarget = joined;
+					p.targetInd = target;
+					return target;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// joins routes at first point of second route which is passed by first one in the same direction
+	private static List<RouteSegmentResult> joinRoutes(List<RouteSegmentResult> first, List<RouteSegmentResult> second) {
+		for (int j = 0; j < second.size(); j++) {
+			RouteSegmentResult s = second.get(j);
+			RouteDataObject o = s.getObject();
+			int inc = s.isForwardDirection() ? 1 : -1;
+			for (int k = s.getStartPointIndex(); k != s.getEndPointIndex() + inc; k += inc) {
+				for (int i = 0; i < first.size(); i++) {
+					RouteSegmentResult f = first.get(i);
+					int fk = findRoutePoint(f, o.getId(), o.getPoint31XTile(k), o.getPoint31YTile(k));
+					if (fk == -1 || f.isForwardDirection() != s.isForwardDirection()) {
+						continue;
+					}
+					// routes are copied to be prepared again
+					List<RouteSegmentResult> joined = new ArrayList<RouteSegmentResult>();
+					for (int t = 0; t < i; t++) {
+						RouteSegmentResult r = first.get(t);
+						joined.add(new RouteSegmentResult(r.getObject(), r.getStartPointIndex(), r.getEndPointIndex()));
+					}
+					if (fk != f.getStartPointIndex()) {
+						joined.add(new RouteSegmentResult(f.getObject(), f.getStartPointIndex(), fk));
+					}
+					if (k != s.getEndPointIndex()) {
+						joined.add(new RouteSegmentResult(o, k, s.getEndPointIndex()));
+					}
+					for (int t = j + 1; t < second.size(); t++) {
+						RouteSegmentResult r = second.get(t);
+						joined.add(new RouteSegmentResult(r.getObject(), r.getStartPointIndex(), r.getEndPointIndex()));
+					}
+					return joined.isEmpty() ? null : joined;
+				}
+			}
+		}
+		return null;
+	}
+
+	// index of road point between start and end of segment
+	private static int findRoutePoint(RouteSegmentResult r, long roadId, int x31, int y31) {
+		RouteDataObject o = r.getObject();
+		if (o.getId() != roadId) {
+			return -1;
+		}
+		int inc = r.isForwardDirection() ? 1 : -1;
+		for (int k = r.getStartPointIndex(); k != r.getEndPointIndex() + inc; k += inc) {
+			if (o.getPoint31XTile(k) == x31 && o.getPoint31YTile(k) == y31) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	// greedy approximation: routes between points are calculated step by step and cut to connect next ones
+	private void searchGpxRouteSegments(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) throws IOException, InterruptedException {
 		GpxPoint start = null;
 		GpxPoint prev = null;
 		if (gpxPoints.size() > 0) {
-			gctx.ctx.calculationProgress.totalIterations = (int) (gpxPoints.get(gpxPoints.size() - 1).cumDist / gctx.MAXIMUM_STEP_APPROXIMATION + 1); 
 			start = gpxPoints.get(0); 
 		}
 		while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
@@ -296,20 +659,6 @@ public class RoutePlannerFrontEnd {
 			}
 			start = next;
 		}
-		if (gctx.ctx.calculationProgress != null) {
-			gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
-		}
-		gctx.ctx.deleteNativeRoutingContext();
-		BinaryRoutePlanner.printDebugMemoryInformation(gctx.ctx);
-		calculateGpxRoute(gctx, gpxPoints);
-		if (!gctx.result.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
-			new RouteResultPreparation().printResults(gctx.ctx, gpxPoints.get(0).loc, gpxPoints.get(gpxPoints.size() - 1).loc, gctx.result);
-			System.out.println(gctx);
-		}
-		if (resultMatcher != null) {
-			resultMatcher.publish(gctx.ctx.calculationProgress.isCancelled ? null : gctx);
-		}
-		return gctx;
 	}
 
 	private boolean stepBackAndFindPrevPointInRoute(GpxRouteApproximation gctx,
@@ -688,7 +1037,9 @@ public class RoutePlannerFrontEnd {
 				b = l;
 			}
 		}
-		if (ctx.calculationMode == RouteCalculationMode.COMPLEX && routeDirection == null
+		boolean useContractionHierarchy = ctx.config.contractionHierarchy != null
+				&& ctx.config.contractionHierarchy.isApplicable(ctx);
+		if (ctx.calculationMode == RouteCalculationMode.COMPLEX && routeDirection == null && !useContractionHierarchy
 				&& maxDistance > RoutingConfiguration.DEVIATION_RADIUS * 6) {
 			ctx.calculationProgress.totalIterations++;
 			RoutingContext nctx = buildRoutingContext(ctx.config, ctx.nativeLib, ctx.getMaps(), RouteCalculationMode.BASE);
@@ -762,7 +1113,7 @@ public class RoutePlannerFrontEnd {
 		return currentsDist;
 	}
 
-	private void makeSegmentPointPrecise(RouteSegmentResult routeSegmentResult, LatLon point, boolean st) {
+	void makeSegmentPointPrecise(RouteSegmentResult routeSegmentResult, LatLon point, boolean st) {
 		int px = MapUtils.get31TileNumberX(point.getLongitude());
 		int py = MapUtils.get31TileNumberY(point.getLatitude());
 		int pind = st ? routeSegmentResult.getStartPointIndex() : routeSegmentResult.getEndPointIndex();
@@ -826,6 +1177,138 @@ public class RoutePlannerFrontEnd {
 
 	}
 
+	/**
+	 * Calculates times and distances of routes from every source to every target (i.e. costs for TspAnt).
+	 * Each source is calculated with one-to-many search, routing context (loaded tiles) is reused for all sources
+	 * processed by the same thread. Sources are distributed between threads, every thread opens own readers
+	 * of the same files, set {@link RoutingConfiguration#tileCache} to share decoded tiles between threads.
+	 */
+	public RouteMatrix calculateRouteMatrix(final RoutingConfiguration config, final BinaryMapIndexReader[] map,
+			final List<LatLon> sources, final List<LatLon> targets, int threads) throws IOException, InterruptedException {
+		final RouteMatrix matrix = new RouteMatrix(sources.size(), targets.size());
+		final AtomicInteger nextSource = new AtomicInteger();
+		threads = Math.max(1, Math.min(threads, sources.size()));
+		if (threads == 1) {
+			calculateRouteMatrixRows(config, map, sources, targets, nextSource, matrix);
+			return matrix;
+		}
+		final Throwable[] error = new Throwable[1];
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int k = 0; k < threads; k++) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					BinaryMapIndexReader[] readers = new BinaryMapIndexReader[map.length];
+					try {
+						for (int i = 0; i < map.length; i++) {
+							readers[i] = new BinaryMapIndexReader(new RandomAccessFile(map[i].getFile(), "r"), map[i]);
+						}
+						calculateRouteMatrixRows(config, readers, sources, targets, nextSource, matrix);
+					} catch (Throwable e) {
+						synchronized (error) {
+							if (error[0] == null) {
+								error[0] = e;
+							}
+						}
+						// stop other workers
+						nextSource.set(sources.size());
+					} finally {
+						for (BinaryMapIndexReader r : readers) {
+							if (r != null) {
+								try {
+									r.close();
+								} catch (IOException e) {
+									log.error(e.getMessage(), e);
+								}
+							}
+						}
+					}
+				}
+			}, "Route matrix " + k);
+			t.setDaemon(true);
+			t.start();
+			workers.add(t);
+		}
+		for (Thread t : workers) {
+			t.join();
+		}
+		Throwable e = error[0];
+		if (e instanceof InterruptedException) {
+			throw (InterruptedException) e;
+		} else if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return matrix;
+	}
+
+	private void calculateRouteMatrixRows(RoutingConfiguration config, BinaryMapIndexReader[] map, List<LatLon> sources,
+			List<LatLon> targets, AtomicInteger nextSource, RouteMatrix matrix) throws IOException, InterruptedException {
+		RoutingContext ctx = buildRoutingContext(config, null, map, RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		RouteSegmentPoint[] targetPoints = new RouteSegmentPoint[targets.size()];
+		for (int j = 0; j < targets.size(); j++) {
+			targetPoints[j] = findRouteSegment(targets.get(j).getLatitude(), targets.get(j).getLongitude(), ctx, null);
+		}
+		int i;
+		while ((i = nextSource.getAndIncrement()) < sources.size()) {
+			RouteSegmentPoint start = findRouteSegment(sources.get(i).getLatitude(), sources.get(i).getLongitude(), ctx, null);
+			if (start == null) {
+				continue;
+			}
+			TIntArrayList found = new TIntArrayList();
+			List<RouteSegmentPoint> search = new ArrayList<RouteSegmentPoint>();
+			for (int j = 0; j < targetPoints.length; j++) {
+				if (targetPoints[j] != null) {
+					found.add(j);
+					// search modifies points
+					search.add(new RouteSegmentPoint(targetPoints[j]));
+				}
+			}
+			FinalRouteSegment[] res = new BinaryRoutePlanner().searchRouteOneToMany(ctx, start,
+					search.toArray(new RouteSegmentPoint[search.size()]));
+			for (int k = 0; k < res.length; k++) {
+				if (res[k] != null) {
+					matrix.times[i][found.get(k)] = res[k].distanceFromStart;
+					matrix.distances[i][found.get(k)] = calculateRouteDistance(res[k]);
+				}
+			}
+		}
+		ctx.unloadAllData();
+	}
+
+	// walks segments the same way as RouteResultPreparation collects results of direct search
+	static float calculateRouteDistance(FinalRouteSegment finalSegment) {
+		float dist = 0;
+		RouteSegment segment = finalSegment.opposite.getParentRoute();
+		int parentSegmentStart = finalSegment.opposite.getParentSegmentEnd();
+		while (segment != null) {
+			dist += calculateDistance(segment.getRoad(), parentSegmentStart, segment.getSegmentStart());
+			parentSegmentStart = segment.getParentSegmentEnd();
+			segment = segment.getParentRoute();
+		}
+		segment = finalSegment;
+		int parentSegmentEnd = finalSegment.opposite.getSegmentStart();
+		while (segment != null) {
+			dist += calculateDistance(segment.getRoad(), segment.getSegmentStart(), parentSegmentEnd);
+			parentSegmentEnd = segment.getParentSegmentEnd();
+			segment = segment.getParentRoute();
+		}
+		return dist;
+	}
+
+	private static float calculateDistance(RouteDataObject road, int start, int end) {
+		float dist = 0;
+		for (int k = Math.min(start, end); k < Math.max(start, end); k++) {
+			dist += MapUtils.measuredDist31(road.getPoint31XTile(k), road.getPoint31YTile(k),
+					road.getPoint31XTile(k + 1), road.getPoint31YTile(k + 1));
+		}
+		return dist;
+	}
+
 	private boolean addSegment(LatLon s, RoutingContext ctx, int indexNotFound, List<RouteSegmentPoint> res, boolean transportStop) throws IOException {
 		RouteSegmentPoint f = findRouteSegment(s.getLatitude(), s.getLongitude(), ctx, null, transportStop);
 		if (f == null) {
@@ -861,6 +1344,27 @@ public class RoutePlannerFrontEnd {
 			ctx.targetSegmentInd  = end.segStart;
 			return runNativeRouting(ctx, recalculationEnd);
 		} else {
+			if (ctx.config.contractionHierarchy != null && recalculationEnd == null
+					&& ctx.config.contractionHierarchy.isApplicable(ctx)) {
+				List<RouteSegmentResult> res = ctx.config.contractionHierarchy.searchRoute(ctx, start, end);
+				if (res != null) {
+					return new RouteResultPreparation().prepareResult(ctx, res, false);
+				}
+				log.info("Route is not found in contraction hierarchy or passes restricted turn, use A*");
+				if (routeDirection == null && ctx.precalculatedRouteDirection == null
+						&& ctx.calculationMode == RouteCalculationMode.COMPLEX && MapUtils.getDistance(
+						start.getPreciseLatLon(), end.getPreciseLatLon()) > RoutingConfiguration.DEVIATION_RADIUS * 6) {
+					// base map pass was skipped for the hierarchy
+					RoutingContext nctx = buildRoutingContext(ctx.config, ctx.nativeLib, ctx.getMaps(),
+							RouteCalculationMode.BASE);
+					nctx.calculationProgress = ctx.calculationProgress;
+					List<RouteSegmentResult> ls = searchRoute(nctx, start.getPreciseLatLon(), end.getPreciseLatLon(), null);
+					if (ls != null) {
+						ctx.precalculatedRouteDirection = PrecalculatedRouteDirection.build(ls,
+								RoutingConfiguration.DEVIATION_RADIUS, ctx.getRouter().getMaxSpeed()).adopt(ctx);
+					}
+				}
+			}
 			refreshProgressDistance(ctx);
 			// Split into 2 methods to let GC work in between
 			ctx.finalRouteSegment = new BinaryRoutePlanner().searchRouteInternal(ctx, start, end, recalculationEnd);
@@ -416,7 +416,7 @@ public class RouteResultPreparation {
 	}
 
 	private void checkAndInitRouteRegion(RoutingContext ctx, RouteDataObject road) throws IOException {
-		BinaryMapIndexReader reader = ctx.reverseMap.get(road.region);
+		BinaryMapIndexReader reader = ctx.getReader(road.region);
 		if (reader != null) {
 			reader.initRouteRegion(road.region);
 		}
@@ -434,7 +434,7 @@ public class RouteResultPreparation {
 		}
 	}
 
-	private List<RouteSegmentResult> convertFinalSegmentToResults(RoutingContext ctx, FinalRouteSegment finalSegment) {
+	List<RouteSegmentResult> convertFinalSegmentToResults(RoutingContext ctx, FinalRouteSegment finalSegment) {
 		List<RouteSegmentResult> result = new ArrayList<RouteSegmentResult>();
 		if (finalSegment != null) {
 			ctx.routingTime += finalSegment.distanceFromStart;
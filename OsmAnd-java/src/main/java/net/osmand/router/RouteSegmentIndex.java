@@ -0,0 +1,474 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.util.MapUtils;
+
+/**
+ * Packed grid of road segment envelopes of one loaded routing tile, used to find nearest roads
+ * to a point without projecting point to every segment of the tile.
+ * Segments are put to every grid cell covered by their envelope, segments covering too many cells
+ * are checked for every query.
+ */
+public class RouteSegmentIndex {
+
+	// cell is a tile of zoom 20 (~40 m)
+	private static final int CELL_SHIFT = 31 - 20;
+	private static final int MAX_SEGMENT_CELLS = 4;
+	// lower bound of distance to the ring of cells is reduced as meters per 31 unit differ inside cell rows
+	private static final double BOUND_PRECISION = 0.9;
+
+	private final RouteDataObject[] roads;
+	// all objects of tile (including roads with single point)
+	private final int objects;
+	// road index and end point of segment
+	private final int[] segmentRoad;
+	private final int[] segmentEnd;
+	private final int cellLeft;
+	private final int cellTop;
+	private final int width;
+	private final int height;
+	// segments of cell i are cellSegments[cellStart[i] .. cellStart[i + 1])
+	private final int[] cellStart;
+	private final int[] cellSegments;
+	private final int[] largeSegments;
+
+	// speed priorities of roads cached for router
+	private VehicleRouter priorityRouter;
+	private float[] priorities;
+	private float maxPriority;
+
+	public RouteSegmentIndex(Collection<RouteDataObject> objects) {
+		List<RouteDataObject> lst = new ArrayList<RouteDataObject>(objects.size());
+		int segments = 0;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = 0, maxY = 0;
+		for (RouteDataObject r : objects) {
+			if (r.getPointsLength() > 1) {
+				lst.add(r);
+				segments += r.getPointsLength() - 1;
+				for (int i = 0; i < r.getPointsLength(); i++) {
+					minX = Math.min(minX, r.getPoint31XTile(i));
+					maxX = Math.max(maxX, r.getPoint31XTile(i));
+					minY = Math.min(minY, r.getPoint31YTile(i));
+					maxY = Math.max(maxY, r.getPoint31YTile(i));
+				}
+			}
+		}
+		this.objects = objects.size();
+		this.roads = lst.toArray(new RouteDataObject[lst.size()]);
+		this.segmentRoad = new int[segments];
+		this.segmentEnd = new int[segments];
+		if (segments == 0) {
+			cellLeft = cellTop = width = height = 0;
+			cellStart = new int[1];
+			cellSegments = largeSegments = new int[0];
+			return;
+		}
+		cellLeft = minX >> CELL_SHIFT;
+		cellTop = minY >> CELL_SHIFT;
+		width = (maxX >> CELL_SHIFT) - cellLeft + 1;
+		height = (maxY >> CELL_SHIFT) - cellTop + 1;
+		int[] counts = new int[width * height + 1];
+		TIntArrayList large = new TIntArrayList();
+		int s = 0;
+		for (int r = 0; r < roads.length; r++) {
+			RouteDataObject road = roads[r];
+			for (int j = 1; j < road.getPointsLength(); j++) {
+				segmentRoad[s] = r;
+				segmentEnd[s] = j;
+				int[] cells = getSegmentCells(road, j);
+				if (cells == null) {
+					large.add(s);
+				} else {
+					for (int cy = cells[1]; cy <= cells[3]; cy++) {
+						for (int cx = cells[0]; cx <= cells[2]; cx++) {
+							counts[cy * width + cx + 1]++;
+						}
+					}
+				}
+				s++;
+			}
+		}
+		for (int i = 1; i < counts.length; i++) {
+			counts[i] += counts[i - 1];
+		}
+		cellStart = counts;
+		cellSegments = new int[cellStart[cellStart.length - 1]];
+		int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+		for (s = 0; s < segments; s++) {
+			int[] cells = getSegmentCells(roads[segmentRoad[s]], segmentEnd[s]);
+			if (cells != null) {
+				for (int cy = cells[1]; cy <= cells[3]; cy++) {
+					for (int cx = cells[0]; cx <= cells[2]; cx++) {
+						cellSegments[fill[cy * width + cx]++] = s;
+					}
+				}
+			}
+		}
+		largeSegments = large.toArray();
+	}
+
+	// cells covered by segment relative to grid (left, top, right, bottom) or null if there are too many
+	private int[] getSegmentCells(RouteDataObject road, int j) {
+		int x1 = road.getPoint31XTile(j - 1) >> CELL_SHIFT;
+		int x2 = road.getPoint31XTile(j) >> CELL_SHIFT;
+		int y1 = road.getPoint31YTile(j - 1) >> CELL_SHIFT;
+		int y2 = road.getPoint31YTile(j) >> CELL_SHIFT;
+		if (Math.abs(x1 - x2) >= MAX_SEGMENT_CELLS || Math.abs(y1 - y2) >= MAX_SEGMENT_CELLS) {
+			return null;
+		}
+		return new int[] { Math.min(x1, x2) - cellLeft, Math.min(y1, y2) - cellTop,
+				Math.max(x1, x2) - cellLeft, Math.max(y1, y2) - cellTop };
+	}
+
+	public int getObjectsCount() {
+		return objects;
+	}
+
+	private synchronized void checkPriorities(VehicleRouter router) {
+		if (priorityRouter != router) {
+			priorities = new float[roads.length];
+			maxPriority = 0;
+			for (int i = 0; i < roads.length; i++) {
+				priorities[i] = Math.max(router.defineSpeedPriority(roads[i]), 0.3f);
+				maxPriority = Math.max(maxPriority, priorities[i]);
+			}
+			priorityRouter = router;
+		}
+	}
+
+	/**
+	 * Finds nearest segment of every road around point in order of distance (one point per road, as
+	 * RoutePlannerFrontEnd.findRouteSegment). Distance is adjusted by speed priority of road if router is specified.
+	 * Search stops when all roads with distance not more than maxDistSquare and candidatesBeyond roads after them
+	 * are found, so returned list is exactly a prefix of list with all roads of indexes.
+	 *
+	 * @param router null - don't adjust distance by priority (transport stops)
+	 * @param allowDuplications same road (id) of different regions is returned for every region, roads of same
+	 *            region loaded by several tiles are returned once
+	 */
+	public static List<RouteSegmentPoint> findNearestSegments(List<RouteSegmentIndex> indexes, int px, int py,
+			VehicleRouter router, boolean allowDuplications, double maxDistSquare, int candidatesBeyond) {
+		double maxPriority = 1;
+		int maxCell = 0;
+		int qx = px >> CELL_SHIFT;
+		int qy = py >> CELL_SHIFT;
+		Candidates candidates = QUERY_CANDIDATES.get();
+		candidates.reset(allowDuplications, indexes.size() > 1);
+		for (int k = 0; k < indexes.size(); k++) {
+			RouteSegmentIndex index = indexes.get(k);
+			if (router != null) {
+				index.checkPriorities(router);
+				maxPriority = Math.max(maxPriority, index.maxPriority);
+			}
+			if (index.width > 0) {
+				maxCell = Math.max(maxCell, Math.max(Math.abs(qx - index.cellLeft),
+						Math.abs(qx - index.cellLeft - index.width + 1)));
+				maxCell = Math.max(maxCell, Math.max(Math.abs(qy - index.cellTop),
+						Math.abs(qy - index.cellTop - index.height + 1)));
+			}
+			for (int s : index.largeSegments) {
+				index.checkSegment(k, s, px, py, router, candidates);
+			}
+		}
+		double bound = 0;
+		for (int ring = 0; ring <= maxCell; ring++) {
+			bound = getRingBound(px, py, ring, router, maxPriority);
+			if (candidates.isComplete(bound, maxDistSquare, candidatesBeyond)) {
+				break;
+			}
+			for (int k = 0; k < indexes.size(); k++) {
+				indexes.get(k).checkRing(k, qx, qy, ring, px, py, router, candidates);
+			}
+			bound = Double.POSITIVE_INFINITY;
+		}
+		return candidates.getResult(bound, maxDistSquare, candidatesBeyond);
+	}
+
+	// minimal (adjusted) distance to segments of cells of ring and further
+	private static double getRingBound(int px, int py, int ring, VehicleRouter router, double maxPriority) {
+		if (ring <= 1) {
+			return 0;
+		}
+		int d = (ring - 1) << CELL_SHIFT;
+		double dx = MapUtils.convert31XToMeters(px, px + d, py);
+		double dy = Math.min(MapUtils.convert31YToMeters(py, Math.max(0, py - d), px),
+				MapUtils.convert31YToMeters(py, py + d, px));
+		double dist = Math.min(Math.abs(dx), Math.abs(dy)) * BOUND_PRECISION;
+		if (router == null) {
+			return dist * dist;
+		}
+		double e = RoutePlannerFrontEnd.GPS_POSSIBLE_ERROR;
+		return (dist * dist + e * e) / (maxPriority * maxPriority);
+	}
+
+	private void checkRing(int k, int qx, int qy, int ring, int px, int py, VehicleRouter router,
+			Candidates candidates) {
+		int left = qx - ring - cellLeft;
+		int right = qx + ring - cellLeft;
+		int top = qy - ring - cellTop;
+		int bottom = qy + ring - cellTop;
+		for (int cy = Math.max(0, top); cy <= Math.min(height - 1, bottom); cy++) {
+			boolean edgeRow = cy == top || cy == bottom;
+			for (int cx = Math.max(0, left); cx <= Math.min(width - 1, right); cx++) {
+				if (!edgeRow && cx != left && cx != right) {
+					// inner cells were checked by previous rings
+					cx = right - 1;
+					continue;
+				}
+				int cell = cy * width + cx;
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					checkSegment(k, cellSegments[i], px, py, router, candidates);
+				}
+			}
+		}
+	}
+
+	private void checkSegment(int k, int s, int px, int py, VehicleRouter router, Candidates candidates) {
+		RouteDataObject road = roads[segmentRoad[s]];
+		int j = segmentEnd[s];
+		// same as MapUtils.getProjectionPoint31 (used by RoutePlannerFrontEnd.findRouteSegment) without allocation
+		int stx = road.getPoint31XTile(j - 1);
+		int sty = road.getPoint31YTile(j - 1);
+		int endx = road.getPoint31XTile(j);
+		int endy = road.getPoint31YTile(j);
+		double projection = MapUtils.calculateProjection31TileMetric(stx, sty, endx, endy, px, py);
+		double mDist = MapUtils.measuredDist31(endx, endy, stx, sty);
+		int prx;
+		int pry;
+		if (projection < 0) {
+			prx = stx;
+			pry = sty;
+		} else if (projection >= mDist * mDist) {
+			prx = endx;
+			pry = endy;
+		} else {
+			prx = (int) (stx + (endx - stx) * (projection / (mDist * mDist)));
+			pry = (int) (sty + (endy - sty) * (projection / (mDist * mDist)));
+		}
+		// projection point is rounded as float coordinates of QuadPoint
+		prx = (int) (float) prx;
+		pry = (int) (float) pry;
+		double dist = RoutePlannerFrontEnd.squareDist(prx, pry, px, py);
+		if (router != null) {
+			double e = RoutePlannerFrontEnd.GPS_POSSIBLE_ERROR;
+			float prio = priorities[segmentRoad[s]];
+			dist = (dist + e * e) / (prio * prio);
+		}
+		candidates.update(road, k, segmentRoad[s], j, dist, prx, pry, roads.length);
+	}
+
+	// candidates are reused by queries of thread
+	private static final ThreadLocal<Candidates> QUERY_CANDIDATES = new ThreadLocal<Candidates>() {
+		@Override
+		protected Candidates initialValue() {
+			return new Candidates();
+		}
+	};
+
+	// best segment of every road found by query (parallel arrays without objects per candidate)
+	private static class Candidates {
+		private boolean allowDuplications;
+		private boolean severalIndexes;
+		private int size;
+		private RouteDataObject[] object = new RouteDataObject[16];
+		private int[] index = new int[16];
+		private int[] road = new int[16];
+		private int[] segment = new int[16];
+		private double[] dist = new double[16];
+		private int[] preciseX = new int[16];
+		private int[] preciseY = new int[16];
+		// position of road of index in arrays, valid if stamp of road is equal to query stamp
+		private int[][] positions = new int[4][];
+		private int[][] stamps = new int[4][];
+		private int stamp;
+		// same road loaded from several tiles: last added position by id and previous position with same id
+		private final TLongObjectHashMap<Integer> positionById = new TLongObjectHashMap<Integer>();
+		private int[] nextWithId = new int[16];
+		private int[] order = new int[16];
+
+		void reset(boolean allowDuplications, boolean severalIndexes) {
+			this.allowDuplications = allowDuplications;
+			this.severalIndexes = severalIndexes;
+			Arrays.fill(object, 0, size, null);
+			if (severalIndexes) {
+				positionById.clear();
+			}
+			size = 0;
+			if (++stamp == 0) {
+				// stamps are overflowed
+				for (int[] st : stamps) {
+					if (st != null) {
+						Arrays.fill(st, 0);
+					}
+				}
+				stamp = 1;
+			}
+		}
+
+		void update(RouteDataObject ro, int k, int r, int j, double d, int x, int y, int roadsLength) {
+			if (positions.length <= k) {
+				positions = Arrays.copyOf(positions, k * 2 + 1);
+				stamps = Arrays.copyOf(stamps, k * 2 + 1);
+			}
+			if (positions[k] == null || positions[k].length < roadsLength) {
+				positions[k] = new int[roadsLength];
+				stamps[k] = new int[roadsLength];
+			}
+			int p = stamps[k][r] == stamp ? positions[k][r] : -1;
+			if (p < 0) {
+				p = getSameRoadPosition(ro);
+				stamps[k][r] = stamp;
+				if (p < 0) {
+					p = add(ro, k, r);
+					positions[k][r] = p;
+					setSegment(p, j, d, x, y);
+					return;
+				}
+				positions[k][r] = p;
+			}
+			if (d > dist[p] || (d == dist[p] && j > segment[p])) {
+				// first segment is taken with same distance
+				return;
+			}
+			setSegment(p, j, d, x, y);
+		}
+
+		private void setSegment(int p, int j, double d, int x, int y) {
+			segment[p] = j;
+			dist[p] = d;
+			preciseX[p] = x;
+			preciseY[p] = y;
+		}
+
+		private int getSameRoadPosition(RouteDataObject ro) {
+			if (!severalIndexes) {
+				return -1;
+			}
+			Integer last = positionById.get(ro.getId());
+			int p = last == null ? -1 : last;
+			while (p >= 0) {
+				if (!allowDuplications || object[p].region == ro.region) {
+					return p;
+				}
+				p = nextWithId[p];
+			}
+			return -1;
+		}
+
+		private int add(RouteDataObject ro, int k, int r) {
+			if (size == dist.length) {
+				int l = size * 2;
+				object = Arrays.copyOf(object, l);
+				index = Arrays.copyOf(index, l);
+				road = Arrays.copyOf(road, l);
+				segment = Arrays.copyOf(segment, l);
+				dist = Arrays.copyOf(dist, l);
+				preciseX = Arrays.copyOf(preciseX, l);
+				preciseY = Arrays.copyOf(preciseY, l);
+				nextWithId = Arrays.copyOf(nextWithId, l);
+				order = new int[l];
+			}
+			int p = size++;
+			object[p] = ro;
+			index[p] = k;
+			road[p] = r;
+			if (severalIndexes) {
+				Integer previous = positionById.put(ro.getId(), p);
+				nextWithId[p] = previous == null ? -1 : previous;
+			}
+			return p;
+		}
+
+		boolean isComplete(double bound, double maxDistSquare, int candidatesBeyond) {
+			if (bound <= maxDistSquare) {
+				return false;
+			}
+			int beyond = 0;
+			for (int i = 0; i < size; i++) {
+				if (dist[i] > maxDistSquare && dist[i] < bound) {
+					beyond++;
+				}
+			}
+			return beyond >= candidatesBeyond;
+		}
+
+		List<RouteSegmentPoint> getResult(double bound, double maxDistSquare, int candidatesBeyond) {
+			int cnt = 0;
+			for (int i = 0; i < size; i++) {
+				// distance of other roads is not final
+				if (dist[i] < bound) {
+					order[cnt++] = i;
+				}
+			}
+			sort(0, cnt - 1);
+			List<RouteSegmentPoint> res = new ArrayList<RouteSegmentPoint>();
+			int beyond = 0;
+			for (int i = 0; i < cnt; i++) {
+				int p = order[i];
+				if (dist[p] > maxDistSquare && beyond++ >= candidatesBeyond) {
+					break;
+				}
+				RouteSegmentPoint pnt = new RouteSegmentPoint(new RouteDataObject(object[p]), segment[p], dist[p]);
+				pnt.preciseX = preciseX[p];
+				pnt.preciseY = preciseY[p];
+				res.add(pnt);
+			}
+			return res;
+		}
+
+		private boolean less(int p1, int p2) {
+			if (dist[p1] != dist[p2]) {
+				return dist[p1] < dist[p2];
+			}
+			// order of loaded objects
+			return index[p1] != index[p2] ? index[p1] < index[p2] : road[p1] < road[p2];
+		}
+
+		// quick sort of order[from .. to] by distance (positions are unique, so order is total)
+		private void sort(int from, int to) {
+			while (to - from > 8) {
+				int pivot = order[(from + to) >>> 1];
+				int i = from;
+				int j = to;
+				while (i <= j) {
+					while (less(order[i], pivot)) {
+						i++;
+					}
+					while (less(pivot, order[j])) {
+						j--;
+					}
+					if (i <= j) {
+						int t = order[i];
+						order[i++] = order[j];
+						order[j--] = t;
+					}
+				}
+				// recursion for smaller part
+				if (j - from < to - i) {
+					sort(from, j);
+					from = i;
+				} else {
+					sort(i, to);
+					to = j;
+				}
+			}
+			for (int i = from + 1; i <= to; i++) {
+				int v = order[i];
+				int j = i - 1;
+				while (j >= from && less(v, order[j])) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = v;
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package net.osmand.router;
+
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min heap of route segments keyed by f(x) = g(x) + heuristicCoefficient * h(x).
+ * Keys are kept in a parallel primitive array, so sift operations don't dereference segments,
+ * and segment position is stored in {@link RouteSegment#queueIndex} so adding a segment
+ * which is already in the queue only updates its key (decrease-key) instead of inserting a duplicate.
+ */
+public class RouteSegmentQueue {
+
+	private static final int ARITY_SHIFT = 2; // 4-ary
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final double heuristicCoefficient;
+	private RouteSegment[] segments;
+	private double[] keys;
+	private int size;
+
+	public RouteSegmentQueue(double heuristicCoefficient) {
+		this(heuristicCoefficient, INITIAL_CAPACITY);
+	}
+
+	public RouteSegmentQueue(double heuristicCoefficient, int capacity) {
+		this.heuristicCoefficient = heuristicCoefficient;
+		capacity = Math.max(capacity, 4);
+		segments = new RouteSegment[capacity];
+		keys = new double[capacity];
+	}
+
+	public double key(RouteSegment segment) {
+		return segment.distanceFromStart + heuristicCoefficient * segment.distanceToEnd;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(RouteSegment segment) {
+		int i = segment.queueIndex;
+		return i >= 0 && i < size && segments[i] == segment;
+	}
+
+	/**
+	 * Adds segment or repositions it if it is already in the queue and its distances were changed.
+	 */
+	public void add(RouteSegment segment) {
+		double key = key(segment);
+		if (contains(segment)) {
+			int i = segment.queueIndex;
+			double old = keys[i];
+			keys[i] = key;
+			if (key < old) {
+				siftUp(i);
+			} else if (key > old) {
+				siftDown(i);
+			}
+			return;
+		}
+		if (size == segments.length) {
+			int capacity = segments.length + (segments.length >> 1);
+			segments = Arrays.copyOf(segments, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+		}
+		int i = size++;
+		segments[i] = segment;
+		keys[i] = key;
+		segment.queueIndex = i;
+		siftUp(i);
+	}
+
+	public RouteSegment peek() {
+		return size == 0 ? null : segments[0];
+	}
+
+	public RouteSegment poll() {
+		if (size == 0) {
+			return null;
+		}
+		RouteSegment result = segments[0];
+		int last = --size;
+		if (last > 0) {
+			segments[0] = segments[last];
+			keys[0] = keys[last];
+			segments[0].queueIndex = 0;
+			segments[last] = null;
+			siftDown(0);
+		} else {
+			segments[0] = null;
+		}
+		result.queueIndex = -1;
+		return result;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			segments[i].queueIndex = -1;
+			segments[i] = null;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int i) {
+		RouteSegment s = segments[i];
+		double key = keys[i];
+		while (i > 0) {
+			int parent = (i - 1) >> ARITY_SHIFT;
+			if (keys[parent] <= key) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		segments[i] = s;
+		keys[i] = key;
+		s.queueIndex = i;
+	}
+
+	private void siftDown(int i) {
+		RouteSegment s = segments[i];
+		double key = keys[i];
+		while (true) {
+			int first = (i << ARITY_SHIFT) + 1;
+			if (first >= size) {
+				break;
+			}
+			int last = Math.min(first + (1 << ARITY_SHIFT), size);
+			int min = first;
+			double minKey = keys[first];
+			for (int c = first + 1; c < last; c++) {
+				if (keys[c] < minKey) {
+					min = c;
+					minKey = keys[c];
+				}
+			}
+			if (key <= minKey) {
+				break;
+			}
+			move(min, i);
+			i = min;
+		}
+		segments[i] = s;
+		keys[i] = key;
+		s.queueIndex = i;
+	}
+
+	private void move(int from, int to) {
+		RouteSegment s = segments[from];
+		segments[to] = s;
+		keys[to] = keys[from];
+		s.queueIndex = to;
+	}
+}
@@ -0,0 +1,215 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.PackedRouteTile;
+import net.osmand.binary.RouteDataObject;
+
+/**
+ * Process-wide LRU cache of decoded route subregions (tiles) keyed by (file, subregion file pointer),
+ * file is identified by path, length and modification time, so updated files (opened by new readers)
+ * are decoded again. Identity of file is resolved once per reader.
+ * Cache is bounded by estimated size of cached objects, so many routing contexts (i.e. server handling
+ * requests in the same area) decode each tile only once.
+ * <p>
+ * Cached objects are shared between contexts and must be treated as read-only:
+ * {@link RoutingContext} copies objects before applying conditional tags. Objects keep region of the reader
+ * which decoded them, use {@link RoutingContext#getReader(RouteRegion)} to find reader of context.
+ * In packed mode tiles are stored as {@link PackedRouteTile} (much smaller) and every
+ * hit materializes new objects of the whole tile (copies of its arrays), which could be modified:
+ * packed mode trades decoding of tile from file on a miss for copying of arrays on every hit.
+ */
+public class RouteTileCache {
+
+	private final long maxWeight;
+	private final boolean packed;
+	private final LinkedHashMap<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(16, 0.75f, true);
+	// file identity of readers, readers are not held by cache
+	private final Map<BinaryMapIndexReader, String> fileKeys = new WeakHashMap<BinaryMapIndexReader, String>();
+	private long weight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong loadTime = new AtomicLong();
+
+	public RouteTileCache(long maxWeightBytes) {
+		this(maxWeightBytes, false);
+	}
+
+	public RouteTileCache(long maxWeightBytes, boolean packed) {
+		this.maxWeight = maxWeightBytes;
+		this.packed = packed;
+	}
+
+	public boolean isPacked() {
+		return packed;
+	}
+
+	/**
+	 * @return decoded objects of subregion (not modifiable list of shared objects if cache is not packed),
+	 * loads and caches them if needed
+	 */
+	public List<RouteDataObject> getTile(BinaryMapIndexReader reader, RouteSubregion subregion) throws IOException {
+		TileKey key;
+		CachedTile cached;
+		synchronized (this) {
+			String fileKey = fileKeys.get(reader);
+			if (fileKey == null) {
+				File f = reader.getFile();
+				fileKey = f.getAbsolutePath() + ':' + f.length() + ':' + f.lastModified();
+				fileKeys.put(reader, fileKey);
+			}
+			key = new TileKey(fileKey, subregion.filePointer);
+			cached = tiles.get(key);
+		}
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached.getObjects();
+		}
+		misses.incrementAndGet();
+		// decode outside of lock, different tiles are decoded concurrently
+		long now = System.nanoTime();
+		List<RouteDataObject> objects = reader.loadRouteIndexData(subregion);
+		loadTime.addAndGet(System.nanoTime() - now);
+		CachedTile loaded;
+		if (packed) {
+			PackedRouteTile tile = PackedRouteTile.pack(subregion.routeReg, objects);
+			loaded = new CachedTile(null, tile, tile.getEstimatedSize());
+			// packed tile copied arrays of decoded objects, so they are returned without unpacking
+			objects = removeNulls(objects);
+		} else {
+			objects = Collections.unmodifiableList(objects);
+			int tileWeight = 0;
+			for (RouteDataObject ro : objects) {
+				if (ro != null) {
+					tileWeight += RoutingContext.getEstimatedSize(ro);
+				}
+			}
+			loaded = new CachedTile(objects, null, tileWeight);
+		}
+		synchronized (this) {
+			CachedTile tile = tiles.get(key);
+			if (tile != null) {
+				// loaded by another thread meanwhile
+				return packed ? objects : tile.objects;
+			}
+			tiles.put(key, loaded);
+			weight += loaded.weight;
+			evict();
+		}
+		return objects;
+	}
+
+	private static List<RouteDataObject> removeNulls(List<RouteDataObject> objects) {
+		List<RouteDataObject> res = new ArrayList<RouteDataObject>(objects.size());
+		for (RouteDataObject ro : objects) {
+			if (ro != null) {
+				res.add(ro);
+			}
+		}
+		return res;
+	}
+
+	private void evict() {
+		Iterator<Entry<TileKey, CachedTile>> it = tiles.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			CachedTile eldest = it.next().getValue();
+			it.remove();
+			weight -= eldest.weight;
+			evictions.incrementAndGet();
+		}
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		weight = 0;
+	}
+
+	public synchronized int getTilesCount() {
+		return tiles.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getLoadTimeNanos() {
+		return loadTime.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Route tile cache " + getTilesCount() + " tiles, " + (getWeight() >> 20) + " of " + (maxWeight >> 20)
+				+ " MB, hits " + getHits() + ", misses " + getMisses() + ", evictions " + getEvictions();
+	}
+
+	private static class CachedTile {
+		final List<RouteDataObject> objects;
+		final PackedRouteTile packedTile;
+		final int weight;
+
+		CachedTile(List<RouteDataObject> objects, PackedRouteTile packedTile, int weight) {
+			this.objects = objects;
+			this.packedTile = packedTile;
+			this.weight = weight;
+		}
+
+		List<RouteDataObject> getObjects() {
+			return packedTile != null ? packedTile.unpack() : objects;
+		}
+	}
+
+	private static class TileKey {
+		final String file;
+		final int filePointer;
+
+		TileKey(String file, int filePointer) {
+			this.file = file;
+			this.filePointer = filePointer;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + filePointer;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return filePointer == other.filePointer && file.equals(other.file);
+		}
+	}
+}
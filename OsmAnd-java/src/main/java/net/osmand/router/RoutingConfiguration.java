@@ -3,6 +3,7 @@ package net.osmand.router;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -57,6 +58,15 @@ public class RoutingConfiguration {
 	
 	// 1.6 Time to calculate all access restrictions based on conditions
 	public long routeCalculationTime = 0;
+
+	// 1.7 Expand forward and reverse A* frontiers concurrently in 2 threads (only for planRoadDirection = 0)
+	public boolean parallelBidirectionalSearch = false;
+
+	// 1.8 Precomputed contraction hierarchy (used instead of A* if it was built for the same router and parameters)
+	public ContractionHierarchy contractionHierarchy;
+
+	// 1.9 Shared cache of decoded route tiles (objects are borrowed read-only by routing contexts)
+	public RouteTileCache tileCache;
 	
 	
 	// extra points to be inserted in ways (quad tree is based on 31 coords)
@@ -106,6 +116,8 @@ public class RoutingConfiguration {
 		private Map<String, String> attributes = new LinkedHashMap<>();
 		private Set<Long> impassableRoadLocations = new HashSet<>();
 		private QuadTree<Node> directionPointsBuilder;
+		private Map<String, ContractionHierarchy> contractionHierarchies = new LinkedHashMap<>();
+		private RouteTileCache tileCache;
 
 		public Builder() {
 		}
@@ -156,6 +168,15 @@ public class RoutingConfiguration {
 				i.memoryLimitation = memoryLimitMB * (1l << 20);
 			}
 			i.planRoadDirection = parseSilentInt(getAttribute(i.router, "planRoadDirection"), i.planRoadDirection);
+			i.parallelBidirectionalSearch = Boolean.parseBoolean(getAttribute(i.router, "parallelBidirectionalSearch"));
+			i.tileCache = tileCache;
+			ContractionHierarchy ch = contractionHierarchies.get(router);
+			Map<String, String> chParams = params == null ? Collections.<String, String>emptyMap() : params;
+			// weights of the graph depend on parameters and impassable roads
+			if (ch != null && impassableRoadLocations.isEmpty() && directionPointsBuilder == null
+					&& ch.getRouterParams().equals(chParams)) {
+				i.contractionHierarchy = ch;
+			}
 			if (directionPointsBuilder != null) {
 				QuadRect rect = new QuadRect(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
 				List<net.osmand.osm.edit.Node> lst = directionPointsBuilder.queryInBox(rect, new ArrayList<Node>());
@@ -176,6 +197,16 @@ public class RoutingConfiguration {
 			return this;
 		}
 
+		public Builder setTileCache(RouteTileCache tileCache) {
+			this.tileCache = tileCache;
+			return this;
+		}
+
+		public Builder addContractionHierarchy(ContractionHierarchy ch) {
+			contractionHierarchies.put(ch.getRouterName(), ch);
+			return this;
+		}
+
 		public Set<Long> getImpassableRoadLocations() {
 			return impassableRoadLocations;
 		}
@@ -6,11 +6,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 
@@ -35,6 +37,7 @@ import net.osmand.router.BinaryRoutePlanner.RouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentVisitor;
 import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
 import net.osmand.router.RoutingConfiguration.DirectionPoint;
+import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
 
 
@@ -86,6 +89,9 @@ public class RoutingContext {
 	// 3. Warm object caches
 	ArrayList<RouteSegment> segmentsToVisitPrescripted = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
 	ArrayList<RouteSegment> segmentsToVisitNotForbidden = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
+	// separate caches for reverse search (directions could be expanded concurrently)
+	ArrayList<RouteSegment> reverseSegmentsToVisitPrescripted = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
+	ArrayList<RouteSegment> reverseSegmentsToVisitNotForbidden = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
 	
 	
 	// 5. debug information (package accessor)
@@ -257,7 +263,8 @@ public class RoutingContext {
 	}
 	
 	
-	public RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit) {
+	// synchronized: tiles are shared by forward and reverse search threads (see RoutingConfiguration.parallelBidirectionalSearch)
+	public synchronized RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit) {
 		long tileId = getRoutingTile(x31, y31, memoryLimit);
 		TLongObjectHashMap<RouteDataObject> excludeDuplications = new TLongObjectHashMap<RouteDataObject>();
 		RouteSegment original = null;
@@ -298,14 +305,35 @@ public class RoutingContext {
 			try {
 				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
 				ts.setLoadedNonNative();
-				List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
-				
+				// direction points modify objects, so they can't be borrowed from shared cache (unless it's packed)
+				boolean borrowed = false;
+				List<RouteDataObject> res;
+				if (config.tileCache != null && (config.tileCache.isPacked() || config.getDirectionPoints() == null)) {
+					res = config.tileCache.getTile(reader, ts.subregion);
+					borrowed = !config.tileCache.isPacked();
+				} else {
+					res = reader.loadRouteIndexData(ts.subregion);
+				}
+
 				if (toLoad != null) {
 					toLoad.addAll(res);
 				} else {
 					for (RouteDataObject ro : res) {
 						if (ro != null) {
 							if (config.routeCalculationTime != 0) {
+								if (borrowed) {
+									// conditional tags are replaced in place, cached object keeps original types
+									ro = new RouteDataObject(ro);
+									ro.types = ro.types.clone();
+									if (ro.pointTypes != null) {
+										ro.pointTypes = ro.pointTypes.clone();
+										for (int i = 0; i < ro.pointTypes.length; i++) {
+											if (ro.pointTypes[i] != null) {
+												ro.pointTypes[i] = ro.pointTypes[i].clone();
+											}
+										}
+									}
+								}
 								ro.processConditionalTags(config.routeCalculationTime);
 							}
 							if (config.router.acceptLine(ro)) {
@@ -452,6 +480,39 @@ public class RoutingContext {
 	}
 	
 	public void loadTileData(int x31, int y31, int zoomAround, final List<RouteDataObject> toFillIn, boolean allowDuplications) {
+		TLongIterator it = loadTilesAround(x31, y31, zoomAround).iterator();
+		TLongObjectHashMap<RouteDataObject> excludeDuplications = new TLongObjectHashMap<RouteDataObject>();
+		while (it.hasNext()) {
+			getAllObjects(it.next(), toFillIn, excludeDuplications);
+			if (allowDuplications) {
+				excludeDuplications.clear();
+			}
+		}
+	}
+
+	/**
+	 * Same tiles as {@link #loadTileData(int, int, int, List, boolean)} but returns segment indexes of loaded
+	 * subregions (every subregion once) to find nearest roads.
+	 */
+	public void loadTileSegmentIndexes(int x31, int y31, int zoomAround, final List<RouteSegmentIndex> toFillIn) {
+		TLongIterator it = loadTilesAround(x31, y31, zoomAround).iterator();
+		Set<RoutingSubregionTile> added = new HashSet<RoutingSubregionTile>();
+		while (it.hasNext()) {
+			List<RoutingSubregionTile> subregions = indexedSubregions.get(it.next());
+			if (subregions != null) {
+				for (RoutingSubregionTile rs : subregions) {
+					if (added.add(rs)) {
+						RouteSegmentIndex index = rs.getSegmentIndex();
+						if (index != null) {
+							toFillIn.add(index);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private TLongHashSet loadTilesAround(int x31, int y31, int zoomAround) {
 		int t =  config.ZOOM_TO_LOAD_TILES - zoomAround;
 		int coordinatesShift = (1 << (31 - config.ZOOM_TO_LOAD_TILES));
 		if(t <= 0) {
@@ -467,14 +528,7 @@ public class RoutingContext {
 				ts.add(getRoutingTile(x31 +i*coordinatesShift, y31 + j*coordinatesShift, 0));		
 			}
 		}
-		TLongIterator it = ts.iterator();
-		TLongObjectHashMap<RouteDataObject> excludeDuplications = new TLongObjectHashMap<RouteDataObject>();
-		while (it.hasNext()) {
-			getAllObjects(it.next(), toFillIn, excludeDuplications);
-			if (allowDuplications) {
-				excludeDuplications.clear();
-			}
-		}
+		return ts;
 	}
 	
 	@SuppressWarnings("unused")
@@ -744,6 +798,8 @@ public class RoutingContext {
 		private int isLoaded = 0;
 		private TLongObjectMap<RouteSegment> routes = null;
 		private TLongHashSet excludedIds = null;
+		// built on first search of nearest road after tile is loaded
+		private RouteSegmentIndex segmentIndex = null;
 
 		public RoutingSubregionTile(RouteSubregion subregion) {
 			this.subregion = subregion;
@@ -752,6 +808,15 @@ public class RoutingContext {
 		public TLongObjectMap<RouteSegment> getRoutes() {
 			return routes;
 		}
+
+		public RouteSegmentIndex getSegmentIndex() {
+			if (segmentIndex == null && isLoaded()) {
+				List<RouteDataObject> objects = new ArrayList<RouteDataObject>();
+				loadAllObjects(objects, null, new TLongObjectHashMap<RouteDataObject>());
+				segmentIndex = new RouteSegmentIndex(objects);
+			}
+			return segmentIndex;
+		}
 		
 		public void loadAllObjects(final List<RouteDataObject> toFillIn, RoutingContext ctx, TLongObjectHashMap<RouteDataObject> excludeDuplications) {
 			if(routes != null) {
@@ -837,15 +902,18 @@ public class RoutingContext {
 			searchResult = null;
 			routes = null;
 			excludedIds = null;
+			segmentIndex = null;
 		}
 		
 		public void setLoadedNonNative(){
 			isLoaded = Math.abs(isLoaded) + 1;
 			routes = new TLongObjectHashMap<BinaryRoutePlanner.RouteSegment>();
 			tileStatistics = new TileStatistics();
+			segmentIndex = null;
 		}
 		
 		public void add(RouteDataObject ro) {
+			segmentIndex = null;
 			tileStatistics.addObject(ro);
 			for (int i = 0; i < ro.pointsX.length; i++) {
 				int x31 = ro.getPoint31XTile(i);
@@ -866,6 +934,7 @@ public class RoutingContext {
 		
 		public void setLoadedNative(NativeRouteSearchResult r, RoutingContext ctx) {
 			isLoaded = Math.abs(isLoaded) + 1;
+			segmentIndex = null;
 			tileStatistics = new TileStatistics();
 			if (r.objects != null) {
 				searchResult = null;
@@ -940,6 +1009,25 @@ public class RoutingContext {
 		return map.keySet().toArray(new BinaryMapIndexReader[0]);
 	}
 
+	/**
+	 * @return reader of route region or null. Objects shared by {@link RouteTileCache} keep region
+	 * of reader which decoded them (another reader of the same file), so region is also matched by
+	 * file pointer, length and name
+	 */
+	public BinaryMapIndexReader getReader(RouteRegion region) {
+		BinaryMapIndexReader reader = reverseMap.get(region);
+		if (reader == null && region != null) {
+			for (Entry<RouteRegion, BinaryMapIndexReader> e : reverseMap.entrySet()) {
+				RouteRegion r = e.getKey();
+				if (r.getFilePointer() == region.getFilePointer() && r.getLength() == region.getLength()
+						&& Algorithms.objectEquals(r.getName(), region.getName())) {
+					return e.getValue();
+				}
+			}
+		}
+		return reader;
+	}
+
 	public int getVisitedSegments() {
 		if(calculationProgress != null) {
 			return calculationProgress.visitedSegments; 
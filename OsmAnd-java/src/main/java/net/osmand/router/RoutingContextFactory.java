@@ -0,0 +1,12 @@
+package net.osmand.router;
+
+import java.io.IOException;
+
+/**
+ * Creates routing context for a worker thread. Context should have its own readers
+ * because readers and loaded tiles are not thread safe.
+ */
+public interface RoutingContextFactory {
+
+	RoutingContext createRoutingContext() throws IOException;
+}
@@ -0,0 +1,467 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResultSegment;
+import net.osmand.router.TransportRoutePlanner.TransportRouteSegment;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Round based public transport router (RAPTOR). Round k scans once every route served by stops improved in round k - 1,
+ * so after round k the earliest arrival to every stop with at most k rides is known. Results are Pareto optimal
+ * by arrival time and number of changes (up to maxNumberOfChanges).
+ *
+ * Routes loaded by {@link TransportRoutingContext} are flattened into arrays of stops and cumulative times,
+ * stops around a reached stop are looked up once per query (not per route segment as in {@link TransportRoutePlanner}).
+ * Selected by {@link TransportRoutingConfiguration#useRaptor}.
+ */
+public class TransportRaptorPlanner {
+
+	private static final Log log = PlatformUtil.getLog(TransportRaptorPlanner.class);
+	private static final int NO_STOP = -1;
+
+	public List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, LatLon start, LatLon end) throws IOException, InterruptedException {
+		ctx.startCalcTime = System.currentTimeMillis();
+		TransportRoutingConfiguration cfg = ctx.cfg;
+		double totalDistance = MapUtils.getDistance(start, end);
+		List<TransportRouteSegment> startStops = ctx.getTransportStops(start);
+		List<TransportRouteSegment> endStops = ctx.getTransportStops(end);
+		if (startStops.size() == 0) {
+			return Collections.emptyList();
+		}
+		Timetable tt = new Timetable(ctx);
+		for (TransportRouteSegment s : endStops) {
+			TransportStop stop = s.getStop(s.segStart);
+			double distToEnd = MapUtils.getDistance(stop.getLocation(), end);
+			if (distToEnd < cfg.walkRadius && tt.addRoute(s.road) != NO_STOP) {
+				int ind = tt.getStopIndex(stop);
+				if (Double.isNaN(tt.endWalkDist[ind]) || tt.endWalkDist[ind] > distToEnd) {
+					tt.endWalkDist[ind] = distToEnd;
+				}
+			}
+		}
+
+		double finishTime = cfg.maxRouteTime;
+		ctx.finishTimeSeconds = cfg.finishTimeSeconds;
+		if (totalDistance > cfg.maxRouteDistance && cfg.maxRouteIncreaseSpeed > 0) {
+			int increaseTime = (int) ((totalDistance - cfg.maxRouteDistance) * 3.6 / cfg.maxRouteIncreaseSpeed);
+			finishTime += increaseTime;
+			ctx.finishTimeSeconds += increaseTime / 6;
+		}
+		double maxTime = finishTime + ctx.finishTimeSeconds;
+		double maxTravelTimeCmpToWalk = totalDistance / cfg.walkSpeed - cfg.changeTime / 2;
+
+		// boarding candidates of the first round: routes around start
+		Candidates candidates = new Candidates();
+		for (TransportRouteSegment s : startStops) {
+			int route = tt.addRoute(s.road);
+			if (route != NO_STOP) {
+				double walkDist = MapUtils.getDistance(s.getLocation(), start);
+				candidates.add(route, s.segStart, walkDist / cfg.walkSpeed, NO_STOP, walkDist);
+			}
+		}
+		List<Round> rounds = new ArrayList<Round>();
+		List<RaptorResult> results = new ArrayList<RaptorResult>();
+		double[] best = new double[0];
+		double bestTarget = Double.POSITIVE_INFINITY;
+		int maxRounds = cfg.maxNumberOfChanges + 1;
+		initProgressBar(ctx, start, end);
+		while (rounds.size() < maxRounds && !candidates.isEmpty()) {
+			Round round = new Round(tt.stops.size());
+			best = grow(best, tt.stops.size(), Double.POSITIVE_INFINITY);
+			TIntObjectHashMap<TIntArrayList> routeCandidates = candidates.byRoute;
+			for (int route : routeCandidates.keys()) {
+				if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+					return null;
+				}
+				ctx.visitedRoutesCount++;
+				scanRoute(tt, route, candidates, routeCandidates.get(route), round, best, Math.min(bestTarget, maxTime));
+			}
+			rounds.add(round);
+			if (round.targetStop != NO_STOP && round.target < bestTarget) {
+				bestTarget = round.target;
+				if (round.target <= maxTime && (round.target < maxTravelTimeCmpToWalk || results.size() == 0)) {
+					results.add(new RaptorResult(rounds.size(), round.targetStop, round.target));
+				}
+			}
+			if (ctx.calculationProgress != null) {
+				ctx.calculationProgress.directSegmentQueueSize = round.marked.cardinality();
+			}
+			// boarding candidates of the next round: routes around stops improved in this round
+			candidates = new Candidates();
+			if (rounds.size() < maxRounds) {
+				BitSet marked = round.marked;
+				for (int stop = marked.nextSetBit(0); stop >= 0; stop = marked.nextSetBit(stop + 1)) {
+					tt.loadBoardings(stop);
+					for (int b = tt.boardingsStart[stop]; b < tt.boardingsEnd[stop]; b++) {
+						double walkDist = tt.boardingWalkDist[b];
+						double time = round.arrival[stop] + walkDist / cfg.walkSpeed
+								+ cfg.getChangeTime() + cfg.getBoardingTime();
+						if (time < Math.min(bestTarget, maxTime)) {
+							candidates.add(tt.boardingRoute.get(b), tt.boardingPos.get(b), time, stop, walkDist);
+						}
+					}
+				}
+			}
+		}
+		return prepareResults(ctx, tt, rounds, results);
+	}
+
+	private void scanRoute(Timetable tt, int route, Candidates candidates, TIntArrayList routeCandidates,
+						   Round round, double[] best, double maxTime) {
+		final int[] cand = routeCandidates.toArray();
+		final Candidates c = candidates;
+		sortByPosition(cand, c);
+		int rs = tt.routeStart.get(route);
+		int n = tt.routeStart.get(route + 1) - rs;
+		int[] trips = tt.routeTrips.get(route);
+		int ci = 0;
+		// current vehicle
+		int boardPos = -1;
+		double boardTime = 0;
+		int boardCandidate = -1;
+		for (int j = c.pos.get(cand[0]); j < n; j++) {
+			int stop = tt.routeStops.get(rs + j);
+			if (boardPos >= 0) {
+				double arrival = boardTime + tt.routeStopTime[rs + j] - tt.routeStopTime[rs + boardPos];
+				if (arrival < best[stop] && arrival < maxTime) {
+					best[stop] = arrival;
+					round.arrival[stop] = arrival;
+					round.route[stop] = route;
+					round.boardPos[stop] = boardPos;
+					round.alightPos[stop] = j;
+					round.boardTime[stop] = boardTime;
+					round.fromStop[stop] = c.fromStop.get(boardCandidate);
+					round.walkDist[stop] = c.walkDist[boardCandidate];
+					round.marked.set(stop);
+					double endWalkDist = tt.endWalkDist[stop];
+					if (!Double.isNaN(endWalkDist)) {
+						double target = arrival + endWalkDist / tt.ctx.cfg.walkSpeed;
+						if (target < round.target) {
+							round.target = target;
+							round.targetStop = stop;
+						}
+					}
+				}
+			}
+			while (ci < cand.length && c.pos.get(cand[ci]) == j) {
+				double time = c.time[cand[ci]];
+				double departure = time;
+				if (trips != null) {
+					departure = tt.getDeparture(trips, tt.routeStopTime[rs + j], time);
+				}
+				double current = boardPos >= 0 ? boardTime + tt.routeStopTime[rs + j] - tt.routeStopTime[rs + boardPos]
+						: Double.POSITIVE_INFINITY;
+				if (departure < current) {
+					boardPos = j;
+					boardTime = departure;
+					boardCandidate = cand[ci];
+				}
+				ci++;
+			}
+		}
+	}
+
+	private void sortByPosition(int[] cand, final Candidates c) {
+		if (cand.length > 1) {
+			Integer[] sorted = new Integer[cand.length];
+			for (int i = 0; i < cand.length; i++) {
+				sorted[i] = cand[i];
+			}
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Integer.compare(c.pos.get(o1), c.pos.get(o2));
+				}
+			});
+			for (int i = 0; i < cand.length; i++) {
+				cand[i] = sorted[i];
+			}
+		}
+	}
+
+	private void initProgressBar(TransportRoutingContext ctx, LatLon start, LatLon end) {
+		if (ctx.calculationProgress != null) {
+			ctx.calculationProgress.distanceFromEnd = 0;
+			ctx.calculationProgress.reverseSegmentQueueSize = 0;
+			ctx.calculationProgress.directSegmentQueueSize = 0;
+			float speed = ctx.cfg.defaultTravelSpeed + 1; // assume
+			ctx.calculationProgress.totalEstimatedDistance = (float) (MapUtils.getDistance(start, end) / speed);
+		}
+	}
+
+	private List<TransportRouteResult> prepareResults(TransportRoutingContext ctx, Timetable tt, List<Round> rounds,
+													  List<RaptorResult> results) {
+		TransportRoutingConfiguration cfg = ctx.cfg;
+		List<TransportRouteResult> lst = new ArrayList<TransportRouteResult>();
+		log.info(String.format(Locale.US, "Calculated %.1f seconds (RAPTOR), found %d results, %d rounds, visited %d routes / %d stops, loaded %d tiles (%d ms read, %d ms total)",
+				(System.currentTimeMillis() - ctx.startCalcTime) / 1000.0, results.size(), rounds.size(),
+				ctx.visitedRoutesCount, ctx.visitedStops,
+				ctx.quadTree.size(), ctx.readTime / (1000 * 1000), ctx.loadTime / (1000 * 1000)));
+		// fastest first, pareto results with more changes are always faster
+		for (int i = results.size() - 1; i >= 0; i--) {
+			RaptorResult res = results.get(i);
+			TransportRouteResult route = new TransportRouteResult(ctx);
+			route.routeTime = res.time;
+			route.finishWalkDist = tt.endWalkDist[res.stop];
+			int stop = res.stop;
+			for (int k = res.rides - 1; k >= 0; k--) {
+				Round round = rounds.get(k);
+				int rs = tt.routeStart.get(round.route[stop]);
+				TransportRouteResultSegment sg = new TransportRouteResultSegment();
+				sg.route = tt.routes.get(round.route[stop]);
+				sg.start = round.boardPos[stop];
+				sg.end = round.alightPos[stop];
+				sg.walkDist = round.walkDist[stop];
+				sg.walkTime = sg.walkDist / cfg.walkSpeed;
+				sg.depTime = cfg.useSchedule ? cfg.scheduleTimeOfDay + (int) (round.boardTime[stop] / 10) : -1;
+				sg.travelDistApproximate = tt.routeStopDist[rs + sg.end] - tt.routeStopDist[rs + sg.start];
+				sg.travelTime = round.arrival[stop] - round.boardTime[stop];
+				route.segments.add(0, sg);
+				stop = round.fromStop[stop];
+			}
+			lst.add(route);
+			if (log.isDebugEnabled()) {
+				log.debug(route.toString());
+			}
+		}
+		return lst;
+	}
+
+	private static double[] grow(double[] array, int size, double value) {
+		if (array.length >= size) {
+			return array;
+		}
+		int l = array.length;
+		array = Arrays.copyOf(array, Math.max(size, l * 2));
+		Arrays.fill(array, l, array.length, value);
+		return array;
+	}
+
+	private static class RaptorResult {
+		final int rides;
+		final int stop;
+		final double time;
+
+		RaptorResult(int rides, int stop, double time) {
+			this.rides = rides;
+			this.stop = stop;
+			this.time = time;
+		}
+	}
+
+	// labels of stops improved in one round
+	private static class Round {
+		final double[] arrival;
+		final int[] route;
+		final int[] boardPos;
+		final int[] alightPos;
+		final double[] boardTime;
+		final int[] fromStop;
+		final double[] walkDist;
+		final BitSet marked = new BitSet();
+		double target = Double.POSITIVE_INFINITY;
+		int targetStop = NO_STOP;
+
+		Round(int stops) {
+			arrival = new double[stops];
+			route = new int[stops];
+			boardPos = new int[stops];
+			alightPos = new int[stops];
+			boardTime = new double[stops];
+			fromStop = new int[stops];
+			walkDist = new double[stops];
+		}
+	}
+
+	// places where route could be boarded in the next round
+	private static class Candidates {
+		final TIntObjectHashMap<TIntArrayList> byRoute = new TIntObjectHashMap<TIntArrayList>();
+		final TIntArrayList pos = new TIntArrayList();
+		final TIntArrayList fromStop = new TIntArrayList();
+		double[] time = new double[16];
+		double[] walkDist = new double[16];
+
+		void add(int route, int position, double tm, int from, double walk) {
+			int ind = pos.size();
+			time = grow(time, ind + 1, 0);
+			walkDist = grow(walkDist, ind + 1, 0);
+			pos.add(position);
+			fromStop.add(from);
+			time[ind] = tm;
+			walkDist[ind] = walk;
+			TIntArrayList l = byRoute.get(route);
+			if (l == null) {
+				l = new TIntArrayList();
+				byRoute.put(route, l);
+			}
+			l.add(ind);
+		}
+
+		boolean isEmpty() {
+			return pos.isEmpty();
+		}
+	}
+
+	/**
+	 * Routes and stops of the query flattened into arrays: route r consists of stops
+	 * routeStops[routeStart[r]..routeStart[r + 1]) with cumulative travel time and distance from the first stop.
+	 * Schedule routes have departures from the first stop (seconds from scheduleTimeOfDay).
+	 */
+	static class Timetable {
+		final TransportRoutingContext ctx;
+
+		final List<TransportStop> stops = new ArrayList<TransportStop>();
+		final TLongObjectHashMap<Integer> stopIndexes = new TLongObjectHashMap<Integer>();
+		// routes around stop i are boardings[boardingsStart[i]..boardingsEnd[i]), -1 if not loaded yet
+		int[] boardingsStart = new int[0];
+		int[] boardingsEnd = new int[0];
+		double[] endWalkDist = new double[0];
+		final TIntArrayList boardingRoute = new TIntArrayList();
+		final TIntArrayList boardingPos = new TIntArrayList();
+		double[] boardingWalkDist = new double[64];
+
+		final List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		final TLongObjectHashMap<Integer> routeIndexes = new TLongObjectHashMap<Integer>();
+		final TIntArrayList routeStart = new TIntArrayList();
+		final TIntArrayList routeStops = new TIntArrayList();
+		double[] routeStopTime = new double[64];
+		double[] routeStopDist = new double[64];
+		final List<int[]> routeTrips = new ArrayList<int[]>();
+
+		Timetable(TransportRoutingContext ctx) {
+			this.ctx = ctx;
+			routeStart.add(0);
+		}
+
+		int getStopIndex(TransportStop stop) {
+			Integer ind = stopIndexes.get(stop.getId());
+			if (ind == null) {
+				ind = stops.size();
+				stops.add(stop);
+				stopIndexes.put(stop.getId(), ind);
+				if (ind >= boardingsStart.length) {
+					int l = Math.max(16, ind * 2);
+					boardingsStart = Arrays.copyOf(boardingsStart, l);
+					boardingsEnd = Arrays.copyOf(boardingsEnd, l);
+				}
+				boardingsStart[ind] = -1;
+				boardingsEnd[ind] = -1;
+				endWalkDist = grow(endWalkDist, ind + 1, Double.NaN);
+			}
+			return ind;
+		}
+
+		int addRoute(TransportRoute route) {
+			Integer ind = routeIndexes.get(route.getId());
+			if (ind != null) {
+				return ind;
+			}
+			TransportRoutingConfiguration cfg = ctx.cfg;
+			float speed = cfg.getSpeedByRouteType(route.getType());
+			if (speed == 0 || (cfg.useSchedule && route.getSchedule() == null)) {
+				routeIndexes.put(route.getId(), NO_STOP);
+				return NO_STOP;
+			}
+			ind = routes.size();
+			routes.add(route);
+			routeIndexes.put(route.getId(), ind);
+			List<TransportStop> forwardStops = route.getForwardStops();
+			int base = routeStops.size();
+			routeStopTime = grow(routeStopTime, base + forwardStops.size(), 0);
+			routeStopDist = grow(routeStopDist, base + forwardStops.size(), 0);
+			double time = 0;
+			double dist = 0;
+			for (int k = 0; k < forwardStops.size(); k++) {
+				TransportStop stop = forwardStops.get(k);
+				if (k > 0) {
+					double segmentDist = MapUtils.getDistance(forwardStops.get(k - 1).getLocation(), stop.getLocation());
+					dist += segmentDist;
+					if (cfg.useSchedule) {
+						TIntArrayList intervals = route.getSchedule().avgStopIntervals;
+						if (intervals.size() > k - 1) {
+							time += intervals.get(k - 1) * 10;
+						}
+					} else {
+						time += cfg.stopTime + segmentDist / speed;
+					}
+				}
+				routeStops.add(getStopIndex(stop));
+				routeStopTime[base + k] = time;
+				routeStopDist[base + k] = dist;
+			}
+			routeStart.add(routeStops.size());
+			int[] trips = null;
+			if (cfg.useSchedule) {
+				TIntArrayList ti = route.getSchedule().tripIntervals;
+				trips = new int[ti.size()];
+				int t = 0;
+				for (int i = 0; i < trips.length; i++) {
+					t += ti.getQuick(i);
+					trips[i] = (t - cfg.scheduleTimeOfDay) * 10;
+				}
+			}
+			routeTrips.add(trips);
+			return ind;
+		}
+
+		void loadBoardings(int stop) throws IOException {
+			if (boardingsStart[stop] >= 0) {
+				return;
+			}
+			TransportStop s = stops.get(stop);
+			List<TransportRouteSegment> sgms = ctx.getTransferSegments(s, new ArrayList<TransportRouteSegment>());
+			ctx.visitedStops++;
+			int start = boardingRoute.size();
+			for (TransportRouteSegment sgm : sgms) {
+				int route = addRoute(sgm.road);
+				if (route == NO_STOP) {
+					continue;
+				}
+				// schedule segments are loaded for every trip
+				boolean exists = false;
+				for (int b = start; b < boardingRoute.size() && !exists; b++) {
+					exists = boardingRoute.get(b) == route && boardingPos.get(b) == sgm.segStart;
+				}
+				if (!exists) {
+					int b = boardingRoute.size();
+					boardingWalkDist = grow(boardingWalkDist, b + 1, 0);
+					boardingRoute.add(route);
+					boardingPos.add(sgm.segStart);
+					boardingWalkDist[b] = MapUtils.getDistance(sgm.getLocation(), s.getLocation());
+				}
+			}
+			boardingsStart[stop] = start;
+			boardingsEnd[stop] = boardingRoute.size();
+		}
+
+		// earliest departure of trip from stop (offset from first stop) not before time
+		double getDeparture(int[] trips, double stopOffset, double time) {
+			int maxDeparture = ctx.cfg.scheduleMaxTime * 10;
+			for (int trip : trips) {
+				double departure = trip + stopOffset;
+				if (departure >= time && departure <= maxDeparture) {
+					return departure;
+				}
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.osm.edit.Way;
+
+/**
+ * Process-wide LRU cache of decoded transport routes (keyed by file and route file pointer),
+ * routes combined from incomplete parts and merged stops of tiles (keyed by set of files and tile).
+ * Files are identified by path, length and modification time, so updated files are decoded again.
+ * Cache is bounded by estimated size of cached objects, so transport routing contexts
+ * (i.e. server handling requests in the same city) decode transport data of files only once.
+ * Tiles are weighted together with routes of their stops, as cached tile keeps them in memory
+ * even when routes are evicted.
+ * <p>
+ * Cached objects are shared between contexts and must be treated as read-only,
+ * ways of routes are merged before caching.
+ */
+public class TransportRouteCache {
+
+	private static final int ROUTE = 0;
+	private static final int COMBINED_ROUTE = 1;
+	private static final int TILE = 2;
+
+	private static final int OBJECT_SIZE = 64;
+	private static final int STOP_SIZE = 120;
+	private static final int NODE_SIZE = 48;
+
+	private final long maxWeight;
+	private final LinkedHashMap<CacheKey, CachedEntry> entries = new LinkedHashMap<CacheKey, CachedEntry>(16, 0.75f, true);
+	private long weight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public TransportRouteCache(long maxWeightBytes) {
+		this.maxWeight = maxWeightBytes;
+	}
+
+	/**
+	 * @return key of files (in order of merging) used for combined routes and tiles
+	 */
+	public static String getFilesKey(Collection<BinaryMapIndexReader> readers) {
+		StringBuilder sb = new StringBuilder();
+		for (BinaryMapIndexReader r : readers) {
+			File f = r.getFile();
+			sb.append(f == null ? "" : getFileKey(f)).append(';');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return key of file used for routes, it should be computed once per reader (length and modification time are read)
+	 */
+	public static String getFileKey(File f) {
+		return f.getAbsolutePath() + ':' + f.length() + ':' + f.lastModified();
+	}
+
+	public TransportRoute getRoute(String fileKey, int filePointer) {
+		return (TransportRoute) get(new CacheKey(ROUTE, fileKey, 0, filePointer));
+	}
+
+	/**
+	 * @return cached route (route loaded by another thread meanwhile or the route itself)
+	 */
+	public TransportRoute putRoute(String fileKey, int filePointer, TransportRoute route) {
+		route.mergeForwardWays();
+		return (TransportRoute) put(new CacheKey(ROUTE, fileKey, 0, filePointer), route,
+				getEstimatedSize(route));
+	}
+
+	public TransportRoute getCombinedRoute(String filesKey, long routeId) {
+		return (TransportRoute) get(new CacheKey(COMBINED_ROUTE, filesKey, 0, routeId));
+	}
+
+	public TransportRoute putCombinedRoute(String filesKey, long routeId, TransportRoute route) {
+		route.mergeForwardWays();
+		return (TransportRoute) put(new CacheKey(COMBINED_ROUTE, filesKey, 0, routeId), route, getEstimatedSize(route));
+	}
+
+	/**
+	 * @return merged stops (with routes) of tile or null if tile is not cached
+	 */
+	@SuppressWarnings("unchecked")
+	public List<TransportStop> getTileStops(String filesKey, int zoom, int x, int y) {
+		return (List<TransportStop>) get(new CacheKey(TILE, filesKey, zoom, (((long) x) << (zoom + 1)) + y));
+	}
+
+	/**
+	 * @return not modifiable list of cached stops
+	 */
+	@SuppressWarnings("unchecked")
+	public List<TransportStop> putTileStops(String filesKey, int zoom, int x, int y, Collection<TransportStop> stops) {
+		List<TransportStop> lst = Collections.unmodifiableList(new ArrayList<TransportStop>(stops));
+		Set<TransportRoute> routes = Collections.newSetFromMap(new IdentityHashMap<TransportRoute, Boolean>());
+		int tileWeight = OBJECT_SIZE;
+		for (TransportStop s : lst) {
+			tileWeight += STOP_SIZE;
+			if (s.getRoutes() != null) {
+				for (TransportRoute r : s.getRoutes()) {
+					tileWeight += 8;
+					if (routes.add(r)) {
+						tileWeight += getEstimatedSize(r);
+					}
+				}
+			}
+		}
+		return (List<TransportStop>) put(new CacheKey(TILE, filesKey, zoom, (((long) x) << (zoom + 1)) + y), lst,
+				tileWeight);
+	}
+
+	private Object get(CacheKey key) {
+		CachedEntry e;
+		synchronized (this) {
+			e = entries.get(key);
+		}
+		if (e != null) {
+			hits.incrementAndGet();
+			return e.value;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	private synchronized Object put(CacheKey key, Object value, int entryWeight) {
+		CachedEntry e = entries.get(key);
+		if (e != null) {
+			// loaded by another thread meanwhile
+			return e.value;
+		}
+		entries.put(key, new CachedEntry(value, entryWeight));
+		weight += entryWeight;
+		evict();
+		return value;
+	}
+
+	private void evict() {
+		Iterator<Entry<CacheKey, CachedEntry>> it = entries.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			CachedEntry eldest = it.next().getValue();
+			it.remove();
+			weight -= eldest.weight;
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static int getEstimatedSize(TransportRoute route) {
+		int size = OBJECT_SIZE + route.getForwardStops().size() * STOP_SIZE;
+		for (Way w : route.getForwardWays()) {
+			size += OBJECT_SIZE + w.getNodes().size() * NODE_SIZE;
+		}
+		if (route.getSchedule() != null) {
+			size += (route.getSchedule().tripIntervals.size() + route.getSchedule().avgStopIntervals.size()
+					+ route.getSchedule().avgWaitIntervals.size()) * 4;
+		}
+		return size;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized int getEntriesCount() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Transport route cache " + getEntriesCount() + " entries, " + (getWeight() >> 20) + " of " + (maxWeight >> 20)
+				+ " MB, hits " + getHits() + ", misses " + getMisses() + ", evictions " + getEvictions();
+	}
+
+	private static class CachedEntry {
+		final Object value;
+		final int weight;
+
+		CachedEntry(Object value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private static class CacheKey {
+		final int type;
+		final String file;
+		final int zoom;
+		final long id;
+
+		CacheKey(int type, String file, int zoom, long id) {
+			this.type = type;
+			this.file = file;
+			this.zoom = zoom;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((file.hashCode() * 31 + type) * 31 + zoom) * 31 + (int) (id ^ (id >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return type == other.type && id == other.id && zoom == other.zoom && file.equals(other.file);
+		}
+	}
+}
@@ -31,6 +31,9 @@ public class TransportRoutePlanner {
 	public static final long STOPS_WAY_ID = -2;
 
 	public List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, LatLon start, LatLon end) throws IOException, InterruptedException {
+		if (ctx.cfg.useRaptor) {
+			return new TransportRaptorPlanner().buildRoute(ctx, start, end);
+		}
 		ctx.startCalcTime = System.currentTimeMillis();
 		double totalDistance = MapUtils.getDistance(start, end);
 		List<TransportRouteSegment> startStops = ctx.getTransportStops(start);
@@ -116,7 +119,8 @@ public class TransportRoutePlanner {
 					break;
 				}
 				sgms.clear();
-				sgms = ctx.getTransportStops(stop.x31, stop.y31, true, sgms);
+				// changes are limited by walk change radius (not by tiles around), precomputed if files are indexed
+				sgms = ctx.getTransferSegments(stop, sgms);
 				ctx.visitedStops++;
 				for (TransportRouteSegment sgm : sgms) {
 					if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
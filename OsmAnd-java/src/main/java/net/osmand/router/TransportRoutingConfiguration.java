@@ -41,6 +41,12 @@ public class TransportRoutingConfiguration {
 	// day since 2000
 	public int scheduleDayNumber;
 
+	// round based search (TransportRaptorPlanner) instead of segments queue
+	public boolean useRaptor;
+
+	// optional cache of decoded routes and stops shared by routing contexts
+	public TransportRouteCache routeCache;
+
 	private Map<String, Integer> rawTypes = new HashMap<String, Integer>();
 	private Map<String, Float> speed = new TreeMap<String, Float>();
 	
@@ -90,6 +96,7 @@ public class TransportRoutingConfiguration {
 			maxRouteIncreaseSpeed =  router.getIntAttribute("maxRouteIncreaseSpeed", maxRouteIncreaseSpeed);
 			maxRouteDistance =  router.getIntAttribute("maxRouteDistance", maxRouteDistance);
 			finishTimeSeconds =  router.getIntAttribute("delayForAlternativesRoutes", finishTimeSeconds);
+			useRaptor = Boolean.parseBoolean(router.getAttribute("useRaptor"));
 			String mn = params.get("max_num_changes");
 			maxNumberOfChanges = (int) RoutingConfiguration.parseSilentFloat(mn, maxNumberOfChanges);
 			
@@ -2,6 +2,9 @@ package net.osmand.router;
 
 import net.osmand.NativeLibrary;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.binary.TransportTransferIndex;
+import net.osmand.binary.TransportTransferIndex.TransferGraph;
 import net.osmand.data.LatLon;
 import net.osmand.data.TransportRoute;
 import net.osmand.data.TransportStop;
@@ -19,6 +22,7 @@ import java.util.Map;
 
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 public class TransportRoutingContext {
 
@@ -34,6 +38,9 @@ public class TransportRoutingContext {
 	// Incomplete routes usually don't need more files than around Max-BBOX of start/end,
 	// so here an improvement could be introduced
 	final TransportStopsRouteReader transportStopsReader;
+	// precomputed transfers of readers (if walk change radius is covered by index)
+	private final List<TransferGraph> transferGraphs = new ArrayList<TransferGraph>();
+	private final TLongObjectHashMap<List<TransportRouteSegment>> stopSegments = new TLongObjectHashMap<List<TransportRouteSegment>>();
 	public int finishTimeSeconds;
 
 	// stats
@@ -54,7 +61,26 @@ public class TransportRoutingContext {
 		walkChangeRadiusIn31 = (int) (cfg.walkChangeRadius / MapUtils.getTileDistanceWidth(31));
 		quadTree = new TLongObjectHashMap<List<TransportRouteSegment>>();
 		this.library = library;
-		transportStopsReader = new TransportStopsRouteReader(Arrays.asList(readers));
+		transportStopsReader = new TransportStopsRouteReader(Arrays.asList(readers), cfg.routeCache);
+		// transfers are taken from index only if all transport sections are indexed
+		for (BinaryMapIndexReader r : readers) {
+			if (r.getTransportIndexes().isEmpty()) {
+				continue;
+			}
+			TransportTransferIndex transferIndex = r.getTransportTransferIndex();
+			if (transferIndex == null || transferIndex.getRadius() < cfg.walkChangeRadius) {
+				transferGraphs.clear();
+				return;
+			}
+			for (TransportIndex ti : r.getTransportIndexes()) {
+				TransferGraph graph = transferIndex.getTransferGraph(r, ti);
+				if (graph == null) {
+					transferGraphs.clear();
+					return;
+				}
+				transferGraphs.add(graph);
+			}
+		}
 	}
 
 	public List<TransportRouteSegment> getTransportStops(LatLon loc) throws IOException {
@@ -67,6 +93,89 @@ public class TransportRoutingContext {
 		return loadNativeTransportStops(x, y, change, res);
 	}
 
+	/**
+	 * Segments of routes at stops within walk change radius of the stop (the stop itself included)
+	 * in tiles which are searched around the stop for change.
+	 * Transfers of all sections containing the stop are merged, if some section around doesn't contain it
+	 * (i.e. near border of files) stops are searched around. Both ways return same segments.
+	 * Unlike {@link #getTransportStops(int, int, boolean, List)} (all stops of tiles around within walk radius box)
+	 * stops farther than walk change radius are not returned.
+	 */
+	public List<TransportRouteSegment> getTransferSegments(TransportStop stop, List<TransportRouteSegment> res) throws IOException {
+		long nanoTime = System.nanoTime();
+		int pz = 31 - cfg.ZOOM_TO_LOAD_TILES;
+		// bbox of tiles loaded around (borders are included as by tile requests)
+		int left = ((stop.x31 - walkChangeRadiusIn31) >> pz) << pz;
+		int right = (((stop.x31 + walkChangeRadiusIn31) >> pz) + 1) << pz;
+		int top = ((stop.y31 - walkChangeRadiusIn31) >> pz) << pz;
+		int bottom = (((stop.y31 + walkChangeRadiusIn31) >> pz) + 1) << pz;
+		List<TransferGraph> graphs = new ArrayList<TransferGraph>();
+		boolean indexed = !transferGraphs.isEmpty();
+		for (TransferGraph graph : transferGraphs) {
+			if (graph.intersects(left, top, right, bottom)) {
+				if (graph.indexOf(stop.getId()) == -1) {
+					indexed = false;
+					break;
+				}
+				graphs.add(graph);
+			}
+		}
+		if (indexed && !graphs.isEmpty()) {
+			// same stop could be in sections of several files
+			TLongHashSet added = new TLongHashSet();
+			for (TransferGraph graph : graphs) {
+				int ind = graph.indexOf(stop.getId());
+				addStopSegments(graph, ind, added, res);
+				for (int t = graph.getTransfersStart(ind); t < graph.getTransfersEnd(ind); t++) {
+					int st = graph.getTransferStop(t);
+					if (graph.getTransferDistance(t) <= cfg.walkChangeRadius
+							&& isInTileRequest(graph.getStopX31(st), left, right)
+							&& isInTileRequest(graph.getStopY31(st), top, bottom)) {
+						addStopSegments(graph, st, added, res);
+					}
+				}
+			}
+			loadTime += System.nanoTime() - nanoTime;
+		} else {
+			List<TransportRouteSegment> around = getTransportStops(stop.x31, stop.y31, true,
+					new ArrayList<TransportRouteSegment>());
+			for (TransportRouteSegment r : around) {
+				// distance is compared as it is stored in transfer index
+				if ((float) MapUtils.getDistance(r.getStop(r.segStart).getLocation(), stop.getLocation()) <= cfg.walkChangeRadius) {
+					res.add(r);
+				}
+			}
+		}
+		return res;
+	}
+
+	private static boolean isInTileRequest(int c31, int from31, int to31) {
+		int shift = 31 - BinaryMapIndexReader.TRANSPORT_STOP_ZOOM;
+		return (c31 >> shift) >= (from31 >> shift) && (c31 >> shift) <= (to31 >> shift);
+	}
+
+	private void addStopSegments(TransferGraph graph, int ind, TLongHashSet added, List<TransportRouteSegment> res) throws IOException {
+		if (!added.add(graph.getStopId(ind))) {
+			return;
+		}
+		getTile(graph.getStopX31(ind) >> (31 - cfg.ZOOM_TO_LOAD_TILES), graph.getStopY31(ind) >> (31 - cfg.ZOOM_TO_LOAD_TILES));
+		List<TransportRouteSegment> list = stopSegments.get(graph.getStopId(ind));
+		if (list != null) {
+			loadedWays += list.size();
+			res.addAll(list);
+		}
+	}
+
+	private List<TransportRouteSegment> getTile(int x, int y) throws IOException {
+		long tileId = (((long)x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
+		List<TransportRouteSegment> list = quadTree.get(tileId);
+		if(list == null) {
+			list = loadTile(x, y);
+			quadTree.put(tileId, list);
+		}
+		return list;
+	}
+
 	private List<TransportRouteSegment> loadNativeTransportStops(int sx, int sy, boolean change, List<TransportRouteSegment> res) throws IOException {
 		long nanoTime = System.nanoTime();
 		int d = change ? walkChangeRadiusIn31 : walkRadiusIn31;
@@ -76,12 +185,7 @@ public class TransportRoutingContext {
 		int by = (sy + d ) >> (31 - cfg.ZOOM_TO_LOAD_TILES);
 		for(int x = lx; x <= rx; x++) {
 			for(int y = ty; y <= by; y++) {
-				long tileId = (((long)x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
-				List<TransportRouteSegment> list = quadTree.get(tileId);
-				if(list == null) {
-					list = loadTile(x, y);
-					quadTree.put(tileId, list);
-				}
+				List<TransportRouteSegment> list = getTile(x, y);
 				for(TransportRouteSegment r : list) {
 					TransportStop st = r.getStop(r.segStart);
 					if (Math.abs(st.x31 - sx) > walkRadiusIn31 || Math.abs(st.y31 - sy) > walkRadiusIn31) {
@@ -104,7 +208,15 @@ public class TransportRoutingContext {
 		int pz = (31 - cfg.ZOOM_TO_LOAD_TILES);
 		BinaryMapIndexReader.SearchRequest<TransportStop> sr = BinaryMapIndexReader.buildSearchTransportRequest(x << pz, (x + 1) << pz,
 				y << pz, (y + 1) << pz, -1, null);
-		Collection<TransportStop> stops = transportStopsReader.readMergedTransportStops(sr);
+		TransportRouteCache routeCache = transportStopsReader.getRouteCache();
+		Collection<TransportStop> stops = routeCache == null ? null :
+			routeCache.getTileStops(transportStopsReader.getFilesKey(), cfg.ZOOM_TO_LOAD_TILES, x, y);
+		if (stops == null) {
+			stops = transportStopsReader.readMergedTransportStops(sr);
+			if (routeCache != null) {
+				stops = routeCache.putTileStops(transportStopsReader.getFilesKey(), cfg.ZOOM_TO_LOAD_TILES, x, y, stops);
+			}
+		}
 		loadTransportSegments(stops, lst);
 		readTime += System.nanoTime() - nanoTime;
 		return lst;
@@ -115,6 +227,7 @@ public class TransportRoutingContext {
 			if (s.isDeleted() || s.getRoutes() == null) {
 				continue;
 			}
+			int first = lst.size();
 			for (TransportRoute route : s.getRoutes()) {
 				int stopIndex = -1;
 				double dist = TransportRoute.SAME_STOP;
@@ -142,6 +255,10 @@ public class TransportRoutingContext {
 							s.toString(), route.getRef(), route.getId() / 2));
 				}
 			}
+			// stop on the border of tiles is read with both of them
+			if (!transferGraphs.isEmpty() && lst.size() > first && !stopSegments.containsKey(s.getId())) {
+				stopSegments.put(s.getId(), new ArrayList<TransportRouteSegment>(lst.subList(first, lst.size())));
+			}
 		}
 	}
 
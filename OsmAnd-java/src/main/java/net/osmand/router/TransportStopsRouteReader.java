@@ -3,6 +3,7 @@ package net.osmand.router;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -31,10 +32,32 @@ public class TransportStopsRouteReader {
 			TIntObjectHashMap<TransportRoute>>();
 	
 	
+	// optional cache shared with other readers
+	private final TransportRouteCache routeCache;
+	private final String filesKey;
+	private final Map<BinaryMapIndexReader, String> fileKeys = new HashMap<BinaryMapIndexReader, String>();
+	
 	public TransportStopsRouteReader(Collection<BinaryMapIndexReader> fls) {
+		this(fls, null);
+	}
+
+	public TransportStopsRouteReader(Collection<BinaryMapIndexReader> fls, TransportRouteCache routeCache) {
 		for(BinaryMapIndexReader r : fls) {
 			routesFilesCache.put(r, new TIntObjectHashMap<TransportRoute>());
+			if (routeCache != null && r.getFile() != null) {
+				fileKeys.put(r, TransportRouteCache.getFileKey(r.getFile()));
+			}
 		}
+		this.routeCache = routeCache;
+		this.filesKey = routeCache == null ? null : TransportRouteCache.getFilesKey(fls);
+	}
+
+	public TransportRouteCache getRouteCache() {
+		return routeCache;
+	}
+
+	public String getFilesKey() {
+		return filesKey;
 	}
 	
 	public Collection<TransportStop> readMergedTransportStops(SearchRequest<TransportStop> sr) throws IOException {
@@ -145,15 +168,33 @@ public class TransportStopsRouteReader {
 		// load/combine routes
 		if (localFileRoutes.size() > 0) {
 			TIntArrayList routesToLoad = new TIntArrayList(localFileRoutes.size()); 
+			String fileKey = fileKeys.get(reader);
 			TIntObjectIterator<TransportRoute> it = localFileRoutes.iterator();
 			while(it.hasNext()) {
 				it.advance();
 				if(it.value() == null) {
-					routesToLoad.add(it.key());
+					TransportRoute cached = fileKey == null ? null : routeCache.getRoute(fileKey, it.key());
+					if (cached != null) {
+						it.setValue(cached);
+					} else {
+						routesToLoad.add(it.key());
+					}
 				}
 			}
+			if (routesToLoad.isEmpty()) {
+				return;
+			}
 			routesToLoad.sort();
 			reader.loadTransportRoutes(routesToLoad.toArray(), localFileRoutes);
+			if (fileKey != null) {
+				for (int i = 0; i < routesToLoad.size(); i++) {
+					int filePointer = routesToLoad.getQuick(i);
+					TransportRoute route = localFileRoutes.get(filePointer);
+					if (route != null) {
+						localFileRoutes.put(filePointer, routeCache.putRoute(fileKey, filePointer, route));
+					}
+				}
+			}
 		}
 	}
 
@@ -162,10 +203,16 @@ public class TransportStopsRouteReader {
 			return route;
 		}
 		TransportRoute c = combinedRoutesCache.get(route.getId());
+		if (c == null && routeCache != null) {
+			c = routeCache.getCombinedRoute(filesKey, route.getId());
+		}
 		if (c == null) {
 			c = combineRoute(route);
-			combinedRoutesCache.put(route.getId(), c);
+			if (routeCache != null) {
+				c = routeCache.putCombinedRoute(filesKey, route.getId(), c);
+			}
 		}
+		combinedRoutesCache.put(route.getId(), c);
 		return c;
 	}
 
@@ -248,7 +295,10 @@ public class TransportStopsRouteReader {
 	private List<Way> getAllWays(List<TransportRoute> parts) {
 		List<Way> w = new ArrayList<Way>();
 		for (TransportRoute t : parts) {
-			w.addAll(t.getForwardWays());
+			// ways are copied as combined route merges them in place and parts could be shared
+			for (Way way : t.getForwardWays()) {
+				w.add(new Way(way, way.getId()));
+			}
 		}
 		return w;
 	}
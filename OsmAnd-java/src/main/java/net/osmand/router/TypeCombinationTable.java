@@ -0,0 +1,141 @@
+package net.osmand.router;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Open addressing hash table from combination of encoded types (int array, order matters)
+ * to fixed number of float values (columns). Types and values are stored in primitive arrays,
+ * so lookup doesn't allocate objects.
+ * <p>
+ * Lookup is lock free and could run concurrently with {@link #add(int[], float[])}:
+ * entry data is written before slot is published, table is replaced as whole when it grows.
+ */
+class TypeCombinationTable {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final int columns;
+	private volatile Table table;
+
+	TypeCombinationTable(int columns) {
+		this.columns = columns;
+		this.table = new Table(INITIAL_CAPACITY, INITIAL_CAPACITY * 4, columns);
+	}
+
+	/**
+	 * @return entry index or -1 if combination is not present
+	 */
+	int find(int[] types) {
+		return table.find(types, hash(types));
+	}
+
+	float get(int entry, int column) {
+		return table.values[entry * columns + column];
+	}
+
+	int size() {
+		return table.size;
+	}
+
+	/**
+	 * @return index of added entry (or of existing one if combination was added meanwhile)
+	 */
+	synchronized int add(int[] types, float[] row) {
+		int hash = hash(types);
+		Table t = table;
+		int existing = t.find(types, hash);
+		if (existing >= 0) {
+			return existing;
+		}
+		if (t.size + 1 == t.offsets.length || t.offsets[t.size] + types.length > t.types.length) {
+			t = t.grow(types.length, columns);
+		}
+		int entry = t.size;
+		int start = t.offsets[entry];
+		System.arraycopy(types, 0, t.types, start, types.length);
+		t.offsets[entry + 1] = start + types.length;
+		System.arraycopy(row, 0, t.values, entry * columns, columns);
+		t.size++;
+		t.insertSlot(hash, entry);
+		// new table is published after it is filled
+		table = t;
+		return entry;
+	}
+
+	private static int hash(int[] types) {
+		return hash(types, 0, types.length);
+	}
+
+	private static int hash(int[] types, int from, int to) {
+		int h = 1;
+		for (int i = from; i < to; i++) {
+			h = 31 * h + types[i];
+		}
+		// spread bits, capacity is power of 2
+		return h ^ (h >>> 16);
+	}
+
+	private static class Table {
+		// entry index + 1, 0 - empty slot
+		final AtomicIntegerArray slots;
+		final int[] offsets;
+		final int[] types;
+		final float[] values;
+		int size;
+
+		Table(int capacity, int typesCapacity, int columns) {
+			slots = new AtomicIntegerArray(capacity * 2);
+			offsets = new int[capacity + 1];
+			types = new int[typesCapacity];
+			values = new float[capacity * columns];
+		}
+
+		int find(int[] key, int hash) {
+			int mask = slots.length() - 1;
+			for (int i = hash & mask;; i = (i + 1) & mask) {
+				int e = slots.get(i) - 1;
+				if (e < 0) {
+					return -1;
+				}
+				if (equalTypes(e, key)) {
+					return e;
+				}
+			}
+		}
+
+		private boolean equalTypes(int entry, int[] key) {
+			int start = offsets[entry];
+			if (offsets[entry + 1] - start != key.length) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (types[start + i] != key[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void insertSlot(int hash, int entry) {
+			int mask = slots.length() - 1;
+			int i = hash & mask;
+			while (slots.get(i) != 0) {
+				i = (i + 1) & mask;
+			}
+			slots.set(i, entry + 1);
+		}
+
+		Table grow(int typesLength, int columns) {
+			int capacity = offsets.length - 1;
+			Table t = new Table(capacity * 2, Math.max(types.length * 2, types.length + typesLength), columns);
+			System.arraycopy(offsets, 0, t.offsets, 0, size + 1);
+			System.arraycopy(types, 0, t.types, 0, offsets[size]);
+			System.arraycopy(values, 0, t.values, 0, size * columns);
+			t.size = size;
+			for (int e = 0; e < size; e++) {
+				t.insertSlot(hash(types, offsets[e], offsets[e + 1]), e);
+			}
+			return t;
+		}
+	}
+}
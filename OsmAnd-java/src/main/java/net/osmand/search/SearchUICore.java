@@ -37,13 +37,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -56,8 +60,12 @@ public class SearchUICore {
 	private static final Log LOG = PlatformUtil.getLog(SearchUICore.class);
 	private SearchPhrase phrase;
 	private SearchResultCollection  currentSearchResult;
+	// results published by each api for last completed search, used to refine them when phrase is extended
+	private SearchPhrase lastSearchPhrase;
+	private Map<SearchCoreAPI, List<SearchResult>> lastApiResults = new HashMap<>();
 
 	private ThreadPoolExecutor singleThreadedExecutor;
+	private ThreadPoolExecutor regionSearchExecutor;
 	private LinkedBlockingQueue<Runnable> taskQueue;
 	private Runnable onSearchStart = null;
 	private Runnable onResultsComplete = null;
@@ -319,6 +327,7 @@ public class SearchUICore {
 			preparePhrase(sphrase);
 			AtomicInteger ai = new AtomicInteger();
 			SearchResultMatcher rm = new SearchResultMatcher(matcher, sphrase, ai.get(), ai, totalLimit);
+			rm.setRegionSearchExecutor(getRegionSearchExecutor(searchSettings));
 			api.search(sphrase, rm);
 
 			SearchResultCollection collection = new SearchResultCollection(
@@ -399,6 +408,47 @@ public class SearchUICore {
 		searchSettings = settings;
 	}
 
+	/**
+	 * Stops threads of concurrent region search, they are started again by next search with several search threads.
+	 */
+	public synchronized void shutdownRegionSearchExecutor() {
+		if (regionSearchExecutor != null) {
+			regionSearchExecutor.shutdown();
+			regionSearchExecutor = null;
+		}
+	}
+
+	private synchronized ExecutorService getRegionSearchExecutor(SearchSettings settings) {
+		int threads = settings.getSearchThreads();
+		if (threads <= 1) {
+			shutdownRegionSearchExecutor();
+			return null;
+		}
+		if (regionSearchExecutor == null) {
+			regionSearchExecutor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger number = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "SearchRegion-" + number.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			regionSearchExecutor.allowCoreThreadTimeOut(true);
+		} else if (regionSearchExecutor.getMaximumPoolSize() != threads) {
+			if (threads > regionSearchExecutor.getMaximumPoolSize()) {
+				regionSearchExecutor.setMaximumPoolSize(threads);
+				regionSearchExecutor.setCorePoolSize(threads);
+			} else {
+				regionSearchExecutor.setCorePoolSize(threads);
+				regionSearchExecutor.setMaximumPoolSize(threads);
+			}
+		}
+		return regionSearchExecutor;
+	}
+
 	private void filterCurrentResults(SearchPhrase phrase, ResultMatcher<SearchResult> matcher) {
 		if (matcher == null) {
 			return;
@@ -416,7 +466,7 @@ public class SearchUICore {
 
 	private boolean filterOneResult(SearchResult object, SearchPhrase phrase) {
 		NameStringMatcher nameStringMatcher = phrase.getFirstUnknownNameStringMatcher();
-		return nameStringMatcher.matches(object.localeName) || nameStringMatcher.matches(object.otherNames);
+		return nameStringMatcher.matchesNames(object);
 	}
 
 	public boolean selectSearchResult(SearchResult r) {
@@ -454,6 +504,7 @@ public class SearchUICore {
 						onSearchStart.run();
 					}
 					final SearchResultMatcher rm = new SearchResultMatcher(matcher, phrase, request, requestNumber, totalLimit);
+					rm.setRegionSearchExecutor(getRegionSearchExecutor(searchSettings));
 					if (debugMode) {
 						LOG.info("Starting search <" + phrase.toString() + ">");
 					}
@@ -613,6 +664,9 @@ public class SearchUICore {
 						o2.getSearchPriority(phrase));
 			}
 		});
+		// phrase is extended, so apis could narrow their previous results instead of searching offline indexes
+		boolean refinement = phrase.isRefinementOf(lastSearchPhrase);
+		Map<SearchCoreAPI, List<SearchResult>> results = new HashMap<>();
 		for (SearchCoreAPI api : lst) {
 			if (matcher.isCancelled()) {
 				break;
@@ -621,10 +675,23 @@ public class SearchUICore {
 				continue;
 			}
 			try {
-				if (debugMode) {
-					LOG.info("Run API search <" + phrase + "> API=<" + api + ">");
+				matcher.startApiSearch();
+				List<SearchResult> previousResults = refinement ? lastApiResults.get(api) : null;
+				if (previousResults != null && phrase.getUnselectedPoiType() == lastSearchPhrase.getUnselectedPoiType()
+						&& api.refineSearch(lastSearchPhrase, previousResults, phrase, matcher)) {
+					if (debugMode) {
+						LOG.info("API search refined <" + phrase + "> API=<" + api + "> Results=" + previousResults.size());
+					}
+				} else {
+					if (debugMode) {
+						LOG.info("Run API search <" + phrase + "> API=<" + api + ">");
+					}
+					api.search(phrase, matcher);
+				}
+				List<SearchResult> apiResults = matcher.finishApiSearch();
+				if (apiResults != null) {
+					results.put(api, apiResults);
 				}
-				api.search(phrase, matcher);
 				if (debugMode) {
 					LOG.info("API search finishing <" + phrase + "> API=<" + api + ">");
 				}
@@ -633,10 +700,18 @@ public class SearchUICore {
 					LOG.info("API search done <" + phrase + "> API=<" + api + ">");
 				}
 			} catch (Throwable e) {
+				matcher.finishApiSearch();
 				e.printStackTrace();
 				LOG.error(e.getMessage(), e);
 			}
 		}
+		if (matcher.isCancelled()) {
+			lastSearchPhrase = null;
+			lastApiResults = new HashMap<>();
+		} else {
+			lastSearchPhrase = phrase;
+			lastApiResults = results;
+		}
 	}
 
 	private void preparePhrase(final SearchPhrase phrase) {
@@ -665,6 +740,10 @@ public class SearchUICore {
 		private SearchPhrase phrase;
 		private List<MapObject> exportedObjects;
 		private List<City> exportedCities;
+		private ExecutorService regionSearchExecutor;
+		// results published by running api, null if api search is not tracked
+		private List<SearchResult> apiResults;
+		private volatile boolean apiSearchLimitReached;
 
 		public SearchResultMatcher(ResultMatcher<SearchResult> matcher, SearchPhrase phrase, int request,
 								   AtomicInteger requestNumber, int totalLimit) {
@@ -689,10 +768,38 @@ public class SearchUICore {
 			return requestResults;
 		}
 
+		// executor to search several offline indexes concurrently, null - files are searched one by one
+		public ExecutorService getRegionSearchExecutor() {
+			return regionSearchExecutor;
+		}
+
+		public void setRegionSearchExecutor(ExecutorService regionSearchExecutor) {
+			this.regionSearchExecutor = regionSearchExecutor;
+		}
+
 		public int getCount() {
 			return requestResults.size();
 		}
 
+		void startApiSearch() {
+			apiResults = new ArrayList<>();
+			apiSearchLimitReached = false;
+		}
+
+		/**
+		 * @return all results published by api since {@link #startApiSearch()} or null if they are not complete
+		 */
+		List<SearchResult> finishApiSearch() {
+			List<SearchResult> res = apiResults;
+			apiResults = null;
+			return apiSearchLimitReached || isCancelled() ? null : res;
+		}
+
+		// api stopped search as it found too many objects, so results can't be refined later
+		public void apiSearchLimitReached() {
+			apiSearchLimitReached = true;
+		}
+
 		public void searchStarted(SearchPhrase phrase) {
 			if (matcher != null) {
 				SearchResult sr = new SearchResult(phrase);
@@ -764,6 +871,9 @@ public class SearchUICore {
 				object.alternateName = null;
 			}
 			object.parentSearchResult = parentSearchResult;
+			if (apiResults != null) {
+				apiResults.add(object);
+			}
 			if (matcher == null || matcher.publish(object)) {
 				count++;
 				if (totalLimit == -1 || count < totalLimit) {
@@ -788,7 +898,7 @@ public class SearchUICore {
 			return exportedCities;
 		}
 
-		public void exportObject(SearchPhrase phrase, MapObject object) {
+		public synchronized void exportObject(SearchPhrase phrase, MapObject object) {
 			double maxDistance = phrase.getSettings().getExportSettings().getMaxDistance();
 			if (maxDistance > 0) {
 				double distance = MapUtils.getDistance(phrase.getSettings().getOriginalLocation(), object.getLocation());
@@ -802,7 +912,7 @@ public class SearchUICore {
 			exportedObjects.add(object);
 		}
 
-		public void exportCity(SearchPhrase phrase, City city) {
+		public synchronized void exportCity(SearchPhrase phrase, City city) {
 			double maxDistance = phrase.getSettings().getExportSettings().getMaxDistance();
 			if (maxDistance > 0) {
 				double distance = MapUtils.getDistance(phrase.getSettings().getOriginalLocation(), city.getLocation());
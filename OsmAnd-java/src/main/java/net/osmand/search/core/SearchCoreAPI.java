@@ -1,6 +1,7 @@
 package net.osmand.search.core;
 
 import java.io.IOException;
+import java.util.List;
 
 import net.osmand.search.SearchUICore.SearchResultMatcher;
 
@@ -14,6 +15,15 @@ public interface SearchCoreAPI {
 
 	public boolean search(SearchPhrase phrase, SearchResultMatcher resultMatcher) throws IOException;
 
+	/**
+	 * Publishes results of previous search which match phrase instead of searching again,
+	 * called only if phrase refines previous phrase ({@link SearchPhrase#isRefinementOf(SearchPhrase)})
+	 * @param previousResults results published by this api for previous phrase
+	 * @return false if results couldn't be refined (nothing is published) and full search is needed
+	 */
+	public boolean refineSearch(SearchPhrase previous, List<SearchResult> previousResults, SearchPhrase phrase,
+								SearchResultMatcher resultMatcher) throws IOException;
+
 	/**
 	 * @param phrase
 	 * @return true if search more available (should be consistent with -1 search priority)
@@ -18,6 +18,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.osmand.CollatorStringMatcher;
 import net.osmand.CollatorStringMatcher.StringMatcherMode;
@@ -121,6 +125,22 @@ public class SearchCoreFactory {
 			return true;
 		}
 
+		@Override
+		public boolean refineSearch(SearchPhrase previous, List<SearchResult> previousResults, SearchPhrase phrase,
+									SearchResultMatcher resultMatcher) throws IOException {
+			return false;
+		}
+
+		// results found by sub search (with parent) can't be refined, as sub search depends on matched words
+		protected boolean isRefinementAvailable(List<SearchResult> previousResults) {
+			for (SearchResult r : previousResults) {
+				if (r.parentSearchResult != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+
 		@Override
 		public int getSearchPriority(SearchPhrase p) {
 			return 1;
@@ -217,12 +237,159 @@ public class SearchCoreFactory {
 
 		}
 
+		/**
+		 * Searches offline indexes one by one or concurrently if result matcher has region search executor.
+		 * Results are published from search thread, apiSearchRegionFinished is called when all results of file
+		 * are published. Concurrently found results are kept per file and published in order of files
+		 * (when file and all previous files are searched), so they are the same as results of serial search
+		 * unless limit shared by files is reached, then workers keep results found first.
+		 * Method returns when all started searches are finished, so readers are not used by workers after it.
+		 */
+		protected void searchRegions(SearchPhrase phrase, final SearchResultMatcher resultMatcher,
+									 Iterator<BinaryMapIndexReader> files, final RegionSearch search) throws IOException {
+			ExecutorService executor = resultMatcher.getRegionSearchExecutor();
+			if (executor == null) {
+				while (files.hasNext()) {
+					final BinaryMapIndexReader r = files.next();
+					search.searchRegion(r, new ResultMatcher<SearchResult>() {
+						@Override
+						public boolean publish(SearchResult object) {
+							search.publishResult(r, object);
+							return true;
+						}
+
+						@Override
+						public boolean isCancelled() {
+							return resultMatcher.isCancelled();
+						}
+					});
+					search.regionFinished(r);
+					resultMatcher.apiSearchRegionFinished(this, r, phrase);
+				}
+				return;
+			}
+			// matchers of phrase are created lazily
+			phrase.initNameStringMatchers();
+			final LinkedBlockingQueue<RegionTask> finished = new LinkedBlockingQueue<>();
+			List<RegionTask> tasks = new ArrayList<>();
+			int running = 0;
+			Throwable error = null;
+			while (files.hasNext() && error == null) {
+				final RegionTask task = new RegionTask(files.next());
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								if (!resultMatcher.isCancelled()) {
+									search.searchRegion(task.reader, new ResultMatcher<SearchResult>() {
+										@Override
+										public boolean publish(SearchResult object) {
+											task.results.add(object);
+											return true;
+										}
+
+										@Override
+										public boolean isCancelled() {
+											return resultMatcher.isCancelled();
+										}
+									});
+								}
+							} catch (Throwable e) {
+								task.error = e;
+							} finally {
+								finished.add(task);
+							}
+						}
+					});
+					tasks.add(task);
+					running++;
+				} catch (RuntimeException e) {
+					error = e;
+				}
+			}
+			// results are published file by file in order of files, as by serial search
+			boolean interrupted = false;
+			int published = 0;
+			while (running > 0) {
+				RegionTask t;
+				try {
+					t = finished.take();
+				} catch (InterruptedException ie) {
+					// workers are still reading files
+					interrupted = true;
+					continue;
+				}
+				running--;
+				t.finished = true;
+				if (t.error != null && error == null) {
+					error = t.error;
+				}
+				while (published < tasks.size() && tasks.get(published).finished && error == null
+						&& !resultMatcher.isCancelled()) {
+					RegionTask p = tasks.get(published++);
+					try {
+						for (int i = 0; i < p.results.size() && !resultMatcher.isCancelled(); i++) {
+							search.publishResult(p.reader, p.results.get(i));
+						}
+						if (!resultMatcher.isCancelled()) {
+							search.regionFinished(p.reader);
+							resultMatcher.apiSearchRegionFinished(this, p.reader, phrase);
+						}
+					} catch (IOException | RuntimeException ex) {
+						error = ex;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (error instanceof IOException) {
+				throw (IOException) error;
+			} else if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			} else if (error != null) {
+				throw new IllegalStateException(error);
+			}
+		}
+
 		@Override
 		public String toString() {
 			return getClass().getSimpleName();
 		}
 	}
 
+	/**
+	 * Search in single offline index, see {@link SearchBaseAPI#searchRegions}
+	 */
+	protected static abstract class RegionSearch {
+
+		// collects found results, could be called from worker thread (concurrently for different files)
+		protected abstract void searchRegion(BinaryMapIndexReader r, ResultMatcher<SearchResult> regionResults)
+				throws IOException;
+
+		// called from search thread for each found result
+		protected abstract void publishResult(BinaryMapIndexReader r, SearchResult res);
+
+		// called from search thread after all results of file are published
+		protected void regionFinished(BinaryMapIndexReader r) throws IOException {
+		}
+	}
+
+	// search of one file by worker, fields are read by search thread after task is taken from queue of finished
+	private static class RegionTask {
+		final BinaryMapIndexReader reader;
+		final List<SearchResult> results = new ArrayList<>();
+		Throwable error;
+		boolean finished;
+
+		RegionTask(BinaryMapIndexReader reader) {
+			this.reader = reader;
+		}
+	}
+
 	public static class SearchRegionByNameAPI extends SearchBaseAPI {
 
 		public SearchRegionByNameAPI() {
@@ -377,125 +544,71 @@ public class SearchCoreFactory {
 						subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
 					}
 					if (limit++ > LIMIT * phrase.getRadiusLevel()) {
+						resultMatcher.apiSearchLimitReached();
 						break;
 					}
 				}
 			}
 		}
 
+		private boolean isSearchByNameAvailable(SearchPhrase phrase) {
+			return phrase.getRadiusLevel() > 1 || phrase.getUnknownWordToSearch().length() > 3 ||
+					phrase.hasMoreThanOneUnknownSearchWord() || phrase.isSearchTypeAllowed(ObjectType.POSTCODE, true);
+		}
+
+		@Override
+		public boolean refineSearch(SearchPhrase previous, List<SearchResult> previousResults, SearchPhrase phrase,
+									SearchResultMatcher resultMatcher) throws IOException {
+			if (isSearchByNameAvailable(previous) != isSearchByNameAvailable(phrase)
+					|| !isRefinementAvailable(previousResults)) {
+				return false;
+			}
+			for (SearchResult r : previousResults) {
+				// postcodes are matched by normalized postcode
+				if (r.objectType == ObjectType.POSTCODE || !(r.object instanceof MapObject)) {
+					return false;
+				}
+			}
+			NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
+			for (SearchResult r : previousResults) {
+				if (resultMatcher.isCancelled()) {
+					break;
+				}
+				MapObject object = (MapObject) r.object;
+				SearchResult res = r.copy(phrase);
+				res.localeName = object.getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
+				boolean matches;
+				if (r.objectType == ObjectType.CITY && phrase.isNoSelectedType()) {
+					// town found by initAndSearchCities
+					matches = nm.matches(res.localeName) || nm.matches(res.otherNames);
+				} else {
+					// object found by name index of file
+					matches = nm.matches(object.getName()) || nm.matches(object.getOtherNames());
+				}
+				if (!matches) {
+					continue;
+				}
+				if (r.objectType == ObjectType.STREET) {
+					res.priorityDistance = phrase.getUnknownWordToSearchBuildingNameMatcher()
+							.matches(stripBraces(res.localeName)) ? 1 : 5;
+				}
+				phrase.countUnknownWordsMatchMainResult(res);
+				resultMatcher.publish(res);
+			}
+			return true;
+		}
+
 		private void searchByName(final SearchPhrase phrase, final SearchResultMatcher resultMatcher)
 				throws IOException {
-			if (phrase.getRadiusLevel() > 1 || phrase.getUnknownWordToSearch().length() > 3 ||
-					phrase.hasMoreThanOneUnknownSearchWord()|| phrase.isSearchTypeAllowed(ObjectType.POSTCODE, true)) {
+			if (isSearchByNameAvailable(phrase)) {
 				final boolean locSpecified = phrase.getLastTokenLocation() != null;
-				LatLon loc = phrase.getLastTokenLocation();
-				final List<SearchResult> immediateResults = new ArrayList<>();
+				final LatLon loc = phrase.getLastTokenLocation();
 				final QuadRect streetBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS);
 				final QuadRect postcodeBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5);
 				final QuadRect villagesBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 3);
 				final QuadRect cityBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5); // covered by separate search before
 				final int priority = phrase.isNoSelectedType() ?
 						SEARCH_ADDRESS_BY_NAME_PRIORITY : SEARCH_ADDRESS_BY_NAME_PRIORITY_RADIUS2;
-				final BinaryMapIndexReader[] currentFile = new BinaryMapIndexReader[1];
-
-				ResultMatcher<MapObject> rm = new ResultMatcher<MapObject>() {
-					int limit = 0;
-					@Override
-					public boolean publish(MapObject object) {
-						if (isCancelled()) {
-							return false;
-						}
-						SearchResult sr = new SearchResult(phrase);
-						sr.object = object;
-						sr.file = currentFile[0];
-						sr.localeName = object.getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
-						sr.otherNames = object.getOtherNames(true);
-						sr.localeRelatedObjectName = sr.file.getRegionName();
-						sr.relatedObject = sr.file;
-						sr.location = object.getLocation();
-						sr.priorityDistance = 1;
-						sr.priority = priority;
-						int y = MapUtils.get31TileNumberY(object.getLocation().getLatitude());
-						int x = MapUtils.get31TileNumberX(object.getLocation().getLongitude());
-						List<City> closestCities = null;
-						if (object instanceof Street) {
-							// remove limitation by location
-							if (  //(locSpecified && !streetBbox.contains(x, y, x, y)) || 
-								!phrase.isSearchTypeAllowed(ObjectType.STREET)) {
-								return false;
-							}
-							if (object.getName().startsWith("<")) {
-								return false;
-							}
-
-							if (!phrase.getUnknownWordToSearchBuildingNameMatcher().matches(stripBraces(sr.localeName))) {
-								sr.priorityDistance = 5;
-							}
-							sr.objectType = ObjectType.STREET;
-							sr.localeRelatedObjectName = ((Street)object).getCity().getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
-							sr.relatedObject = ((Street)object).getCity();
-						} else if (object instanceof City) {
-							CityType type = ((City)object).getType();
-							if (type == CityType.CITY || type == CityType.TOWN) {
-								if (phrase.isNoSelectedType()) {
-									// ignore city/town
-									return false;
-								}
-								if ((locSpecified && !cityBbox.contains(x, y, x, y))
-										|| !phrase.isSearchTypeAllowed(ObjectType.CITY)) {
-									return false;
-								}
-								sr.objectType = ObjectType.CITY;
-								sr.priorityDistance = 0.1;
-							} else if (((City)object).isPostcode()) {
-								if ((locSpecified && !postcodeBbox.contains(x, y, x, y))
-										|| !phrase.isSearchTypeAllowed(ObjectType.POSTCODE)) {
-									return false;
-								}
-								sr.objectType = ObjectType.POSTCODE;
-								sr.priorityDistance = 0;
-							} else {
-								if ((locSpecified && !villagesBbox.contains(x, y, x, y))
-										|| !phrase.isSearchTypeAllowed(ObjectType.VILLAGE)) {
-									return false;
-								}
-								City c = null;
-								if (closestCities == null) {
-									closestCities = townCitiesQR.queryInBox(villagesBbox, new ArrayList<City>());
-								}
-								double minDist = -1;
-								double pDist = -1;
-								for (City s : closestCities) {
-									double ll = MapUtils.getDistance(s.getLocation(), object.getLocation());
-									double pd = s.getType() == CityType.CITY ? ll : ll * 10;
-									if(minDist == -1 || pd < pDist) {
-										c = s;
-										minDist = ll;
-										pDist = pd ;
-									}
-								}
-								if (c != null) {
-									sr.localeRelatedObjectName = c.getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
-									sr.relatedObject = c;
-									sr.distRelatedObjectName = minDist;
-								}
-								sr.objectType = ObjectType.VILLAGE;
-							}
-						} else {
-							return false;
-						}
-						limit ++;
-						immediateResults.add(sr);
-						return false;
-					}
-
-					@Override
-					public boolean isCancelled() {
-						return limit > LIMIT * phrase.getRadiusLevel() ||
-								resultMatcher.isCancelled();
-					}
-				};
-
 				ResultMatcher<MapObject> rawDataCollector = null;
 				if (phrase.getSettings().isExportObjects()) {
 					rawDataCollector = new ResultMatcher<MapObject>() {
@@ -514,34 +627,161 @@ public class SearchCoreFactory {
 
 				Iterator<BinaryMapIndexReader> offlineIterator = phrase.getRadiusOfflineIndexes(DEFAULT_ADDRESS_BBOX_RADIUS * 5,
 						SearchPhraseDataType.ADDRESS);
-				String wordToSearch = phrase.getUnknownWordToSearch();
-				while (offlineIterator.hasNext() && wordToSearch.length() > 0) {
-					BinaryMapIndexReader r = offlineIterator.next();
-					currentFile[0] = r;
-					immediateResults.clear();
-					SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(rm, rawDataCollector, wordToSearch.toLowerCase(),
-							phrase.isMainUnknownSearchWordComplete() ? StringMatcherMode.CHECK_EQUALS_FROM_SPACE
-									: StringMatcherMode.CHECK_STARTS_FROM_SPACE);
-					if (locSpecified) {
-						req.setBBoxRadius(loc.getLatitude(), loc.getLongitude(),
-								phrase.getRadiusSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5));
+				final String wordToSearch = phrase.getUnknownWordToSearch();
+				if (wordToSearch.length() == 0) {
+					return;
+				}
+				final ResultMatcher<MapObject> dataCollector = rawDataCollector;
+				// limit is shared by all files, as in serial search
+				final AtomicInteger limit = new AtomicInteger();
+				searchRegions(phrase, resultMatcher, offlineIterator, new RegionSearch() {
+					// results are published after file is searched as sub search reads the same file
+					final Map<BinaryMapIndexReader, List<SearchResult>> immediateResults = new HashMap<>();
+
+					@Override
+					protected void searchRegion(final BinaryMapIndexReader r, final ResultMatcher<SearchResult> regionResults)
+							throws IOException {
+						ResultMatcher<MapObject> rm = new ResultMatcher<MapObject>() {
+							@Override
+							public boolean publish(MapObject object) {
+								if (isCancelled()) {
+									return false;
+								}
+								SearchResult sr = new SearchResult(phrase);
+								sr.object = object;
+								sr.file = r;
+								sr.localeName = object.getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
+								sr.otherNames = object.getOtherNames(true);
+								sr.localeRelatedObjectName = sr.file.getRegionName();
+								sr.relatedObject = sr.file;
+								sr.location = object.getLocation();
+								sr.priorityDistance = 1;
+								sr.priority = priority;
+								int y = MapUtils.get31TileNumberY(object.getLocation().getLatitude());
+								int x = MapUtils.get31TileNumberX(object.getLocation().getLongitude());
+								List<City> closestCities = null;
+								if (object instanceof Street) {
+									// remove limitation by location
+									if (  //(locSpecified && !streetBbox.contains(x, y, x, y)) || 
+										!phrase.isSearchTypeAllowed(ObjectType.STREET)) {
+										return false;
+									}
+									if (object.getName().startsWith("<")) {
+										return false;
+									}
+
+									if (!phrase.getUnknownWordToSearchBuildingNameMatcher().matches(stripBraces(sr.localeName))) {
+										sr.priorityDistance = 5;
+									}
+									sr.objectType = ObjectType.STREET;
+									sr.localeRelatedObjectName = ((Street)object).getCity().getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
+									sr.relatedObject = ((Street)object).getCity();
+								} else if (object instanceof City) {
+									CityType type = ((City)object).getType();
+									if (type == CityType.CITY || type == CityType.TOWN) {
+										if (phrase.isNoSelectedType()) {
+											// ignore city/town
+											return false;
+										}
+										if ((locSpecified && !cityBbox.contains(x, y, x, y))
+												|| !phrase.isSearchTypeAllowed(ObjectType.CITY)) {
+											return false;
+										}
+										sr.objectType = ObjectType.CITY;
+										sr.priorityDistance = 0.1;
+									} else if (((City)object).isPostcode()) {
+										if ((locSpecified && !postcodeBbox.contains(x, y, x, y))
+												|| !phrase.isSearchTypeAllowed(ObjectType.POSTCODE)) {
+											return false;
+										}
+										sr.objectType = ObjectType.POSTCODE;
+										sr.priorityDistance = 0;
+									} else {
+										if ((locSpecified && !villagesBbox.contains(x, y, x, y))
+												|| !phrase.isSearchTypeAllowed(ObjectType.VILLAGE)) {
+											return false;
+										}
+										City c = null;
+										if (closestCities == null) {
+											closestCities = townCitiesQR.queryInBox(villagesBbox, new ArrayList<City>());
+										}
+										double minDist = -1;
+										double pDist = -1;
+										for (City s : closestCities) {
+											double ll = MapUtils.getDistance(s.getLocation(), object.getLocation());
+											double pd = s.getType() == CityType.CITY ? ll : ll * 10;
+											if(minDist == -1 || pd < pDist) {
+												c = s;
+												minDist = ll;
+												pDist = pd ;
+											}
+										}
+										if (c != null) {
+											sr.localeRelatedObjectName = c.getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
+											sr.relatedObject = c;
+											sr.distRelatedObjectName = minDist;
+										}
+										sr.objectType = ObjectType.VILLAGE;
+									}
+								} else {
+									return false;
+								}
+								if (limit.incrementAndGet() > LIMIT * phrase.getRadiusLevel()) {
+									resultMatcher.apiSearchLimitReached();
+								}
+								regionResults.publish(sr);
+								return false;
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return limit.get() > LIMIT * phrase.getRadiusLevel() ||
+										resultMatcher.isCancelled();
+							}
+						};
+
+						SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(rm, dataCollector,
+								wordToSearch.toLowerCase(),
+								phrase.isMainUnknownSearchWordComplete() ? StringMatcherMode.CHECK_EQUALS_FROM_SPACE
+										: StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+						if (locSpecified) {
+							req.setBBoxRadius(loc.getLatitude(), loc.getLongitude(),
+									phrase.getRadiusSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5));
+						}
+						r.searchAddressDataByName(req);
 					}
-					r.searchAddressDataByName(req);
-					for (SearchResult res : immediateResults) {
-						if (res.objectType == ObjectType.STREET) {
-							subSearchApiOrPublish(phrase, resultMatcher, res, streetsApi);
-						} else {
-							subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
+
+					@Override
+					protected void publishResult(BinaryMapIndexReader r, SearchResult res) {
+						List<SearchResult> results = immediateResults.get(r);
+						if (results == null) {
+							results = new ArrayList<>();
+							immediateResults.put(r, results);
 						}
+						results.add(res);
 					}
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
-				}
+
+					@Override
+					protected void regionFinished(BinaryMapIndexReader r) throws IOException {
+						List<SearchResult> results = immediateResults.remove(r);
+						if (results == null) {
+							return;
+						}
+						for (SearchResult res : results) {
+							if (res.objectType == ObjectType.STREET) {
+								subSearchApiOrPublish(phrase, resultMatcher, res, streetsApi);
+							} else {
+								subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
+							}
+						}
+					}
+				});
 			}
 		}
 	}
 
 	public static class SearchAmenityByNameAPI extends SearchBaseAPI {
-		private static final int LIMIT = 10000;
+		static final int LIMIT = 10000;
 		private static final int BBOX_RADIUS = 500 * 1000;
 		private static final int BBOX_RADIUS_INSIDE = 10000 * 1000; // to support city search for basemap
 		private static final int FIRST_WORD_MIN_LENGTH = 3;
@@ -562,12 +802,11 @@ public class SearchCoreFactory {
 			// Take into account POI [bar] - 'Hospital 512'
 			// BEFORE: it was searching exact match of whole phrase.getUnknownSearchPhrase() [ Check feedback ] 
 
-			final BinaryMapIndexReader[] currentFile = new BinaryMapIndexReader[1];
 			Iterator<BinaryMapIndexReader> offlineIterator = phrase.getRadiusOfflineIndexes(BBOX_RADIUS,
 					SearchPhraseDataType.POI);
-			String searchWord = phrase.getUnknownWordToSearch();
+			final String searchWord = phrase.getUnknownWordToSearch();
 			final NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
-			QuadRect bbox = phrase.getRadiusBBoxToSearch(BBOX_RADIUS_INSIDE);
+			final QuadRect bbox = phrase.getRadiusBBoxToSearch(BBOX_RADIUS_INSIDE);
 			final Set<String> ids = new HashSet<String>();
 
 			ResultMatcher<Amenity> rawDataCollector = null;
@@ -585,60 +824,90 @@ public class SearchCoreFactory {
 					}
 				};
 			}
-			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
-					(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
-					(int) bbox.bottom, new ResultMatcher<Amenity>() {
-						int limit = 0;
+			final ResultMatcher<Amenity> dataCollector = rawDataCollector;
+			// limit is shared by all files, as in serial search
+			final AtomicInteger limit = new AtomicInteger();
+			searchRegions(phrase, resultMatcher, offlineIterator, new RegionSearch() {
 
-						@Override
-						public boolean publish(Amenity object) {
-							if (limit++ > LIMIT) {
-								return false;
-							}
-							String poiID = object.getType().getKeyName() + "_" + object.getId();
-							if (ids.contains(poiID)) {
-								return false;
-							}
-							SearchResult sr = new SearchResult(phrase);
-							sr.otherNames = object.getOtherNames(true);
-							sr.localeName = object.getName(phrase.getSettings().getLang(),
-									phrase.getSettings().isTransliterate());
-							if (!nm.matches(sr.localeName) && !nm.matches(sr.otherNames)
-									&& !nm.matches(object.getAdditionalInfoValues(false))) {
-								return false;
-							}
-							sr.object = object;
-							sr.preferredZoom = 17;
-							sr.file = currentFile[0];
-							sr.location = object.getLocation();
-							if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
-								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
-								sr.preferredZoom = object.getSubType().equals("country") ? 7 : 13;
-							} else if (object.getSubType().equals("town")) {
-								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE;
-							} else {
-								sr.priorityDistance = 1;
-							}
-							sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
-							phrase.countUnknownWordsMatchMainResult(sr);
-							sr.objectType = ObjectType.POI;
-							resultMatcher.publish(sr);
-							ids.add(poiID);
-							return false;
-						}
+				@Override
+				protected void searchRegion(final BinaryMapIndexReader r, final ResultMatcher<SearchResult> regionResults)
+						throws IOException {
+					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
+							(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
+							(int) bbox.bottom, new ResultMatcher<Amenity>() {
 
-						@Override
-						public boolean isCancelled() {
-							return resultMatcher.isCancelled() && (limit < LIMIT);
-						}
-					}, rawDataCollector);
+								@Override
+								public boolean publish(Amenity object) {
+									if (limit.getAndIncrement() > LIMIT) {
+										resultMatcher.apiSearchLimitReached();
+										return false;
+									}
+									SearchResult sr = new SearchResult(phrase);
+									sr.otherNames = object.getOtherNames(true);
+									sr.localeName = object.getName(phrase.getSettings().getLang(),
+											phrase.getSettings().isTransliterate());
+									if (!nm.matches(sr.localeName) && !nm.matches(sr.otherNames)
+											&& !nm.matches(object.getAdditionalInfoValues(false))) {
+										return false;
+									}
+									sr.object = object;
+									sr.preferredZoom = 17;
+									sr.file = r;
+									sr.location = object.getLocation();
+									if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
+										sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
+										sr.preferredZoom = object.getSubType().equals("country") ? 7 : 13;
+									} else if (object.getSubType().equals("town")) {
+										sr.priorityDistance = SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE;
+									} else {
+										sr.priorityDistance = 1;
+									}
+									sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
+									phrase.countUnknownWordsMatchMainResult(sr);
+									sr.objectType = ObjectType.POI;
+									regionResults.publish(sr);
+									return false;
+								}
 
-			while (offlineIterator.hasNext()) {
-				BinaryMapIndexReader r = offlineIterator.next();
-				currentFile[0] = r;
-				r.searchPoiByName(req);
+								@Override
+								public boolean isCancelled() {
+									return resultMatcher.isCancelled() && (limit.get() < LIMIT);
+								}
+							}, dataCollector);
+					r.searchPoiByName(req);
+				}
 
-				resultMatcher.apiSearchRegionFinished(this, r, phrase);
+				@Override
+				protected void publishResult(BinaryMapIndexReader r, SearchResult res) {
+					Amenity object = (Amenity) res.object;
+					// same poi could be present in several files
+					if (ids.add(object.getType().getKeyName() + "_" + object.getId())) {
+						resultMatcher.publish(res);
+					}
+				}
+			});
+			return true;
+		}
+
+		@Override
+		public boolean refineSearch(SearchPhrase previous, List<SearchResult> previousResults, SearchPhrase phrase,
+									SearchResultMatcher resultMatcher) throws IOException {
+			if (!isRefinementAvailable(previousResults)) {
+				return false;
+			}
+			NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
+			for (SearchResult r : previousResults) {
+				if (resultMatcher.isCancelled()) {
+					break;
+				}
+				Amenity object = (Amenity) r.object;
+				SearchResult res = r.copy(phrase);
+				res.localeName = object.getName(phrase.getSettings().getLang(), phrase.getSettings().isTransliterate());
+				if (nm.matches(res.localeName) || nm.matches(res.otherNames)
+						|| nm.matches(object.getAdditionalInfoValues(false))) {
+					phrase.countUnknownWordsMatchMainResult(res);
+					resultMatcher.publish(res);
+				}
 			}
 			return true;
 		}
@@ -1008,7 +1277,7 @@ public class SearchCoreFactory {
 			SearchPoiTypeFilter poiTypeFilter = null;
 			String nameFilter = null;
 			int countExtraWords = 0;
-			Set<String> poiAdditionals = new LinkedHashSet<>();
+			final Set<String> poiAdditionals = new LinkedHashSet<>();
 			if (phrase.isLastWord(ObjectType.POI_TYPE)) {
 				Object obj = phrase.getLastSelectedWord().getResult().object;
 				if (obj instanceof AbstractPoiType) {
@@ -1064,28 +1333,59 @@ public class SearchCoreFactory {
 						radius = BBOX_RADIUS_NEAREST;
 					}
 				}
-				QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
+				final QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
 				List<BinaryMapIndexReader> offlineIndexes = phrase.getOfflineIndexes();
-				Set<String> searchedPois = new TreeSet<>();
-				for (BinaryMapIndexReader r : offlineIndexes) {
-					ResultMatcher<Amenity> rm = getResultMatcher(phrase, poiTypeFilter, resultMatcher, nameFilter, r,
-							searchedPois, poiAdditionals, countExtraWords);
-					if (poiTypeFilter instanceof CustomSearchPoiFilter) {
-						rm = ((CustomSearchPoiFilter) poiTypeFilter).wrapResultMatcher(rm);
+				// same poi could be present in several files, first file wins as in serial search:
+				// pois of searched files are checked by search thread, pois of file are collected by its worker
+				final Set<String> searchedPois = new TreeSet<String>();
+				final Map<BinaryMapIndexReader, Set<String>> filePois = new ConcurrentHashMap<BinaryMapIndexReader, Set<String>>();
+				final SearchPoiTypeFilter typeFilter = poiTypeFilter;
+				final String filter = nameFilter;
+				final int extraWords = countExtraWords;
+				searchRegions(phrase, resultMatcher, offlineIndexes.iterator(), new RegionSearch() {
+
+					@Override
+					protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<SearchResult> regionResults)
+							throws IOException {
+						Set<String> pois = new TreeSet<String>();
+						filePois.put(r, pois);
+						ResultMatcher<Amenity> rm = getResultMatcher(phrase, resultMatcher, regionResults, filter, r,
+								pois, poiAdditionals, extraWords);
+						if (typeFilter instanceof CustomSearchPoiFilter) {
+							rm = ((CustomSearchPoiFilter) typeFilter).wrapResultMatcher(rm);
+						}
+						SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
+								(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, typeFilter, rm);
+						r.searchPoi(req);
 					}
-					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
-							(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, poiTypeFilter, rm);
-					r.searchPoi(req);
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
-				}
+
+					@Override
+					protected void publishResult(BinaryMapIndexReader r, SearchResult res) {
+						if (!searchedPois.contains(getPoiId((Amenity) res.object))) {
+							resultMatcher.publish(res);
+						}
+					}
+
+					@Override
+					protected void regionFinished(BinaryMapIndexReader r) {
+						Set<String> pois = filePois.remove(r);
+						if (pois != null) {
+							searchedPois.addAll(pois);
+						}
+					}
+				});
 			}
 			return true;
 		}
 
 
-		private ResultMatcher<Amenity> getResultMatcher(final SearchPhrase phrase, final SearchPoiTypeFilter poiTypeFilter,
-														final SearchResultMatcher resultMatcher, final String nameFilter,
-														final BinaryMapIndexReader selected, final Set<String> searchedPois,
+		private static String getPoiId(Amenity object) {
+			return object.getType().getKeyName() + "_" + object.getId();
+		}
+
+		private ResultMatcher<Amenity> getResultMatcher(final SearchPhrase phrase, final SearchResultMatcher resultMatcher,
+														final ResultMatcher<SearchResult> regionResults, final String nameFilter,
+														final BinaryMapIndexReader selected, final Set<String> filePois,
 														final Collection<String> poiAdditionals, final int countExtraWords) {
 
 
@@ -1098,8 +1398,7 @@ public class SearchCoreFactory {
 						resultMatcher.exportObject(phrase, object);
 					}
 					SearchResult res = new SearchResult(phrase);
-					String poiID = object.getType().getKeyName() + "_" + object.getId();
-					if (!searchedPois.add(poiID)) {
+					if (!filePois.add(getPoiId(object))) {
 						return false;
 					}
 					if (object.isClosed()) {
@@ -1150,7 +1449,7 @@ public class SearchCoreFactory {
 					res.priority = SEARCH_AMENITY_BY_TYPE_PRIORITY;
 					res.priorityDistance = 1;
 					res.objectType = ObjectType.POI;
-					resultMatcher.publish(res);
+					regionResults.publish(res);
 					return false;
 				}
 
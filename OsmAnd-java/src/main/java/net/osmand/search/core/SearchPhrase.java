@@ -576,6 +576,17 @@ public class SearchPhrase {
 	}
 	
 	
+	/**
+	 * Creates all lazily initialized name matchers, so phrase could be used to match objects from several threads
+	 */
+	public void initNameStringMatchers() {
+		getMainUnknownNameStringMatcher();
+		getFirstUnknownNameStringMatcher();
+		for (int i = 0; i < otherUnknownWords.size(); i++) {
+			getUnknownNameStringMatcher(i);
+		}
+	}
+
 	private NameStringMatcher getNameStringMatcher(String word, boolean complete) {
 		return new NameStringMatcher(word, 
 				(complete ?  
@@ -643,6 +654,34 @@ public class SearchPhrase {
 		return words.isEmpty() && unknownSearchPhrase.isEmpty();
 	}
 
+	/**
+	 * Phrase refines previous one when more characters are typed to its only (incomplete) unknown word
+	 * with same selected words and settings, so objects matching phrase are subset of objects matching previous one.
+	 */
+	public boolean isRefinementOf(SearchPhrase previous) {
+		if (previous == null || previous == this || settings == null || !settings.hasSameSearchScope(previous.settings)) {
+			return false;
+		}
+		if (words.size() != previous.words.size()) {
+			return false;
+		}
+		for (int i = 0; i < words.size(); i++) {
+			SearchWord w = words.get(i);
+			SearchWord pw = previous.words.get(i);
+			if (w.getResult() != pw.getResult() || !w.getWord().equals(pw.getWord())) {
+				return false;
+			}
+		}
+		if (hasMoreThanOneUnknownSearchWord() || previous.hasMoreThanOneUnknownSearchWord()
+				|| lastUnknownSearchWordComplete || previous.lastUnknownSearchWordComplete) {
+			return false;
+		}
+		String prevWord = previous.getUnknownWordToSearch();
+		return prevWord.length() > 0 && getUnknownWordToSearch().length() > prevWord.length()
+				&& getUnknownWordToSearch().startsWith(prevWord)
+				&& firstUnknownSearchWord.startsWith(previous.firstUnknownSearchWord);
+	}
+
 	public SearchWord getLastSelectedWord() {
 		if(words.isEmpty()) {
 			return null;
@@ -779,6 +818,23 @@ public class SearchPhrase {
 		public boolean matches(String name) {
 			return sm.matches(name);
 		}
+
+		// matches locale name or other names of result by collation keys calculated once per result
+		public boolean matchesNames(SearchResult sr) {
+			SearchResult.NameKeys keys = sr.getNameKeys();
+			if (sm.matches(keys.localeName, keys.localeNameKeys)) {
+				return true;
+			}
+			if (keys.otherNames != null) {
+				int i = 0;
+				for (String v : keys.otherNames) {
+					if (sm.matches(v, keys.otherNameKeys[i++])) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
 		
 	}
 	
@@ -793,6 +849,7 @@ public class SearchPhrase {
 	
 	public int countUnknownWordsMatch(SearchResult sr, String localeName, Collection<String> otherNames, int amountMatchingWords) {
 		int r = 0;
+		boolean ownNames = localeName != null && localeName == sr.localeName && otherNames == sr.otherNames;
 		if (otherUnknownWords.size() > 0) {
 			for (int i = 0; i < otherUnknownWords.size(); i++) {
 				boolean match = false;
@@ -800,7 +857,7 @@ public class SearchPhrase {
 					match = true;
 				} else {
 					NameStringMatcher ms = getUnknownNameStringMatcher(i);
-					if (ms.matches(localeName) || ms.matches(otherNames)) {
+					if (ownNames ? ms.matchesNames(sr) : (ms.matches(localeName) || ms.matches(otherNames))) {
 						match = true;
 					}
 				}
@@ -817,9 +874,9 @@ public class SearchPhrase {
 			sr.firstUnknownWordMatches = true;
 			r++;
 		} else {
+			NameStringMatcher ms = getFirstUnknownNameStringMatcher();
 			boolean match = localeName.equals(getFirstUnknownSearchWord())
-					|| getFirstUnknownNameStringMatcher().matches(localeName)
-					|| getFirstUnknownNameStringMatcher().matches(otherNames);
+					|| (ownNames ? ms.matchesNames(sr) : (ms.matches(localeName) || ms.matches(otherNames)));
 			if(match) {
 				r++;
 			}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import net.osmand.CollatorStringMatcher;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.data.City;
 import net.osmand.data.LatLon;
@@ -44,10 +45,63 @@ public class SearchResult {
 	public double distRelatedObjectName;
 
 	private double unknownPhraseMatchWeight = 0;
+	// collation keys of names, so result is matched by every word of phrase without collator
+	private volatile NameKeys nameKeys;
+
+	static class NameKeys {
+		final String localeName;
+		final Collection<String> otherNames;
+		final String localeNameKeys;
+		final String[] otherNameKeys;
+
+		NameKeys(String localeName, Collection<String> otherNames) {
+			this.localeName = localeName;
+			this.otherNames = otherNames;
+			this.localeNameKeys = localeName == null ? null : CollatorStringMatcher.getNameKeys(localeName);
+			this.otherNameKeys = new String[otherNames == null ? 0 : otherNames.size()];
+			int i = 0;
+			if (otherNames != null) {
+				for (String otherName : otherNames) {
+					otherNameKeys[i++] = otherName == null ? null : CollatorStringMatcher.getNameKeys(otherName);
+				}
+			}
+		}
+	}
 
 	public SearchResult(SearchPhrase sp) {
 		this.requiredSearchPhrase = sp;
 	}
+
+	// copy of result found for previous phrase to publish it for refined phrase (matched words are not copied)
+	SearchResult copy(SearchPhrase sp) {
+		SearchResult r = new SearchResult(sp);
+		r.parentSearchResult = parentSearchResult;
+		r.object = object;
+		r.objectType = objectType;
+		r.file = file;
+		r.priority = priority;
+		r.priorityDistance = priorityDistance;
+		r.location = location;
+		r.preferredZoom = preferredZoom;
+		r.localeName = localeName;
+		r.otherNames = otherNames;
+		r.localeRelatedObjectName = localeRelatedObjectName;
+		r.relatedObject = relatedObject;
+		r.distRelatedObjectName = distRelatedObjectName;
+		return r;
+	}
+
+	// keys are recalculated if names were replaced
+	NameKeys getNameKeys() {
+		NameKeys keys = nameKeys;
+		if (keys == null || keys.localeName != localeName || keys.otherNames != otherNames
+				|| keys.otherNameKeys.length != (otherNames == null ? 0 : otherNames.size())) {
+			keys = new NameKeys(localeName, otherNames);
+			nameKeys = keys;
+		}
+		return keys;
+	}
+
 	private static final double MAX_TYPE_WEIGHT = 10;
 
 	// maximum corresponds to the top entry
@@ -6,6 +6,7 @@ import net.osmand.data.LatLon;
 
 import net.osmand.map.OsmandRegions;
 import net.osmand.map.WorldRegion;
+import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
 import org.apache.commons.logging.Log;
 import org.json.JSONArray;
@@ -13,6 +14,7 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -34,6 +36,7 @@ public class SearchSettings {
 	private ObjectType[] searchTypes;
 	private boolean emptyQueryAllowed;
 	private boolean sortByName;
+	private int searchThreads = 1;
 	private SearchExportSettings exportSettings; // = new SearchExportSettings(true, true, -1);
 
 	public SearchSettings(SearchSettings s) {
@@ -49,6 +52,7 @@ public class SearchSettings {
 			this.searchTypes = s.searchTypes;
 			this.emptyQueryAllowed = s.emptyQueryAllowed;
 			this.sortByName = s.sortByName;
+			this.searchThreads = s.searchThreads;
 			this.exportSettings = s.exportSettings;
 		}
 	}
@@ -152,6 +156,38 @@ public class SearchSettings {
 		return s;
 	}
 
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	// number of offline indexes searched concurrently by name and type searches, 1 - search files one by one
+	public SearchSettings setSearchThreads(int searchThreads) {
+		SearchSettings s = new SearchSettings(this);
+		s.searchThreads = Math.max(1, searchThreads);
+		return s;
+	}
+
+	/**
+	 * @return true if settings define same objects to search (radius, location, files, language and search types),
+	 * export mode is never the same scope as refined search doesn't export objects
+	 */
+	public boolean hasSameSearchScope(SearchSettings s) {
+		if (isExportObjects() || (s != null && s.isExportObjects())) {
+			return false;
+		}
+		if (s == this) {
+			return true;
+		}
+		return s != null && radiusLevel == s.radiusLevel
+				&& transliterateIfMissing == s.transliterateIfMissing
+				&& emptyQueryAllowed == s.emptyQueryAllowed
+				&& Algorithms.objectEquals(lang, s.lang)
+				&& Algorithms.objectEquals(regionLang, s.regionLang)
+				&& Algorithms.objectEquals(originalLocation, s.originalLocation)
+				&& Arrays.equals(searchTypes, s.searchTypes)
+				&& offlineIndexes.equals(s.offlineIndexes);
+	}
+
 	public SearchExportSettings getExportSettings() {
 		return exportSettings;
 	}
@@ -219,6 +255,7 @@ public class SearchSettings {
 		json.put("transliterateIfMissing", transliterateIfMissing);
 		json.put("emptyQueryAllowed", emptyQueryAllowed);
 		json.put("sortByName", sortByName);
+		json.put("searchThreads", searchThreads);
 		if (searchTypes != null && searchTypes.length > 0) {
 			JSONArray searchTypesArr = new JSONArray();
 			for (ObjectType type : searchTypes) {
@@ -240,6 +277,7 @@ public class SearchSettings {
 		s.transliterateIfMissing = json.optBoolean("transliterateIfMissing", false);
 		s.emptyQueryAllowed = json.optBoolean("emptyQueryAllowed", false);
 		s.sortByName = json.optBoolean("sortByName", false);
+		s.searchThreads = Math.max(1, json.optInt("searchThreads", 1));
 		if (json.has("lang")) {
 			s.lang = json.getString("lang");
 		}
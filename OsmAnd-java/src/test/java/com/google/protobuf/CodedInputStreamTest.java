@@ -0,0 +1,85 @@
+package com.google.protobuf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodedInputStreamTest {
+
+	private static final int MESSAGE_FIELD = 1;
+	private static final int VALUE_FIELD = 2;
+
+	// message {150, "osmand", fixed 7} followed by value 300
+	private static File writeFile() throws IOException {
+		File file = File.createTempFile("coded", ".bin");
+		file.deleteOnExit();
+		FileOutputStream fout = new FileOutputStream(file);
+		CodedOutputStream cos = CodedOutputStream.newInstance(fout);
+		int size = CodedOutputStream.computeRawVarint32Size(150) + CodedOutputStream.computeStringSizeNoTag("osmand") + 4;
+		cos.writeTag(MESSAGE_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+		cos.writeRawVarint32(size);
+		cos.writeRawVarint32(150);
+		cos.writeStringNoTag("osmand");
+		cos.writeRawLittleEndian32(7);
+		cos.writeUInt32(VALUE_FIELD, 300);
+		cos.flush();
+		fout.close();
+		return file;
+	}
+
+	@Test
+	public void testMappedLimitsSeekAndSkip() throws IOException {
+		File file = writeFile();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			ByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			CodedInputStream cis = CodedInputStream.newInstance(mapped);
+			Assert.assertEquals(MESSAGE_FIELD, WireFormat.getTagFieldNumber(cis.readTag()));
+			int length = cis.readRawVarint32();
+			int offset = cis.getTotalBytesRead();
+			int oldLimit = cis.pushLimit(length);
+			Assert.assertEquals(length, cis.getBytesUntilLimit());
+			Assert.assertEquals(150, cis.readRawVarint32());
+			Assert.assertEquals("osmand", cis.readString());
+			cis.skipRawBytes(4);
+			Assert.assertTrue(cis.isAtEnd());
+
+			// seek inside limit
+			cis.seek(offset);
+			Assert.assertEquals(150, cis.readRawVarint32());
+			try {
+				cis.skipRawBytes(length);
+				Assert.fail("Skipped beyond limit");
+			} catch (InvalidProtocolBufferException e) {
+				// expected
+			}
+			try {
+				cis.seek(offset + length + 1);
+				Assert.fail("Seek beyond limit");
+			} catch (InvalidProtocolBufferException e) {
+				// expected
+			}
+			cis.seek(offset + length);
+			Assert.assertTrue(cis.isAtEnd());
+
+			cis.popLimit(oldLimit);
+			Assert.assertEquals(VALUE_FIELD, WireFormat.getTagFieldNumber(cis.readTag()));
+			Assert.assertEquals(300, cis.readRawVarint32());
+			Assert.assertTrue(cis.isAtEnd());
+			try {
+				cis.seek(raf.length() + 1);
+				Assert.fail("Seek beyond end of file");
+			} catch (InvalidProtocolBufferException e) {
+				// expected
+			}
+		} finally {
+			raf.close();
+		}
+	}
+}
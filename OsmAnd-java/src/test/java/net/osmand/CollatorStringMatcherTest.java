@@ -0,0 +1,87 @@
+package net.osmand;
+
+import java.util.Locale;
+import java.util.Random;
+
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CollatorStringMatcherTest {
+
+	private static final String CHARS = "aaeeiouzcsnlhy AEZ-.'1äáàâåæçčéèëêíîïñňóöôøšßşıüúůžżźёеийщъыьэюяΑάαβγδ ў́̈";
+	private static final String[] LOCALES = { "en", "de", "ru", "tr", "cs", "hu", "da", "pl", "el", "sv" };
+
+	private Locale defaultLocale;
+
+	@Before
+	public void setUp() {
+		defaultLocale = Locale.getDefault();
+	}
+
+	@After
+	public void tearDown() {
+		Locale.setDefault(defaultLocale);
+	}
+
+	@Test
+	public void testMatchesByKeys() {
+		Locale.setDefault(Locale.ENGLISH);
+		Assert.assertTrue(matches("berl", "Am Berliner Tor", StringMatcherMode.CHECK_STARTS_FROM_SPACE));
+		Assert.assertTrue(matches("strasse", "Hauptstraße", StringMatcherMode.CHECK_CONTAINS));
+		Assert.assertTrue(matches("cafe", "Café Müller", StringMatcherMode.CHECK_EQUALS_FROM_SPACE));
+		Assert.assertTrue(matches("muller", "Café Müller", StringMatcherMode.CHECK_STARTS_FROM_SPACE_NOT_BEGINNING));
+		Assert.assertFalse(matches("cafe", "Café Müller", StringMatcherMode.CHECK_STARTS_FROM_SPACE_NOT_BEGINNING));
+		Assert.assertTrue(matches("saint-jean", "Saint Jean", StringMatcherMode.CHECK_EQUALS));
+		Assert.assertFalse(matches("berlin", "Berliner", StringMatcherMode.CHECK_EQUALS_FROM_SPACE));
+		Assert.assertTrue(matches("москва", "Москва", StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+	}
+
+	@Test
+	public void testContractionsAreMatchedByCollator() {
+		Locale.setDefault(new Locale("hu"));
+		Assert.assertNull(CollatorStringMatcher.getNameKeys("Szeged"));
+		Assert.assertTrue(matches("sz", "Szeged", StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+		Assert.assertFalse(matches("s", "Szeged", StringMatcherMode.CHECK_EQUALS_FROM_SPACE));
+	}
+
+	@Test
+	public void testSameResultAsCollator() {
+		Random rnd = new Random(7);
+		for (String loc : LOCALES) {
+			Locale.setDefault(new Locale(loc));
+			Collator collator = OsmAndCollator.primaryCollator();
+			for (int i = 0; i < 1000; i++) {
+				String part = randomString(rnd, 1 + rnd.nextInt(4)).toLowerCase(Locale.getDefault()).replace('.', ' ')
+						.replace("ß", "ss");
+				StringMatcherMode mode = StringMatcherMode.values()[rnd.nextInt(StringMatcherMode.values().length)];
+				CollatorStringMatcher matcher = new CollatorStringMatcher(part, mode);
+				for (int j = 0; j < 10; j++) {
+					String name = rnd.nextBoolean() ? randomString(rnd, rnd.nextInt(12)) : part.toUpperCase() + randomString(rnd, 3);
+					boolean expected = CollatorStringMatcher.cmatches(collator, name, part, mode);
+					String msg = loc + " " + mode + " '" + part + "' in '" + name + "'";
+					Assert.assertEquals(msg, expected, matcher.matches(name));
+					Assert.assertEquals(msg, expected, matcher.matches(name, CollatorStringMatcher.getNameKeys(name)));
+				}
+			}
+		}
+	}
+
+	private static boolean matches(String part, String name, StringMatcherMode mode) {
+		CollatorStringMatcher matcher = new CollatorStringMatcher(part, mode);
+		boolean res = matcher.matches(name);
+		Assert.assertEquals(res, matcher.matches(name, CollatorStringMatcher.getNameKeys(name)));
+		return res;
+	}
+
+	private static String randomString(Random rnd, int length) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			b.append(CHARS.charAt(rnd.nextInt(CHARS.length())));
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,156 @@
+package net.osmand;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import net.osmand.GPXUtilities.GPXFile;
+import net.osmand.GPXUtilities.GPXStreamWriter;
+import net.osmand.GPXUtilities.GPXTrackAnalysis;
+import net.osmand.GPXUtilities.GPXTrackPointsAnalysis;
+import net.osmand.GPXUtilities.GPXTrackPointsListener;
+import net.osmand.GPXUtilities.Track;
+import net.osmand.GPXUtilities.TrkSegment;
+import net.osmand.GPXUtilities.WptPt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GPXStreamingTest {
+
+	private static String generateGpx(Random r) {
+		GPXFile file = new GPXFile("test");
+		file.addWptPt(50.5, 10.5, 0, "desc", "wpt", "category", 0);
+		long time = 1600000000000L;
+		for (int t = 0; t < 3; t++) {
+			Track track = new Track();
+			track.name = "Track " + t;
+			file.tracks.add(track);
+			for (int s = 0; s < 3; s++) {
+				TrkSegment segment = new TrkSegment();
+				track.segments.add(segment);
+				// segments with 1 point are not analysed
+				int n = s == 1 ? 1 : 50 + r.nextInt(200);
+				double lat = 50 + r.nextDouble();
+				double lon = 10 + r.nextDouble();
+				double ele = 100;
+				for (int i = 0; i < n; i++) {
+					WptPt p = new WptPt();
+					lat += (r.nextDouble() - 0.5) * 0.001;
+					lon += (r.nextDouble() - 0.5) * 0.001;
+					ele += r.nextGaussian() * 5;
+					time += r.nextInt(10) * 1000;
+					p.lat = lat;
+					p.lon = lon;
+					p.ele = ele;
+					p.time = time;
+					p.speed = r.nextDouble() * 10;
+					p.getExtensionsToWrite().put("hr", String.valueOf(60 + r.nextInt(100)));
+					segment.points.add(p);
+				}
+			}
+		}
+		StringWriter writer = new StringWriter();
+		Assert.assertNull(GPXUtilities.writeGpx(writer, file));
+		return writer.toString();
+	}
+
+	private static ByteArrayInputStream stream(String gpx) throws IOException {
+		return new ByteArrayInputStream(gpx.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void testStreamingAnalysis() throws IOException {
+		String gpx = generateGpx(new Random(1));
+		GPXTrackAnalysis expected = GPXUtilities.loadGPXFile(stream(gpx)).getAnalysis(0);
+		GPXTrackPointsAnalysis listener = new GPXTrackPointsAnalysis();
+		GPXFile file = GPXUtilities.loadGPXFile(stream(gpx), null, listener);
+		Assert.assertNull(file.error);
+		for (Track track : file.tracks) {
+			for (TrkSegment segment : track.segments) {
+				Assert.assertTrue(segment.points.isEmpty());
+			}
+		}
+		GPXTrackAnalysis analysis = listener.getAnalysis(file, 0);
+		Assert.assertEquals(expected.points, analysis.points);
+		Assert.assertEquals(expected.totalTracks, analysis.totalTracks);
+		Assert.assertEquals(expected.wptPoints, analysis.wptPoints);
+		Assert.assertEquals(expected.totalDistance, analysis.totalDistance, 0);
+		Assert.assertEquals(expected.timeSpan, analysis.timeSpan);
+		Assert.assertEquals(expected.timeMoving, analysis.timeMoving);
+		Assert.assertEquals(expected.diffElevationUp, analysis.diffElevationUp, 0);
+		Assert.assertEquals(expected.diffElevationDown, analysis.diffElevationDown, 0);
+		Assert.assertEquals(expected.minElevation, analysis.minElevation, 0);
+		Assert.assertEquals(expected.maxElevation, analysis.maxElevation, 0);
+		Assert.assertEquals(expected.avgSpeed, analysis.avgSpeed, 0);
+		Assert.assertEquals(expected.maxSpeed, analysis.maxSpeed, 0);
+		Assert.assertEquals(expected.left, analysis.left, 0);
+		Assert.assertEquals(expected.right, analysis.right, 0);
+		Assert.assertEquals(expected.top, analysis.top, 0);
+		Assert.assertEquals(expected.bottom, analysis.bottom, 0);
+		Assert.assertTrue(analysis.elevationData.isEmpty());
+	}
+
+	@Test
+	public void testStreamWriterSameAsWriteGpx() throws IOException {
+		String gpx = generateGpx(new Random(2));
+		GPXFile loaded = GPXUtilities.loadGPXFile(stream(gpx));
+		StringWriter expected = new StringWriter();
+		Assert.assertNull(GPXUtilities.writeGpx(expected, loaded));
+
+		// header (metadata and waypoints) of loaded file, tracks are copied point by point
+		StringWriter output = new StringWriter();
+		final GPXStreamWriter writer = new GPXStreamWriter(output, loaded);
+		final int[] points = new int[1];
+		GPXFile file = GPXUtilities.loadGPXFile(stream(gpx), null, new GPXTrackPointsListener() {
+
+			private Track track;
+
+			@Override
+			public void segmentStart(Track track, TrkSegment segment) {
+				try {
+					if (this.track != track) {
+						writer.startTrack(track);
+						this.track = track;
+					}
+					writer.startSegment();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			@Override
+			public void trackPoint(Track track, TrkSegment segment, WptPt point) {
+				try {
+					writer.writePoint(point);
+					points[0]++;
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			@Override
+			public void segmentEnd(Track track, TrkSegment segment) {
+				try {
+					writer.endSegment(segment);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			@Override
+			public void trackEnd(Track track) {
+				try {
+					writer.endTrack(track);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		writer.finish();
+		Assert.assertNull(file.error);
+		Assert.assertEquals(loaded.getAnalysis(0).points + 3, points[0]);
+		Assert.assertEquals(expected.toString(), output.toString());
+	}
+}
@@ -0,0 +1,125 @@
+package net.osmand;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.osmand.GPXUtilities.GPXTrackAnalysis;
+import net.osmand.GPXUtilities.TrackColumns;
+import net.osmand.GPXUtilities.TrkSegment;
+import net.osmand.GPXUtilities.WptPt;
+import net.osmand.router.RouteColorize;
+import net.osmand.router.RouteColorize.ColorizationType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TrackColumnsTest {
+
+	private static TrkSegment generateSegment(Random r, int n) {
+		TrkSegment segment = new TrkSegment();
+		double lat = 50 + r.nextDouble();
+		double lon = 10 + r.nextDouble();
+		double ele = 100;
+		long time = 1600000000000L;
+		for (int i = 0; i < n; i++) {
+			WptPt p = new WptPt();
+			lat += (r.nextDouble() - 0.5) * 0.001;
+			lon += (r.nextDouble() - 0.5) * 0.001;
+			ele += r.nextGaussian() * 5;
+			time += r.nextInt(10) * 1000;
+			p.lat = lat;
+			p.lon = lon;
+			// some points without elevation
+			p.ele = r.nextInt(10) == 0 ? Double.NaN : ele;
+			p.time = time;
+			p.speed = r.nextInt(4) == 0 ? 0 : r.nextDouble() * 10;
+			p.heading = r.nextFloat() * 360;
+			segment.points.add(p);
+		}
+		return segment;
+	}
+
+	private static void assertAnalysisEquals(GPXTrackAnalysis expected, GPXTrackAnalysis analysis) {
+		Assert.assertEquals(expected.points, analysis.points);
+		Assert.assertEquals(expected.totalDistance, analysis.totalDistance, 0);
+		Assert.assertEquals(expected.timeSpan, analysis.timeSpan);
+		Assert.assertEquals(expected.timeMoving, analysis.timeMoving);
+		Assert.assertEquals(expected.diffElevationUp, analysis.diffElevationUp, 0);
+		Assert.assertEquals(expected.diffElevationDown, analysis.diffElevationDown, 0);
+		Assert.assertEquals(expected.avgElevation, analysis.avgElevation, 0);
+		Assert.assertEquals(expected.avgSpeed, analysis.avgSpeed, 0);
+		Assert.assertEquals(expected.maxSpeed, analysis.maxSpeed, 0);
+		Assert.assertEquals(expected.metricEnd, analysis.metricEnd, 0);
+		Assert.assertEquals(expected.secondaryMetricEnd, analysis.secondaryMetricEnd, 0);
+		Assert.assertEquals(expected.locationStart.lat, analysis.locationStart.lat, 0);
+		Assert.assertEquals(expected.locationEnd.lon, analysis.locationEnd.lon, 0);
+		Assert.assertEquals(expected.speedData.size(), analysis.speedData.size());
+		for (int i = 0; i < expected.speedData.size(); i++) {
+			Assert.assertEquals(expected.speedData.get(i).speed, analysis.speedData.get(i).speed, 0);
+			Assert.assertEquals(expected.elevationData.get(i).distance, analysis.elevationData.get(i).distance, 0);
+		}
+	}
+
+	@Test
+	public void testAnalysisAndSplitsSameAsSegment() {
+		Random r = new Random(1);
+		for (int t = 0; t < 5; t++) {
+			TrkSegment segment = generateSegment(r, 100 + r.nextInt(500));
+			TrackColumns columns = TrackColumns.fromSegment(segment);
+			Assert.assertEquals(segment.points.size(), columns.size());
+			assertAnalysisEquals(GPXTrackAnalysis.segment(0, segment), GPXTrackAnalysis.segment(0, columns));
+
+			List<GPXTrackAnalysis> expected = segment.splitByDistance(500, false);
+			List<GPXTrackAnalysis> splits = columns.splitByDistance(500, false);
+			Assert.assertEquals(expected.size(), splits.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertAnalysisEquals(expected.get(i), splits.get(i));
+			}
+			expected = segment.splitByTime(300, false);
+			splits = columns.splitByTime(300, false);
+			Assert.assertEquals(expected.size(), splits.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertAnalysisEquals(expected.get(i), splits.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedColumns() throws IOException {
+		TrkSegment segment = generateSegment(new Random(2), 1000);
+		TrackColumns columns = TrackColumns.fromSegment(segment);
+		byte[] data = columns.compress();
+		// coordinates deltas take ~3 bytes instead of 8
+		Assert.assertTrue(data.length < columns.size() * 24);
+		TrackColumns decompressed = TrackColumns.decompress(data);
+		Assert.assertEquals(columns.size(), decompressed.size());
+		for (int i = 0; i < columns.size(); i++) {
+			Assert.assertEquals(columns.getLatitude(i), decompressed.getLatitude(i), 1e-7);
+			Assert.assertEquals(columns.getLongitude(i), decompressed.getLongitude(i), 1e-7);
+			Assert.assertEquals(columns.getTime(i), decompressed.getTime(i));
+			Assert.assertEquals(columns.getElevation(i), decompressed.getElevation(i), 0.01);
+			Assert.assertEquals(columns.getSpeed(i), decompressed.getSpeed(i), 0.01);
+			Assert.assertEquals(columns.getHeading(i), decompressed.getHeading(i), 0.01);
+			Assert.assertTrue(Double.isNaN(decompressed.getHdop(i)));
+		}
+		TrkSegment restored = decompressed.toSegment();
+		Assert.assertEquals(segment.points.size(), restored.points.size());
+		Assert.assertEquals(GPXTrackAnalysis.segment(0, segment).totalDistance,
+				GPXTrackAnalysis.segment(0, restored).totalDistance, 1);
+	}
+
+	@Test
+	public void testColorizeColumns() {
+		TrkSegment segment = generateSegment(new Random(3), 300);
+		List<TrackColumns> columns = Collections.singletonList(TrackColumns.fromSegment(segment));
+		GPXTrackAnalysis analysis = GPXTrackAnalysis.segment(0, segment);
+		RouteColorize colorize = new RouteColorize(15, columns, null, ColorizationType.SPEED, 0);
+		Assert.assertEquals(segment.points.size(), colorize.values.length);
+		for (int i = 0; i < segment.points.size(); i++) {
+			Assert.assertEquals(segment.points.get(i).lat, colorize.latitudes[i], 0);
+			Assert.assertEquals(analysis.speedData.get(i).speed, colorize.values[i], 0);
+		}
+	}
+}
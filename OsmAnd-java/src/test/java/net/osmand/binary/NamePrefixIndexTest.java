@@ -0,0 +1,379 @@
+package net.osmand.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import net.osmand.Collator;
+import net.osmand.CollatorStringMatcher;
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.OsmAndCollator;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.NamePrefixIndex.PrefixTable;
+import net.osmand.binary.NamePrefixIndex.PrefixTableBuilder;
+import net.osmand.data.Amenity;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NamePrefixIndexTest {
+
+	private static final String CHARS = "abceéoö";
+
+	private static String randomKey(Random r) {
+		int len = 1 + r.nextInt(4);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < len; i++) {
+			sb.append(CHARS.charAt(r.nextInt(CHARS.length())));
+		}
+		return sb.toString();
+	}
+
+	// keys matched by BinaryMapIndexReader.readIndexedStringTable (with best matching)
+	private static Set<String> matchTable(Collator collator, List<String> keys, String query) {
+		Set<String> res = new TreeSet<String>();
+		int charMatches = 0;
+		for (String key : keys) {
+			int matched = -1;
+			if (CollatorStringMatcher.cmatches(collator, key, query, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
+				matched = query.length();
+			} else if (CollatorStringMatcher.cmatches(collator, query, key, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
+				matched = key.length();
+			}
+			if (matched >= charMatches) {
+				if (matched > charMatches) {
+					charMatches = matched;
+					res.clear();
+				}
+				res.add(NamePrefixIndex.normalize(key));
+			}
+		}
+		return res;
+	}
+
+	private static Set<String> matchPrefixTable(PrefixTable table, List<String> keys, String query) {
+		Set<String> res = new TreeSet<String>();
+		int[] range = table.findAtoms(query);
+		for (int i = range[0]; i < range[1]; i++) {
+			// atom shift is index of key
+			res.add(NamePrefixIndex.normalize(keys.get(table.shifts[i])));
+		}
+		return res;
+	}
+
+	@Test
+	public void testFindAtomsMatchesIndexedStringTable() {
+		Random r = new Random(7);
+		Collator collator = OsmAndCollator.primaryCollator();
+		for (int test = 0; test < 30; test++) {
+			List<String> keys = new ArrayList<String>();
+			PrefixTableBuilder builder = new PrefixTableBuilder();
+			for (int i = 0; i < 40; i++) {
+				String key = randomKey(r);
+				keys.add(key);
+				builder.addAtom(key, 0, 0, 0, i, 0);
+			}
+			PrefixTable table = builder.build();
+			for (int i = 0; i < 50; i++) {
+				String query = randomKey(r);
+				Assert.assertEquals(query, matchTable(collator, keys, query), matchPrefixTable(table, keys, query));
+			}
+		}
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		PrefixTableBuilder builder = new PrefixTableBuilder();
+		builder.addAtom("Straße", 4, 100, 200, 1000, 2000);
+		builder.addAtom("strasse", 4, 101, 201, 1001, 2001);
+		builder.addAtom("stras", 1, -1, -1, 1002, 0);
+		builder.addKey("zoo");
+		PrefixTable table = builder.build();
+		Assert.assertEquals(3, table.size());
+		Assert.assertEquals(3, table.getAtomsCount());
+
+		File tmp = File.createTempFile("names", ".index");
+		try {
+			DataOutputStream os = new DataOutputStream(new FileOutputStream(tmp));
+			table.write(os);
+			os.close();
+			DataInputStream is = new DataInputStream(new FileInputStream(tmp));
+			PrefixTable read = PrefixTable.read(is);
+			is.close();
+			Assert.assertArrayEquals(table.keys, read.keys);
+			Assert.assertArrayEquals(table.offsets, read.offsets);
+			Assert.assertArrayEquals(table.shifts, read.shifts);
+			Assert.assertArrayEquals(table.containers, read.containers);
+			int[] range = read.findAtoms("STRASSE");
+			Assert.assertEquals(2, range[1] - range[0]);
+			range = read.findAtoms("strasx");
+			Assert.assertEquals(1, range[1] - range[0]);
+			Assert.assertEquals(1002, read.shifts[range[0]]);
+			range = read.findAtoms("zo");
+			Assert.assertEquals(0, range[1] - range[0]);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	@Test
+	public void testNormalizeIgnoresDefaultLocale() {
+		Locale def = Locale.getDefault();
+		Locale.setDefault(new Locale("tr"));
+		try {
+			Assert.assertEquals("istanbul", NamePrefixIndex.normalize("ISTANBUL"));
+		} finally {
+			Locale.setDefault(def);
+		}
+	}
+
+	// poi name, box
+	private static final Object[][] POIS = { { "Café Central", 0 }, { "Central Station", 0 }, { "Museum", 1 } };
+	// name index key, box
+	private static final Object[][] KEYS = { { "café", 0 }, { "central", 0 }, { "station", 0 }, { "museum", 1 } };
+	private static final int BOX_ZOOM = 15;
+	private static final int BOX_X = 17600;
+	private static final int BOX_Y = 10740;
+
+	// writes protobuf fields as obf does
+	private static class ObfOutput {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+
+		ObfOutput uint32(int field, int value) throws IOException {
+			out.writeUInt32(field, value);
+			return this;
+		}
+
+		ObfOutput string(int field, String value) throws IOException {
+			out.writeString(field, value);
+			return this;
+		}
+
+		ObfOutput fixed(int field, int value) throws IOException {
+			out.writeTag(field, WireFormat.WIRETYPE_FIXED32);
+			writeInt(value);
+			return this;
+		}
+
+		ObfOutput message(int field, byte[] message) throws IOException {
+			out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			out.writeRawVarint32(message.length);
+			out.writeRawBytes(message);
+			return this;
+		}
+
+		ObfOutput fixedMessage(int field, byte[] message) throws IOException {
+			out.writeTag(field, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
+			writeInt(message.length);
+			out.writeRawBytes(message);
+			return this;
+		}
+
+		private void writeInt(int value) throws IOException {
+			out.writeRawByte((value >>> 24) & 0xff);
+			out.writeRawByte((value >>> 16) & 0xff);
+			out.writeRawByte((value >>> 8) & 0xff);
+			out.writeRawByte(value & 0xff);
+		}
+
+		int size() throws IOException {
+			return toByteArray().length;
+		}
+
+		byte[] toByteArray() throws IOException {
+			out.flush();
+			return bytes.toByteArray();
+		}
+	}
+
+	private static byte[] writePoiNameIndex(int[] boxShifts) throws IOException {
+		List<byte[]> data = new ArrayList<byte[]>();
+		for (Object[] key : KEYS) {
+			int box = (Integer) key[1];
+			byte[] atom = new ObfOutput().uint32(OsmandOdb.OsmAndPoiNameIndexDataAtom.ZOOM_FIELD_NUMBER, BOX_ZOOM)
+					.uint32(OsmandOdb.OsmAndPoiNameIndexDataAtom.X_FIELD_NUMBER, BOX_X + box)
+					.uint32(OsmandOdb.OsmAndPoiNameIndexDataAtom.Y_FIELD_NUMBER, BOX_Y)
+					.fixed(OsmandOdb.OsmAndPoiNameIndexDataAtom.SHIFTTO_FIELD_NUMBER, boxShifts[box]).toByteArray();
+			data.add(new ObfOutput().message(OsmandOdb.OsmAndPoiNameIndex.OsmAndPoiNameIndexData.ATOMS_FIELD_NUMBER, atom).toByteArray());
+		}
+		// values of table are offsets of data from table start
+		int tableLength = 0;
+		for (Object[] key : KEYS) {
+			tableLength += new ObfOutput().string(OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER, (String) key[0])
+					.fixed(OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER, 0).size();
+		}
+		ObfOutput table = new ObfOutput();
+		ObfOutput dataOut = new ObfOutput();
+		for (int i = 0; i < KEYS.length; i++) {
+			table.string(OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER, (String) KEYS[i][0])
+					.fixed(OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER, tableLength + dataOut.size() + 1);
+			dataOut.message(OsmandOdb.OsmAndPoiNameIndex.DATA_FIELD_NUMBER, data.get(i));
+		}
+		ObfOutput nameIndex = new ObfOutput().fixedMessage(OsmandOdb.OsmAndPoiNameIndex.TABLE_FIELD_NUMBER,
+				table.toByteArray());
+		nameIndex.out.writeRawBytes(dataOut.toByteArray());
+		return nameIndex.toByteArray();
+	}
+
+	private static File writePoiFile() throws IOException {
+		List<byte[]> boxes = new ArrayList<byte[]>();
+		for (int box = 0; box < 2; box++) {
+			ObfOutput boxOut = new ObfOutput().uint32(OsmandOdb.OsmAndPoiBoxData.ZOOM_FIELD_NUMBER, BOX_ZOOM)
+					.uint32(OsmandOdb.OsmAndPoiBoxData.X_FIELD_NUMBER, BOX_X + box)
+					.uint32(OsmandOdb.OsmAndPoiBoxData.Y_FIELD_NUMBER, BOX_Y);
+			for (int i = 0; i < POIS.length; i++) {
+				if ((Integer) POIS[i][1] == box) {
+					ObfOutput poi = new ObfOutput().uint32(OsmandOdb.OsmAndPoiBoxDataAtom.DX_FIELD_NUMBER, 0)
+							.uint32(OsmandOdb.OsmAndPoiBoxDataAtom.DY_FIELD_NUMBER, 0)
+							.uint32(OsmandOdb.OsmAndPoiBoxDataAtom.CATEGORIES_FIELD_NUMBER, 0)
+							.string(OsmandOdb.OsmAndPoiBoxDataAtom.NAME_FIELD_NUMBER, (String) POIS[i][0])
+							.uint32(OsmandOdb.OsmAndPoiBoxDataAtom.ID_FIELD_NUMBER, i + 1);
+					boxOut.message(OsmandOdb.OsmAndPoiBoxData.POIDATA_FIELD_NUMBER, poi.toByteArray());
+				}
+			}
+			boxes.add(boxOut.toByteArray());
+		}
+		byte[] bbox = new ObfOutput().uint32(OsmandOdb.OsmAndTileBox.LEFT_FIELD_NUMBER, BOX_X << (31 - BOX_ZOOM))
+				.uint32(OsmandOdb.OsmAndTileBox.RIGHT_FIELD_NUMBER, (BOX_X + 2) << (31 - BOX_ZOOM))
+				.uint32(OsmandOdb.OsmAndTileBox.TOP_FIELD_NUMBER, BOX_Y << (31 - BOX_ZOOM))
+				.uint32(OsmandOdb.OsmAndTileBox.BOTTOM_FIELD_NUMBER, (BOX_Y + 1) << (31 - BOX_ZOOM)).toByteArray();
+		byte[] categories = new ObfOutput().string(OsmandOdb.OsmAndCategoryTable.CATEGORY_FIELD_NUMBER, "shop")
+				.string(OsmandOdb.OsmAndCategoryTable.SUBCATEGORIES_FIELD_NUMBER, "supermarket").toByteArray();
+		byte[] header = new ObfOutput().string(OsmandOdb.OsmAndPoiIndex.NAME_FIELD_NUMBER, "Test")
+				.message(OsmandOdb.OsmAndPoiIndex.BOUNDARIES_FIELD_NUMBER, bbox)
+				.message(OsmandOdb.OsmAndPoiIndex.CATEGORIESTABLE_FIELD_NUMBER, categories).toByteArray();
+		// shifts point to length of box from start of poi index, name index has same size for any shifts
+		int[] shifts = new int[boxes.size()];
+		int shift = header.length + 1 + 4 + writePoiNameIndex(shifts).length;
+		for (int i = 0; i < boxes.size(); i++) {
+			shifts[i] = shift + 1;
+			shift += 1 + 4 + boxes.get(i).length;
+		}
+		ObfOutput poiIndex = new ObfOutput();
+		poiIndex.out.writeRawBytes(header);
+		poiIndex.fixedMessage(OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER, writePoiNameIndex(shifts));
+		for (byte[] box : boxes) {
+			poiIndex.fixedMessage(OsmandOdb.OsmAndPoiIndex.POIDATA_FIELD_NUMBER, box);
+		}
+		byte[] obf = new ObfOutput().uint32(OsmandOdb.OsmAndStructure.VERSION_FIELD_NUMBER, 2)
+				.fixedMessage(OsmandOdb.OsmAndStructure.POIINDEX_FIELD_NUMBER, poiIndex.toByteArray())
+				.uint32(OsmandOdb.OsmAndStructure.VERSIONCONFIRM_FIELD_NUMBER, 2).toByteArray();
+		File f = File.createTempFile("Poi", ".obf");
+		f.deleteOnExit();
+		FileOutputStream fout = new FileOutputStream(f);
+		fout.write(obf);
+		fout.close();
+		return f;
+	}
+
+	private static Set<String> searchPoiByName(BinaryMapIndexReader reader, String query) throws IOException {
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, 0, query, 0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, null);
+		Set<String> res = new TreeSet<String>();
+		for (Amenity a : reader.searchPoiByName(req)) {
+			Assert.assertTrue(res.add(a.getName()));
+		}
+		return res;
+	}
+
+	private static void checkSearchPoiByName(BinaryMapIndexReader reader, NamePrefixIndex index) throws IOException {
+		String[] queries = { "centr", "CAFE", "central sta", "mus", "stationary", "zoo" };
+		List<Set<String>> expected = new ArrayList<Set<String>>();
+		for (String q : queries) {
+			expected.add(searchPoiByName(reader, q));
+		}
+		Assert.assertEquals(2, expected.get(0).size());
+		Assert.assertEquals("[Café Central]", expected.get(1).toString());
+		Assert.assertEquals("[Central Station]", expected.get(2).toString());
+		Assert.assertEquals("[Museum]", expected.get(3).toString());
+		Assert.assertEquals(0, expected.get(5).size());
+
+		index.addFile(reader);
+		Assert.assertTrue(index.containsFile(reader));
+		reader.setNamePrefixIndex(index);
+		for (int i = 0; i < queries.length; i++) {
+			Assert.assertEquals(queries[i], expected.get(i), searchPoiByName(reader, queries[i]));
+		}
+	}
+
+	@Test
+	public void testSearchPoiByNameWithIndex() throws IOException {
+		File f = writePoiFile();
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, f);
+			NamePrefixIndex index = new NamePrefixIndex();
+			checkSearchPoiByName(reader, index);
+			Assert.assertEquals(KEYS.length, index.getAtomsCount());
+			Assert.assertNotNull(index.getPoiTable(reader, reader.getPoiIndexes().get(0)));
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testLimitedIndexSearchesFile() throws IOException {
+		File f = writePoiFile();
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, f);
+			NamePrefixIndex index = new NamePrefixIndex(KEYS.length - 1);
+			checkSearchPoiByName(reader, index);
+			Assert.assertEquals(0, index.getAtomsCount());
+			Assert.assertNull(index.getPoiTable(reader, reader.getPoiIndexes().get(0)));
+			index.removeFile(f);
+			Assert.assertEquals(0, index.getFilesCount());
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testUnusedFilesAreNotWritten() throws IOException {
+		File f = writePoiFile();
+		File indexFile = File.createTempFile("names", ".index");
+		indexFile.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, f);
+			NamePrefixIndex index = new NamePrefixIndex();
+			index.addFile(reader);
+			index.writeToFile(indexFile);
+
+			NamePrefixIndex read = new NamePrefixIndex();
+			read.readFromFile(indexFile);
+			Assert.assertEquals(1, read.getFilesCount());
+			Assert.assertEquals(KEYS.length, read.getAtomsCount());
+			// registered file is kept
+			Assert.assertTrue(read.containsFile(reader));
+			read.writeToFile(indexFile);
+			read = new NamePrefixIndex();
+			read.readFromFile(indexFile);
+			Assert.assertEquals(1, read.getFilesCount());
+			// file is not registered anymore
+			read.writeToFile(indexFile);
+			Assert.assertEquals(0, read.getFilesCount());
+			Assert.assertEquals(0, read.getAtomsCount());
+			read = new NamePrefixIndex();
+			read.readFromFile(indexFile);
+			Assert.assertEquals(0, read.getFilesCount());
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package net.osmand.binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackedRouteTileTest {
+
+	private static List<RouteDataObject> generateObjects(RouteRegion region, Random r) {
+		List<RouteDataObject> objects = new ArrayList<RouteDataObject>();
+		for (int i = 0; i < 50; i++) {
+			if (i % 10 == 5) {
+				// decoded tiles contain nulls for objects of other tiles
+				objects.add(null);
+				continue;
+			}
+			RouteDataObject o = new RouteDataObject(region);
+			o.id = r.nextLong() >>> 1;
+			int points = 2 + r.nextInt(8);
+			o.pointsX = new int[points];
+			o.pointsY = new int[points];
+			for (int p = 0; p < points; p++) {
+				o.pointsX[p] = r.nextInt(Integer.MAX_VALUE);
+				o.pointsY[p] = r.nextInt(Integer.MAX_VALUE);
+			}
+			o.types = new int[r.nextInt(4)];
+			for (int t = 0; t < o.types.length; t++) {
+				o.types[t] = 1 + r.nextInt(3);
+			}
+			if (r.nextBoolean()) {
+				o.nameIds = new int[] { 4 };
+				o.names = new TIntObjectHashMap<String>();
+				o.names.put(4, "Street " + i);
+			}
+			if (r.nextInt(4) == 0) {
+				o.restrictions = new long[] { r.nextLong() };
+				o.restrictionsVia = new long[] { r.nextLong() };
+			}
+			if (r.nextInt(3) == 0) {
+				o.pointTypes = new int[points][];
+				o.pointTypes[points - 1] = new int[] { 3 };
+				o.pointNames = new String[points][];
+				o.pointNames[0] = new String[] { "Stop " + i };
+				o.pointNameTypes = new int[points][];
+				o.pointNameTypes[0] = new int[] { 4 };
+			}
+			objects.add(o);
+		}
+		return objects;
+	}
+
+	private static void assertSameObject(RouteDataObject expected, RouteDataObject actual) {
+		Assert.assertEquals(expected.id, actual.id);
+		Assert.assertSame(expected.region, actual.region);
+		Assert.assertArrayEquals(expected.pointsX, actual.pointsX);
+		Assert.assertArrayEquals(expected.pointsY, actual.pointsY);
+		Assert.assertArrayEquals(expected.types, actual.types);
+		Assert.assertArrayEquals(expected.nameIds, actual.nameIds);
+		Assert.assertEquals(expected.names, actual.names);
+		Assert.assertArrayEquals(expected.restrictions, actual.restrictions);
+		Assert.assertArrayEquals(expected.restrictionsVia, actual.restrictionsVia);
+		Assert.assertTrue(Arrays.deepEquals(expected.pointTypes, actual.pointTypes));
+		Assert.assertTrue(Arrays.deepEquals(expected.pointNames, actual.pointNames));
+		Assert.assertTrue(Arrays.deepEquals(expected.pointNameTypes, actual.pointNameTypes));
+	}
+
+	@Test
+	public void testPackUnpackRoundTrip() {
+		RouteRegion region = new RouteRegion();
+		List<RouteDataObject> objects = generateObjects(region, new Random(11));
+		PackedRouteTile tile = PackedRouteTile.pack(region, objects);
+		List<RouteDataObject> expected = new ArrayList<RouteDataObject>();
+		for (RouteDataObject o : objects) {
+			if (o != null) {
+				expected.add(o);
+			}
+		}
+		Assert.assertEquals(expected.size(), tile.size());
+		List<RouteDataObject> unpacked = tile.unpack();
+		Assert.assertEquals(expected.size(), unpacked.size());
+		for (int i = 0; i < expected.size(); i++) {
+			RouteDataObject o = expected.get(i);
+			assertSameObject(o, unpacked.get(i));
+			Assert.assertEquals(o.id, tile.getId(i));
+			Assert.assertEquals(o.getPointsLength(), tile.getPointsLength(i));
+			for (int p = 0; p < o.getPointsLength(); p++) {
+				Assert.assertEquals(o.getPoint31XTile(p), tile.getPoint31XTile(i, p));
+				Assert.assertEquals(o.getPoint31YTile(p), tile.getPoint31YTile(i, p));
+			}
+		}
+	}
+
+	@Test
+	public void testModifiedObjectsDontChangeTile() {
+		RouteRegion region = new RouteRegion();
+		List<RouteDataObject> objects = generateObjects(region, new Random(12));
+		PackedRouteTile tile = PackedRouteTile.pack(region, objects);
+		List<RouteDataObject> expected = tile.unpack();
+		// both packed and unpacked objects are modified by caller
+		List<RouteDataObject> modified = new ArrayList<RouteDataObject>(tile.unpack());
+		modified.addAll(objects);
+		for (RouteDataObject o : modified) {
+			if (o == null) {
+				continue;
+			}
+			o.pointsX[0] = -1;
+			o.types = new int[] { 5 };
+			if (o.pointTypes != null) {
+				// conditional tags are replaced in place
+				int last = o.pointTypes.length - 1;
+				o.pointTypes[last][0] = 5;
+				o.pointNames[0][0] = "Modified";
+				o.pointNameTypes[0][0] = 5;
+				o.pointTypes[0] = new int[] { 5 };
+			}
+		}
+		List<RouteDataObject> unpacked = tile.unpack();
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameObject(expected.get(i), unpacked.get(i));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SharedBinaryMapIndexReaderTest {
+
+	private static File createFile() throws IOException {
+		File f = File.createTempFile("shared", ".obf");
+		f.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			out.write(new byte[64]);
+		} finally {
+			out.close();
+		}
+		return f;
+	}
+
+	@Test(timeout = 20000)
+	public void testCursorsAreReleased() throws Exception {
+		File f = createFile();
+		BinaryMapIndexReader initial = new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f, false);
+		final SharedBinaryMapIndexReader shared = new SharedBinaryMapIndexReader(f, initial);
+		try {
+			BinaryMapIndexReader cursor = shared.getReader();
+			Assert.assertSame(cursor, shared.getReader());
+			Assert.assertEquals(1, shared.getCursorsCount());
+			shared.releaseReader();
+			Assert.assertEquals(0, shared.getCursorsCount());
+			Assert.assertNotSame(cursor, shared.getReader());
+			Assert.assertEquals(1, shared.getCursorsCount());
+
+			// cursor of finished thread is not held by reader
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					shared.getReader();
+				}
+			});
+			t.start();
+			t.join();
+			while (shared.getCursorsCount() > 1) {
+				System.gc();
+				Thread.sleep(20);
+			}
+			Assert.assertEquals(1, shared.getCursorsCount());
+		} finally {
+			shared.close();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package net.osmand.binary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SharedRouteRegionTest {
+
+	private static final int THREADS = 8;
+	private static final int TYPES = 500;
+
+	@Test(timeout = 20000)
+	public void testConcurrentlyCreatedTypesAreUnique() throws Exception {
+		final RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		region.initRouteEncodingRule(2, "highway", "residential");
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+			for (int t = 0; t < THREADS; t++) {
+				final Random r = new Random(t);
+				results.add(executor.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() throws Exception {
+						// every thread creates same types in own order, as routing contexts do for direction points
+						List<Integer> order = new ArrayList<Integer>();
+						for (int i = 0; i < TYPES; i++) {
+							order.add(i);
+						}
+						Collections.shuffle(order, r);
+						int[] ids = new int[TYPES];
+						start.await();
+						for (int i : order) {
+							ids[i] = region.findOrCreateRouteType("osmand_test", "v" + i);
+							Assert.assertEquals(ids[i], region.searchRouteEncodingRule("osmand_test", "v" + i));
+						}
+						return ids;
+					}
+				}));
+			}
+			start.countDown();
+			int[] expected = results.get(0).get();
+			for (Future<int[]> f : results) {
+				Assert.assertArrayEquals(expected, f.get());
+			}
+			Assert.assertEquals(3 + TYPES, region.routeEncodingRules.size());
+			for (int i = 0; i < TYPES; i++) {
+				RouteTypeRule rule = region.quickGetEncodingRule(expected[i]);
+				Assert.assertEquals("osmand_test", rule.getTag());
+				Assert.assertEquals("v" + i, rule.getValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testCreatedTypesAreReadWithoutLock() throws Exception {
+		final RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		// last created id, rules up to it should be visible to readers
+		final AtomicInteger created = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < THREADS - 1; t++) {
+				readers.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						int last;
+						do {
+							last = created.get();
+							for (int id = 1; id <= last; id++) {
+								Assert.assertNotNull(region.quickGetEncodingRule(id));
+							}
+						} while (last < TYPES + 1);
+						return last;
+					}
+				}));
+			}
+			for (int i = 0; i < TYPES; i++) {
+				created.set(region.findOrCreateRouteType("osmand_test", "v" + i));
+			}
+			for (Future<Integer> f : readers) {
+				// rule 1 and created rules
+				Assert.assertEquals(TYPES + 1, f.get().intValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testNotPublishedRuleIsNull() {
+		RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "name", "");
+		Assert.assertNotNull(region.quickGetEncodingRuleIfPresent(1));
+		Assert.assertNull(region.quickGetEncodingRuleIfPresent(0));
+		int id = region.findOrCreateRouteType("name:de", "");
+		Assert.assertNull(region.quickGetEncodingRuleIfPresent(id + 1));
+		Assert.assertNull(region.quickGetEncodingRuleIfPresent(-1));
+		Assert.assertEquals("name:de", region.quickGetEncodingRuleIfPresent(id).getTag());
+	}
+}
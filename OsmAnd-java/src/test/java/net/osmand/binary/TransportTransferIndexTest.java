@@ -0,0 +1,96 @@
+package net.osmand.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.osmand.binary.TransportTransferIndex.TransferGraph;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransportTransferIndexTest {
+
+	private static final int RADIUS = 300;
+
+	private static List<TransportStop> generateStops(Random r, int n) {
+		List<TransportStop> stops = new ArrayList<TransportStop>();
+		for (int i = 0; i < n; i++) {
+			TransportStop s = new TransportStop();
+			// shuffled ids
+			s.setId((long) (i * 7919 % n + 1));
+			s.setLocation(52.5 + r.nextDouble() * 0.05, 13.4 + r.nextDouble() * 0.05);
+			s.x31 = MapUtils.get31TileNumberX(s.getLocation().getLongitude());
+			s.y31 = MapUtils.get31TileNumberY(s.getLocation().getLatitude());
+			stops.add(s);
+		}
+		return stops;
+	}
+
+	@Test
+	public void testTransfersSameAsGeometricSearch() {
+		List<TransportStop> stops = generateStops(new Random(1), 500);
+		TransferGraph graph = TransferGraph.build(stops, RADIUS);
+		Assert.assertEquals(stops.size(), graph.size());
+		int transfers = 0;
+		for (TransportStop s : stops) {
+			int ind = graph.indexOf(s.getId());
+			Assert.assertTrue(ind >= 0);
+			Assert.assertEquals(s.x31, graph.getStopX31(ind));
+			List<Long> expected = new ArrayList<Long>();
+			for (TransportStop o : stops) {
+				if (o != s && MapUtils.getDistance(s.getLocation(), o.getLocation()) <= RADIUS) {
+					expected.add(o.getId());
+				}
+			}
+			List<Long> found = new ArrayList<Long>();
+			for (int t = graph.getTransfersStart(ind); t < graph.getTransfersEnd(ind); t++) {
+				long id = graph.getStopId(graph.getTransferStop(t));
+				found.add(id);
+				TransportStop o = stops.get(indexOf(stops, id));
+				Assert.assertEquals(MapUtils.getDistance(s.getLocation(), o.getLocation()), graph.getTransferDistance(t), 0.01);
+			}
+			Assert.assertEquals(expected.size(), found.size());
+			Assert.assertTrue(found.containsAll(expected));
+			transfers += found.size();
+		}
+		Assert.assertTrue(transfers > 0);
+		Assert.assertEquals(-1, graph.indexOf(stops.size() + 1));
+	}
+
+	private static int indexOf(List<TransportStop> stops, long id) {
+		for (int i = 0; i < stops.size(); i++) {
+			if (stops.get(i).getId() == id) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		TransferGraph graph = TransferGraph.build(generateStops(new Random(2), 200), RADIUS);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream os = new DataOutputStream(out);
+		graph.write(os);
+		os.close();
+		TransferGraph read = TransferGraph.read(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+		Assert.assertEquals(graph.size(), read.size());
+		for (int i = 0; i < graph.size(); i++) {
+			Assert.assertEquals(graph.getStopId(i), read.getStopId(i));
+			Assert.assertEquals(graph.getStopY31(i), read.getStopY31(i));
+			Assert.assertEquals(graph.getTransfersEnd(i), read.getTransfersEnd(i));
+		}
+		for (int t = 0; t < graph.getTransfersEnd(graph.size() - 1); t++) {
+			Assert.assertEquals(graph.getTransferStop(t), read.getTransferStop(t));
+			Assert.assertEquals(graph.getTransferDistance(t), read.getTransferDistance(t), 0);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package net.osmand.render;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledRenderingRulesTest {
+
+	private static final String STYLE = "<renderingStyle name=\"test\" defaultColor=\"#f1eee8\" version=\"1\">\n"
+			+ " <renderingProperty attr=\"hideBuildings\" name=\"Hide buildings\" type=\"boolean\" possibleValues=\"\" category=\"hide\"/>\n"
+			+ " <renderingProperty attr=\"roadStyle\" name=\"Road style\" type=\"string\" possibleValues=\"default,orange\" category=\"details\"/>\n"
+			+ " <renderingAttribute name=\"roadColor\">\n"
+			+ "  <case roadStyle=\"orange\" attrColorValue=\"#ff8800\"/>\n"
+			+ "  <case maxzoom=\"12\" attrColorValue=\"#aaaaaa\"/>\n"
+			+ "  <case attrColorValue=\"#ffffff\"/>\n"
+			+ " </renderingAttribute>\n"
+			+ " <renderingAttribute name=\"roadWidth\">\n"
+			+ "  <case minzoom=\"15\" attrIntValue=\"6\"/>\n"
+			+ "  <case attrIntValue=\"3:2\"/>\n"
+			+ " </renderingAttribute>\n"
+			+ " <order>\n"
+			+ "  <switch>\n"
+			+ "   <case tag=\"highway\" value=\"primary\" order=\"30\"/>\n"
+			+ "   <case tag=\"highway\" value=\"\" order=\"20\"/>\n"
+			+ "   <case tag=\"building\" value=\"yes\" layer=\"1\" order=\"50\"/>\n"
+			+ "   <case tag=\"building\" value=\"yes\" order=\"40\"/>\n"
+			+ "   <case tag=\"\" value=\"\" order=\"1\"/>\n"
+			+ "  </switch>\n"
+			+ " </order>\n"
+			+ " <line>\n"
+			+ "  <switch minzoom=\"10\">\n"
+			+ "   <case tag=\"highway\" value=\"primary\" color=\"$roadColor\" strokeWidth=\"$roadWidth\">\n"
+			+ "    <apply minzoom=\"16\" strokeWidth_2=\"2\" color_2=\"#000000\"/>\n"
+			+ "    <apply additional=\"bridge=yes\" strokeWidth_0=\"1.5\"/>\n"
+			+ "   </case>\n"
+			+ "   <case tag=\"highway\" value=\"residential\" maxzoom=\"13\" disable=\"true\"/>\n"
+			+ "   <case tag=\"highway\" value=\"residential\" color=\"#ffffff\" strokeWidth=\"2\"/>\n"
+			+ "   <switch tag=\"highway\" value=\"path\" disable=\"true\">\n"
+			+ "    <case minzoom=\"15\" layer=\"1\" disable=\"false\" color=\"#ff0000\" strokeWidth=\"1\"/>\n"
+			+ "    <case nightMode=\"true\" disable=\"false\" color=\"#0000ff\"/>\n"
+			+ "   </switch>\n"
+			+ "  </switch>\n"
+			+ "  <case tag=\"highway\" value=\"primary\" minzoom=\"5\" maxzoom=\"9\" color=\"#999999\" strokeWidth=\"1\"/>\n"
+			+ "  <case tag=\"highway\" value=\"\" minzoom=\"14\" color=\"#888888\"/>\n"
+			+ " </line>\n"
+			+ " <polygon>\n"
+			+ "  <case tag=\"building\" value=\"yes\" hideBuildings=\"false\" minzoom=\"14\" color=\"#cccccc\">\n"
+			+ "   <apply layer=\"1\" color=\"#bbbbbb\"/>\n"
+			+ "  </case>\n"
+			+ "  <case tag=\"landuse\" value=\"grass\" minzoom=\"12\" color=\"#00ff00\"/>\n"
+			+ " </polygon>\n"
+			+ "</renderingStyle>";
+
+	private static final String[][] TAG_VALUES = { { "highway", "primary" }, { "highway", "residential" },
+			{ "highway", "path" }, { "highway", "service" }, { "building", "yes" }, { "landuse", "grass" },
+			{ "natural", "water" } };
+	private static final int[] STATES = { RenderingRulesStorage.ORDER_RULES, RenderingRulesStorage.LINE_RULES,
+			RenderingRulesStorage.POLYGON_RULES, RenderingRulesStorage.POINT_RULES };
+
+	private static RenderingRulesStorage loadStorage() throws Exception {
+		RenderingRulesStorage storage = new RenderingRulesStorage("test", null);
+		storage.parseRulesFromXmlInputStream(new ByteArrayInputStream(STYLE.getBytes("UTF-8")), null);
+		return storage;
+	}
+
+	private static void setUp(RenderingRuleSearchRequest req, Random r) {
+		RenderingRulesStorage storage = req.getStorage();
+		req.setBooleanFilter(storage.PROPS.R_NIGHT_MODE, r.nextBoolean());
+		req.setBooleanFilter(storage.PROPS.get("hideBuildings"), r.nextBoolean());
+		req.setStringFilter(storage.PROPS.get("roadStyle"), r.nextBoolean() ? "orange" : "default");
+		req.saveState();
+	}
+
+	@Test
+	public void testSameResultsAsRules() throws Exception {
+		RenderingRulesStorage storage = loadStorage();
+		RenderingRulesStorage compiledStorage = loadStorage();
+		CompiledRenderingRules compiled = compiledStorage.compileRules();
+		Random r = new Random(1);
+		int found = 0;
+		for (int t = 0; t < 20; t++) {
+			RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+			RenderingRuleSearchRequest compiledReq = new RenderingRuleSearchRequest(compiledStorage);
+			long seed = r.nextLong();
+			setUp(req, new Random(seed));
+			setUp(compiledReq, new Random(seed));
+			for (int i = 0; i < 500; i++) {
+				int state = STATES[r.nextInt(STATES.length)];
+				String[] tv = TAG_VALUES[r.nextInt(TAG_VALUES.length)];
+				int zoom = 3 + r.nextInt(17);
+				int layer = r.nextInt(3) - 1;
+				boolean bridge = r.nextBoolean();
+				boolean loadOutput = r.nextInt(4) != 0;
+				for (RenderingRuleSearchRequest rq : new RenderingRuleSearchRequest[] { req, compiledReq }) {
+					rq.setInitialTagValueZoom(tv[0], tv[1], zoom, null);
+					if (layer != -1) {
+						rq.setIntFilter(rq.ALL.R_LAYER, layer);
+					}
+					if (bridge) {
+						rq.setStringFilter(rq.ALL.R_ADDITIONAL, "bridge=yes");
+					}
+				}
+				boolean res = req.search(state, loadOutput);
+				Assert.assertEquals(res, compiledReq.search(state, loadOutput));
+				Assert.assertTrue(Arrays.equals(req.values, compiledReq.values));
+				Assert.assertTrue(Arrays.equals(req.fvalues, compiledReq.fvalues));
+				if (res) {
+					found++;
+				}
+			}
+		}
+		Assert.assertTrue(found > 1000);
+		Assert.assertTrue(compiled.getCompiledRulesCount() > 0);
+	}
+
+	@Test
+	public void testCompiledRulesArePruned() throws Exception {
+		RenderingRulesStorage storage = loadStorage();
+		CompiledRenderingRules compiled = storage.compileRules();
+		RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+		int tag = storage.getDictionaryValue("highway");
+		int value = storage.getDictionaryValue("primary");
+		// at zoom 7 only last case (5 - 9) is left and its tests are evaluated
+		CompiledRenderingRules.CompiledRule rule = compiled.getRule(CompiledRenderingRules.getKey(
+				RenderingRulesStorage.LINE_RULES, tag, value, 7, 7, -1));
+		Assert.assertEquals(1, rule.ifElseChildren.length);
+		Assert.assertEquals(0, rule.ifElseChildren[0].inputs.length);
+		req.setInitialTagValueZoom("highway", "primary", 7, null);
+		Assert.assertTrue(req.search(RenderingRulesStorage.LINE_RULES));
+		Assert.assertEquals("#999999", req.getColorStringPropertyValue(req.ALL.R_COLOR));
+		Assert.assertEquals(-1, CompiledRenderingRules.getKey(RenderingRulesStorage.LINE_RULES, tag, value, -1, -1, -1));
+	}
+
+	@Test
+	public void testKeysAreLimitedToTestedValues() throws Exception {
+		RenderingRulesStorage storage = loadStorage();
+		CompiledRenderingRules compiled = storage.compileRules();
+		int tag = storage.getDictionaryValue("highway");
+		int value = storage.getDictionaryValue("residential");
+		for (int zoom = 0; zoom < 30; zoom++) {
+			for (int layer = -5; layer <= 5; layer++) {
+				compiled.getRule(CompiledRenderingRules.getKey(RenderingRulesStorage.LINE_RULES, tag, value, zoom, zoom,
+						layer));
+			}
+		}
+		// rules of highway=residential test minzoom 10 and maxzoom 13 only: zooms < 10, 10 - 13, > 13
+		Assert.assertEquals(3, compiled.getCompiledRulesCount());
+		Assert.assertSame(
+				compiled.getRule(CompiledRenderingRules.getKey(RenderingRulesStorage.LINE_RULES, tag, value, 11, 11, 0)),
+				compiled.getRule(CompiledRenderingRules.getKey(RenderingRulesStorage.LINE_RULES, tag, value, 13, 13, 3)));
+	}
+}
@@ -0,0 +1,174 @@
+package net.osmand.render;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RenderingRuleSearchCacheTest {
+
+	private static final String STYLE = "<renderingStyle name=\"test\" defaultColor=\"#f1eee8\" version=\"1\">\n"
+			+ " <renderingProperty attr=\"hideBuildings\" name=\"Hide buildings\" type=\"boolean\" possibleValues=\"\" category=\"hide\"/>\n"
+			+ " <renderingProperty attr=\"roadStyle\" name=\"Road style\" type=\"string\" possibleValues=\"default,orange\" category=\"details\"/>\n"
+			+ " <renderingAttribute name=\"roadColor\">\n"
+			+ "  <case roadStyle=\"orange\" attrColorValue=\"#ff8800\"/>\n"
+			+ "  <case maxzoom=\"12\" attrColorValue=\"#aaaaaa\"/>\n"
+			+ "  <case attrColorValue=\"#ffffff\"/>\n"
+			+ " </renderingAttribute>\n"
+			+ " <order>\n"
+			+ "  <switch>\n"
+			+ "   <case tag=\"highway\" value=\"primary\" order=\"30\"/>\n"
+			+ "   <case tag=\"highway\" value=\"\" order=\"20\"/>\n"
+			+ "   <case tag=\"building\" value=\"yes\" layer=\"1\" order=\"50\"/>\n"
+			+ "   <case tag=\"building\" value=\"yes\" objectType=\"3\"/>\n"
+			+ "   <case tag=\"\" value=\"\" order=\"1\"/>\n"
+			+ "  </switch>\n"
+			+ " </order>\n"
+			+ " <line>\n"
+			+ "  <switch minzoom=\"10\">\n"
+			+ "   <case tag=\"highway\" value=\"primary\" color=\"$roadColor\" strokeWidth=\"3\">\n"
+			+ "    <apply minzoom=\"16\" strokeWidth_2=\"2\" color_2=\"#000000\"/>\n"
+			+ "    <apply additional=\"bridge=yes\" strokeWidth_0=\"1.5\"/>\n"
+			+ "   </case>\n"
+			+ "   <case tag=\"highway\" value=\"residential\" maxzoom=\"13\" disable=\"true\"/>\n"
+			+ "   <case tag=\"highway\" value=\"residential\" color=\"#ffffff\" strokeWidth=\"2\"/>\n"
+			+ "   <switch tag=\"highway\" value=\"path\" disable=\"true\">\n"
+			+ "    <case minzoom=\"15\" layer=\"1\" disable=\"false\" color=\"#ff0000\" strokeWidth=\"1\"/>\n"
+			+ "    <case nightMode=\"true\" disable=\"false\" color=\"#0000ff\"/>\n"
+			+ "   </switch>\n"
+			+ "  </switch>\n"
+			+ "  <case tag=\"highway\" value=\"\" minzoom=\"14\" color=\"#888888\"/>\n"
+			+ " </line>\n"
+			+ " <text>\n"
+			+ "  <case tag=\"highway\" value=\"primary\" textLength=\"3\" textSize=\"14\"/>\n"
+			+ "  <case tag=\"highway\" value=\"primary\" minzoom=\"13\" textSize=\"12\"/>\n"
+			+ "  <case tag=\"building\" value=\"yes\" minzoom=\"16\" textSize=\"10\"/>\n"
+			+ " </text>\n"
+			+ " <polygon>\n"
+			+ "  <case tag=\"building\" value=\"yes\" hideBuildings=\"false\" minzoom=\"14\" color=\"#cccccc\">\n"
+			+ "   <apply layer=\"1\" color=\"#bbbbbb\"/>\n"
+			+ "  </case>\n"
+			+ "  <case tag=\"landuse\" value=\"grass\" minzoom=\"12\" color=\"#00ff00\"/>\n"
+			+ " </polygon>\n"
+			+ "</renderingStyle>";
+
+	private static final String[][] TAG_VALUES = { { "highway", "primary" }, { "highway", "residential" },
+			{ "highway", "path" }, { "building", "yes" }, { "landuse", "grass" }, { "natural", "water" } };
+	private static final int[] STATES = { RenderingRulesStorage.ORDER_RULES, RenderingRulesStorage.LINE_RULES,
+			RenderingRulesStorage.POLYGON_RULES, RenderingRulesStorage.TEXT_RULES };
+
+	private static RenderingRulesStorage loadStorage() throws Exception {
+		RenderingRulesStorage storage = new RenderingRulesStorage("test", null);
+		storage.parseRulesFromXmlInputStream(new ByteArrayInputStream(STYLE.getBytes("UTF-8")), null);
+		return storage;
+	}
+
+	private static void setUp(RenderingRuleSearchRequest req, Random r) {
+		RenderingRulesStorage storage = req.getStorage();
+		req.setBooleanFilter(storage.PROPS.R_NIGHT_MODE, r.nextBoolean());
+		req.setBooleanFilter(storage.PROPS.get("hideBuildings"), r.nextBoolean());
+		req.setStringFilter(storage.PROPS.get("roadStyle"), r.nextBoolean() ? "orange" : "default");
+		req.saveState();
+	}
+
+	@Test
+	public void testSameResultsAsSearch() throws Exception {
+		RenderingRulesStorage storage = loadStorage();
+		RenderingRulesStorage cachedStorage = loadStorage();
+		cachedStorage.compileRules();
+		RenderingRuleSearchCache cache = new RenderingRuleSearchCache(cachedStorage, 200);
+		cachedStorage.setSearchCache(cache);
+		Random r = new Random(3);
+		for (int t = 0; t < 20; t++) {
+			RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+			RenderingRuleSearchRequest cachedReq = new RenderingRuleSearchRequest(cachedStorage);
+			long seed = r.nextLong();
+			setUp(req, new Random(seed));
+			setUp(cachedReq, new Random(seed));
+			for (int i = 0; i < 500; i++) {
+				int state = STATES[r.nextInt(STATES.length)];
+				String[] tv = TAG_VALUES[r.nextInt(TAG_VALUES.length)];
+				int zoom = 3 + r.nextInt(17);
+				int layer = r.nextInt(3) - 1;
+				// order rules are searched without clearing state (like sorting of objects)
+				boolean clear = r.nextInt(5) != 0;
+				boolean bridge = r.nextBoolean();
+				int textLength = r.nextInt(3) == 0 ? 1 + r.nextInt(5) : -1;
+				for (RenderingRuleSearchRequest rq : new RenderingRuleSearchRequest[] { req, cachedReq }) {
+					if (clear) {
+						rq.setInitialTagValueZoom(tv[0], tv[1], zoom, null);
+						if (layer != -1) {
+							rq.setIntFilter(rq.ALL.R_LAYER, layer);
+						}
+					} else {
+						rq.setTagValueZoomLayer(tv[0], tv[1], zoom, layer, null);
+					}
+					if (bridge) {
+						rq.setStringFilter(rq.ALL.R_ADDITIONAL, "bridge=yes");
+					}
+					if (textLength != -1) {
+						rq.setIntFilter(rq.ALL.R_TEXT_LENGTH, textLength);
+					}
+				}
+				boolean res = req.search(state);
+				Assert.assertEquals(res, cachedReq.search(state));
+				Assert.assertTrue(Arrays.equals(req.values, cachedReq.values));
+				Assert.assertTrue(Arrays.equals(req.fvalues, cachedReq.fvalues));
+				Assert.assertEquals(req.isFound(), cachedReq.isFound());
+			}
+		}
+		Assert.assertTrue(cache.getHits() > cache.getMisses());
+		Assert.assertTrue(cache.getNotCached() > 0);
+		Assert.assertTrue(cache.getResultsCount() <= cache.getMaxEntries());
+	}
+
+	@Test
+	public void testKeyContainsOnlyTestedProperties() throws Exception {
+		RenderingRulesStorage storage = loadStorage();
+		RenderingRuleSearchCache cache = new RenderingRuleSearchCache(storage, 10);
+		storage.setSearchCache(cache);
+		RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+		// landuse rules test only zoom, so other properties don't create new results
+		for (int layer = 0; layer < 3; layer++) {
+			req.setInitialTagValueZoom("landuse", "grass", 14, null);
+			req.setIntFilter(req.ALL.R_LAYER, layer);
+			req.setBooleanFilter(req.ALL.R_NIGHT_MODE, layer == 1);
+			Assert.assertTrue(req.search(RenderingRulesStorage.POLYGON_RULES));
+			Assert.assertEquals("#00ff00", req.getColorStringPropertyValue(req.ALL.R_COLOR));
+		}
+		Assert.assertEquals(1, cache.getResultsCount());
+		Assert.assertEquals(2, cache.getHits());
+		// text of primary roads depends on text length
+		req.setInitialTagValueZoom("highway", "primary", 14, null);
+		req.setIntFilter(req.ALL.R_TEXT_LENGTH, 3);
+		Assert.assertTrue(req.search(RenderingRulesStorage.TEXT_RULES));
+		Assert.assertEquals(1, cache.getNotCached());
+	}
+
+	@Test
+	public void testLeftOutputsArePartOfKey() throws Exception {
+		RenderingRulesStorage storage = loadStorage();
+		RenderingRuleSearchCache cache = new RenderingRuleSearchCache(storage, 10);
+		storage.setSearchCache(cache);
+		RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+		for (int i = 0; i < 2; i++) {
+			// buildings don't set order, so order of previous object is kept (as in sorting of objects)
+			req.setInitialTagValueZoom("highway", "primary", 14, null);
+			Assert.assertTrue(req.search(RenderingRulesStorage.ORDER_RULES));
+			Assert.assertEquals(30, req.getIntPropertyValue(req.ALL.R_ORDER));
+			req.setTagValueZoomLayer("building", "yes", 14, 0, null);
+			Assert.assertTrue(req.search(RenderingRulesStorage.ORDER_RULES));
+			Assert.assertEquals(30, req.getIntPropertyValue(req.ALL.R_ORDER));
+			Assert.assertEquals(3, req.getIntPropertyValue(req.ALL.R_OBJECT_TYPE));
+
+			req.setInitialTagValueZoom("building", "yes", 14, null);
+			Assert.assertTrue(req.search(RenderingRulesStorage.ORDER_RULES));
+			Assert.assertEquals(-1, req.getIntPropertyValue(req.ALL.R_ORDER));
+		}
+		Assert.assertEquals(0, cache.getNotCached());
+		Assert.assertEquals(3, cache.getResultsCount());
+		Assert.assertEquals(3, cache.getHits());
+	}
+}
@@ -0,0 +1,302 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.GeocodingUtilities;
+import net.osmand.binary.GeocodingUtilities.BatchGeocodingResult;
+import net.osmand.binary.GeocodingUtilities.GeocodingResult;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.Building;
+import net.osmand.data.City;
+import net.osmand.data.City.CityType;
+import net.osmand.data.LatLon;
+import net.osmand.data.MapObject;
+import net.osmand.data.Street;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchReverseGeocodingTest {
+
+	private static final double LAT = 52.5;
+	private static final double LON = 13.4;
+	// ~ 20 km
+	private static final double SPAN = 0.2;
+
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+	private RoutingConfiguration config;
+	private RouteSegmentIndex index;
+	private RouteRegion roadRegion;
+
+	// serves in memory roads instead of obf files, roads without address index are not justified
+	private class MemoryRoutingContext extends RoutingContext {
+
+		MemoryRoutingContext(RoutingConfiguration config) {
+			this(config, new BinaryMapIndexReader[0]);
+		}
+
+		MemoryRoutingContext(RoutingConfiguration config, BinaryMapIndexReader[] readers) {
+			super(config, null, readers, RouteCalculationMode.NORMAL);
+		}
+
+		@Override
+		public void loadTileSegmentIndexes(int x31, int y31, int zoomAround, List<RouteSegmentIndex> toFillIn) {
+			toFillIn.add(index);
+		}
+	}
+
+	// address index with street of every road and buildings at its ends, decodes new streets for every search
+	private class AddressReader extends BinaryMapIndexReader {
+		final RouteRegion region = new RouteRegion();
+		final AtomicInteger streetSearches = new AtomicInteger();
+		final Map<Street, Integer> preloads = Collections.synchronizedMap(new IdentityHashMap<Street, Integer>());
+
+		AddressReader(RandomAccessFile raf, File file) throws IOException {
+			super(raf, file, false);
+			// region of another reader of the same file
+			region.setName(roadRegion.getName());
+			region.setFilePointer(roadRegion.getFilePointer());
+			region.setLength(roadRegion.getLength());
+		}
+
+		@Override
+		public List<RouteRegion> getRoutingIndexes() {
+			return Collections.singletonList(region);
+		}
+
+		@Override
+		public List<MapObject> searchAddressDataByName(SearchRequest<MapObject> req) throws IOException {
+			streetSearches.incrementAndGet();
+			City city = new City(CityType.CITY);
+			city.setName("City");
+			city.setLocation(LAT, LON);
+			for (RouteDataObject o : roads) {
+				Street street = new Street(city);
+				street.setId(o.id);
+				street.setName(o.getName());
+				street.setLocation(MapUtils.get31LatitudeY(o.getPoint31YTile(0)), MapUtils.get31LongitudeX(o.getPoint31XTile(0)));
+				req.publish(street);
+			}
+			return req.getSearchResults();
+		}
+
+		@Override
+		public void preloadBuildings(Street s, SearchRequest<Building> resultMatcher) throws IOException {
+			Integer cnt = preloads.get(s);
+			preloads.put(s, cnt == null ? 1 : cnt + 1);
+			RouteDataObject o = roads.get((int) (s.getId() - 1));
+			for (int i = 0; i < o.getPointsLength(); i++) {
+				Building b = new Building();
+				b.setName(String.valueOf(i + 1));
+				b.setLocation(MapUtils.get31LatitudeY(o.getPoint31YTile(i)), MapUtils.get31LongitudeX(o.getPoint31XTile(i)));
+				s.addBuilding(b);
+			}
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Map<String, String> attrs = new HashMap<String, String>();
+		attrs.put("maxDefaultSpeed", "130");
+		attrs.put("defaultSpeed", "20");
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, attrs);
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("1", "")
+				.registerAndTagValueCondition("highway", null, false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("30", "speed")
+				.registerAndTagValueCondition("highway", "residential", false);
+		config = new RoutingConfiguration();
+		config.router = router.build(new HashMap<String, String>());
+		config.memoryLimitation = 1 << 30;
+
+		RouteRegion reg = new RouteRegion();
+		reg.setName("Test");
+		reg.setFilePointer(100);
+		reg.setLength(10000);
+		reg.initRouteEncodingRule(1, "highway", "residential");
+		reg.initRouteEncodingRule(2, "name", "");
+		Random r = new Random(3);
+		for (int i = 0; i < 400; i++) {
+			RouteDataObject o = new RouteDataObject(reg);
+			o.id = i + 1;
+			double lat = LAT + r.nextDouble() * SPAN;
+			double lon = LON + r.nextDouble() * SPAN;
+			o.pointsX = new int[] { MapUtils.get31TileNumberX(lon), MapUtils.get31TileNumberX(lon + 0.002) };
+			o.pointsY = new int[] { MapUtils.get31TileNumberY(lat), MapUtils.get31TileNumberY(lat + 0.001) };
+			o.types = new int[] { 1 };
+			o.pointTypes = new int[0][];
+			o.names = new TIntObjectHashMap<String>();
+			o.names.put(2, "Street " + i);
+			roads.add(o);
+		}
+		index = new RouteSegmentIndex(roads);
+		roadRegion = reg;
+	}
+
+	@Test
+	public void testBatchSharesStreetsAndBuildings() throws IOException {
+		File file = File.createTempFile("Address", ".obf");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final AddressReader reader = new AddressReader(raf, file);
+			Random r = new Random(5);
+			List<LatLon> points = new ArrayList<LatLon>();
+			for (int i = 0; i < 100; i++) {
+				// points near road ends, so buildings are found
+				RouteDataObject o = roads.get(r.nextInt(roads.size()));
+				points.add(new LatLon(MapUtils.get31LatitudeY(o.getPoint31YTile(0)) + 0.0002,
+						MapUtils.get31LongitudeX(o.getPoint31XTile(0))));
+			}
+			final BatchGeocodingResult[] results = new BatchGeocodingResult[points.size()];
+			new GeocodingUtilities().reverseGeocodingSearch(points, new RoutingContextFactory() {
+				@Override
+				public RoutingContext createRoutingContext() {
+					return new MemoryRoutingContext(config, new BinaryMapIndexReader[] { reader });
+				}
+			}, true, 2, new ResultMatcher<BatchGeocodingResult>() {
+				@Override
+				public boolean publish(BatchGeocodingResult object) {
+					results[object.index] = object;
+					return true;
+				}
+
+				@Override
+				public boolean isCancelled() {
+					return false;
+				}
+			});
+			int batchSearches = reader.streetSearches.get();
+			for (Integer cnt : reader.preloads.values()) {
+				Assert.assertEquals(1, cnt.intValue());
+			}
+
+			GeocodingUtilities gu = new GeocodingUtilities();
+			RoutingContext ctx = new MemoryRoutingContext(config, new BinaryMapIndexReader[] { reader });
+			int buildings = 0;
+			for (int i = 0; i < points.size(); i++) {
+				List<GeocodingResult> expected = new ArrayList<GeocodingResult>();
+				double minBuildingDistance = 0;
+				for (GeocodingResult road : gu.reverseGeocodingSearch(ctx, points.get(i).getLatitude(),
+						points.get(i).getLongitude(), true)) {
+					Assert.assertSame(reader, ctx.getReader(road.point.getRoad().region));
+					List<GeocodingResult> justified = gu.justifyReverseGeocodingSearch(road, reader,
+							minBuildingDistance, null);
+					if (!justified.isEmpty()) {
+						double md = justified.get(0).getDistance();
+						minBuildingDistance = minBuildingDistance == 0 ? md : Math.min(md, minBuildingDistance);
+						expected.addAll(justified);
+					}
+				}
+				gu.filterDuplicateRegionResults(expected);
+				List<GeocodingResult> actual = results[i].results;
+				Assert.assertEquals(expected.size(), actual.size());
+				for (int j = 0; j < expected.size(); j++) {
+					Assert.assertEquals(expected.get(j).toString(), actual.get(j).toString());
+					Assert.assertEquals(expected.get(j).connectionPoint, actual.get(j).connectionPoint);
+					if (actual.get(j).building != null) {
+						buildings++;
+					}
+				}
+			}
+			Assert.assertTrue(buildings > points.size() / 2);
+			// streets are searched once per group and name, not for every point
+			Assert.assertTrue(batchSearches < reader.streetSearches.get() - batchSearches);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testBatchMatchesSinglePointSearch() throws IOException {
+		Random r = new Random(11);
+		List<LatLon> points = new ArrayList<LatLon>();
+		for (int i = 0; i < 300; i++) {
+			points.add(new LatLon(LAT + r.nextDouble() * SPAN, LON + r.nextDouble() * SPAN));
+		}
+		RoutingContextFactory factory = new RoutingContextFactory() {
+			@Override
+			public RoutingContext createRoutingContext() {
+				return new MemoryRoutingContext(config);
+			}
+		};
+		final BatchGeocodingResult[] results = new BatchGeocodingResult[points.size()];
+		new GeocodingUtilities().reverseGeocodingSearch(points, factory, true, 3,
+				new ResultMatcher<BatchGeocodingResult>() {
+					@Override
+					public boolean publish(BatchGeocodingResult object) {
+						Assert.assertNull(results[object.index]);
+						results[object.index] = object;
+						return true;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return false;
+					}
+				});
+		GeocodingUtilities gu = new GeocodingUtilities();
+		int found = 0;
+		for (int i = 0; i < points.size(); i++) {
+			Assert.assertNotNull(results[i]);
+			Assert.assertEquals(points.get(i), results[i].point);
+			List<GeocodingResult> expected = gu.reverseGeocodingSearch(new MemoryRoutingContext(config),
+					points.get(i).getLatitude(), points.get(i).getLongitude(), true);
+			gu.filterDuplicateRegionResults(expected);
+			Assert.assertEquals(expected.size(), results[i].results.size());
+			found += expected.isEmpty() ? 0 : 1;
+			for (int j = 0; j < expected.size(); j++) {
+				Assert.assertEquals(expected.get(j).streetName, results[i].results.get(j).streetName);
+				Assert.assertEquals(expected.get(j).connectionPoint, results[i].results.get(j).connectionPoint);
+			}
+		}
+		Assert.assertTrue(found > points.size() / 2);
+	}
+
+	@Test
+	public void testCancelledBatchStops() throws IOException {
+		List<LatLon> points = new ArrayList<LatLon>();
+		for (int i = 0; i < 100; i++) {
+			points.add(new LatLon(LAT + i * SPAN / 100, LON));
+		}
+		final AtomicInteger published = new AtomicInteger();
+		new GeocodingUtilities().reverseGeocodingSearch(points, new RoutingContextFactory() {
+			@Override
+			public RoutingContext createRoutingContext() {
+				return new MemoryRoutingContext(config);
+			}
+		}, true, 1, new ResultMatcher<BatchGeocodingResult>() {
+			@Override
+			public boolean publish(BatchGeocodingResult object) {
+				published.incrementAndGet();
+				return true;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return published.get() >= 10;
+			}
+		});
+		Assert.assertEquals(10, published.get());
+	}
+}
@@ -0,0 +1,357 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.osm.MapRenderingTypes;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContractionHierarchyTest {
+
+	private static final int SIZE = 20;
+	private static final int ROADS_SIZE = 10;
+	private static final int STEP = 2000;
+	private static final int X0 = 1 << 30;
+	private static final int Y0 = 1 << 29;
+
+	private final TLongObjectHashMap<List<RouteSegment>> roadsByPoint = new TLongObjectHashMap<List<RouteSegment>>();
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+
+	// serves in memory grid of roads instead of obf files
+	private class GridRoutingContext extends RoutingContext {
+		long missingRoad = -1;
+
+		GridRoutingContext(RoutingConfiguration config) {
+			super(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		}
+
+		@Override
+		public synchronized RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit) {
+			List<RouteSegment> l = roadsByPoint.get(key(x31, y31));
+			RouteSegment res = null;
+			if (l != null) {
+				for (RouteSegment s : l) {
+					if (s.getRoad().getId() != missingRoad) {
+						RouteSegment segment = new RouteSegment(s.getRoad(), s.getSegmentStart());
+						segment.next = res;
+						res = segment;
+					}
+				}
+			}
+			return res;
+		}
+	}
+
+	private static long key(int x31, int y31) {
+		return (((long) x31) << 31) + (long) y31;
+	}
+
+	private void buildRoads(Random r) {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(2, "highway", "residential");
+		reg.initRouteEncodingRule(3, "oneway", "yes");
+		long id = 1;
+		for (int i = 0; i < ROADS_SIZE; i++) {
+			for (int j = 0; j < ROADS_SIZE; j++) {
+				for (int d = 0; d < 2; d++) {
+					int i2 = d == 0 ? i + 1 : i;
+					int j2 = d == 1 ? j + 1 : j;
+					if (i2 >= ROADS_SIZE || j2 >= ROADS_SIZE) {
+						continue;
+					}
+					int pts = 3 + r.nextInt(3);
+					RouteDataObject o = new RouteDataObject(reg);
+					o.id = (id++) << RouteResultPreparation.SHIFT_ID;
+					o.pointsX = new int[pts];
+					o.pointsY = new int[pts];
+					for (int p = 0; p < pts; p++) {
+						int shift = p > 0 && p < pts - 1 ? r.nextInt(600) : 0;
+						o.pointsX[p] = X0 + i * STEP + (i2 - i) * STEP * p / (pts - 1) + shift;
+						o.pointsY[p] = Y0 + j * STEP + (j2 - j) * STEP * p / (pts - 1) + shift;
+					}
+					// transitions between road types are penalized by A* and not by the graph
+					o.types = r.nextInt(6) == 0 ? new int[] { 2, 3 } : new int[] { 2 };
+					o.pointTypes = new int[0][];
+					roads.add(o);
+					for (int p = 0; p < pts; p++) {
+						long k = key(o.pointsX[p], o.pointsY[p]);
+						if (!roadsByPoint.containsKey(k)) {
+							roadsByPoint.put(k, new ArrayList<RouteSegment>());
+						}
+						roadsByPoint.get(k).add(new RouteSegment(o, p));
+					}
+				}
+			}
+		}
+	}
+
+	private static RoutingConfiguration buildConfiguration() {
+		Map<String, String> attrs = new HashMap<String, String>();
+		attrs.put("maxDefaultSpeed", "130");
+		attrs.put("defaultSpeed", "20");
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, attrs);
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("1", "")
+				.registerAndTagValueCondition("highway", null, false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("30", "speed")
+				.registerAndTagValueCondition("highway", "residential", false);
+		router.getObjContext(RouteDataObjectAttribute.ONEWAY).registerNewRule("1", "")
+				.registerAndTagValueCondition("oneway", "yes", false);
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = router.build(new HashMap<String, String>());
+		config.memoryLimitation = 1 << 30;
+		// Dijkstra search in one direction finds optimal route as the graph does
+		config.heuristicCoefficient = 0;
+		config.planRoadDirection = 1;
+		return config;
+	}
+
+	private static ContractionHierarchyBuilder buildGrid(Random r, float[][] weights) {
+		ContractionHierarchyBuilder builder = new ContractionHierarchyBuilder("car", Collections.<String, String>emptyMap());
+		for (int i = 0; i < SIZE * SIZE; i++) {
+			builder.addNode(i % SIZE, i / SIZE);
+		}
+		for (int i = 0; i < SIZE * SIZE; i++) {
+			int[] neighbours = { i % SIZE < SIZE - 1 ? i + 1 : -1, i + SIZE < SIZE * SIZE ? i + SIZE : -1 };
+			for (int j : neighbours) {
+				if (j == -1) {
+					continue;
+				}
+				// some roads are one way
+				float w = 1 + r.nextInt(20);
+				builder.addEdge(i, j, w, i * SIZE * SIZE + j, 0, 1);
+				weights[i][j] = w;
+				if (r.nextInt(5) > 0) {
+					w = 1 + r.nextInt(20);
+					builder.addEdge(j, i, w, i * SIZE * SIZE + j, 1, 0);
+					weights[j][i] = w;
+				}
+			}
+		}
+		return builder;
+	}
+
+	private static float dijkstra(float[][] weights, int start, int end) {
+		int n = weights.length;
+		float[] dist = new float[n];
+		boolean[] settled = new boolean[n];
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		dist[start] = 0;
+		for (int it = 0; it < n; it++) {
+			int u = -1;
+			for (int i = 0; i < n; i++) {
+				if (!settled[i] && (u == -1 || dist[i] < dist[u])) {
+					u = i;
+				}
+			}
+			if (u == -1 || dist[u] == Float.POSITIVE_INFINITY) {
+				break;
+			}
+			settled[u] = true;
+			for (int v = 0; v < n; v++) {
+				if (weights[u][v] > 0 && dist[u] + weights[u][v] < dist[v]) {
+					dist[v] = dist[u] + weights[u][v];
+				}
+			}
+		}
+		return dist[end] == Float.POSITIVE_INFINITY ? -1 : dist[end];
+	}
+
+	@Test
+	public void testShortestPathsMatchDijkstra() throws IOException {
+		Random r = new Random(11);
+		float[][] weights = new float[SIZE * SIZE][SIZE * SIZE];
+		ContractionHierarchy ch = buildGrid(r, weights).build();
+		Assert.assertTrue(ch.getEdgesCount() > 0);
+		File tmp = File.createTempFile("grid", ContractionHierarchy.FILE_EXT);
+		try {
+			ch.writeToFile(tmp);
+			ContractionHierarchy read = ContractionHierarchy.readFromFile(tmp);
+			Assert.assertEquals(ch.getNodesCount(), read.getNodesCount());
+			Assert.assertEquals(ch.getEdgesCount(), read.getEdgesCount());
+			for (int i = 0; i < 200; i++) {
+				int start = r.nextInt(SIZE * SIZE);
+				int end = r.nextInt(SIZE * SIZE);
+				float expected = dijkstra(weights, start, end);
+				Assert.assertEquals(expected, ch.calculateRoutingTime(start, end), 1e-3);
+				Assert.assertEquals(expected, read.calculateRoutingTime(start, end), 1e-3);
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static float segmentTime(RoutingConfiguration config, RouteSegmentPoint pnt) {
+		RouteDataObject road = pnt.getRoad();
+		int i = pnt.getSegmentStart();
+		double dist = BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(i - 1), road.getPoint31YTile(i - 1),
+				road.getPoint31XTile(i), road.getPoint31YTile(i));
+		return (float) (dist / (config.router.defineRoutingSpeed(road) * config.router.defineSpeedPriority(road)));
+	}
+
+	@Test
+	public void testSearchRouteMatchesAStar() throws IOException, InterruptedException {
+		Random r = new Random(7);
+		buildRoads(r);
+		RoutingConfiguration config = buildConfiguration();
+		ContractionHierarchyBuilder builder = new ContractionHierarchyBuilder("car",
+				Collections.<String, String>emptyMap());
+		builder.addRoads(roads, config.router);
+		ContractionHierarchy ch = builder.build();
+		// shortcuts are created
+		Assert.assertTrue(ch.getEdgesCount() > roads.size() * 2);
+		config.contractionHierarchy = ch;
+		Assert.assertTrue(config.router.restrictionsAware());
+		Assert.assertTrue(ch.isApplicable(new GridRoutingContext(config)));
+		int unpacked = 0;
+		for (int i = 0; i < 100; i++) {
+			RouteDataObject s = roads.get(r.nextInt(roads.size()));
+			RouteDataObject e = roads.get(r.nextInt(roads.size()));
+			// points are inside of the roads, so start & end are seeded by parts of original edges
+			RouteSegmentPoint start = new RouteSegmentPoint(s, 1 + r.nextInt(s.getPointsLength() - 2), 0);
+			RouteSegmentPoint end = new RouteSegmentPoint(e, 1 + r.nextInt(e.getPointsLength() - 2), 0);
+			GridRoutingContext astar = new GridRoutingContext(config);
+			astar.initStartAndTargetPoints(start, end);
+			FinalRouteSegment expected = new BinaryRoutePlanner().searchRouteInternal(astar,
+					new RouteSegmentPoint(start), new RouteSegmentPoint(end), null);
+			GridRoutingContext ctx = new GridRoutingContext(config);
+			List<RouteSegmentResult> res = ch.searchRoute(ctx, start, end);
+			if (expected == null) {
+				Assert.assertNull(res);
+				continue;
+			}
+			Assert.assertNotNull(res);
+			// A* starts and finishes at the ends of segments containing the points, graph uses precise points
+			float slack = segmentTime(config, start) + segmentTime(config, end);
+			Assert.assertTrue(ctx.routingTime <= expected.distanceFromStart + 1e-2);
+			Assert.assertTrue(ctx.routingTime >= expected.distanceFromStart - slack - 1e-2);
+			RouteSegmentResult first = res.get(0);
+			RouteSegmentResult last = res.get(res.size() - 1);
+			Assert.assertEquals(s.getId(), first.getObject().getId());
+			Assert.assertEquals(e.getId(), last.getObject().getId());
+			Assert.assertTrue(first.getStartPointIndex() == start.getSegmentStart()
+					|| first.getStartPointIndex() == start.getSegmentStart() - 1);
+			Assert.assertTrue(last.getEndPointIndex() == end.getSegmentStart()
+					|| last.getEndPointIndex() == end.getSegmentStart() - 1);
+			// unpacked roads are connected
+			for (int k = 1; k < res.size(); k++) {
+				RouteSegmentResult prev = res.get(k - 1);
+				RouteSegmentResult cur = res.get(k);
+				Assert.assertEquals(prev.getObject().getPoint31XTile(prev.getEndPointIndex()),
+						cur.getObject().getPoint31XTile(cur.getStartPointIndex()));
+				Assert.assertEquals(prev.getObject().getPoint31YTile(prev.getEndPointIndex()),
+						cur.getObject().getPoint31YTile(cur.getStartPointIndex()));
+			}
+			if (res.size() > 3) {
+				unpacked++;
+			}
+		}
+		Assert.assertTrue(unpacked > 10);
+	}
+
+	private RouteDataObject findRoad(int x31, int y31, long... excludedIds) {
+		for (RouteSegment s : roadsByPoint.get(key(x31, y31))) {
+			long id = s.getRoad().getId();
+			boolean excluded = false;
+			for (long e : excludedIds) {
+				excluded |= e == id;
+			}
+			if (!excluded) {
+				return s.getRoad();
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testRestrictedTurnIsNotUsed() throws IOException {
+		Random r = new Random(5);
+		buildRoads(r);
+		RoutingConfiguration config = buildConfiguration();
+		ContractionHierarchyBuilder builder = new ContractionHierarchyBuilder("car",
+				Collections.<String, String>emptyMap());
+		builder.addRoads(roads, config.router);
+		ContractionHierarchy ch = builder.build();
+		config.contractionHierarchy = ch;
+		// restrictions aware profile uses the graph
+		Assert.assertTrue(config.router.restrictionsAware());
+		Assert.assertTrue(ch.isApplicable(new GridRoutingContext(config)));
+		// road inside of the grid, so there are 4 roads at its ends
+		int mid = ROADS_SIZE / 2;
+		RouteDataObject s = findRoad(X0 + mid * STEP, Y0 + mid * STEP);
+		RouteDataObject e = roads.get(roads.size() - 1);
+		RouteSegmentPoint start = new RouteSegmentPoint(s, 1, 0);
+		RouteSegmentPoint end = new RouteSegmentPoint(e, 1, 0);
+		List<RouteSegmentResult> res = ch.searchRoute(new GridRoutingContext(config), start, end);
+		Assert.assertNotNull(res);
+		Assert.assertTrue(res.size() > 1);
+		RouteSegmentResult first = res.get(0);
+		RouteDataObject next = res.get(1).getObject();
+		Assert.assertEquals(s.getId(), first.getObject().getId());
+		int x = s.getPoint31XTile(first.getEndPointIndex());
+		int y = s.getPoint31YTile(first.getEndPointIndex());
+		RouteDataObject other = findRoad(x, y, s.getId(), next.getId());
+		Assert.assertNotNull(other);
+
+		s.restrictions = new long[1];
+		s.setRestriction(0, next.getId(), MapRenderingTypes.RESTRICTION_NO_LEFT_TURN, 0);
+		GridRoutingContext ctx = new GridRoutingContext(config);
+		Assert.assertNull(ch.searchRoute(ctx, start, end));
+		Assert.assertEquals(0, ctx.routingTime, 0);
+
+		s.setRestriction(0, next.getId(), MapRenderingTypes.RESTRICTION_ONLY_LEFT_TURN, 0);
+		Assert.assertNotNull(ch.searchRoute(new GridRoutingContext(config), start, end));
+
+		s.setRestriction(0, other.getId(), MapRenderingTypes.RESTRICTION_ONLY_RIGHT_TURN, 0);
+		Assert.assertNull(ch.searchRoute(new GridRoutingContext(config), start, end));
+
+		// restriction of other road doesn't apply at this junction
+		s.setRestriction(0, e.getId(), MapRenderingTypes.RESTRICTION_ONLY_RIGHT_TURN, 0);
+		Assert.assertNotNull(ch.searchRoute(new GridRoutingContext(config), start, end));
+	}
+
+	@Test
+	public void testOutdatedHierarchy() throws IOException {
+		Random r = new Random(9);
+		buildRoads(r);
+		RoutingConfiguration config = buildConfiguration();
+		ContractionHierarchyBuilder builder = new ContractionHierarchyBuilder("car",
+				Collections.<String, String>emptyMap());
+		builder.addRoads(roads, config.router);
+		builder.addSourceMap("Test.obf", 1000);
+		ContractionHierarchy ch = builder.build();
+		// graph is not used with other maps
+		Assert.assertFalse(ch.isBuiltFor(new BinaryMapIndexReader[0]));
+		Assert.assertFalse(ch.isApplicable(new GridRoutingContext(config)));
+		// road of the graph is missing in maps, route is not found instead of failure
+		RouteDataObject s = roads.get(0);
+		RouteDataObject e = roads.get(roads.size() - 1);
+		GridRoutingContext ctx = new GridRoutingContext(config);
+		Assert.assertNotNull(ch.searchRoute(ctx, new RouteSegmentPoint(s, 1, 0), new RouteSegmentPoint(e, 1, 0)));
+		List<RouteSegmentResult> res = ch.searchRoute(ctx, new RouteSegmentPoint(s, 1, 0),
+				new RouteSegmentPoint(e, 1, 0));
+		ctx.missingRoad = res.get(res.size() / 2).getObject().getId();
+		float routingTime = ctx.routingTime;
+		Assert.assertNull(ch.searchRoute(ctx, new RouteSegmentPoint(s, 1, 0), new RouteSegmentPoint(e, 1, 0)));
+		Assert.assertEquals(routingTime, ctx.routingTime, 0);
+	}
+}
@@ -0,0 +1,91 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.GeneralRouter.RouteAttributeContext;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares values of compiled type combinations with interpreted evaluation of routing profile rules.
+ */
+public class GeneralRouterCompiledRulesTest {
+
+	private static List<RouteDataObject> roads;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		String fl = "src/test/resources/Routing_test.obf";
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(fl, "r"), new File(fl));
+		roads = new ArrayList<RouteDataObject>();
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE,
+					0, Integer.MAX_VALUE, null);
+			for (RouteSubregion rs : reader.searchRouteIndexTree(req, reg.getSubregions())) {
+				for (RouteDataObject o : reader.loadRouteIndexData(rs)) {
+					if (o != null) {
+						roads.add(o);
+					}
+				}
+			}
+		}
+		Assert.assertFalse(roads.isEmpty());
+	}
+
+	@Test
+	public void testCompiledValuesMatchRules() {
+		for (Entry<String, GeneralRouter> e : RoutingConfiguration.getDefault().getAllRouters().entrySet()) {
+			GeneralRouter router = e.getValue().build(new HashMap<String, String>());
+			for (RouteDataObject road : roads) {
+				String msg = e.getKey() + " " + road;
+				RouteRegion reg = road.region;
+				float spd = evaluate(router, RouteDataObjectAttribute.ROAD_SPEED, reg, road.types,
+						router.getDefaultSpeed());
+				spd = Math.max(Math.min(spd, router.getMaxSpeed()), router.getMinSpeed());
+				Assert.assertEquals(msg, spd, router.defineRoutingSpeed(road), 0);
+				Assert.assertEquals(msg, evaluate(router, RouteDataObjectAttribute.ROAD_PRIORITIES, reg, road.types, 1f),
+						router.defineSpeedPriority(road), 0);
+				Assert.assertEquals(msg, (int) evaluate(router, RouteDataObjectAttribute.ONEWAY, reg, road.types, 0),
+						router.isOneWay(road));
+				Assert.assertEquals(msg, evaluate(router, RouteDataObjectAttribute.ACCESS, reg, road.types, 0) >= 0,
+						router.acceptLine(road));
+				Assert.assertEquals(msg, (int) evaluate(router, RouteDataObjectAttribute.PENALTY_TRANSITION, reg,
+						road.types, 0), router.getPenaltyTransition(road), 0);
+				for (int i = 0; i < road.getPointsLength(); i++) {
+					int[] pointTypes = road.getPointTypes(i);
+					if (pointTypes == null) {
+						continue;
+					}
+					for (int d = 0; d < 2; d++) {
+						boolean dir = d == 0;
+						int[] types = router.filterDirectionTags(reg, pointTypes, dir);
+						Assert.assertEquals(msg, evaluate(router, RouteDataObjectAttribute.OBSTACLES, reg, types, 0),
+								router.defineObstacle(road, i, dir), 0);
+						Assert.assertEquals(msg, evaluate(router, RouteDataObjectAttribute.ROUTING_OBSTACLES, reg,
+								types, 0), router.defineRoutingObstacle(road, i, dir), 0);
+					}
+				}
+			}
+		}
+	}
+
+	private static float evaluate(GeneralRouter router, RouteDataObjectAttribute attr, RouteRegion reg, int[] types,
+			float defValue) {
+		RouteAttributeContext ctx = router.getObjContext(attr);
+		return ctx.evaluateFloat(reg, types, defValue);
+	}
+}
@@ -0,0 +1,255 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.osmand.LocationsHolder;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GpxChunkedApproximationTest {
+
+	private static final int SIZE = 10;
+	private static final int X0 = MapUtils.get31TileNumberX(13.4);
+	private static final int Y0 = MapUtils.get31TileNumberY(52.5);
+	// ~ 150 m
+	private static final int STEP = 13200;
+
+	private final TLongObjectHashMap<List<RouteSegment>> roadsByPoint = new TLongObjectHashMap<List<RouteSegment>>();
+	// roads by start node and direction (0 - x, 1 - y)
+	private final RouteDataObject[][][] grid = new RouteDataObject[SIZE][SIZE][2];
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+	private RouteSegmentIndex index;
+	private RoutingConfiguration config;
+
+	// serves in memory grid of streets instead of obf files
+	private class GridRoutingContext extends RoutingContext {
+
+		GridRoutingContext(RoutingConfiguration config) {
+			super(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		}
+
+		@Override
+		public synchronized RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit) {
+			List<RouteSegment> l = roadsByPoint.get(key(x31, y31));
+			RouteSegment res = null;
+			if (l != null) {
+				for (RouteSegment s : l) {
+					RouteSegment segment = new RouteSegment(s.getRoad(), s.getSegmentStart());
+					segment.next = res;
+					res = segment;
+				}
+			}
+			return res;
+		}
+
+		@Override
+		public void loadTileSegmentIndexes(int x31, int y31, int zoomAround, List<RouteSegmentIndex> toFillIn) {
+			toFillIn.add(index);
+		}
+	}
+
+	private static long key(int x31, int y31) {
+		return (((long) x31) << 31) + (long) y31;
+	}
+
+	@Before
+	public void setUp() {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(1, "highway", "residential");
+		long id = 1;
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				for (int d = 0; d < 2; d++) {
+					if ((d == 0 ? i : j) == SIZE - 1) {
+						continue;
+					}
+					RouteDataObject o = new RouteDataObject(reg);
+					o.id = (id++) << RouteResultPreparation.SHIFT_ID;
+					int pts = 3;
+					o.pointsX = new int[pts];
+					o.pointsY = new int[pts];
+					for (int p = 0; p < pts; p++) {
+						o.pointsX[p] = X0 + i * STEP + (d == 0 ? STEP * p / (pts - 1) : 0);
+						o.pointsY[p] = Y0 + j * STEP + (d == 1 ? STEP * p / (pts - 1) : 0);
+					}
+					o.types = new int[] { 1 };
+					o.pointTypes = new int[0][];
+					grid[i][j][d] = o;
+					roads.add(o);
+					for (int p = 0; p < pts; p++) {
+						long k = key(o.pointsX[p], o.pointsY[p]);
+						if (!roadsByPoint.containsKey(k)) {
+							roadsByPoint.put(k, new ArrayList<RouteSegment>());
+						}
+						roadsByPoint.get(k).add(new RouteSegment(o, p));
+					}
+				}
+			}
+		}
+		index = new RouteSegmentIndex(roads);
+		Map<String, String> attrs = new HashMap<String, String>();
+		attrs.put("maxDefaultSpeed", "130");
+		attrs.put("defaultSpeed", "20");
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, attrs);
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("1", "")
+				.registerAndTagValueCondition("highway", null, false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("30", "speed")
+				.registerAndTagValueCondition("highway", "residential", false);
+		config = new RoutingConfiguration();
+		config.router = router.build(new HashMap<String, String>());
+		config.memoryLimitation = 1 << 30;
+	}
+
+	// random walk on grid without visiting same node twice, track is noisy points every ~20 m
+	private List<LatLon> generateTrack(Random r, TLongHashSet roadIds) {
+		int i = SIZE / 2;
+		int j = SIZE / 2;
+		boolean[][] visited = new boolean[SIZE][SIZE];
+		visited[i][j] = true;
+		List<int[]> nodes = new ArrayList<int[]>();
+		nodes.add(new int[] { i, j });
+		for (int k = 0; k < 25; k++) {
+			List<int[]> next = new ArrayList<int[]>();
+			for (int[] m : new int[][] { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } }) {
+				int ni = i + m[0];
+				int nj = j + m[1];
+				if (ni >= 0 && nj >= 0 && ni < SIZE && nj < SIZE && !visited[ni][nj]) {
+					next.add(new int[] { ni, nj });
+				}
+			}
+			if (next.isEmpty()) {
+				break;
+			}
+			int[] n = next.get(r.nextInt(next.size()));
+			RouteDataObject road = n[0] != i ? grid[Math.min(i, n[0])][j][0] : grid[i][Math.min(j, n[1])][1];
+			roadIds.add(road.getId());
+			i = n[0];
+			j = n[1];
+			visited[i][j] = true;
+			nodes.add(n);
+		}
+		List<LatLon> track = new ArrayList<LatLon>();
+		double noise = 700; // ~ 8 m
+		int steps = 7;
+		// track starts and ends in the middle of first and last roads
+		for (int k = 0; k < nodes.size() - 1; k++) {
+			int[] a = nodes.get(k);
+			int[] b = nodes.get(k + 1);
+			int from = k == 0 ? steps / 2 : 0;
+			int to = k == nodes.size() - 2 ? steps / 2 : steps - 1;
+			for (int s = from; s <= to; s++) {
+				double x = X0 + (a[0] * STEP + (b[0] - a[0]) * STEP * s / (double) steps) + r.nextGaussian() * noise;
+				double y = Y0 + (a[1] * STEP + (b[1] - a[1]) * STEP * s / (double) steps) + r.nextGaussian() * noise;
+				track.add(new LatLon(MapUtils.get31LatitudeY((int) y), MapUtils.get31LongitudeX((int) x)));
+			}
+		}
+		return track;
+	}
+
+	private static TLongHashSet getMatchedRoads(GpxRouteApproximation gctx) {
+		TLongHashSet matched = new TLongHashSet();
+		for (RouteSegmentResult s : gctx.result) {
+			// last point is connected to the end of route by straight line
+			if (s.getObject().getId() > 0) {
+				matched.add(s.getObject().getId());
+			}
+		}
+		return matched;
+	}
+
+	private GpxRouteApproximation createChunkedApproximation() {
+		GpxRouteApproximation gctx = new GpxRouteApproximation(new GridRoutingContext(config));
+		gctx.CHUNK_DISTANCE = 1000;
+		gctx.CHUNK_OVERLAP = 500;
+		return gctx;
+	}
+
+	private RoutingContextFactory createFactory() {
+		return new RoutingContextFactory() {
+			@Override
+			public RoutingContext createRoutingContext() {
+				return new GridRoutingContext(config);
+			}
+		};
+	}
+
+	@Test
+	public void testChunkedApproximationMatchesTrack() throws Exception {
+		Random r = new Random(5);
+		for (int t = 0; t < 3; t++) {
+			TLongHashSet roadIds = new TLongHashSet();
+			List<LatLon> track = generateTrack(r, roadIds);
+			RoutePlannerFrontEnd planner = new RoutePlannerFrontEnd();
+			GpxRouteApproximation gctx = createChunkedApproximation();
+			List<GpxPoint> points = planner.generateGpxPoints(gctx, new LocationsHolder(track));
+			planner.searchGpxRoute(gctx, points, createFactory(), 3, null);
+			Assert.assertEquals(roadIds, getMatchedRoads(gctx));
+			Assert.assertEquals(0, gctx.routeGapDistance);
+			// counters of workers are merged after approximation
+			Assert.assertTrue(gctx.ctx.calculationProgress.visitedSegments > 0);
+			Assert.assertTrue(gctx.routeCalculations > 0);
+		}
+	}
+
+	@Test
+	public void testChunkedApproximationSameAsSerial() throws Exception {
+		TLongHashSet roadIds = new TLongHashSet();
+		List<LatLon> track = generateTrack(new Random(9), roadIds);
+		RoutePlannerFrontEnd planner = new RoutePlannerFrontEnd();
+		GpxRouteApproximation single = createChunkedApproximation();
+		planner.searchGpxRoute(single, planner.generateGpxPoints(single, new LocationsHolder(track)), createFactory(), 1,
+				null);
+		GpxRouteApproximation chunked = createChunkedApproximation();
+		planner.searchGpxRoute(chunked, planner.generateGpxPoints(chunked, new LocationsHolder(track)), createFactory(),
+				4, null);
+		Assert.assertEquals(getMatchedRoads(single), getMatchedRoads(chunked));
+		Assert.assertEquals(single.routeDistance, chunked.routeDistance);
+	}
+
+	@Test
+	public void testCancelledApproximationPublishesNull() throws Exception {
+		List<LatLon> track = generateTrack(new Random(3), new TLongHashSet());
+		RoutePlannerFrontEnd planner = new RoutePlannerFrontEnd();
+		GpxRouteApproximation gctx = createChunkedApproximation();
+		gctx.ctx.calculationProgress = new RouteCalculationProgress();
+		gctx.ctx.calculationProgress.isCancelled = true;
+		final List<GpxRouteApproximation> published = new ArrayList<GpxRouteApproximation>();
+		planner.searchGpxRoute(gctx, planner.generateGpxPoints(gctx, new LocationsHolder(track)), createFactory(), 3,
+				new ResultMatcher<GpxRouteApproximation>() {
+					@Override
+					public boolean publish(GpxRouteApproximation object) {
+						published.add(object);
+						return true;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return false;
+					}
+				});
+		Assert.assertEquals(1, published.size());
+		Assert.assertNull(published.get(0));
+		Assert.assertTrue(gctx.result.isEmpty());
+	}
+}
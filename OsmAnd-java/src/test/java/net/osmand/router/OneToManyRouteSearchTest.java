@@ -0,0 +1,148 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OneToManyRouteSearchTest {
+
+	private static final int SIZE = 12;
+	private static final int STEP = 2000;
+	private static final int X0 = 1 << 30;
+	private static final int Y0 = 1 << 29;
+
+	private final TLongObjectHashMap<List<RouteSegment>> roadsByPoint = new TLongObjectHashMap<List<RouteSegment>>();
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+
+	// serves in memory grid of roads instead of obf files
+	private class GridRoutingContext extends RoutingContext {
+
+		GridRoutingContext(RoutingConfiguration config) {
+			super(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		}
+
+		@Override
+		public synchronized RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit) {
+			List<RouteSegment> l = roadsByPoint.get(key(x31, y31));
+			RouteSegment res = null;
+			if (l != null) {
+				for (RouteSegment s : l) {
+					RouteSegment segment = new RouteSegment(s.getRoad(), s.getSegmentStart());
+					segment.next = res;
+					res = segment;
+				}
+			}
+			return res;
+		}
+	}
+
+	private static long key(int x31, int y31) {
+		return (((long) x31) << 31) + (long) y31;
+	}
+
+	private void buildGrid(Random r) {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(1, "highway", "primary");
+		reg.initRouteEncodingRule(2, "highway", "residential");
+		reg.initRouteEncodingRule(3, "oneway", "yes");
+		long id = 1;
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				for (int d = 0; d < 2; d++) {
+					int i2 = d == 0 ? i + 1 : i;
+					int j2 = d == 1 ? j + 1 : j;
+					if (i2 >= SIZE || j2 >= SIZE) {
+						continue;
+					}
+					int pts = 2 + r.nextInt(3);
+					RouteDataObject o = new RouteDataObject(reg);
+					o.id = (id++) << RouteResultPreparation.SHIFT_ID;
+					o.pointsX = new int[pts];
+					o.pointsY = new int[pts];
+					for (int p = 0; p < pts; p++) {
+						int shift = p > 0 && p < pts - 1 ? r.nextInt(300) : 0;
+						o.pointsX[p] = X0 + i * STEP + (i2 - i) * STEP * p / (pts - 1) + shift;
+						o.pointsY[p] = Y0 + j * STEP + (j2 - j) * STEP * p / (pts - 1) + shift;
+					}
+					int highway = r.nextInt(4) == 0 ? 1 : 2;
+					o.types = r.nextInt(6) == 0 ? new int[] { highway, 3 } : new int[] { highway };
+					o.pointTypes = new int[0][];
+					roads.add(o);
+					for (int p = 0; p < pts; p++) {
+						long k = key(o.pointsX[p], o.pointsY[p]);
+						if (!roadsByPoint.containsKey(k)) {
+							roadsByPoint.put(k, new ArrayList<RouteSegment>());
+						}
+						roadsByPoint.get(k).add(new RouteSegment(o, p));
+					}
+				}
+			}
+		}
+	}
+
+	private static RoutingConfiguration buildConfiguration() {
+		Map<String, String> attrs = new HashMap<String, String>();
+		attrs.put("maxDefaultSpeed", "130");
+		attrs.put("defaultSpeed", "20");
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, attrs);
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("1", "")
+				.registerAndTagValueCondition("highway", null, false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("90", "speed")
+				.registerAndTagValueCondition("highway", "primary", false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("30", "speed")
+				.registerAndTagValueCondition("highway", "residential", false);
+		router.getObjContext(RouteDataObjectAttribute.ONEWAY).registerNewRule("1", "")
+				.registerAndTagValueCondition("oneway", "yes", false);
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = router.build(new HashMap<String, String>());
+		config.memoryLimitation = 1 << 30;
+		// one to many search is a Dijkstra search from start to reverse expanded target roads
+		config.heuristicCoefficient = 0;
+		config.planRoadDirection = 1;
+		return config;
+	}
+
+	@Test
+	public void testOneToManyMatchesPointToPoint() throws Exception {
+		Random r = new Random(5);
+		buildGrid(r);
+		RoutingConfiguration config = buildConfiguration();
+		RouteSegmentPoint[] points = new RouteSegmentPoint[15];
+		for (int i = 0; i < points.length; i++) {
+			RouteDataObject o = roads.get(r.nextInt(roads.size()));
+			points[i] = new RouteSegmentPoint(o, r.nextInt(o.getPointsLength()), 0);
+		}
+		// context is reused for all sources as in route matrix calculation
+		GridRoutingContext ctx = new GridRoutingContext(config);
+		for (RouteSegmentPoint start : points) {
+			FinalRouteSegment[] res = new BinaryRoutePlanner().searchRouteOneToMany(ctx,
+					new RouteSegmentPoint(start), points);
+			for (int i = 0; i < points.length; i++) {
+				GridRoutingContext single = new GridRoutingContext(config);
+				single.initStartAndTargetPoints(start, points[i]);
+				FinalRouteSegment expected = new BinaryRoutePlanner().searchRouteInternal(single,
+						new RouteSegmentPoint(start), new RouteSegmentPoint(points[i]), null);
+				Assert.assertNotNull(expected);
+				Assert.assertNotNull(res[i]);
+				Assert.assertEquals(expected.distanceFromStart, res[i].distanceFromStart, 1e-2);
+			}
+		}
+	}
+}
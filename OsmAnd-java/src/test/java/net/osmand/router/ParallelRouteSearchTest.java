@@ -0,0 +1,249 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelRouteSearchTest {
+
+	private static final int SIZE = 12;
+	private static final int STEP = 2000;
+	private static final int X0 = 1 << 30;
+	private static final int Y0 = 1 << 29;
+
+	private final TLongObjectHashMap<List<RouteSegment>> roadsByPoint = new TLongObjectHashMap<List<RouteSegment>>();
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+
+	// serves in memory grid of roads instead of obf files
+	private class GridRoutingContext extends RoutingContext {
+
+		GridRoutingContext(RoutingConfiguration config) {
+			super(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		}
+
+		@Override
+		public synchronized RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit) {
+			List<RouteSegment> l = roadsByPoint.get(key(x31, y31));
+			RouteSegment res = null;
+			if (l != null) {
+				for (RouteSegment s : l) {
+					RouteSegment segment = new RouteSegment(s.getRoad(), s.getSegmentStart());
+					segment.next = res;
+					res = segment;
+				}
+			}
+			return res;
+		}
+	}
+
+	private static long key(int x31, int y31) {
+		return (((long) x31) << 31) + (long) y31;
+	}
+
+	private void buildGrid(Random r) {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(1, "highway", "primary");
+		reg.initRouteEncodingRule(2, "highway", "residential");
+		reg.initRouteEncodingRule(3, "oneway", "yes");
+		long id = 1;
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				for (int d = 0; d < 2; d++) {
+					int i2 = d == 0 ? i + 1 : i;
+					int j2 = d == 1 ? j + 1 : j;
+					if (i2 >= SIZE || j2 >= SIZE) {
+						continue;
+					}
+					int pts = 2 + r.nextInt(3);
+					RouteDataObject o = new RouteDataObject(reg);
+					o.id = (id++) << RouteResultPreparation.SHIFT_ID;
+					o.pointsX = new int[pts];
+					o.pointsY = new int[pts];
+					for (int p = 0; p < pts; p++) {
+						int shift = p > 0 && p < pts - 1 ? r.nextInt(300) : 0;
+						o.pointsX[p] = X0 + i * STEP + (i2 - i) * STEP * p / (pts - 1) + shift;
+						o.pointsY[p] = Y0 + j * STEP + (j2 - j) * STEP * p / (pts - 1) + shift;
+					}
+					int highway = r.nextInt(4) == 0 ? 1 : 2;
+					o.types = r.nextInt(6) == 0 ? new int[] { highway, 3 } : new int[] { highway };
+					o.pointTypes = new int[0][];
+					roads.add(o);
+					for (int p = 0; p < pts; p++) {
+						long k = key(o.pointsX[p], o.pointsY[p]);
+						if (!roadsByPoint.containsKey(k)) {
+							roadsByPoint.put(k, new ArrayList<RouteSegment>());
+						}
+						roadsByPoint.get(k).add(new RouteSegment(o, p));
+					}
+				}
+			}
+		}
+	}
+
+	private static RoutingConfiguration buildConfiguration(boolean parallel) {
+		Map<String, String> attrs = new HashMap<String, String>();
+		attrs.put("maxDefaultSpeed", "130");
+		attrs.put("defaultSpeed", "20");
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, attrs);
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("1", "")
+				.registerAndTagValueCondition("highway", null, false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("90", "speed")
+				.registerAndTagValueCondition("highway", "primary", false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("30", "speed")
+				.registerAndTagValueCondition("highway", "residential", false);
+		router.getObjContext(RouteDataObjectAttribute.ONEWAY).registerNewRule("1", "")
+				.registerAndTagValueCondition("oneway", "yes", false);
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = router.build(new HashMap<String, String>());
+		config.memoryLimitation = 1 << 30;
+		config.planRoadDirection = 0;
+		config.parallelBidirectionalSearch = parallel;
+		return config;
+	}
+
+	// final segment could be found by any direction, so only set of roads is compared
+	private static Set<Long> getRoadIds(FinalRouteSegment segment) {
+		Set<Long> res = new HashSet<Long>();
+		for (RouteSegment s = segment.opposite; s != null; s = s.getParentRoute()) {
+			res.add(s.getRoad().getId());
+		}
+		for (RouteSegment s = segment; s != null; s = s.getParentRoute()) {
+			res.add(s.getRoad().getId());
+		}
+		return res;
+	}
+
+	@Test
+	public void testParallelSearchMatchesSerialSearch() throws Exception {
+		Random r = new Random(7);
+		buildGrid(r);
+		RoutingConfiguration serialConfig = buildConfiguration(false);
+		RoutingConfiguration parallelConfig = buildConfiguration(true);
+		for (int i = 0; i < 30; i++) {
+			RouteDataObject s = roads.get(r.nextInt(roads.size()));
+			RouteDataObject e = roads.get(r.nextInt(roads.size()));
+			RouteSegmentPoint start = new RouteSegmentPoint(s, r.nextInt(s.getPointsLength()), 0);
+			RouteSegmentPoint end = new RouteSegmentPoint(e, r.nextInt(e.getPointsLength()), 0);
+
+			GridRoutingContext serial = new GridRoutingContext(serialConfig);
+			serial.calculationProgress = new RouteCalculationProgress();
+			serial.initStartAndTargetPoints(start, end);
+			FinalRouteSegment expected = new BinaryRoutePlanner().searchRouteInternal(serial,
+					new RouteSegmentPoint(start), new RouteSegmentPoint(end), null);
+
+			GridRoutingContext parallel = new GridRoutingContext(parallelConfig);
+			parallel.calculationProgress = new RouteCalculationProgress();
+			parallel.initStartAndTargetPoints(start, end);
+			FinalRouteSegment res = new BinaryRoutePlanner().searchRouteInternal(parallel,
+					new RouteSegmentPoint(start), new RouteSegmentPoint(end), null);
+
+			Assert.assertNotNull(expected);
+			Assert.assertNotNull(res);
+			Assert.assertEquals(expected.distanceFromStart, res.distanceFromStart, 1e-2);
+			Assert.assertEquals(getRoadIds(expected), getRoadIds(res));
+			// counters of both directions are merged after search
+			Assert.assertTrue(parallel.calculationProgress.visitedSegments > 0);
+			Assert.assertTrue(parallel.memoryOverhead > 0);
+		}
+	}
+
+	private static GeneralRouter buildHeightRouter() {
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.BICYCLE, new HashMap<String, String>());
+		router.getObjContext(RouteDataObjectAttribute.OBSTACLE_SRTM_ALT_SPEED).registerNewRule("20", "")
+				.registerGreatCondition(":incline", "7", "");
+		router.getObjContext(RouteDataObjectAttribute.OBSTACLE_SRTM_ALT_SPEED).registerNewRule("5", "")
+				.registerGreatCondition(":incline", "1", "");
+		router.getObjContext(RouteDataObjectAttribute.OBSTACLE_SRTM_ALT_SPEED).registerNewRule("2", "")
+				.registerLessCondition(":incline", "-7", "");
+		Map<String, String> params = new HashMap<String, String>();
+		params.put(GeneralRouter.USE_HEIGHT_OBSTACLES, "true");
+		return router.build(params);
+	}
+
+	private static List<RouteDataObject> buildHillRoads(RouteRegion reg) {
+		List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+		for (int i = 0; i < 40; i++) {
+			RouteDataObject o = new RouteDataObject(reg);
+			o.id = ((long) i + 1) << RouteResultPreparation.SHIFT_ID;
+			o.pointsX = new int[5];
+			o.pointsY = new int[5];
+			for (int p = 0; p < 5; p++) {
+				o.pointsX[p] = X0 + p * STEP;
+				o.pointsY[p] = Y0 + i * STEP;
+			}
+			o.types = new int[] { 1, 2, 3 + i };
+			res.add(o);
+		}
+		return res;
+	}
+
+	@Test
+	public void testHeightObstacleIsDefinedConcurrently() throws Exception {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(1, "highway", "primary");
+		reg.initRouteEncodingRule(2, "osmand_ele_start", "0");
+		for (int i = 0; i < 40; i++) {
+			reg.initRouteEncodingRule(3 + i, "osmand_ele_end", String.valueOf(i - 20));
+		}
+		GeneralRouter serialRouter = buildHeightRouter();
+		List<RouteDataObject> serialRoads = buildHillRoads(reg);
+		final double[] expected = new double[serialRoads.size() * 2];
+		for (int i = 0; i < serialRoads.size(); i++) {
+			expected[2 * i] = serialRouter.defineHeightObstacle(serialRoads.get(i), (short) 0, (short) 4);
+			expected[2 * i + 1] = serialRouter.defineHeightObstacle(serialRoads.get(i), (short) 4, (short) 0);
+		}
+		Assert.assertTrue(expected[0] > 0);
+		Assert.assertTrue(expected[expected.length - 1] > 0);
+
+		// height arrays and incline of same router are calculated by several threads at once
+		final GeneralRouter router = buildHeightRouter();
+		final List<RouteDataObject> hillRoads = buildHillRoads(reg);
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final boolean reverse = t % 2 == 1;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int k = 0; k < 50; k++) {
+						for (int i = 0; i < hillRoads.size(); i++) {
+							short start = reverse ? (short) 4 : (short) 0;
+							short end = reverse ? (short) 0 : (short) 4;
+							double v = router.defineHeightObstacle(hillRoads.get(i), start, end);
+							if (Math.abs(v - expected[2 * i + (reverse ? 1 : 0)]) > 1e-3) {
+								failures.incrementAndGet();
+							}
+						}
+					}
+				}
+			});
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		Assert.assertEquals(0, failures.get());
+	}
+}
@@ -0,0 +1,224 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.QuadPoint;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RouteSegmentIndexTest {
+
+	private static final int X0 = MapUtils.get31TileNumberX(13.4);
+	private static final int Y0 = MapUtils.get31TileNumberY(52.5);
+	// ~ 1.5 km
+	private static final int SPAN = 1 << 16;
+
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+	private VehicleRouter router;
+
+	@Before
+	public void setUp() {
+		Map<String, String> attrs = new HashMap<String, String>();
+		attrs.put("maxDefaultSpeed", "130");
+		attrs.put("defaultSpeed", "20");
+		GeneralRouter gr = new GeneralRouter(GeneralRouterProfile.CAR, attrs);
+		gr.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("1", "")
+				.registerAndTagValueCondition("highway", null, false);
+		gr.getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).registerNewRule("1.5", "")
+				.registerAndTagValueCondition("highway", "primary", false);
+		gr.getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).registerNewRule("0.5", "")
+				.registerAndTagValueCondition("highway", "residential", false);
+		router = gr.build(new HashMap<String, String>());
+
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(1, "highway", "primary");
+		reg.initRouteEncodingRule(2, "highway", "residential");
+		Random r = new Random(17);
+		for (int i = 0; i < 500; i++) {
+			RouteDataObject o = new RouteDataObject(reg);
+			o.id = i + 1;
+			int pts = 1 + r.nextInt(6);
+			o.pointsX = new int[pts];
+			o.pointsY = new int[pts];
+			int x = X0 + r.nextInt(SPAN);
+			int y = Y0 + r.nextInt(SPAN);
+			// some long segments to check segments covering many cells
+			int step = r.nextInt(10) == 0 ? SPAN / 2 : 1 << 10;
+			for (int p = 0; p < pts; p++) {
+				o.pointsX[p] = x;
+				o.pointsY[p] = y;
+				x += r.nextInt(2 * step) - step;
+				y += r.nextInt(2 * step) - step;
+			}
+			o.types = new int[] { r.nextInt(4) == 0 ? 1 : 2 };
+			o.pointTypes = new int[0][];
+			roads.add(o);
+		}
+	}
+
+	// nearest segment of every road as it was searched before index
+	private List<RouteSegmentPoint> findAll(List<RouteDataObject> objects, int px, int py, VehicleRouter router) {
+		List<RouteSegmentPoint> list = new ArrayList<RouteSegmentPoint>();
+		for (RouteDataObject r : objects) {
+			RouteSegmentPoint road = null;
+			for (int j = 1; j < r.getPointsLength(); j++) {
+				QuadPoint pr = MapUtils.getProjectionPoint31(px, py, r.getPoint31XTile(j - 1),
+						r.getPoint31YTile(j - 1), r.getPoint31XTile(j), r.getPoint31YTile(j));
+				double currentsDistSquare = RoutePlannerFrontEnd.squareDist((int) pr.x, (int) pr.y, px, py);
+				if (road == null || currentsDistSquare < road.distSquare) {
+					road = new RouteSegmentPoint(r, j, currentsDistSquare);
+					road.preciseX = (int) pr.x;
+					road.preciseY = (int) pr.y;
+				}
+			}
+			if (road != null) {
+				if (router != null) {
+					float prio = Math.max(router.defineSpeedPriority(r), 0.3f);
+					double e = RoutePlannerFrontEnd.GPS_POSSIBLE_ERROR;
+					road.distSquare = (road.distSquare + e * e) / (prio * prio);
+				}
+				list.add(road);
+			}
+		}
+		Collections.sort(list, new Comparator<RouteSegmentPoint>() {
+			@Override
+			public int compare(RouteSegmentPoint o1, RouteSegmentPoint o2) {
+				return Double.compare(o1.distSquare, o2.distSquare);
+			}
+		});
+		return list;
+	}
+
+	private static void assertPrefix(List<RouteSegmentPoint> expected, List<RouteSegmentPoint> actual, int size) {
+		Assert.assertEquals(size, actual.size());
+		for (int i = 0; i < size; i++) {
+			// meters per 31 unit are cached by MapUtils on first use, so distances are compared with relative error
+			Assert.assertEquals(expected.get(i).distSquare, actual.get(i).distSquare, expected.get(i).distSquare * 1e-9);
+			Assert.assertEquals(expected.get(i).getSegmentStart(), actual.get(i).getSegmentStart());
+			Assert.assertEquals(expected.get(i).preciseX, actual.get(i).preciseX);
+			Assert.assertEquals(expected.get(i).preciseY, actual.get(i).preciseY);
+		}
+	}
+
+	@Test
+	public void testSameAsAllSegmentsSearch() {
+		// roads split into 2 tiles
+		List<RouteSegmentIndex> indexes = new ArrayList<RouteSegmentIndex>();
+		indexes.add(new RouteSegmentIndex(roads.subList(0, roads.size() / 2)));
+		indexes.add(new RouteSegmentIndex(roads.subList(roads.size() / 2, roads.size())));
+		Random r = new Random(3);
+		for (int i = 0; i < 200; i++) {
+			int px = X0 - SPAN / 4 + r.nextInt(SPAN + SPAN / 2);
+			int py = Y0 - SPAN / 4 + r.nextInt(SPAN + SPAN / 2);
+			VehicleRouter rt = i % 2 == 0 ? router : null;
+			List<RouteSegmentPoint> expected = findAll(roads, px, py, rt);
+
+			assertPrefix(expected, RouteSegmentIndex.findNearestSegments(indexes, px, py, rt, false,
+					Double.POSITIVE_INFINITY, 0), expected.size());
+			assertPrefix(expected, RouteSegmentIndex.findNearestSegments(indexes, px, py, rt, false, 0, 5), 5);
+
+			double maxDist = 200 * 200;
+			int within = 0;
+			while (within < expected.size() && expected.get(within).distSquare <= maxDist) {
+				within++;
+			}
+			assertPrefix(expected, RouteSegmentIndex.findNearestSegments(indexes, px, py, rt, false, maxDist, 1),
+					Math.min(expected.size(), within + 1));
+		}
+	}
+
+	@Test
+	public void testDuplicatedRoads() {
+		List<RouteSegmentIndex> indexes = new ArrayList<RouteSegmentIndex>();
+		indexes.add(new RouteSegmentIndex(roads));
+		indexes.add(new RouteSegmentIndex(roads));
+		List<RouteSegmentPoint> expected = findAll(roads, X0, Y0, router);
+		assertPrefix(expected, RouteSegmentIndex.findNearestSegments(indexes, X0, Y0, router, false, 0, 10), 10);
+		// same region is not duplicated
+		assertPrefix(expected, RouteSegmentIndex.findNearestSegments(indexes, X0, Y0, router, true, 0, 10), 10);
+	}
+
+	private static RouteDataObject createRoad(RouteRegion reg, long id, int x1, int y1, int x2, int y2) {
+		RouteDataObject o = new RouteDataObject(reg);
+		o.id = id;
+		o.pointsX = new int[] { x1, x2 };
+		o.pointsY = new int[] { y1, y2 };
+		o.types = new int[] { 2 };
+		o.pointTypes = new int[0][];
+		return o;
+	}
+
+	@Test
+	public void testEqualDistancesInOrderOfLoadedObjects() {
+		RouteRegion reg = roads.get(0).region;
+		List<RouteDataObject> all = new ArrayList<RouteDataObject>();
+		List<RouteSegmentIndex> indexes = new ArrayList<RouteSegmentIndex>();
+		for (int k = 0; k < 3; k++) {
+			List<RouteDataObject> tile = new ArrayList<RouteDataObject>();
+			for (int i = 0; i < 40; i++) {
+				// roads of 2 groups with same geometry alternate in tile
+				int dy = i % 2 == 0 ? 100 : 50;
+				tile.add(createRoad(reg, all.size() + tile.size() + 1, X0, Y0 + dy, X0 + 1000, Y0 + dy));
+			}
+			all.addAll(tile);
+			indexes.add(new RouteSegmentIndex(tile));
+		}
+		// sort of list with all roads is stable
+		List<RouteSegmentPoint> expected = findAll(all, X0 + 500, Y0, null);
+		List<RouteSegmentPoint> actual = RouteSegmentIndex.findNearestSegments(indexes, X0 + 500, Y0, null, false,
+				Double.POSITIVE_INFINITY, 0);
+		assertPrefix(expected, actual, all.size());
+		for (int i = 0; i < all.size(); i++) {
+			Assert.assertEquals(expected.get(i).getRoad().getId(), actual.get(i).getRoad().getId());
+		}
+	}
+
+	@Test
+	public void testSameRoadsInManyIndexes() {
+		RouteRegion reg1 = roads.get(0).region;
+		RouteRegion reg2 = new RouteRegion();
+		reg2.initRouteEncodingRule(1, "highway", "primary");
+		reg2.initRouteEncodingRule(2, "highway", "residential");
+		List<RouteSegmentIndex> indexes = new ArrayList<RouteSegmentIndex>();
+		for (int k = 0; k < 12; k++) {
+			Random r = new Random(5);
+			List<RouteDataObject> tile = new ArrayList<RouteDataObject>();
+			for (int i = 0; i < 60; i++) {
+				int x = X0 + r.nextInt(SPAN);
+				int y = Y0 + r.nextInt(SPAN);
+				// ids are far apart to get different hashes
+				tile.add(createRoad(k < 6 ? reg1 : reg2, (i + 1) * 0x100000001L, x, y, x + 1000, y + 1000));
+			}
+			indexes.add(new RouteSegmentIndex(tile));
+		}
+		for (int t = 0; t < 2; t++) {
+			boolean allowDuplications = t == 1;
+			List<RouteSegmentPoint> res = RouteSegmentIndex.findNearestSegments(indexes, X0, Y0, router,
+					allowDuplications, Double.POSITIVE_INFINITY, 0);
+			Assert.assertEquals(allowDuplications ? 120 : 60, res.size());
+			Map<String, Integer> found = new HashMap<String, Integer>();
+			for (int i = 0; i < res.size(); i++) {
+				RouteDataObject o = res.get(i).getRoad();
+				String key = o.getId() + (allowDuplications && o.region == reg2 ? "/2" : "/1");
+				Assert.assertNull(key, found.put(key, i));
+				if (i > 0) {
+					Assert.assertTrue(res.get(i - 1).distSquare <= res.get(i).distSquare);
+				}
+			}
+		}
+	}
+}
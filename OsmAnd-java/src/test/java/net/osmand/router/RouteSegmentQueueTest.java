@@ -0,0 +1,69 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RouteSegmentQueueTest {
+
+	private static RouteSegment segment(float distanceFromStart, float distanceToEnd) {
+		RouteSegment s = new RouteSegment(new RouteDataObject((RouteRegion) null), 0);
+		s.distanceFromStart = distanceFromStart;
+		s.distanceToEnd = distanceToEnd;
+		return s;
+	}
+
+	@Test
+	public void testPollOrder() {
+		Random r = new Random(7);
+		RouteSegmentQueue queue = new RouteSegmentQueue(1, 4);
+		List<Double> expected = new ArrayList<Double>();
+		for (int i = 0; i < 1000; i++) {
+			RouteSegment s = segment(r.nextInt(10000), r.nextInt(1000));
+			queue.add(s);
+			expected.add(queue.key(s));
+		}
+		Collections.sort(expected);
+		Assert.assertEquals(1000, queue.size());
+		for (Double key : expected) {
+			Assert.assertEquals(key, queue.key(queue.poll()), 0);
+		}
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.poll());
+	}
+
+	@Test
+	public void testDecreaseKeyDoesNotDuplicate() {
+		RouteSegmentQueue queue = new RouteSegmentQueue(1);
+		List<RouteSegment> all = new ArrayList<RouteSegment>();
+		for (int i = 0; i < 100; i++) {
+			RouteSegment s = segment(100 + i, 0);
+			all.add(s);
+			queue.add(s);
+		}
+		RouteSegment last = all.get(99);
+		last.distanceFromStart = 1;
+		queue.add(last);
+		RouteSegment first = all.get(0);
+		first.distanceFromStart = 500;
+		queue.add(first);
+		Assert.assertEquals(100, queue.size());
+		Assert.assertSame(last, queue.poll());
+		RouteSegment prev = queue.poll();
+		while (!queue.isEmpty()) {
+			RouteSegment s = queue.poll();
+			Assert.assertTrue(queue.key(prev) <= queue.key(s));
+			prev = s;
+		}
+		Assert.assertSame(first, prev);
+		Assert.assertFalse(queue.contains(first));
+	}
+}
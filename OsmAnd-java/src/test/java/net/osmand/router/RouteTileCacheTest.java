@@ -0,0 +1,160 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RouteTileCacheTest {
+
+	private static final int TILE_POINTER = 1000;
+
+	private File file;
+	private List<RandomAccessFile> files = new ArrayList<RandomAccessFile>();
+
+	// reader with single route region, which decodes 3 roads for any subregion
+	private static class RouteReader extends BinaryMapIndexReader {
+		final RouteRegion region = new RouteRegion();
+		final RouteSubregion subregion = new RouteSubregion(region);
+		int loadedTiles;
+
+		RouteReader(RandomAccessFile raf, File file) throws IOException {
+			super(raf, file, false);
+			region.setName("Test");
+			region.setFilePointer(100);
+			region.setLength(5000);
+			subregion.filePointer = TILE_POINTER;
+			subregion.length = 100;
+		}
+
+		@Override
+		public List<RouteRegion> getRoutingIndexes() {
+			return Collections.singletonList(region);
+		}
+
+		@Override
+		public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) throws IOException {
+			loadedTiles++;
+			List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+			for (int i = 0; i < 3; i++) {
+				RouteDataObject ro = new RouteDataObject(rs.routeReg);
+				ro.id = i + 1;
+				ro.types = new int[] { 1 };
+				ro.pointsX = new int[] { i * 100, i * 100 + 50 };
+				ro.pointsY = new int[] { 200, 300 };
+				res.add(ro);
+			}
+			return res;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("Route", ".obf");
+		file.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (RandomAccessFile raf : files) {
+			raf.close();
+		}
+	}
+
+	private RouteReader createReader() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		files.add(raf);
+		return new RouteReader(raf, file);
+	}
+
+	@Test
+	public void testTilesSharedByReadersOfSameFile() throws IOException {
+		checkSharedTiles(false);
+	}
+
+	@Test
+	public void testPackedTilesSharedByReadersOfSameFile() throws IOException {
+		checkSharedTiles(true);
+	}
+
+	private void checkSharedTiles(boolean packed) throws IOException {
+		RouteTileCache cache = new RouteTileCache(1 << 20, packed);
+		RouteReader first = createReader();
+		RouteReader second = createReader();
+		List<RouteDataObject> objects = cache.getTile(first, first.subregion);
+		Assert.assertEquals(3, objects.size());
+		List<RouteDataObject> shared = cache.getTile(second, second.subregion);
+		Assert.assertEquals(1, first.loadedTiles);
+		Assert.assertEquals(0, second.loadedTiles);
+		Assert.assertEquals(1, cache.getHits());
+		if (!packed) {
+			Assert.assertSame(objects, shared);
+		}
+		for (RouteDataObject ro : shared) {
+			Assert.assertSame(first.region, ro.region);
+		}
+
+		// context of second reader resolves region of shared objects
+		RoutingContext ctx = new RoutingContext(null, null, new BinaryMapIndexReader[] { second },
+				RouteCalculationMode.NORMAL);
+		Assert.assertSame(second, ctx.getReader(second.region));
+		Assert.assertSame(second, ctx.getReader(shared.get(0).region));
+		RouteRegion other = new RouteRegion();
+		other.setName("Test");
+		other.setFilePointer(100);
+		other.setLength(4000);
+		Assert.assertNull(ctx.getReader(other));
+	}
+
+	@Test
+	public void testUpdatedFileIsDecodedAgain() throws IOException {
+		RouteTileCache cache = new RouteTileCache(1 << 20);
+		RouteReader reader = createReader();
+		List<RouteDataObject> objects = cache.getTile(reader, reader.subregion);
+		Assert.assertSame(objects, cache.getTile(reader, reader.subregion));
+		FileOutputStream fout = new FileOutputStream(file, true);
+		fout.write(new byte[16]);
+		fout.close();
+		// file identity is resolved once per reader, updated file is opened by new reader
+		Assert.assertSame(objects, cache.getTile(reader, reader.subregion));
+		RouteReader updated = createReader();
+		Assert.assertNotSame(objects, cache.getTile(updated, updated.subregion));
+		Assert.assertEquals(1, reader.loadedTiles);
+		Assert.assertEquals(1, updated.loadedTiles);
+		Assert.assertEquals(2, cache.getTilesCount());
+	}
+
+	@Test
+	public void testEvictionByWeight() throws IOException {
+		RouteReader reader = createReader();
+		long tileWeight = 0;
+		for (RouteDataObject ro : reader.loadRouteIndexData(reader.subregion)) {
+			tileWeight += RoutingContext.getEstimatedSize(ro);
+		}
+		RouteTileCache cache = new RouteTileCache(tileWeight * 2);
+		for (int i = 0; i < 5; i++) {
+			reader.subregion.filePointer = TILE_POINTER + i;
+			cache.getTile(reader, reader.subregion);
+			Assert.assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		}
+		Assert.assertEquals(2, cache.getTilesCount());
+		Assert.assertEquals(3, cache.getEvictions());
+		// most recent tile is kept
+		cache.getTile(reader, reader.subregion);
+		Assert.assertEquals(1, cache.getHits());
+	}
+}
@@ -0,0 +1,185 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResultSegment;
+import net.osmand.router.TransportRoutePlanner.TransportRouteSegment;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransportRaptorPlannerTest {
+
+	private static final int SIZE = 8;
+	private static final double LAT0 = 52.5;
+	private static final double LON0 = 13.4;
+	// ~ 550 m
+	private static final double STEP = 0.005;
+
+	private final List<TransportRoute> routes = new ArrayList<TransportRoute>();
+
+	// serves routes in memory instead of obf files
+	private class MemoryTransportContext extends TransportRoutingContext {
+
+		MemoryTransportContext(TransportRoutingConfiguration cfg) {
+			super(cfg, null, new BinaryMapIndexReader[0]);
+		}
+
+		@Override
+		public List<TransportRouteSegment> getTransportStops(int x, int y, boolean change, List<TransportRouteSegment> res) throws IOException {
+			LatLon loc = new LatLon(MapUtils.get31LatitudeY(y), MapUtils.get31LongitudeX(x));
+			int radius = change ? cfg.walkChangeRadius : cfg.walkRadius;
+			for (TransportRoute r : routes) {
+				for (int i = 0; i < r.getForwardStops().size(); i++) {
+					if (MapUtils.getDistance(loc, r.getForwardStops().get(i).getLocation()) <= radius) {
+						res.add(new TransportRouteSegment(r, i));
+					}
+				}
+			}
+			return res;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		TransportStop[][] stops = new TransportStop[SIZE][SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				TransportStop s = new TransportStop();
+				s.setId((long) (i * SIZE + j + 1));
+				s.setName("Stop " + i + " " + j);
+				s.setLocation(LAT0 + j * STEP, LON0 + i * STEP);
+				s.x31 = MapUtils.get31TileNumberX(s.getLocation().getLongitude());
+				s.y31 = MapUtils.get31TileNumberY(s.getLocation().getLatitude());
+				stops[i][j] = s;
+			}
+		}
+		long id = 1;
+		// lines along rows and columns in both directions, every second line is express (stops at every second stop)
+		for (int l = 0; l < SIZE; l++) {
+			for (int d = 0; d < 2; d++) {
+				List<TransportStop> forward = new ArrayList<TransportStop>();
+				for (int k = 0; k < SIZE; k += (l % 2 == 1 ? 2 : 1)) {
+					forward.add(d == 0 ? stops[l][k] : stops[k][l]);
+				}
+				for (int rev = 0; rev < 2; rev++) {
+					TransportRoute r = new TransportRoute();
+					r.setId(id++);
+					r.setName("Line " + l + " " + d + " " + rev);
+					r.setRef(l + "" + d);
+					r.setType("bus");
+					List<TransportStop> fs = new ArrayList<TransportStop>(forward);
+					if (rev == 1) {
+						Collections.reverse(fs);
+					}
+					r.setForwardStops(fs);
+					// trips every 10 minutes from 11:30, 1 minute between stops (10 seconds units)
+					TransportSchedule schedule = r.getOrCreateSchedule();
+					schedule.tripIntervals.add(11 * 60 * 6 + 30 * 6 + (int) (id % 10) * 6);
+					for (int k = 0; k < 20; k++) {
+						schedule.tripIntervals.add(10 * 6);
+					}
+					for (int k = 0; k < fs.size() - 1; k++) {
+						schedule.avgStopIntervals.add(6);
+					}
+					routes.add(r);
+				}
+			}
+		}
+	}
+
+	private TransportRoutingConfiguration createConfig(boolean raptor) {
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.PUBLIC_TRANSPORT, new HashMap<String, String>());
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(router, new HashMap<String, String>());
+		cfg.useRaptor = raptor;
+		return cfg;
+	}
+
+	private LatLon randomLocation(Random r) {
+		return new LatLon(LAT0 + r.nextDouble() * STEP * (SIZE - 1), LON0 + r.nextDouble() * STEP * (SIZE - 1));
+	}
+
+	@Test
+	public void testFastestRouteComparedToQueueSearch() throws Exception {
+		Random r = new Random(1);
+		int found = 0;
+		int faster = 0;
+		for (int t = 0; t < 20; t++) {
+			LatLon start = randomLocation(r);
+			LatLon end = randomLocation(r);
+			if (MapUtils.getDistance(start, end) < 2000) {
+				continue;
+			}
+			TransportRoutePlanner planner = new TransportRoutePlanner();
+			List<TransportRouteResult> expected = planner.buildRoute(new MemoryTransportContext(createConfig(false)), start, end);
+			TransportRoutingContext ctx = new MemoryTransportContext(createConfig(true));
+			List<TransportRouteResult> results = planner.buildRoute(ctx, start, end);
+			Assert.assertEquals(expected.isEmpty(), results.isEmpty());
+			if (expected.isEmpty()) {
+				continue;
+			}
+			found++;
+			// queue search finishes at the stop closest to the end and doesn't board visited routes again
+			Assert.assertTrue(results.get(0).getRouteTime() <= expected.get(0).getRouteTime() + 1e-3);
+			if (results.get(0).getRouteTime() < expected.get(0).getRouteTime() - 1e-3) {
+				faster++;
+			}
+			for (TransportRouteResult res : results) {
+				double time = res.getFinishWalkDist() / ctx.cfg.walkSpeed;
+				for (TransportRouteResultSegment s : res.getSegments()) {
+					time += s.walkTime + s.travelTime;
+					Assert.assertTrue(s.start < s.end);
+				}
+				time += (res.getSegments().size() - 1) * (ctx.cfg.getChangeTime() + ctx.cfg.getBoardingTime());
+				Assert.assertEquals(time, res.getRouteTime(), 1e-3);
+				Assert.assertTrue(res.getSegments().size() <= ctx.cfg.maxNumberOfChanges + 1);
+			}
+			// pareto: slower results have less changes
+			for (int i = 1; i < results.size(); i++) {
+				Assert.assertTrue(results.get(i).getRouteTime() > results.get(i - 1).getRouteTime());
+				Assert.assertTrue(results.get(i).getSegments().size() < results.get(i - 1).getSegments().size());
+			}
+		}
+		Assert.assertTrue(found > 5);
+		Assert.assertTrue(faster < found);
+	}
+
+	@Test
+	public void testScheduleRoutes() throws Exception {
+		Random r = new Random(2);
+		int found = 0;
+		for (int t = 0; t < 10; t++) {
+			LatLon start = randomLocation(r);
+			LatLon end = randomLocation(r);
+			TransportRoutingConfiguration cfg = createConfig(true);
+			cfg.useSchedule = true;
+			List<TransportRouteResult> results = new TransportRoutePlanner().buildRoute(new MemoryTransportContext(cfg), start, end);
+			for (TransportRouteResult res : results) {
+				found++;
+				int time = cfg.scheduleTimeOfDay;
+				for (TransportRouteResultSegment s : res.getSegments()) {
+					// vehicle departs after passenger comes to the stop
+					Assert.assertTrue(s.depTime * 10 >= time * 10 + s.walkTime);
+					Assert.assertEquals(s.getArrivalTime(), s.depTime + (int) s.travelTime / 10);
+					time = s.getArrivalTime();
+				}
+				Assert.assertEquals((time - cfg.scheduleTimeOfDay) * 10 + res.getFinishWalkDist() / cfg.walkSpeed,
+						res.getRouteTime(), 1e-3);
+			}
+		}
+		Assert.assertTrue(found > 0);
+	}
+}
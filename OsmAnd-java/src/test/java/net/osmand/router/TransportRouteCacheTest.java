@@ -0,0 +1,222 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Way;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransportRouteCacheTest {
+
+	private static final String FILE_KEY = TransportRouteCache.getFileKey(new File("Test_city.obf"));
+
+	private static TransportRoute createRoute(long id, int stops) {
+		TransportRoute r = new TransportRoute();
+		r.setId(id);
+		List<TransportStop> fs = new ArrayList<TransportStop>();
+		for (int i = 0; i < stops; i++) {
+			TransportStop s = new TransportStop();
+			s.setId(id * 100 + i);
+			fs.add(s);
+		}
+		r.setForwardStops(fs);
+		return r;
+	}
+
+	// serves stops of single route with geometry split into 2 ways
+	private static class TransportReader extends BinaryMapIndexReader {
+		static final int ROUTE_POINTER = 100;
+		static final double[][] STOPS = { { 52.50, 13.40 }, { 52.51, 13.40 }, { 52.52, 13.40 } };
+		int loadedRoutes;
+
+		TransportReader(RandomAccessFile raf, File file) throws IOException {
+			super(raf, file, false);
+		}
+
+		private static TransportStop createStop(int i) {
+			TransportStop s = new TransportStop();
+			s.setId((long) i + 1);
+			s.setLocation(STOPS[i][0], STOPS[i][1]);
+			return s;
+		}
+
+		@Override
+		public List<TransportStop> searchTransportIndex(SearchRequest<TransportStop> req) throws IOException {
+			for (int i = 0; i < STOPS.length; i++) {
+				TransportStop s = createStop(i);
+				s.setReferencesToRoutes(new int[] { ROUTE_POINTER });
+				req.getSearchResults().add(s);
+			}
+			return req.getSearchResults();
+		}
+
+		@Override
+		public void loadTransportRoutes(int[] filePointers, TIntObjectHashMap<TransportRoute> result) throws IOException {
+			for (int filePointer : filePointers) {
+				loadedRoutes++;
+				TransportRoute r = new TransportRoute();
+				r.setId(7L);
+				for (int i = 0; i < STOPS.length; i++) {
+					r.getForwardStops().add(createStop(i));
+				}
+				// second half of geometry goes first
+				r.addWay(new Way(2, Arrays.asList(new Node(STOPS[1][0], STOPS[1][1], 2), new Node(STOPS[2][0], STOPS[2][1], 3))));
+				r.addWay(new Way(1, Arrays.asList(new Node(STOPS[0][0], STOPS[0][1], 1), new Node(STOPS[1][0], STOPS[1][1], 2))));
+				result.put(filePointer, r);
+			}
+		}
+	}
+
+	private static TransportRoute readRoute(TransportReader reader, TransportRouteCache cache) throws IOException {
+		TransportStopsRouteReader stopsReader = new TransportStopsRouteReader(
+				Collections.<BinaryMapIndexReader>singletonList(reader), cache);
+		SearchRequest<TransportStop> sr = BinaryMapIndexReader.buildSearchTransportRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, -1, null);
+		Collection<TransportStop> stops = stopsReader.readMergedTransportStops(sr);
+		Assert.assertEquals(TransportReader.STOPS.length, stops.size());
+		TransportRoute route = null;
+		for (TransportStop s : stops) {
+			Assert.assertEquals(1, s.getRoutes().size());
+			Assert.assertTrue(route == null || route == s.getRoutes().get(0));
+			route = s.getRoutes().get(0);
+		}
+		return route;
+	}
+
+	@Test
+	public void testRoutesSharedByReaders() throws IOException {
+		File file = File.createTempFile("Transport", ".obf");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			TransportReader reader = new TransportReader(raf, file);
+			TransportRouteCache cache = new TransportRouteCache(1 << 20);
+			TransportRoute route = readRoute(reader, cache);
+			Assert.assertEquals(1, reader.loadedRoutes);
+			// ways are merged before route is shared
+			Assert.assertEquals(1, route.getForwardWays().size());
+			Way way = route.getForwardWays().get(0);
+			Assert.assertEquals(3, way.getNodes().size());
+			Assert.assertEquals(1, way.getFirstNode().getId());
+
+			Assert.assertSame(route, readRoute(reader, cache));
+			Assert.assertEquals(1, reader.loadedRoutes);
+			route.mergeForwardWays();
+			Assert.assertSame(way, route.getForwardWays().get(0));
+			Assert.assertEquals(3, way.getNodes().size());
+
+			// updated file is read again
+			FileOutputStream fout = new FileOutputStream(file, true);
+			fout.write(new byte[16]);
+			fout.close();
+			Assert.assertNotSame(route, readRoute(reader, cache));
+			Assert.assertEquals(2, reader.loadedRoutes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testTileWeightIncludesRoutes() {
+		TransportRouteCache cache = new TransportRouteCache(1 << 20);
+		TransportRoute r = createRoute(1, 10);
+		for (TransportStop s : r.getForwardStops()) {
+			s.addRoute(r);
+		}
+		cache.putTileStops("files", 15, 3, 4, r.getForwardStops());
+		long tileWeight = cache.getWeight();
+		cache.putRoute(FILE_KEY, 10, r);
+		// tile keeps its routes in memory even if they are evicted
+		Assert.assertTrue(tileWeight > cache.getWeight() - tileWeight);
+	}
+
+	@Test
+	public void testSharedEntries() {
+		TransportRouteCache cache = new TransportRouteCache(1 << 20);
+		Assert.assertNull(cache.getRoute(FILE_KEY, 10));
+		TransportRoute r = createRoute(1, 5);
+		Assert.assertSame(r, cache.putRoute(FILE_KEY, 10, r));
+		// route loaded by another context meanwhile is replaced by cached one
+		Assert.assertSame(r, cache.putRoute(FILE_KEY, 10, createRoute(1, 5)));
+		Assert.assertSame(r, cache.getRoute(FILE_KEY, 10));
+		Assert.assertNull(cache.getRoute(TransportRouteCache.getFileKey(new File("Other.obf")), 10));
+
+		Assert.assertNull(cache.getCombinedRoute("files", 1));
+		cache.putCombinedRoute("files", 1, r);
+		Assert.assertSame(r, cache.getCombinedRoute("files", 1));
+		Assert.assertNull(cache.getCombinedRoute("other files", 1));
+
+		List<TransportStop> stops = cache.putTileStops("files", 15, 3, 4, r.getForwardStops());
+		Assert.assertEquals(r.getForwardStops(), stops);
+		Assert.assertSame(stops, cache.getTileStops("files", 15, 3, 4));
+		Assert.assertNull(cache.getTileStops("files", 15, 4, 3));
+		Assert.assertEquals(3, cache.getHits());
+		Assert.assertEquals(5, cache.getMisses());
+		Assert.assertEquals(3, cache.getEntriesCount());
+	}
+
+	@Test
+	public void testEvictionByWeight() {
+		TransportRouteCache cache = new TransportRouteCache(20000);
+		for (int i = 0; i < 100; i++) {
+			cache.putRoute(FILE_KEY, i, createRoute(i, 10));
+			// recently used route is kept
+			Assert.assertNotNull(cache.getRoute(FILE_KEY, 0));
+			Assert.assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		}
+		Assert.assertTrue(cache.getEvictions() > 0);
+		Assert.assertEquals(100 - cache.getEvictions(), cache.getEntriesCount());
+		Assert.assertNull(cache.getRoute(FILE_KEY, 1));
+		cache.clear();
+		Assert.assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final TransportRouteCache cache = new TransportRouteCache(50000);
+		final AtomicInteger errors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread th = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						int id = i % 300;
+						TransportRoute r = cache.getRoute(FILE_KEY, id);
+						if (r == null) {
+							r = cache.putRoute(FILE_KEY, id, createRoute(id, 5));
+						}
+						if (r.getId() != id) {
+							errors.incrementAndGet();
+						}
+						cache.putTileStops("files", 15, id, id, Collections.<TransportStop>emptyList());
+					}
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th : threads) {
+			th.join();
+		}
+		Assert.assertEquals(0, errors.get());
+		Assert.assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		Assert.assertEquals(4 * 2000, cache.getHits() + cache.getMisses());
+	}
+}
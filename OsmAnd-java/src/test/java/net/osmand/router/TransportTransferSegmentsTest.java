@@ -0,0 +1,192 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.binary.TransportTransferIndex;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.router.TransportRoutePlanner.TransportRouteSegment;
+import net.osmand.util.MapUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransportTransferSegmentsTest {
+
+	private static final int STOPS = 300;
+	private static final int SHARED_STOPS = 20;
+	private static final int ROUTE_POINTER = 1000;
+
+	private List<RandomAccessFile> files = new ArrayList<RandomAccessFile>();
+	private List<TransportStop> stopsA;
+	private List<TransportStop> stopsB;
+	private File fileA;
+	private File fileB;
+
+	// serves stops of single transport section, every stop has own route
+	private static class TransportReader extends BinaryMapIndexReader {
+		final TransportIndex index = new TransportIndex();
+		final List<TransportStop> stops;
+		final long routeIdBase;
+
+		TransportReader(RandomAccessFile raf, File file, List<TransportStop> stops, long routeIdBase) throws IOException {
+			super(raf, file, false);
+			this.stops = stops;
+			this.routeIdBase = routeIdBase;
+			index.setFilePointer(100);
+		}
+
+		@Override
+		public List<TransportIndex> getTransportIndexes() {
+			return Collections.singletonList(index);
+		}
+
+		@Override
+		public List<TransportStop> searchTransportIndex(TransportIndex index, SearchRequest<TransportStop> req) {
+			for (int i = 0; i < stops.size(); i++) {
+				TransportStop s = copyStop(stops.get(i));
+				int x = s.x31 >> (31 - BinaryMapIndexReader.TRANSPORT_STOP_ZOOM);
+				int y = s.y31 >> (31 - BinaryMapIndexReader.TRANSPORT_STOP_ZOOM);
+				if (req.contains(x, y, x, y)) {
+					s.setReferencesToRoutes(new int[] { ROUTE_POINTER + i });
+					req.getSearchResults().add(s);
+				}
+			}
+			return req.getSearchResults();
+		}
+
+		@Override
+		public List<TransportStop> searchTransportIndex(SearchRequest<TransportStop> req) {
+			return searchTransportIndex(index, req);
+		}
+
+		@Override
+		public void loadTransportRoutes(int[] filePointers, TIntObjectHashMap<TransportRoute> result) {
+			for (int filePointer : filePointers) {
+				TransportRoute r = new TransportRoute();
+				r.setId(routeIdBase + filePointer);
+				r.getForwardStops().add(copyStop(stops.get(filePointer - ROUTE_POINTER)));
+				result.put(filePointer, r);
+			}
+		}
+	}
+
+	private static TransportStop copyStop(TransportStop o) {
+		TransportStop s = new TransportStop();
+		s.setId(o.getId());
+		s.setLocation(o.getLocation().getLatitude(), o.getLocation().getLongitude());
+		s.x31 = o.x31;
+		s.y31 = o.y31;
+		return s;
+	}
+
+	private static List<TransportStop> generateStops(Random r, long firstId, double lon) {
+		List<TransportStop> stops = new ArrayList<TransportStop>();
+		for (int i = 0; i < STOPS; i++) {
+			TransportStop s = new TransportStop();
+			s.setId(firstId + i);
+			s.setLocation(52.5 + r.nextDouble() * 0.03, lon + r.nextDouble() * 0.05);
+			s.x31 = MapUtils.get31TileNumberX(s.getLocation().getLongitude());
+			s.y31 = MapUtils.get31TileNumberY(s.getLocation().getLatitude());
+			stops.add(s);
+		}
+		return stops;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Random r = new Random(3);
+		// sections overlap near the border and share some stops
+		stopsA = generateStops(r, 1, 13.40);
+		stopsB = generateStops(r, STOPS + 1, 13.445);
+		for (int i = 0; i < STOPS && stopsB.size() < STOPS + SHARED_STOPS; i++) {
+			if (stopsA.get(i).getLocation().getLongitude() > 13.445) {
+				stopsB.add(stopsA.get(i));
+			}
+		}
+		fileA = File.createTempFile("TransportA", ".obf");
+		fileA.deleteOnExit();
+		fileB = File.createTempFile("TransportB", ".obf");
+		fileB.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (RandomAccessFile raf : files) {
+			raf.close();
+		}
+	}
+
+	private TransportReader createReader(File f, List<TransportStop> stops, long routeIdBase) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		files.add(raf);
+		return new TransportReader(raf, f, stops, routeIdBase);
+	}
+
+	private TransportRoutingContext createContext(TransportTransferIndex index) throws IOException {
+		TransportReader a = createReader(fileA, stopsA, 0);
+		TransportReader b = createReader(fileB, stopsB, 100000);
+		a.setTransportTransferIndex(index);
+		b.setTransportTransferIndex(index);
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new HashMap<String, String>());
+		return new TransportRoutingContext(cfg, null, a, b);
+	}
+
+	private static Set<String> getTransfers(TransportRoutingContext ctx, TransportStop stop) throws IOException {
+		Set<String> res = new HashSet<String>();
+		for (TransportRouteSegment s : ctx.getTransferSegments(stop, new ArrayList<TransportRouteSegment>())) {
+			res.add(s.road.getId() + ":" + s.getStop(s.segStart).getId());
+		}
+		return res;
+	}
+
+	@Test
+	public void testIndexedTransfersSameAsGeometricSearch() throws IOException {
+		TransportTransferIndex index = new TransportTransferIndex();
+		index.addFile(createReader(fileA, stopsA, 0));
+		index.addFile(createReader(fileB, stopsB, 100000));
+		TransportRoutingContext indexed = createContext(index);
+		TransportRoutingContext geometric = createContext(null);
+		Set<Long> checked = new HashSet<Long>();
+		List<TransportStop> all = new ArrayList<TransportStop>(stopsA);
+		all.addAll(stopsB);
+		int transfers = 0;
+		for (TransportStop stop : all) {
+			if (!checked.add(stop.getId())) {
+				continue;
+			}
+			Set<String> expected = getTransfers(geometric, stop);
+			Assert.assertEquals(expected, getTransfers(indexed, stop));
+			transfers += expected.size();
+		}
+		Assert.assertTrue(transfers > checked.size());
+		// stops inside of sections don't search around
+		Assert.assertTrue(indexed.loadedWays < geometric.loadedWays);
+	}
+
+	@Test
+	public void testPartiallyIndexedFilesSearchAround() throws IOException {
+		TransportTransferIndex index = new TransportTransferIndex();
+		index.addFile(createReader(fileA, stopsA, 0));
+		TransportRoutingContext indexed = createContext(index);
+		TransportRoutingContext geometric = createContext(null);
+		TransportStop stop = stopsA.get(0);
+		Assert.assertEquals(getTransfers(geometric, stop), getTransfers(indexed, stop));
+		Assert.assertEquals(geometric.loadedWays, indexed.loadedWays);
+	}
+}
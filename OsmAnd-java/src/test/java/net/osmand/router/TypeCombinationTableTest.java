@@ -0,0 +1,39 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TypeCombinationTableTest {
+
+	@Test
+	public void testAddAndFind() {
+		Random r = new Random(3);
+		TypeCombinationTable table = new TypeCombinationTable(2);
+		List<int[]> keys = new ArrayList<int[]>();
+		for (int i = 0; i < 5000; i++) {
+			int[] types = new int[1 + r.nextInt(8)];
+			for (int j = 0; j < types.length; j++) {
+				types[j] = r.nextInt(100);
+			}
+			if (table.find(types) < 0) {
+				int entry = table.add(types, new float[] { i, -i });
+				Assert.assertEquals(keys.size(), entry);
+				keys.add(types);
+			}
+		}
+		Assert.assertEquals(keys.size(), table.size());
+		for (int i = 0; i < keys.size(); i++) {
+			int entry = table.find(keys.get(i).clone());
+			Assert.assertEquals(i, entry);
+			Assert.assertEquals(-table.get(entry, 0), table.get(entry, 1), 0);
+		}
+		Assert.assertEquals(-1, table.find(new int[0]));
+		Assert.assertEquals(-1, table.find(new int[] { 1000 }));
+		// same combination is not added twice
+		Assert.assertEquals(0, table.add(keys.get(0), new float[] { 1, 1 }));
+	}
+}
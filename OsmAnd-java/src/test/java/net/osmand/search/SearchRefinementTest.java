@@ -0,0 +1,164 @@
+package net.osmand.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.data.LatLon;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+import net.osmand.search.core.ObjectType;
+import net.osmand.search.core.SearchCoreFactory.SearchBaseAPI;
+import net.osmand.search.core.SearchExportSettings;
+import net.osmand.search.core.SearchPhrase;
+import net.osmand.search.core.SearchPhrase.NameStringMatcher;
+import net.osmand.search.core.SearchResult;
+import net.osmand.search.core.SearchSettings;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchRefinementTest {
+
+	private static final List<String> NAMES = Arrays.asList("Berlin", "Bern", "Bergen", "Berlingen", "Oberberg",
+			"Bremen", "Am Berliner Tor");
+
+	private SearchUICore core;
+	private NameSearchAPI api;
+	private SearchSettings settings;
+
+	// searches names in memory and counts searches
+	private static class NameSearchAPI extends SearchBaseAPI {
+		int searches;
+		int refinements;
+		boolean limitReached;
+
+		NameSearchAPI() {
+			super(ObjectType.POI);
+		}
+
+		@Override
+		public boolean search(SearchPhrase phrase, SearchResultMatcher resultMatcher) {
+			searches++;
+			NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
+			for (String name : NAMES) {
+				if (nm.matches(name)) {
+					SearchResult sr = new SearchResult(phrase);
+					sr.localeName = name;
+					sr.object = name;
+					sr.objectType = ObjectType.POI;
+					resultMatcher.publish(sr);
+				}
+			}
+			if (limitReached) {
+				resultMatcher.apiSearchLimitReached();
+			}
+			return true;
+		}
+
+		@Override
+		public boolean refineSearch(SearchPhrase previous, List<SearchResult> previousResults, SearchPhrase phrase,
+									SearchResultMatcher resultMatcher) {
+			refinements++;
+			NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
+			for (SearchResult r : previousResults) {
+				if (nm.matches(r.localeName)) {
+					SearchResult sr = new SearchResult(phrase);
+					sr.localeName = r.localeName;
+					sr.object = r.object;
+					sr.objectType = r.objectType;
+					resultMatcher.publish(sr);
+				}
+			}
+			return true;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		core = new SearchUICore(null, "en", false);
+		api = new NameSearchAPI();
+		core.registerAPI(api);
+		settings = core.getSearchSettings().setOriginalLocation(new LatLon(52.5, 13.4));
+		core.updateSettings(settings);
+	}
+
+	private List<String> search(String text, SearchSettings settings) {
+		SearchPhrase phrase = core.resetPhrase(text);
+		if (settings != core.getSearchSettings()) {
+			phrase = phrase.generateNewPhrase(text, settings);
+		}
+		SearchResultMatcher matcher = new SearchResultMatcher(null, phrase, 1, new AtomicInteger(1), -1);
+		core.searchInternal(phrase, matcher);
+		List<String> names = new ArrayList<>();
+		for (SearchResult r : matcher.getRequestResults()) {
+			names.add(r.localeName);
+		}
+		return names;
+	}
+
+	@Test
+	public void testExtendedPhraseIsRefined() {
+		List<String> ber = search("Ber", settings);
+		Assert.assertEquals(Arrays.asList("Berlin", "Bern", "Bergen", "Berlingen", "Am Berliner Tor"), ber);
+		List<String> berl = search("Berl", settings);
+		Assert.assertEquals(1, api.searches);
+		Assert.assertEquals(1, api.refinements);
+		Assert.assertEquals(Arrays.asList("Berlin", "Berlingen", "Am Berliner Tor"), berl);
+		List<String> berlin = search("Berlin", settings);
+		Assert.assertEquals(1, api.searches);
+		Assert.assertEquals(Arrays.asList("Berlin", "Berlingen", "Am Berliner Tor"), berlin);
+
+		// not an extension
+		Assert.assertEquals(Arrays.asList("Bern"), search("Bern", settings));
+		Assert.assertEquals(2, api.searches);
+		// completed word is matched differently
+		Assert.assertEquals(Arrays.asList("Bern"), search("Bern ", settings));
+		Assert.assertEquals(3, api.searches);
+	}
+
+	@Test
+	public void testRadiusChangeRunsFullSearch() {
+		search("Ber", settings);
+		search("Berl", settings.setRadiusLevel(2));
+		Assert.assertEquals(2, api.searches);
+		Assert.assertEquals(0, api.refinements);
+	}
+
+	@Test
+	public void testExportRunsFullSearch() {
+		SearchSettings export = new SearchSettings(settings);
+		export.setExportSettings(new SearchExportSettings(false, false, -1));
+		core.updateSettings(export);
+		search("Ber", export);
+		search("Berl", export);
+		Assert.assertEquals(2, api.searches);
+		Assert.assertEquals(0, api.refinements);
+		Assert.assertFalse(export.hasSameSearchScope(export));
+		Assert.assertFalse(settings.hasSameSearchScope(export));
+	}
+
+	@Test
+	public void testLimitedResultsAreNotRefined() {
+		api.limitReached = true;
+		search("Ber", settings);
+		search("Berl", settings);
+		Assert.assertEquals(2, api.searches);
+		Assert.assertEquals(0, api.refinements);
+	}
+
+	@Test
+	public void testIsRefinementOf() {
+		SearchPhrase empty = SearchPhrase.emptyPhrase(settings);
+		SearchPhrase ber = empty.generateNewPhrase("Ber", settings);
+		Assert.assertTrue(ber.generateNewPhrase("Berl", settings).isRefinementOf(ber));
+		Assert.assertFalse(ber.generateNewPhrase("Ber", settings).isRefinementOf(ber));
+		Assert.assertFalse(ber.generateNewPhrase("Be", settings).isRefinementOf(ber));
+		Assert.assertFalse(ber.generateNewPhrase("Ber str", settings).isRefinementOf(ber));
+		Assert.assertFalse(ber.generateNewPhrase("Berl", settings.setRadiusLevel(3)).isRefinementOf(ber));
+		Assert.assertFalse(ber.generateNewPhrase("Berl", settings.setOriginalLocation(new LatLon(48.1, 11.6)))
+				.isRefinementOf(ber));
+		Assert.assertFalse(ber.isRefinementOf(empty));
+	}
+}
@@ -0,0 +1,263 @@
+package net.osmand.search.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.data.LatLon;
+import net.osmand.osm.PoiCategory;
+import net.osmand.search.SearchUICore;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+import net.osmand.search.core.SearchCoreFactory.RegionSearch;
+import net.osmand.search.core.SearchCoreFactory.SearchAmenityByNameAPI;
+import net.osmand.search.core.SearchCoreFactory.SearchBaseAPI;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchRegionsTest {
+
+	private static final int FILES = 4;
+	private static final int RESULTS_PER_FILE = 5;
+
+	private List<BinaryMapIndexReader> readers = new ArrayList<>();
+	private List<RandomAccessFile> files = new ArrayList<>();
+	private ExecutorService executor;
+	private SearchPhrase phrase;
+
+	// searches readers with given region search
+	private static class RegionsAPI extends SearchBaseAPI {
+		private final List<BinaryMapIndexReader> readers;
+		private final RegionSearch regionSearch;
+
+		RegionsAPI(List<BinaryMapIndexReader> readers, RegionSearch regionSearch) {
+			super(ObjectType.POI);
+			this.readers = readers;
+			this.regionSearch = regionSearch;
+		}
+
+		@Override
+		public boolean search(SearchPhrase phrase, SearchResultMatcher resultMatcher) throws IOException {
+			searchRegions(phrase, resultMatcher, readers.iterator(), regionSearch);
+			return true;
+		}
+	}
+
+	// publishes fixed results of each file
+	private static class FixedRegionSearch extends RegionSearch {
+		final SearchPhrase phrase;
+		final SearchResultMatcher resultMatcher;
+
+		FixedRegionSearch(SearchPhrase phrase, SearchResultMatcher resultMatcher) {
+			this.phrase = phrase;
+			this.resultMatcher = resultMatcher;
+		}
+
+		@Override
+		protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<SearchResult> regionResults) throws IOException {
+			for (int i = 0; i < RESULTS_PER_FILE && !regionResults.isCancelled(); i++) {
+				SearchResult sr = new SearchResult(phrase);
+				sr.localeName = r.getFile().getName() + "-" + i;
+				sr.objectType = ObjectType.POI;
+				sr.file = r;
+				regionResults.publish(sr);
+			}
+		}
+
+		@Override
+		protected void publishResult(BinaryMapIndexReader r, SearchResult res) {
+			resultMatcher.publish(res);
+		}
+	}
+
+	// finds limit of amenities named "region N" in each search by name
+	private static class PoiReader extends BinaryMapIndexReader {
+		private final int fileIndex;
+
+		PoiReader(RandomAccessFile raf, File file, int fileIndex) throws IOException {
+			super(raf, file, false);
+			this.fileIndex = fileIndex;
+		}
+
+		@Override
+		public boolean containsPoiData(int left31x, int top31y, int right31x, int bottom31y) {
+			return true;
+		}
+
+		@Override
+		public List<Amenity> searchPoiByName(SearchRequest<Amenity> req) {
+			PoiCategory category = new PoiCategory(null, "shop", 0);
+			for (int i = 0; i < SearchAmenityByNameAPI.LIMIT && !req.isCancelled(); i++) {
+				Amenity a = new Amenity();
+				a.setId((long) fileIndex * SearchAmenityByNameAPI.LIMIT + i);
+				a.setName("region " + i);
+				a.setType(category);
+				a.setSubType("supermarket");
+				a.setLocation(52.5, 13.4);
+				req.publish(a);
+			}
+			return req.getSearchResults();
+		}
+	}
+
+	// collects published results and finished regions in order
+	private static class EventCollector implements ResultMatcher<SearchResult> {
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		public boolean publish(SearchResult object) {
+			if (object.objectType == ObjectType.SEARCH_API_REGION_FINISHED) {
+				events.add("finished:" + object.file.getFile().getName());
+			} else {
+				events.add(object.localeName);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		for (int i = 0; i < FILES; i++) {
+			File f = File.createTempFile("region" + i, ".obf");
+			f.deleteOnExit();
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			files.add(raf);
+			readers.add(new BinaryMapIndexReader(raf, f, false));
+		}
+		executor = Executors.newFixedThreadPool(FILES);
+		phrase = new SearchUICore(null, "en", false).resetPhrase("region");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		for (RandomAccessFile raf : files) {
+			raf.close();
+		}
+	}
+
+	private List<String> search(boolean concurrent) throws IOException {
+		EventCollector collector = new EventCollector();
+		SearchResultMatcher matcher = new SearchResultMatcher(collector, phrase, 1, new AtomicInteger(1), -1);
+		if (concurrent) {
+			matcher.setRegionSearchExecutor(executor);
+		}
+		new RegionsAPI(readers, new FixedRegionSearch(phrase, matcher)).search(phrase, matcher);
+		return collector.events;
+	}
+
+	@Test
+	public void testConcurrentSearchPublishesSameResults() throws IOException {
+		List<String> serial = search(false);
+		Assert.assertEquals(FILES * (RESULTS_PER_FILE + 1), serial.size());
+		for (int i = 0; i < FILES; i++) {
+			String name = readers.get(i).getFile().getName();
+			int finished = serial.indexOf("finished:" + name);
+			Assert.assertEquals((i + 1) * (RESULTS_PER_FILE + 1) - 1, finished);
+			Assert.assertEquals(name + "-0", serial.get(finished - RESULTS_PER_FILE));
+		}
+
+		Assert.assertEquals(serial, search(true));
+	}
+
+	@Test(timeout = 10000)
+	public void testResultsArePublishedInOrderOfFiles() throws IOException {
+		List<String> serial = search(false);
+		EventCollector collector = new EventCollector();
+		SearchResultMatcher matcher = new SearchResultMatcher(collector, phrase, 1, new AtomicInteger(1), -1);
+		matcher.setRegionSearchExecutor(executor);
+		new RegionsAPI(readers, new FixedRegionSearch(phrase, matcher) {
+			@Override
+			protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<SearchResult> regionResults)
+					throws IOException {
+				super.searchRegion(r, regionResults);
+				try {
+					// first files are finished last
+					Thread.sleep(50 * (FILES - readers.indexOf(r)));
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		}).search(phrase, matcher);
+		Assert.assertEquals(serial, collector.events);
+	}
+
+	private int searchPoiByName(boolean concurrent) throws IOException {
+		List<BinaryMapIndexReader> poiReaders = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			poiReaders.add(new PoiReader(files.get(i), readers.get(i).getFile(), i));
+		}
+		SearchUICore core = new SearchUICore(null, "en", false);
+		SearchSettings settings = core.getSearchSettings().setOriginalLocation(new LatLon(52.5, 13.4));
+		settings.setOfflineIndexes(poiReaders);
+		core.updateSettings(settings);
+		SearchPhrase poiPhrase = core.resetPhrase("region");
+		SearchResultMatcher matcher = new SearchResultMatcher(null, poiPhrase, 1, new AtomicInteger(1), -1);
+		if (concurrent) {
+			matcher.setRegionSearchExecutor(executor);
+		}
+		new SearchAmenityByNameAPI().search(poiPhrase, matcher);
+		return matcher.getRequestResults().size();
+	}
+
+	@Test(timeout = 30000)
+	public void testLimitIsSharedByFiles() throws IOException {
+		// each file has limit of amenities, limit is checked before result is counted
+		Assert.assertEquals(SearchAmenityByNameAPI.LIMIT + 1, searchPoiByName(false));
+		Assert.assertEquals(SearchAmenityByNameAPI.LIMIT + 1, searchPoiByName(true));
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelledSearchWaitsForStartedWorkers() throws IOException {
+		final AtomicInteger requestNumber = new AtomicInteger(1);
+		final SearchResultMatcher matcher = new SearchResultMatcher(null, phrase, 1, requestNumber, -1);
+		matcher.setRegionSearchExecutor(executor);
+		final AtomicInteger started = new AtomicInteger();
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicInteger publishedAfterCancel = new AtomicInteger();
+		new RegionsAPI(readers, new FixedRegionSearch(phrase, matcher) {
+			@Override
+			protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<SearchResult> regionResults)
+					throws IOException {
+				started.incrementAndGet();
+				super.searchRegion(r, regionResults);
+				try {
+					// reader is still in use after cancel
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				completed.incrementAndGet();
+			}
+
+			@Override
+			protected void publishResult(BinaryMapIndexReader r, SearchResult res) {
+				if (matcher.isCancelled()) {
+					publishedAfterCancel.incrementAndGet();
+				}
+				super.publishResult(r, res);
+				requestNumber.incrementAndGet();
+			}
+		}).search(phrase, matcher);
+		Assert.assertTrue(matcher.isCancelled());
+		Assert.assertEquals(started.get(), completed.get());
+		Assert.assertEquals(0, publishedAfterCancel.get());
+		Assert.assertEquals(1, matcher.getRequestResults().size());
+	}
+}
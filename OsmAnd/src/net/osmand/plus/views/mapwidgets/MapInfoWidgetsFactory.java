@@ -1004,14 +1004,14 @@ public class MapInfoWidgetsFactory {
 		private boolean setRoadShield(ImageView view, RouteDataObject object) {
 			StringBuilder additional = new StringBuilder();
 			for (int i = 0; i < object.nameIds.length; i++) {
-				String key = object.region.routeEncodingRules.get(object.nameIds[i]).getTag();
+				String key = object.region.quickGetEncodingRule(object.nameIds[i]).getTag();
 				String val = object.names.get(object.nameIds[i]);
 				if (!key.startsWith("road_ref")) {
 					additional.append(key).append("=").append(val).append(";");
 				}
 			}
 			for (int i = 0; i < object.nameIds.length; i++) {
-				String key = object.region.routeEncodingRules.get(object.nameIds[i]).getTag();
+				String key = object.region.quickGetEncodingRule(object.nameIds[i]).getTag();
 				String val = object.names.get(object.nameIds[i]);
 				if (key.startsWith("road_ref")) {
 					boolean visible = setRoadShield(view, object, key, val, additional);